@@ -0,0 +1,118 @@
+package com.cocreativeds.benchmarks;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.time.LocalDate;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.cocreativeds.Account;
+import com.cocreativeds.AccountCodec;
+import com.cocreativeds.AccountTypeCode;
+import com.cocreativeds.BankCode;
+import com.cocreativeds.BranchOfficeNumber;
+
+/**
+ * 口座のバイナリ形式のベンチマーク
+ *
+ * <p>
+ * {@link AccountCodec}による口座の書き込み・読み込みと、Javaのシリアライズによる書き込み・読み込みの
+ * スループットを比較します。口座クラスはSerializableではないため、シリアライズは口座と同じ項目
+ * (口座識別子、金融機関コード、店番、預金種目コード、口座番号の文字列と口座残高)を持つクラスで行います。
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class AccountCodecBenchmark {
+
+    /**
+     * シリアライズで比較するための口座の項目
+     */
+    static final class AccountRecord implements Serializable {
+        private static final long serialVersionUID = 1L;
+
+        final String accountId;
+        final String bankCode;
+        final String branchOfficeNumber;
+        final String accountTypeCode;
+        final String accountNumber;
+        final long balance;
+
+        AccountRecord(String accountId, String bankCode, String branchOfficeNumber, String accountTypeCode,
+                String accountNumber, long balance) {
+            this.accountId = accountId;
+            this.bankCode = bankCode;
+            this.branchOfficeNumber = branchOfficeNumber;
+            this.accountTypeCode = accountTypeCode;
+            this.accountNumber = accountNumber;
+            this.balance = balance;
+        }
+    }
+
+    private final ByteBuffer buffer = ByteBuffer.allocate(AccountCodec.MAX_ACCOUNT_SIZE);
+    private Account account;
+    private byte[] encoded;
+    private AccountRecord record;
+    private byte[] serialized;
+
+    @Setup
+    public void setUp() throws IOException {
+        this.account = new Account();
+        this.account.openAccount(BankCode.of("0001"), BranchOfficeNumber.of("123"), AccountTypeCode.of("1"));
+        this.account.deposit(1_234_567L, "JPY", LocalDate.of(2024, 4, 1), "入金");
+        AccountCodec.writeAccount(this.account, this.buffer);
+        this.encoded = new byte[this.buffer.position()];
+        this.buffer.flip().get(this.encoded);
+
+        String[] fields = this.account.toString().substring("口座: ".length()).split("-");
+        this.record = new AccountRecord(fields[4], fields[0], fields[1], fields[2], fields[3],
+            this.account.getBalance());
+        this.serialized = this.serialize();
+    }
+
+    @Benchmark
+    public ByteBuffer encode() {
+        this.buffer.clear();
+        AccountCodec.writeAccount(this.account, this.buffer);
+        return this.buffer;
+    }
+
+    @Benchmark
+    public Account decode() {
+        return AccountCodec.readAccount(ByteBuffer.wrap(this.encoded));
+    }
+
+    @Benchmark
+    public byte[] serialize() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(this.record);
+        }
+        return bytes.toByteArray();
+    }
+
+    @Benchmark
+    public Object deserialize() throws IOException, ClassNotFoundException {
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(this.serialized))) {
+            return in.readObject();
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package com.cocreativeds.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.cocreativeds.Account;
+import com.cocreativeds.AccountNumberAllocator;
+import com.cocreativeds.AccountTypeCode;
+import com.cocreativeds.BankCode;
+import com.cocreativeds.BranchOfficeNumber;
+
+/**
+ * 口座開設のベンチマーク
+ *
+ * <p>
+ * 1,000口座を開設するときのスループット(1口座あたり)を、1口座ずつ開設する場合(openAccount)と
+ * 一括して開設する場合(openAccounts)で比較します。口座番号の空きがなくならないように、開設する店番を
+ * 16店舗で順に切り替え、測定の繰り返しごとに口座番号の採番を作り直します。
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class AccountOpeningBenchmark {
+
+    /* 1回の呼び出しで開設する口座の数 */
+    private static final int BATCH = 1000;
+
+    private final BankCode bankCode = BankCode.of("0001");
+    private final AccountTypeCode accountTypeCode = AccountTypeCode.of("1");
+    private final BranchOfficeNumber[] branches = new BranchOfficeNumber[16];
+
+    private AccountNumberAllocator allocator;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUpBranches() {
+        for (int i = 0; i < this.branches.length; i++) {
+            this.branches[i] = BranchOfficeNumber.of(String.format("%03d", i + 1));
+        }
+    }
+
+    @Setup(Level.Iteration)
+    public void setUp() {
+        this.allocator = new AccountNumberAllocator();
+    }
+
+    private BranchOfficeNumber nextBranch() {
+        return this.branches[this.next++ & (this.branches.length - 1)];
+    }
+
+    /* 1口座ずつ開設する(口座番号は重複を確認しない無作為な採番) */
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public Account[] openAccountOneByOne() {
+        BranchOfficeNumber boNumber = this.nextBranch();
+        Account[] accounts = new Account[BATCH];
+        for (int i = 0; i < BATCH; i++) {
+            Account a = new Account();
+            a.openAccount(this.bankCode, boNumber, this.accountTypeCode);
+            accounts[i] = a;
+        }
+        return accounts;
+    }
+
+    /* 1口座ずつ開設する(口座番号は重複しない採番) */
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public Account[] openAccountWithAllocator() {
+        BranchOfficeNumber boNumber = this.nextBranch();
+        Account[] accounts = new Account[BATCH];
+        for (int i = 0; i < BATCH; i++) {
+            Account a = new Account();
+            a.openAccount(this.bankCode, boNumber, this.accountTypeCode, this.allocator);
+            accounts[i] = a;
+        }
+        return accounts;
+    }
+
+    /* 一括して開設する */
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public Account[] openAccounts() {
+        return Account.openAccounts(this.bankCode, this.nextBranch(), this.accountTypeCode, BATCH, this.allocator);
+    }
+}
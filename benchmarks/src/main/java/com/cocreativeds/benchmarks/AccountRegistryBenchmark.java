@@ -0,0 +1,89 @@
+package com.cocreativeds.benchmarks;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.cocreativeds.Account;
+import com.cocreativeds.AccountId;
+import com.cocreativeds.AccountNumberAllocator;
+import com.cocreativeds.AccountRegistry;
+import com.cocreativeds.AccountTypeCode;
+import com.cocreativeds.BankCode;
+import com.cocreativeds.BranchOfficeNumber;
+
+/**
+ * 口座の登録簿のベンチマーク
+ *
+ * <p>
+ * 口座を登録した登録簿に対して、検索を行うスレッドと登録・削除を行うスレッドを同時に動かし、
+ * 検索の応答時間の分布(パーセンタイル)を測定します。検索のみの場合と比較するため、
+ * 登録・削除を行わないグループも測定します。
+ */
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+@State(Scope.Group)
+public class AccountRegistryBenchmark {
+
+    @Param({"1000000"})
+    private int accounts;
+
+    private AccountRegistry registry;
+    private AccountId[] ids;
+    /* 登録・削除に使用する口座 */
+    private Account[] churn;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        Account[] opened = Account.openAccounts(BankCode.of("0001"), BranchOfficeNumber.of("001"),
+            AccountTypeCode.of("1"), this.accounts, new AccountNumberAllocator());
+        this.registry = new AccountRegistry(this.accounts);
+        this.ids = new AccountId[opened.length];
+        for (int i = 0; i < opened.length; i++) {
+            this.registry.put(opened[i]);
+            this.ids[i] = opened[i].getAccountId().clone();
+        }
+        this.churn = Account.openAccounts(BankCode.of("0001"), BranchOfficeNumber.of("002"),
+            AccountTypeCode.of("1"), 65536, new AccountNumberAllocator());
+    }
+
+    @Benchmark
+    @Group("readOnly")
+    @GroupThreads(2)
+    public Account lookupOnly() {
+        return this.registry.get(this.ids[ThreadLocalRandom.current().nextInt(this.ids.length)]);
+    }
+
+    @Benchmark
+    @Group("mixed")
+    @GroupThreads(2)
+    public Account lookup() {
+        return this.registry.get(this.ids[ThreadLocalRandom.current().nextInt(this.ids.length)]);
+    }
+
+    @Benchmark
+    @Group("mixed")
+    @GroupThreads(1)
+    public Account putRemove() {
+        Account a = this.churn[ThreadLocalRandom.current().nextInt(this.churn.length)];
+        Account previous = this.registry.putIfAbsent(a);
+        return previous == null ? null : this.registry.remove(a.getAccountId());
+    }
+}
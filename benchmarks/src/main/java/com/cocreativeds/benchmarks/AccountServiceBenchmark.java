@@ -0,0 +1,110 @@
+package com.cocreativeds.benchmarks;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.cocreativeds.Account;
+import com.cocreativeds.AccountId;
+import com.cocreativeds.AccountRegistry;
+import com.cocreativeds.AccountService;
+import com.cocreativeds.WriteAheadLog;
+
+/**
+ * 口座の照会・記帳の受け付けのベンチマーク
+ *
+ * <p>
+ * 先行書き込みログを設定した口座に{@value #REQUESTS}件の預け入れを同時に要求し、すべての完了を待ちます。
+ * 要求ごとの仮想スレッドと、固定数のプラットフォームスレッドのプール({@value #PLATFORM_THREADS}スレッド)を
+ * 比較します。記帳はディスクへの書き出しを待つため、プールでは同時に書き出しを待つ要求がスレッド数に制限されます。
+ * 残高照会はディスクを待たない処理の比較です。
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx1g")
+@State(Scope.Benchmark)
+public class AccountServiceBenchmark {
+
+    /* 同時に要求する件数 */
+    private static final int REQUESTS = 10_000;
+    /* プラットフォームスレッドのプールのスレッド数 */
+    private static final int PLATFORM_THREADS = 200;
+    /* 口座数 */
+    private static final int ACCOUNTS = 1000;
+    /* 取引日 */
+    private static final LocalDate TRX_DATE = LocalDate.of(2024, 4, 1);
+
+    /* 要求を処理するスレッド(virtual: 要求ごとの仮想スレッド、platform: 固定数のプラットフォームスレッド) */
+    @Param({"virtual", "platform"})
+    String threads;
+
+    private Path dir;
+    private WriteAheadLog log;
+    private AccountService service;
+    private AccountId[] ids;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        this.dir = Files.createTempDirectory("service");
+        this.log = new WriteAheadLog(this.dir.resolve("wal"));
+        AccountRegistry registry = new AccountRegistry(ACCOUNTS);
+        this.ids = new AccountId[ACCOUNTS];
+        for (int i = 0; i < ACCOUNTS; i++) {
+            Account a = PostingBenchmark.newAccount();
+            a.setWriteAheadLog(this.log);
+            registry.put(a);
+            this.ids[i] = a.getAccountId();
+        }
+        this.service = "virtual".equals(this.threads) ? new AccountService(registry, REQUESTS)
+            : new AccountService(registry, Executors.newFixedThreadPool(PLATFORM_THREADS), REQUESTS);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        this.service.close();
+        this.log.close();
+        Files.deleteIfExists(this.dir.resolve("wal"));
+        Files.deleteIfExists(this.dir);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(REQUESTS)
+    public void deposit() {
+        CompletableFuture<?>[] futures = new CompletableFuture<?>[REQUESTS];
+        for (int i = 0; i < REQUESTS; i++) {
+            futures[i] = this.service.deposit(this.ids[i % ACCOUNTS], 100, "JPY", TRX_DATE, "振込");
+        }
+        CompletableFuture.allOf(futures).join();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(REQUESTS)
+    public void getBalance() {
+        CompletableFuture<?>[] futures = new CompletableFuture<?>[REQUESTS];
+        for (int i = 0; i < REQUESTS; i++) {
+            futures[i] = this.service.getBalance(this.ids[i % ACCOUNTS], "JPY");
+        }
+        CompletableFuture.allOf(futures).join();
+    }
+}
@@ -0,0 +1,61 @@
+package com.cocreativeds.benchmarks;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * ベンチマークの一括実行
+ *
+ * <p>
+ * 指定されたベンチマークを、1スレッドと複数スレッド(既定は利用可能なコア数)でそれぞれ実行し、
+ * 結果をJSON形式のファイルに出力します。GCプロファイラーを有効にするため、結果には1操作あたりの
+ * 割り当てバイト数(gc.alloc.rate.norm)が含まれます。
+ *
+ * <pre>
+ * java -cp benchmarks/target/benchmarks.jar com.cocreativeds.benchmarks.BenchmarkRunner [対象の正規表現] [出力先ディレクトリ] [スレッド数]
+ * </pre>
+ *
+ * 対象の既定はすべてのベンチマーク、出力先の既定はカレントディレクトリです。出力するファイルの名前は
+ * "jmh-yyyyMMdd-HHmmss-t{スレッド数}.json"です。スレッド数が1のときは複数スレッドでの実行を省略します。
+ */
+public final class BenchmarkRunner {
+
+    private BenchmarkRunner() {
+    }
+
+    public static void main(String[] args) throws RunnerException, IOException {
+        String include = args.length > 0 ? args[0] : ".*";
+        Path dir = Paths.get(args.length > 1 ? args[1] : ".");
+        int threads = args.length > 2 ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+        Files.createDirectories(dir);
+        String timestamp = LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss"));
+
+        run(include, dir.resolve("jmh-" + timestamp + "-t1.json"), 1);
+        if (threads > 1) {
+            run(include, dir.resolve("jmh-" + timestamp + "-t" + threads + ".json"), threads);
+        }
+    }
+
+    /* スレッド数を指定して実行する(@Threadsを指定したベンチマークもこのスレッド数で実行する) */
+    private static void run(String include, Path result, int threads) throws RunnerException {
+        Options options = new OptionsBuilder()
+            .include(include)
+            .threads(threads)
+            .addProfiler(GCProfiler.class)
+            .resultFormat(ResultFormatType.JSON)
+            .result(result.toString())
+            .build();
+        new Runner(options).run();
+    }
+}
@@ -0,0 +1,122 @@
+package com.cocreativeds.benchmarks;
+
+import java.time.LocalDate;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.cocreativeds.Account;
+import com.cocreativeds.AccountKeyIndex;
+import com.cocreativeds.AccountNumber;
+import com.cocreativeds.AccountNumberAllocator;
+import com.cocreativeds.AccountRegistry;
+import com.cocreativeds.AccountTypeCode;
+import com.cocreativeds.BankCode;
+import com.cocreativeds.BranchOfficeNumber;
+import com.cocreativeds.BulkPosting;
+import com.cocreativeds.PackedAccountKey;
+
+/**
+ * 一括記帳のベンチマーク
+ *
+ * <p>
+ * 総合振込ファイル(10万明細、2万口座に5明細ずつ)を、明細ごとに口座を検索して預け入れる場合と、
+ * 一括記帳({@link BulkPosting})で記帳する場合のスループット(1秒あたりの明細数)を比較します。
+ * 一括記帳は並列度(ForkJoinPoolのスレッド数)を変えて計測します。
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+@State(Scope.Benchmark)
+public class BulkPostingBenchmark {
+
+    /* 口座の数 */
+    private static final int ACCOUNTS = 20_000;
+    /* 明細の数 */
+    private static final int ENTRIES = 100_000;
+
+    private static final LocalDate TRX_DATE = LocalDate.of(2024, 4, 25);
+
+    @Param({"1", "4"})
+    private int parallelism;
+
+    private ForkJoinPool pool;
+    private AccountKeyIndex index;
+    private AccountRegistry registry;
+    private BulkPosting posting;
+    private long[] keys;
+    private long[] amounts;
+
+    @Setup(Level.Trial)
+    public void setUpPool() {
+        this.pool = new ForkJoinPool(this.parallelism);
+    }
+
+    /* 入出金明細が増え続けないように、測定の繰り返しごとに口座を作り直す */
+    @Setup(Level.Iteration)
+    public void setUp() {
+        Account[] accounts = Account.openAccounts(BankCode.of("0001"), BranchOfficeNumber.of("001"),
+            AccountTypeCode.of("1"), ACCOUNTS, new AccountNumberAllocator());
+        this.index = new AccountKeyIndex();
+        this.registry = new AccountRegistry();
+        for (Account a : accounts) {
+            this.index.put(a);
+            this.registry.put(a);
+        }
+        this.posting = new BulkPosting(this.index, this.registry, this.pool);
+        // 口座の表記から口座キーを求める(ファイルの明細の口座番号に相当する)
+        this.keys = new long[ENTRIES];
+        this.amounts = new long[ENTRIES];
+        for (int i = 0; i < ENTRIES; i++) {
+            String[] fields = accounts[(int)((i * 7919L) % ACCOUNTS)].toString().substring(4).split("-");
+            this.keys[i] = PackedAccountKey.pack(BankCode.of(fields[0]), BranchOfficeNumber.of(fields[1]),
+                AccountTypeCode.of(fields[2]), new AccountNumber(fields[3]));
+            this.amounts[i] = 200_000L + i;
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        this.pool.shutdown();
+    }
+
+    /**
+     * 明細ごとに口座を検索して預け入れる
+     */
+    @Benchmark
+    @OperationsPerInvocation(ENTRIES)
+    public long perEntry() {
+        long total = 0;
+        for (int i = 0; i < ENTRIES; i++) {
+            Account a = this.registry.get(this.index.get(this.keys[i]));
+            a.deposit(this.amounts[i], "JPY", TRX_DATE, "給与");
+            total += this.amounts[i];
+        }
+        return total;
+    }
+
+    /**
+     * 一括記帳
+     */
+    @Benchmark
+    @OperationsPerInvocation(ENTRIES)
+    public byte[] bulk() {
+        return this.posting.post(this.keys, this.amounts, "JPY", TRX_DATE, "給与");
+    }
+}
@@ -0,0 +1,78 @@
+package com.cocreativeds.benchmarks;
+
+import java.time.LocalDate;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.cocreativeds.Account;
+import com.cocreativeds.BinaryUlid;
+import com.cocreativeds.CurrencyTable;
+import com.cocreativeds.IdempotencyCache;
+
+/**
+ * 冪等キーを指定した預け入れのベンチマーク
+ *
+ * <p>
+ * 冪等キーを指定しない預け入れ、初めての冪等キーを指定した預け入れ(重複確認と登録が加わる)、
+ * 再送された冪等キーを指定した預け入れ(重複確認だけで記帳しない)のスループットを比較します。
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+public class IdempotencyBenchmark {
+
+    /* 取引日 */
+    private static final LocalDate TRX_DATE = LocalDate.of(2024, 4, 1);
+
+    /**
+     * 口座と冪等キー
+     */
+    @State(Scope.Thread)
+    public static class Posting {
+        Account account;
+        BinaryUlid retried;
+        long sequence;
+
+        @Setup(Level.Iteration)
+        public void setUp() {
+            // 入出金明細と冪等キーが増え続けないように、計測の繰り返しごとに作り直す
+            this.account = PostingBenchmark.newAccount();
+            this.account.setIdempotencyCache(new IdempotencyCache(1 << 16, 60_000L));
+            this.retried = this.nextKey();
+            this.account.deposit(this.retried, 100, CurrencyTable.JPY, TRX_DATE, "ATM");
+        }
+
+        BinaryUlid nextKey() {
+            return new BinaryUlid(System.currentTimeMillis() << 16, ++this.sequence);
+        }
+    }
+
+    @Benchmark
+    public long deposit(Posting p) {
+        p.account.deposit(100, CurrencyTable.JPY, TRX_DATE, "ATM");
+        return p.account.getBalance();
+    }
+
+    @Benchmark
+    public boolean depositWithKey(Posting p) {
+        return p.account.deposit(p.nextKey(), 100, CurrencyTable.JPY, TRX_DATE, "ATM");
+    }
+
+    @Benchmark
+    public boolean retriedDeposit(Posting p) {
+        return p.account.deposit(p.retried, 100, CurrencyTable.JPY, TRX_DATE, "ATM");
+    }
+}
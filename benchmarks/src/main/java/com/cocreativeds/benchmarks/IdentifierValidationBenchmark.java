@@ -0,0 +1,93 @@
+package com.cocreativeds.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.cocreativeds.AccountId;
+import com.cocreativeds.AccountNumber;
+import com.cocreativeds.AccountTypeCode;
+import com.cocreativeds.BankCode;
+import com.cocreativeds.BranchOfficeNumber;
+
+/**
+ * 識別子の形式チェックのベンチマーク
+ *
+ * <p>
+ * 識別子クラスごとに、従来の形式チェック(String.matches)のみのスループットと、
+ * 文字の範囲を直接判定する形式チェックを含むインスタンス生成のスループットを比較します。
+ * *Regexのベンチマークが変更前、クラス名のベンチマークが変更後です。
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class IdentifierValidationBenchmark {
+
+    /* 定数畳み込みを避けるため、入力値はフィールドに保持する */
+    private String bankCode = "0001";
+    private String branchOfficeNumber = "123";
+    private String accountTypeCode = "1";
+    private String accountNumber = "1234567";
+    private String accountId = "01ARZ3NDEKTSV4RRFFQ69G5FAV";
+
+    @Benchmark
+    public boolean bankCodeRegex() {
+        return this.bankCode.matches("[0-9]{4}");
+    }
+
+    @Benchmark
+    public BankCode bankCode() {
+        return new BankCode(this.bankCode);
+    }
+
+    @Benchmark
+    public boolean branchOfficeNumberRegex() {
+        return this.branchOfficeNumber.matches("[0-9]{3}");
+    }
+
+    @Benchmark
+    public BranchOfficeNumber branchOfficeNumber() {
+        return new BranchOfficeNumber(this.branchOfficeNumber);
+    }
+
+    @Benchmark
+    public boolean accountTypeCodeRegex() {
+        return this.accountTypeCode.matches("[0-9]{1}");
+    }
+
+    @Benchmark
+    public AccountTypeCode accountTypeCode() {
+        return new AccountTypeCode(this.accountTypeCode);
+    }
+
+    @Benchmark
+    public boolean accountNumberRegex() {
+        return this.accountNumber.matches("[0-9]{7}");
+    }
+
+    @Benchmark
+    public AccountNumber accountNumber() {
+        return new AccountNumber(this.accountNumber);
+    }
+
+    @Benchmark
+    public boolean accountIdRegex() {
+        return this.accountId.matches("[0-9A-HJKMNP-TV-Z]{26}");
+    }
+
+    @Benchmark
+    public AccountId accountId() {
+        return new AccountId(this.accountId);
+    }
+}
@@ -0,0 +1,96 @@
+package com.cocreativeds.benchmarks;
+
+import java.time.LocalDate;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.cocreativeds.Account;
+import com.cocreativeds.AccountNumberAllocator;
+import com.cocreativeds.AccountTypeCode;
+import com.cocreativeds.BankCode;
+import com.cocreativeds.BranchOfficeNumber;
+import com.cocreativeds.InterestAccrual;
+
+/**
+ * 利息計算のバッチのベンチマーク
+ *
+ * <p>
+ * 100万口座の1日分の利息の計算と、利払日の利息元加のスループット(1秒あたりの口座数)を、
+ * 並列度(ForkJoinPoolのスレッド数)を変えて計測します。コア数によるスケーリングの確認に使用します。
+ * 並列度が利用可能なコア数を超えるときは、スレッドの切り替えの分だけスループットが下がります。
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx3g")
+@State(Scope.Benchmark)
+public class InterestAccrualBenchmark {
+
+    /* 口座の数 */
+    private static final int ACCOUNTS = 1_000_000;
+
+    private static final LocalDate TRX_DATE = LocalDate.of(2024, 4, 1);
+
+    @Param({"1", "2", "4", "8"})
+    private int parallelism;
+
+    private Account[] accounts;
+    /* 利息を計上する日(計上済みの日は処理されないため、呼び出しごとに1日進める) */
+    private LocalDate day;
+    private ForkJoinPool pool;
+    private InterestAccrual accrual;
+
+    @Setup(Level.Trial)
+    public void setUpPool() {
+        this.pool = new ForkJoinPool(this.parallelism);
+        this.accrual = new InterestAccrual(10_000L, this.pool);
+    }
+
+    /* 利息元加で入出金明細が増え続けないように、測定の繰り返しごとに口座を作り直す */
+    @Setup(Level.Iteration)
+    public void setUp() {
+        this.accounts = Account.openAccounts(BankCode.of("0001"), BranchOfficeNumber.of("001"),
+            AccountTypeCode.of("1"), ACCOUNTS, new AccountNumberAllocator());
+        for (int i = 0; i < this.accounts.length; i++) {
+            this.accounts[i].deposit(1_000_000L + i, "JPY", TRX_DATE, "入金");
+        }
+        this.day = TRX_DATE;
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        this.pool.shutdown();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ACCOUNTS)
+    public long accrue() {
+        this.day = this.day.plusDays(1);
+        return this.accrual.accrue(this.accounts, this.day);
+    }
+
+    /* 毎回1日分の利息(約27円)を計算してから入金する */
+    @Benchmark
+    @OperationsPerInvocation(ACCOUNTS)
+    public long accrueAndPost() {
+        this.day = this.day.plusDays(1);
+        this.accrual.accrue(this.accounts, this.day);
+        return this.accrual.post(this.accounts, this.day);
+    }
+}
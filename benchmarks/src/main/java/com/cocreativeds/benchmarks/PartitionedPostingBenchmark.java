@@ -0,0 +1,107 @@
+package com.cocreativeds.benchmarks;
+
+import java.time.LocalDate;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.cocreativeds.Account;
+import com.cocreativeds.AccountId;
+import com.cocreativeds.AccountRegistry;
+import com.cocreativeds.CurrencyTable;
+import com.cocreativeds.PartitionedPosting;
+
+/**
+ * 口座を分割した単一書き込みスレッドの記帳のベンチマーク
+ *
+ * <p>
+ * 4つのスレッドから{@value #ACCOUNTS}口座に預け入れを要求し、シャード数によるスループットの違いを計測します。
+ * 待ち行列が一杯のときは要求したスレッドが待つため、定常状態ではシャードのスレッドの記帳の速さを計測することになります。
+ * 比較として、要求したスレッドが直接預け入れる場合(口座残高のCASと入出金明細の排他が競合する)も計測します。
+ * シャード数によるスケーリングを確認するには、シャード数と要求するスレッド数の合計以上のプロセッサーが必要です。
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+@Threads(4)
+public class PartitionedPostingBenchmark {
+
+    /* 口座数 */
+    private static final int ACCOUNTS = 1024;
+    /* 取引日 */
+    private static final LocalDate TRX_DATE = LocalDate.of(2024, 4, 1);
+
+    /**
+     * 全スレッドで共有する口座と記帳
+     */
+    @State(Scope.Benchmark)
+    public static class Partitioned {
+        /* シャード数 */
+        @Param({"1", "2", "4"})
+        int shards;
+
+        AccountId[] ids;
+        Account[] accounts;
+        PartitionedPosting posting;
+
+        @Setup(Level.Iteration)
+        public void setUp() {
+            // 入出金明細が増え続けないように、計測の繰り返しごとに口座を作り直す
+            AccountRegistry registry = new AccountRegistry(ACCOUNTS);
+            this.ids = new AccountId[ACCOUNTS];
+            this.accounts = new Account[ACCOUNTS];
+            for (int i = 0; i < ACCOUNTS; i++) {
+                Account a = PostingBenchmark.newAccount();
+                registry.put(a);
+                this.accounts[i] = a;
+                this.ids[i] = a.getAccountId();
+            }
+            this.posting = new PartitionedPosting(registry, this.shards, 4096, (tag, result) -> { });
+        }
+
+        @TearDown(Level.Iteration)
+        public void tearDown() {
+            this.posting.close();
+        }
+    }
+
+    /**
+     * スレッドごとの口座の選び方
+     */
+    @State(Scope.Thread)
+    public static class Cursor {
+        int next = (int)Thread.currentThread().threadId() * 7919;
+
+        int nextAccount() {
+            this.next = this.next * 1_103_515_245 + 12_345;
+            return (this.next >>> 8) & (ACCOUNTS - 1);
+        }
+    }
+
+    @Benchmark
+    public void partitioned(Partitioned p, Cursor c) {
+        p.posting.post(p.ids[c.nextAccount()], 100, CurrencyTable.JPY, TRX_DATE, "振込", 0L);
+    }
+
+    @Benchmark
+    public long direct(Partitioned p, Cursor c) {
+        Account a = p.accounts[c.nextAccount()];
+        a.deposit(100, CurrencyTable.JPY, TRX_DATE, "振込");
+        return a.getBalance();
+    }
+}
@@ -0,0 +1,70 @@
+package com.cocreativeds.benchmarks;
+
+import java.time.LocalDate;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.cocreativeds.Account;
+import com.cocreativeds.AccountTypeCode;
+import com.cocreativeds.BankCode;
+import com.cocreativeds.BranchOfficeNumber;
+import com.cocreativeds.PassbookFormatter;
+
+/**
+ * 通帳記帳のベンチマーク
+ *
+ * <p>
+ * 明細行を文字の配列に書き込む場合と、String.formatで行ごとに文字列を作成する場合の編集のスループットと、
+ * 預け入れ1件ごとに通帳記帳を行う場合(ATMでの記帳)のスループットを計測します。
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class PassbookBenchmark {
+
+    private static final LocalDate TRX_DATE = LocalDate.of(2024, 4, 1);
+
+    private final char[] buffer = new char[PassbookFormatter.LINE_WIDTH * 24];
+    private final int trxDay = (int)TRX_DATE.toEpochDay();
+    private long balance = 1_234_567L;
+
+    private Account account;
+
+    /* 入出金明細が増え続けないように、測定の繰り返しごとに口座を作り直す */
+    @Setup(Level.Iteration)
+    public void setUp() {
+        this.account = new Account();
+        this.account.openAccount(BankCode.of("0001"), BranchOfficeNumber.of("001"), AccountTypeCode.of("1"));
+    }
+
+    @Benchmark
+    public char[] formatLine() {
+        PassbookFormatter.formatLine(this.trxDay, "振込", 0L, 10_000L, this.balance++, this.buffer, 0);
+        return this.buffer;
+    }
+
+    @Benchmark
+    public String formatString() {
+        return String.format("%-10s %-10s%14s%,14d%,15d", TRX_DATE, "振込", "", 10_000L, this.balance++);
+    }
+
+    @Benchmark
+    public int depositAndUpdatePassbook() {
+        this.account.deposit(10_000L, "JPY", TRX_DATE, "振込");
+        return this.account.updatePassbook(TRX_DATE, this.buffer, 0, 24);
+    }
+}
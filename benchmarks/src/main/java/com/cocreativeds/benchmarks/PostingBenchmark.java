@@ -0,0 +1,131 @@
+package com.cocreativeds.benchmarks;
+
+import java.time.LocalDate;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.cocreativeds.Account;
+import com.cocreativeds.AccountTypeCode;
+import com.cocreativeds.BankCode;
+import com.cocreativeds.BranchOfficeNumber;
+
+/**
+ * 預け入れ・払い戻しのベンチマーク
+ *
+ * <p>
+ * 全スレッドが1つの口座に記帳する場合(決済口座などの高負荷口座)と、スレッドごとに異なる口座に記帳する場合の
+ * スループットを計測します。高負荷口座は、口座残高を分割した場合({@link Account#enableShardedBalance()})とも比較します。
+ * スレッド数は-tオプションで変更できます(既定は利用可能なすべてのコア)。
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(Threads.MAX)
+public class PostingBenchmark {
+
+    /* 取引日 */
+    private static final LocalDate TRX_DATE = LocalDate.of(2024, 4, 1);
+
+    /* 口座を作成する */
+    static Account newAccount() {
+        Account a = new Account();
+        a.openAccount(BankCode.of("0001"), BranchOfficeNumber.of("001"), AccountTypeCode.of("1"));
+        a.deposit(1_000_000_000L, "JPY", TRX_DATE, "開設");
+        return a;
+    }
+
+    /**
+     * 全スレッドで共有する口座
+     */
+    @State(Scope.Benchmark)
+    public static class HotAccount {
+        Account account;
+
+        @Setup
+        public void setUp() {
+            this.account = newAccount();
+        }
+    }
+
+    /**
+     * 全スレッドで共有する口座(高負荷口座に指定して口座残高を分割する)
+     */
+    @State(Scope.Benchmark)
+    public static class ShardedHotAccount {
+        Account account;
+
+        @Setup
+        public void setUp() {
+            this.account = newAccount();
+            this.account.enableShardedBalance();
+        }
+    }
+
+    /**
+     * スレッドごとの口座
+     */
+    @State(Scope.Thread)
+    public static class OwnAccount {
+        Account account;
+
+        @Setup
+        public void setUp() {
+            this.account = newAccount();
+        }
+    }
+
+    @Benchmark
+    public long depositHotAccount(HotAccount hot) {
+        hot.account.deposit(100, "JPY", TRX_DATE, "振込");
+        return hot.account.getBalance();
+    }
+
+    @Benchmark
+    public long depositWithdrawalHotAccount(HotAccount hot) {
+        hot.account.deposit(100, "JPY", TRX_DATE, "振込");
+        hot.account.withdrawal(100, "JPY", TRX_DATE, "ATM");
+        return hot.account.getBalance();
+    }
+
+    /**
+     * 高負荷口座への預け入れ(預け入れでは残高を照会しない)
+     */
+    @Benchmark
+    public Account depositShardedHotAccount(ShardedHotAccount hot) {
+        hot.account.deposit(100, "JPY", TRX_DATE, "振込");
+        return hot.account;
+    }
+
+    @Benchmark
+    public Account depositWithdrawalShardedHotAccount(ShardedHotAccount hot) {
+        hot.account.deposit(100, "JPY", TRX_DATE, "振込");
+        hot.account.withdrawal(100, "JPY", TRX_DATE, "ATM");
+        return hot.account;
+    }
+
+    @Benchmark
+    public long depositOwnAccount(OwnAccount own) {
+        own.account.deposit(100, "JPY", TRX_DATE, "振込");
+        return own.account.getBalance();
+    }
+
+    @Benchmark
+    public long depositWithdrawalOwnAccount(OwnAccount own) {
+        own.account.deposit(100, "JPY", TRX_DATE, "振込");
+        own.account.withdrawal(100, "JPY", TRX_DATE, "ATM");
+        return own.account.getBalance();
+    }
+}
@@ -0,0 +1,109 @@
+package com.cocreativeds.benchmarks;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.cocreativeds.Account;
+import com.cocreativeds.AccountId;
+import com.cocreativeds.AccountNumber;
+import com.cocreativeds.AccountSnapshot;
+import com.cocreativeds.AccountTypeCode;
+import com.cocreativeds.BankCode;
+import com.cocreativeds.BranchOfficeNumber;
+import com.cocreativeds.Checkpointer;
+import com.cocreativeds.UlidGenerator;
+import com.cocreativeds.WriteAheadLog;
+
+/**
+ * 起動時の口座の復元のベンチマーク
+ *
+ * <p>
+ * 最新のスナップショットを読み込み、スナップショットの後のログ(10,000件)を適用して、すべての口座を復元するまでの
+ * 時間を計測します。口座数は-p accounts=...で変更できます。1,000万口座では2GB程度のヒープが必要です。
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 3)
+@Fork(value = 1, jvmArgsAppend = {"-Xms3g", "-Xmx3g"})
+@State(Scope.Benchmark)
+public class StartupBenchmark {
+
+    /* 取引日 */
+    private static final LocalDate TRX_DATE = LocalDate.of(2024, 4, 1);
+
+    /* スナップショットの後のログの件数 */
+    private static final int TAIL = 10_000;
+
+    /* 口座数 */
+    @Param({"1000000", "10000000"})
+    int accounts;
+
+    Path dir;
+    WriteAheadLog log;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        this.dir = Files.createTempDirectory("startup");
+        this.log = new WriteAheadLog(this.dir.resolve("wal"));
+        BankCode bankCode = BankCode.of("0001");
+        BranchOfficeNumber boNumber = BranchOfficeNumber.of("123");
+        AccountTypeCode accountTypeCode = AccountTypeCode.of("1");
+        UlidGenerator generator = new UlidGenerator(true);
+        List<Account> list = new ArrayList<>(this.accounts);
+        for (int i = 0; i < this.accounts; i++) {
+            list.add(new Account(bankCode, boNumber, accountTypeCode, new AccountNumber(String.format("%07d", i)),
+                new AccountId(generator.generateBinary())));
+        }
+        List<Account> snapshotAccounts = list;
+        try (Checkpointer checkpointer = Checkpointer.start(this.dir, this.log, () -> snapshotAccounts, Duration.ZERO)) {
+            checkpointer.checkpoint();
+        }
+        // スナップショットの後に取引のあった口座
+        for (int i = 0; i < TAIL; i++) {
+            Account a = list.get(i * (this.accounts / TAIL));
+            a.setWriteAheadLog(this.log);
+            a.deposit(100, "JPY", TRX_DATE, "振込");
+        }
+        list = null;
+        this.log.close();
+        this.log = new WriteAheadLog(this.dir.resolve("wal"));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        this.log.close();
+        try (Stream<Path> files = Files.walk(this.dir)) {
+            for (Path p : (Iterable<Path>)files.sorted(Comparator.reverseOrder())::iterator) {
+                Files.delete(p);
+            }
+        }
+    }
+
+    @Benchmark
+    public List<Account> restore() throws IOException {
+        return AccountSnapshot.loadLatest(this.dir).restore(this.log);
+    }
+}
@@ -0,0 +1,72 @@
+package com.cocreativeds.benchmarks;
+
+import java.time.LocalDate;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.cocreativeds.Account;
+import com.cocreativeds.AccountTypeCode;
+import com.cocreativeds.BankCode;
+import com.cocreativeds.BranchOfficeNumber;
+import com.cocreativeds.TransactionHistoryPage;
+
+/**
+ * 取引履歴の照会のベンチマーク
+ *
+ * <p>
+ * 明細が多い口座で、すべての取引履歴を配列で取得する場合と、最初のページ(20件)だけを取得する場合の
+ * 応答時間を比較します。
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class TransactionHistoryBenchmark {
+
+    private static final LocalDate TRX_DATE = LocalDate.of(2000, 4, 1);
+
+    /* 1ページの件数 */
+    private static final int PAGE_SIZE = 20;
+
+    @Param({"1000", "100000"})
+    private int entries;
+
+    private Account account;
+
+    @Setup
+    public void setUp() {
+        this.account = new Account();
+        this.account.openAccount(BankCode.of("0001"), BranchOfficeNumber.of("001"), AccountTypeCode.of("1"));
+        for (int i = 0; i < this.entries; i++) {
+            this.account.deposit(100, "JPY", TRX_DATE.plusDays(i / 10), "振込");
+        }
+    }
+
+    @Benchmark
+    public String[] allHistories() {
+        return this.account.getTransactionHistories(null, null);
+    }
+
+    @Benchmark
+    public void firstPage(Blackhole bh) {
+        TransactionHistoryPage page = this.account.getTransactionHistories(null, null, PAGE_SIZE);
+        for (String h : page) {
+            bh.consume(h);
+        }
+        bh.consume(page.getNextCursor());
+    }
+}
@@ -0,0 +1,88 @@
+package com.cocreativeds.benchmarks;
+
+import java.time.LocalDate;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.cocreativeds.Account;
+import com.cocreativeds.CurrencyTable;
+import com.cocreativeds.TransferEngine;
+
+/**
+ * 口座振替のベンチマーク
+ *
+ * <p>
+ * 4つのスレッドから無作為に選んだ2つの口座の間で振り替え、口座数によるスループットの違いを計測します。
+ * 口座数が少ないほど、同じ口座の口座残高を更新する振替のCASが競合します。
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+@Threads(4)
+public class TransferBenchmark {
+
+    /* 取引日 */
+    private static final LocalDate TRX_DATE = LocalDate.of(2024, 4, 1);
+
+    /**
+     * 全スレッドで共有する口座と振替
+     */
+    @State(Scope.Benchmark)
+    public static class Transfers {
+        /* 口座数(2のべき乗) */
+        @Param({"16", "1024"})
+        int accounts;
+
+        Account[] list;
+        TransferEngine engine;
+
+        @Setup(Level.Iteration)
+        public void setUp() {
+            // 入出金明細が増え続けないように、計測の繰り返しごとに口座を作り直す
+            this.list = new Account[this.accounts];
+            for (int i = 0; i < this.accounts; i++) {
+                this.list[i] = PostingBenchmark.newAccount();
+            }
+            this.engine = new TransferEngine();
+        }
+    }
+
+    /**
+     * スレッドごとの口座の選び方
+     */
+    @State(Scope.Thread)
+    public static class Cursor {
+        int next = (int)Thread.currentThread().threadId() * 7919;
+
+        int nextAccount(int mask) {
+            this.next = this.next * 1_103_515_245 + 12_345;
+            return (this.next >>> 8) & mask;
+        }
+    }
+
+    @Benchmark
+    public void transfer(Transfers t, Cursor c) {
+        int mask = t.accounts - 1;
+        int x = c.nextAccount(mask);
+        int y = c.nextAccount(mask);
+        if (x == y) {
+            y = (y + 1) & mask;
+        }
+        t.engine.transfer(t.list[x], t.list[y], 100, CurrencyTable.JPY, TRX_DATE, "振替");
+    }
+}
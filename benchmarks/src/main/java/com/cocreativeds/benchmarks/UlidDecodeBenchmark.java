@@ -0,0 +1,107 @@
+package com.cocreativeds.benchmarks;
+
+import java.time.Instant;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.cocreativeds.Account;
+import com.cocreativeds.AccountRegistry;
+import com.cocreativeds.BinaryUlid;
+import com.cocreativeds.ULID;
+
+/**
+ * ULIDのデコードのベンチマーク
+ *
+ * <p>
+ * 文字列型の口座識別子からのタイムスタンプの取り出しと、開設した時刻の範囲による口座の検索を計測します。
+ * 範囲の検索は、口座識別子の順に並べた登録簿の範囲検索と、すべての口座のタイムスタンプを確認する方法を比較します。
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class UlidDecodeBenchmark {
+
+    /* 登録する口座の数 */
+    private static final int SIZE = 100_000;
+    /* 1ミリ秒あたりに開設する口座の数 */
+    private static final int PER_MILLI = 10;
+
+    private String[] ulids;
+    private Account[] accounts;
+    private AccountRegistry registry;
+    /* 検索する時刻の範囲(100口座分) */
+    private Instant from;
+    private Instant to;
+    private int next;
+
+    @Setup
+    public void setUp() {
+        long base = 1_700_000_000_000L;
+        this.ulids = new String[SIZE];
+        this.accounts = new Account[SIZE];
+        this.registry = new AccountRegistry();
+        for (int i = 0; i < SIZE; i++) {
+            BinaryUlid u = new BinaryUlid(BinaryUlid.minOf(base + i / PER_MILLI).getMostSignificantBits() | i, i);
+            this.ulids[i] = u.toString();
+            this.accounts[i] = new Account();
+            this.accounts[i].getAccountId().setUlid(u);
+            this.registry.put(this.accounts[i]);
+        }
+        this.from = Instant.ofEpochMilli(base + SIZE / PER_MILLI / 2);
+        this.to = this.from.plusMillis(100 / PER_MILLI);
+    }
+
+    @Benchmark
+    public long timestamp() {
+        int i = this.next;
+        this.next = i + 1 == SIZE ? 0 : i + 1;
+        return ULID.timestamp(this.ulids[i]);
+    }
+
+    @Benchmark
+    public long parseTimestamp() {
+        int i = this.next;
+        this.next = i + 1 == SIZE ? 0 : i + 1;
+        return BinaryUlid.parse(this.ulids[i]).getTimestamp();
+    }
+
+    /**
+     * 登録簿の範囲検索(O(log n))
+     */
+    @Benchmark
+    public int openedBetween() {
+        int n = 0;
+        for (Account a : this.registry.openedBetween(this.from, this.to)) {
+            n += a.getAccountId().getTimestamp() > 0 ? 1 : 0;
+        }
+        return n;
+    }
+
+    /**
+     * すべての口座のタイムスタンプを確認する(O(n))
+     */
+    @Benchmark
+    public int scan() {
+        long f = this.from.toEpochMilli();
+        long t = this.to.toEpochMilli();
+        int n = 0;
+        for (Account a : this.accounts) {
+            long ts = a.getAccountId().getTimestamp();
+            n += f <= ts && ts < t ? 1 : 0;
+        }
+        return n;
+    }
+}
@@ -0,0 +1,105 @@
+package com.cocreativeds.benchmarks;
+
+import java.security.SecureRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.cocreativeds.ULID;
+import com.cocreativeds.UlidGenerator;
+
+/**
+ * ULID生成のベンチマーク
+ *
+ * <p>
+ * 従来の生成方法(呼び出しごとにSecureRandomと乱数用のバイト配列を作成してgenULIDStringでエンコードする)と、
+ * ULID生成エンジン({@link UlidGenerator})による生成のスループットを比較します。
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class UlidGeneratorBenchmark {
+
+    /* 単調増加モードのULID生成エンジン */
+    private UlidGenerator monotonic;
+    /* ULIDごとに乱数を生成するULID生成エンジン */
+    private UlidGenerator random;
+    /* 再利用するchar型配列 */
+    private char[] chars;
+    /* 再利用するbyte型配列 */
+    private byte[] bytes;
+
+    @Setup
+    public void setUp() {
+        this.monotonic = new UlidGenerator(true);
+        this.random = new UlidGenerator(false);
+        this.chars = new char[UlidGenerator.ULID_CHARS];
+        this.bytes = new byte[UlidGenerator.ULID_BYTES];
+    }
+
+    /**
+     * 従来の生成方法(呼び出しごとにSecureRandomを作成する)
+     */
+    @Benchmark
+    public String legacyGenULIDString() {
+        SecureRandom sr = new SecureRandom();
+        byte[] randomBytes = new byte[10];
+        sr.nextBytes(randomBytes);
+        return ULID.genULIDString(System.currentTimeMillis(), randomBytes);
+    }
+
+    /**
+     * ULID.generate(スレッドごとのULID生成エンジンを使用)
+     */
+    @Benchmark
+    public String ulidGenerate() {
+        return ULID.generate();
+    }
+
+    /**
+     * 単調増加モードで文字列を生成
+     */
+    @Benchmark
+    public String monotonicString() {
+        return this.monotonic.generate();
+    }
+
+    /**
+     * 単調増加モードでchar型配列に生成
+     */
+    @Benchmark
+    public char[] monotonicChars() {
+        this.monotonic.generate(this.chars, 0);
+        return this.chars;
+    }
+
+    /**
+     * 単調増加モードでbyte型配列に生成
+     */
+    @Benchmark
+    public byte[] monotonicBytes() {
+        this.monotonic.generate(this.bytes, 0);
+        return this.bytes;
+    }
+
+    /**
+     * ULIDごとに乱数を生成してchar型配列に生成
+     */
+    @Benchmark
+    public char[] randomChars() {
+        this.random.generate(this.chars, 0);
+        return this.chars;
+    }
+}
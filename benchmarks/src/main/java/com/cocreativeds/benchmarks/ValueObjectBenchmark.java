@@ -0,0 +1,150 @@
+package com.cocreativeds.benchmarks;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.cocreativeds.Account;
+import com.cocreativeds.AccountId;
+import com.cocreativeds.AccountNumber;
+import com.cocreativeds.AccountNumberAllocator;
+import com.cocreativeds.AccountTypeCode;
+import com.cocreativeds.BankCode;
+import com.cocreativeds.BranchOfficeNumber;
+
+/**
+ * 値オブジェクトのベンチマーク
+ *
+ * <p>
+ * 口座識別子、口座番号、金融機関コードのequals、hashCode、compareToを、ハッシュ表(HashMap、HashSet)と
+ * 木構造(TreeMap)の検索で計測します。あわせて口座と口座識別子のtoStringを計測します。
+ * 状態はすべてのスレッドで共有するため、-tオプションでスレッド数を変えると複数スレッドからの検索を計測できます。
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ValueObjectBenchmark {
+
+    /* 登録する件数 */
+    private static final int SIZE = 10_000;
+
+    private Account[] accounts;
+    /* 検索に使用するキー(登録したキーとは別のインスタンス) */
+    private AccountId[] ids;
+    private AccountNumber[] numbers;
+
+    private Map<AccountId, Account> idHashMap;
+    private TreeMap<AccountId, Account> idTreeMap;
+    private Set<AccountNumber> numberHashSet;
+    private TreeMap<AccountNumber, Account> numberTreeMap;
+    private Map<BankCode, Integer> bankCodeHashMap;
+
+    /**
+     * スレッドごとの検索位置
+     */
+    @State(Scope.Thread)
+    public static class Cursor {
+        int next;
+
+        int next() {
+            int i = this.next;
+            this.next = i + 1 == SIZE ? 0 : i + 1;
+            return i;
+        }
+    }
+
+    @Setup
+    public void setUp() {
+        this.accounts = Account.openAccounts(BankCode.of("0001"), BranchOfficeNumber.of("001"),
+            AccountTypeCode.of("1"), SIZE, new AccountNumberAllocator());
+        this.ids = new AccountId[SIZE];
+        this.numbers = new AccountNumber[SIZE];
+        this.idHashMap = new HashMap<>();
+        this.idTreeMap = new TreeMap<>();
+        this.numberHashSet = new HashSet<>();
+        this.numberTreeMap = new TreeMap<>();
+        this.bankCodeHashMap = new HashMap<>();
+        for (int i = 0; i < SIZE; i++) {
+            Account a = this.accounts[i];
+            this.idHashMap.put(a.getAccountId(), a);
+            this.idTreeMap.put(a.getAccountId(), a);
+            this.ids[i] = a.getAccountId().clone();
+            // 口座番号は口座の表記の最後の要素
+            String[] fields = a.toString().split("-");
+            AccountNumber n = new AccountNumber(fields[3]);
+            this.numberHashSet.add(n);
+            this.numberTreeMap.put(n, a);
+            this.numbers[i] = new AccountNumber(fields[3]);
+            this.bankCodeHashMap.put(new BankCode(String.format("%04d", i % 2000)), i);
+        }
+    }
+
+    @Benchmark
+    public boolean accountIdEquals(Cursor c) {
+        int i = c.next();
+        return this.ids[i].equals(this.accounts[i].getAccountId());
+    }
+
+    @Benchmark
+    public int accountIdHashCode(Cursor c) {
+        return this.ids[c.next()].hashCode();
+    }
+
+    @Benchmark
+    public int accountIdCompareTo(Cursor c) {
+        int i = c.next();
+        return this.ids[i].compareTo(this.ids[i == 0 ? SIZE - 1 : i - 1]);
+    }
+
+    @Benchmark
+    public Account accountIdHashMapGet(Cursor c) {
+        return this.idHashMap.get(this.ids[c.next()]);
+    }
+
+    @Benchmark
+    public Account accountIdTreeMapGet(Cursor c) {
+        return this.idTreeMap.get(this.ids[c.next()]);
+    }
+
+    @Benchmark
+    public boolean accountNumberHashSetContains(Cursor c) {
+        return this.numberHashSet.contains(this.numbers[c.next()]);
+    }
+
+    @Benchmark
+    public Account accountNumberTreeMapGet(Cursor c) {
+        return this.numberTreeMap.get(this.numbers[c.next()]);
+    }
+
+    @Benchmark
+    public Integer bankCodeHashMapGet(Cursor c) {
+        return this.bankCodeHashMap.get(BankCode.of("0001"));
+    }
+
+    @Benchmark
+    public String accountToString(Cursor c) {
+        return this.accounts[c.next()].toString();
+    }
+
+    @Benchmark
+    public String accountIdToString(Cursor c) {
+        return this.ids[c.next()].getAccountId();
+    }
+}
@@ -0,0 +1,95 @@
+package com.cocreativeds.benchmarks;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.cocreativeds.Account;
+import com.cocreativeds.WriteAheadLog;
+
+/**
+ * 先行書き込みログを設定した預け入れのベンチマーク
+ *
+ * <p>
+ * スレッドごとの口座に預け入れを行い、グループコミットの間隔と件数によるスループットの違いを計測します。
+ * 間隔0・件数1は、書き出しの間に追記されたレコードだけをまとめる場合です。
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(Threads.MAX)
+public class WriteAheadLogBenchmark {
+
+    /* 取引日 */
+    private static final LocalDate TRX_DATE = LocalDate.of(2024, 4, 1);
+
+    /**
+     * 全スレッドで共有するログ
+     */
+    @State(Scope.Benchmark)
+    public static class Log {
+        /* グループコミットの間隔(マイクロ秒) */
+        @Param({"0", "1000"})
+        long commitIntervalMicros;
+        /* グループコミットの件数 */
+        @Param({"1", "256"})
+        int batchSize;
+
+        Path dir;
+        WriteAheadLog log;
+
+        @Setup(Level.Trial)
+        public void setUp() throws IOException {
+            this.dir = Files.createTempDirectory("wal");
+            this.log = new WriteAheadLog(this.dir.resolve("wal"),
+                Duration.ofNanos(this.commitIntervalMicros * 1000), this.batchSize);
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() throws IOException {
+            this.log.close();
+            Files.deleteIfExists(this.dir.resolve("wal"));
+            Files.deleteIfExists(this.dir);
+        }
+    }
+
+    /**
+     * スレッドごとの口座
+     */
+    @State(Scope.Thread)
+    public static class OwnAccount {
+        Account account;
+
+        @Setup
+        public void setUp(Log log) {
+            this.account = PostingBenchmark.newAccount();
+            this.account.setWriteAheadLog(log.log);
+        }
+    }
+
+    @Benchmark
+    public long deposit(OwnAccount own) {
+        own.account.deposit(100, "JPY", TRX_DATE, "振込");
+        return own.account.getBalance();
+    }
+}
@@ -1,6 +1,10 @@
 package com.cocreativeds;
 
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
 import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
 
 /**
  * Account class
@@ -26,22 +30,69 @@ import java.time.LocalDate;
  */
 public class Account {
 
-    /* 金融機関コード */
-    private BankCode bankCode;
+    /* 金融機関コード(口座の表記は口座表記変更で変更するためvolatileとする) */
+    private volatile BankCode bankCode;
     /* 店番 */
-    private BranchOfficeNumber branchOfficeNumber;
+    private volatile BranchOfficeNumber branchOfficeNumber;
     /* 預金種目コード */
-    private AccountTypeCode accountTypeCode;
+    private volatile AccountTypeCode accountTypeCode;
     /* 口座番号 */
-    private AccountNumber accountNumber;
+    private volatile AccountNumber accountNumber;
     /* 口座識別子 */
     private AccountId accountId;
 
-    /* 口座残高 */
-    private long balance;
+    /* 口座残高(円、VarHandleによるCASで更新する) */
+    private volatile long balance;
 
-    /* 入出金明細 */
-    private String[] transactions;
+    /* 外貨の口座残高(通貨インデックスを添字とする配列、最初の外貨の取引で作成する。円の要素は使用しない) */
+    private volatile long[] foreignBalances;
+
+    /* 分割した口座残高(高負荷口座に指定したときだけ使用する、nullのときはbalanceを使用する) */
+    private volatile ShardedBalance shardedBalance;
+
+    /* 入出金明細(最初の取引で作成する) */
+    private volatile TransactionJournal journal;
+
+    /* 先行書き込みログ(nullのときは記録しない) */
+    private volatile WriteAheadLog log;
+
+    /* 冪等キーの重複確認(冪等キーを指定した預け入れ・払い戻しで使用する) */
+    private volatile IdempotencyCache idempotencyCache;
+
+    /* 通帳に記帳した明細の次の位置(通帳記帳で更新する) */
+    private int passbookPosition;
+    /* 通帳に記帳した最後の明細の時点の残高(通帳記帳で更新する) */
+    private long passbookBalance;
+
+    /* 未払いの利息(1/(365×100万)円単位の固定小数点数、利息計上で加算し、円の利息元加で差し引く) */
+    private volatile long accruedInterest;
+    /* 利息を計上済みの最後の取引日(エポック日、未計上のときはInteger.MIN_VALUE) */
+    private volatile int accruedThrough = Integer.MIN_VALUE;
+
+    /* 口座残高を更新するためのVarHandle */
+    private static final VarHandle BALANCE;
+    /* 入出金明細を作成するためのVarHandle */
+    private static final VarHandle JOURNAL;
+    /* 外貨の口座残高を作成するためのVarHandle */
+    private static final VarHandle FOREIGN_BALANCES;
+    /* 未払いの利息を更新するためのVarHandle */
+    private static final VarHandle ACCRUED_INTEREST;
+    /* 利息を計上済みの取引日を更新するためのVarHandle */
+    private static final VarHandle ACCRUED_THROUGH;
+    /* 外貨の口座残高の要素を更新するためのVarHandle */
+    private static final VarHandle FOREIGN_BALANCE = MethodHandles.arrayElementVarHandle(long[].class);
+
+    static {
+        try {
+            BALANCE = MethodHandles.lookup().findVarHandle(Account.class, "balance", long.class);
+            JOURNAL = MethodHandles.lookup().findVarHandle(Account.class, "journal", TransactionJournal.class);
+            FOREIGN_BALANCES = MethodHandles.lookup().findVarHandle(Account.class, "foreignBalances", long[].class);
+            ACCRUED_INTEREST = MethodHandles.lookup().findVarHandle(Account.class, "accruedInterest", long.class);
+            ACCRUED_THROUGH = MethodHandles.lookup().findVarHandle(Account.class, "accruedThrough", int.class);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
 
     /**
      * 預金口座のインスタンスを作成する
@@ -95,42 +146,1077 @@ public class Account {
         this.accountNumber.generateAccountNumber(); //口座番号を採番
     }
 
+    /**
+     * 口座開設
+     * <p>
+     * 銀行口座を開設します。口座番号は、口座番号の採番を使用して、同じ金融機関コード、店番、預金種目の
+     * 口座と重複しないように採番します。
+     * 
+     * @param bankCode 金融機関コード
+     * @param boNumber 口座を開設する店舗の店番
+     * @param accountTypeCode 預金種目コード
+     * @param allocator 口座番号の採番
+     * @throws IllegalStateException 口座番号に空きがないとき
+     */
+    public void openAccount(BankCode bankCode, BranchOfficeNumber boNumber, AccountTypeCode accountTypeCode,
+            AccountNumberAllocator allocator) {
+        AccountNumber number = allocator.allocate(bankCode, boNumber, accountTypeCode);
+        this.bankCode = bankCode;
+        this.branchOfficeNumber = boNumber;
+        this.accountTypeCode = accountTypeCode;
+        this.accountId.generateAccountId(); //口座識別子を採番
+        this.accountNumber = number;
+    }
+
+    /**
+     * 一括口座開設
+     * <p>
+     * 同じ金融機関コード、店番、預金種目の銀行口座を一括して開設します。店舗の移転などで大量の口座を開設するときに
+     * 使用します。口座識別子は単調増加モードで一括生成し(開設した順に昇順となります)、口座番号は口座番号の採番を
+     * 使用して一括採番した後、口座のインスタンスを作成します。
+     * 
+     * @param bankCode 金融機関コード
+     * @param boNumber 口座を開設する店舗の店番
+     * @param accountTypeCode 預金種目コード
+     * @param count 開設する口座の数
+     * @param allocator 口座番号の採番
+     * @return 開設した口座
+     * @throws IllegalArgumentException 口座の数が負のとき
+     * @throws IllegalStateException 口座番号の空きが口座の数に満たないとき
+     */
+    public static Account[] openAccounts(BankCode bankCode, BranchOfficeNumber boNumber,
+            AccountTypeCode accountTypeCode, int count, AccountNumberAllocator allocator) {
+        if (count < 0) {
+            throw new IllegalArgumentException("開設する口座の数は0以上でなくてはならない");
+        }
+        int[] numbers = new int[count];
+        allocator.allocate(bankCode, boNumber, accountTypeCode, numbers, 0, count);
+        BinaryUlid[] ids = new BinaryUlid[count];
+        UlidGenerator.current().generateBinary(ids, 0, count);
+        Account[] accounts = new Account[count];
+        for (int i = 0; i < count; i++) {
+            accounts[i] = new Account(bankCode, boNumber, accountTypeCode,
+                new AccountNumber(CodeValidator.toDigits(numbers[i], 7)), new AccountId(ids[i]));
+        }
+        return accounts;
+    }
+
     /**
      * 預け入れ
      * 
      * <p>
-     * 口座に資金を預け入れます
+     * 口座に資金を預け入れます。口座残高はロックを使用せずにアトミックに加算するため、
+     * 複数のスレッドから同時に預け入れ・払い戻しを行うことができます。口座残高は通貨ごとに保持します。
+     * 先行書き込みログが設定されているときは、取引をログに記録し、ディスクに書き出されてから完了します。
      * 
      * @param amount 預け入れする金額
      * @param currency 通貨コード
      * @param trxDate 取引日
      * @param description 摘要
+     * @throws IllegalArgumentException 金額が1以上でないとき、通貨コードまたは取引日が正しくないとき
+     * @throws java.io.UncheckedIOException 先行書き込みログに記録できないとき
      */
     public void deposit(long amount, String currency, LocalDate trxDate, String description) {
+        this.deposit(amount, CurrencyTable.indexOf(currency), trxDate, description);
+    }
+
+    /**
+     * 預け入れ
+     * 
+     * <p>
+     * 通貨インデックス({@link CurrencyTable})を指定して預け入れます。電文やファイルの受け付けで通貨コードを
+     * 通貨インデックスに変換済みのときに使用します。
+     * 
+     * @param amount 預け入れする金額
+     * @param currencyIndex 通貨インデックス
+     * @param trxDate 取引日
+     * @param description 摘要
+     * @throws IllegalArgumentException 金額が1以上でないとき、通貨インデックスまたは取引日が正しくないとき
+     * @throws java.io.UncheckedIOException 先行書き込みログに記録できないとき
+     */
+    public void deposit(long amount, int currencyIndex, LocalDate trxDate, String description) {
+        checkPosting(amount, currencyIndex, trxDate);
+        this.deposit(null, 0L, 0L, amount, currencyIndex, trxDate, description);
+    }
 
+    /**
+     * 預け入れ
+     * 
+     * <p>
+     * 要求の冪等キーを指定して預け入れます。タイムアウトで再送された要求(冪等キーが記帳済みの要求)は、
+     * 入出金明細と先行書き込みログに触れずにfalseを返します。最初の要求を記帳中に再送された要求は、最初の要求の
+     * 記帳がディスクに書き出されるか失敗するまで待ちます。記帳できなかったときは冪等キーの登録を削除するため、
+     * 同じ冪等キーで再送できます。冪等キーの重複確認は{@link #setIdempotencyCache}で設定します。
+     * 
+     * @param requestId 冪等キー(ULID)
+     * @param amount 預け入れする金額
+     * @param currencyIndex 通貨インデックス
+     * @param trxDate 取引日
+     * @param description 摘要
+     * @return true 預け入れた
+     * @return false 同じ冪等キーの要求を記帳済み
+     * @throws IllegalArgumentException 冪等キーがnullのとき、有効期間を過ぎているとき、
+     *         金額が1以上でないとき、通貨インデックスまたは取引日が正しくないとき
+     * @throws IllegalStateException 冪等キーの重複確認が設定されていないとき
+     * @throws java.io.UncheckedIOException 先行書き込みログに記録できないとき
+     */
+    public boolean deposit(BinaryUlid requestId, long amount, int currencyIndex, LocalDate trxDate,
+            String description) {
+        checkPosting(amount, currencyIndex, trxDate);
+        IdempotencyCache cache = this.idempotencyCache(requestId);
+        return this.deposit(cache, requestId.getMostSignificantBits(), requestId.getLeastSignificantBits(), amount,
+            currencyIndex, trxDate, description);
+    }
+
+    /**
+     * 預け入れ
+     * 
+     * @param cache 冪等キーの重複確認(nullのときは冪等キーを確認しない)
+     * @param msb 冪等キーの上位64ビット
+     * @param lsb 冪等キーの下位64ビット
+     * @param amount 預け入れする金額
+     * @param currencyIndex 通貨インデックス
+     * @param trxDate 取引日
+     * @param description 摘要
+     * @return true 預け入れた
+     * @return false 同じ冪等キーの要求を記帳済み
+     */
+    private boolean deposit(IdempotencyCache cache, long msb, long lsb, long amount, int currencyIndex,
+            LocalDate trxDate, String description) {
+        if (cache != null && !cache.register(msb, lsb)) {
+            return false;
+        }
+        boolean posted = false;
+        try {
+            long operationTime = System.currentTimeMillis();
+            int trxDay = (int)trxDate.toEpochDay();
+            WriteAheadLog l = this.log;
+            long lsn = l == null ? 0L
+                : l.append(this.accountId, this.accountKey(), TransactionType.DEPOSIT, operationTime, trxDay, amount,
+                    currencyIndex);
+            this.credit(amount, currencyIndex);
+            this.journal().append(TransactionType.DEPOSIT, operationTime, trxDay, amount, currencyIndex, description);
+            if (l != null) {
+                l.awaitDurable(lsn);
+            }
+            posted = true;
+        } finally {
+            if (cache != null) {
+                complete(cache, msb, lsb, posted);
+            }
+        }
+        return true;
     }
 
     /**
      * 払い戻し
      * 
      * <p>
-     * 口座から資金を払い戻します
+     * 口座から資金を払い戻します。口座残高の確認と減算をCAS(compare-and-set)で一度に行うため、
+     * 複数のスレッドから同時に払い戻しを行っても口座残高が負になることはありません。
+     * 先行書き込みログが設定されているときは、取引をログに記録し、ディスクに書き出されてから完了します。
      * 
      * @param amount 払い戻す金額
      * @param currency 通貨コード
      * @param trxDate 取引日
      * @param description 摘要
+     * @throws IllegalArgumentException 金額が1以上でないとき、通貨コードまたは取引日が正しくないとき
+     * @throws IllegalStateException 口座残高が不足しているとき
+     * @throws java.io.UncheckedIOException 先行書き込みログに記録できないとき
      */
     public void withdrawal(long amount, String currency, LocalDate trxDate, String description) {
+        this.withdrawal(amount, CurrencyTable.indexOf(currency), trxDate, description);
+    }
+
+    /**
+     * 払い戻し
+     * 
+     * <p>
+     * 通貨インデックス({@link CurrencyTable})を指定して払い戻します。払い戻す通貨の口座残高が不足しているときは
+     * 払い戻しできません(他の通貨の口座残高からは払い戻しません)。
+     * 
+     * @param amount 払い戻す金額
+     * @param currencyIndex 通貨インデックス
+     * @param trxDate 取引日
+     * @param description 摘要
+     * @throws IllegalArgumentException 金額が1以上でないとき、通貨インデックスまたは取引日が正しくないとき
+     * @throws IllegalStateException 口座残高が不足しているとき
+     * @throws java.io.UncheckedIOException 先行書き込みログに記録できないとき
+     */
+    public void withdrawal(long amount, int currencyIndex, LocalDate trxDate, String description) {
+        checkPosting(amount, currencyIndex, trxDate);
+        this.withdrawal(null, 0L, 0L, amount, currencyIndex, trxDate, description);
+    }
+
+    /**
+     * 払い戻し
+     * 
+     * <p>
+     * 要求の冪等キーを指定して払い戻します。タイムアウトで再送された要求(冪等キーが記帳済みの要求)は、
+     * 口座残高、入出金明細、先行書き込みログに触れずにfalseを返します。最初の要求を記帳中に再送された要求は、
+     * 最初の要求の記帳がディスクに書き出されるか失敗するまで待ちます。口座残高が不足しているときなど
+     * 払い戻しできなかったときは冪等キーの登録を削除するため、同じ冪等キーで再送できます。
+     * 
+     * @param requestId 冪等キー(ULID)
+     * @param amount 払い戻す金額
+     * @param currencyIndex 通貨インデックス
+     * @param trxDate 取引日
+     * @param description 摘要
+     * @return true 払い戻した
+     * @return false 同じ冪等キーの要求を記帳済み
+     * @throws IllegalArgumentException 冪等キーがnullのとき、有効期間を過ぎているとき、
+     *         金額が1以上でないとき、通貨インデックスまたは取引日が正しくないとき
+     * @throws IllegalStateException 口座残高が不足しているとき、冪等キーの重複確認が設定されていないとき
+     * @throws java.io.UncheckedIOException 先行書き込みログに記録できないとき
+     */
+    public boolean withdrawal(BinaryUlid requestId, long amount, int currencyIndex, LocalDate trxDate,
+            String description) {
+        checkPosting(amount, currencyIndex, trxDate);
+        IdempotencyCache cache = this.idempotencyCache(requestId);
+        return this.withdrawal(cache, requestId.getMostSignificantBits(), requestId.getLeastSignificantBits(), amount,
+            currencyIndex, trxDate, description);
+    }
+
+    /**
+     * 払い戻し
+     * 
+     * @param cache 冪等キーの重複確認(nullのときは冪等キーを確認しない)
+     * @param msb 冪等キーの上位64ビット
+     * @param lsb 冪等キーの下位64ビット
+     * @param amount 払い戻す金額
+     * @param currencyIndex 通貨インデックス
+     * @param trxDate 取引日
+     * @param description 摘要
+     * @return true 払い戻した
+     * @return false 同じ冪等キーの要求を記帳済み
+     */
+    private boolean withdrawal(IdempotencyCache cache, long msb, long lsb, long amount, int currencyIndex,
+            LocalDate trxDate, String description) {
+        if (cache != null && !cache.register(msb, lsb)) {
+            return false;
+        }
+        boolean posted = false;
+        try {
+            if (this.debit(amount, currencyIndex) < 0) {
+                throw new IllegalStateException("口座残高が不足しているため払い戻しできない");
+            }
+            long operationTime = System.currentTimeMillis();
+            int trxDay = (int)trxDate.toEpochDay();
+            WriteAheadLog l = this.log;
+            long lsn = 0L;
+            if (l != null) {
+                // 残高を確保してから記録する。記録できなかったときは確保した残高を戻す
+                try {
+                    lsn = l.append(this.accountId, this.accountKey(), TransactionType.WITHDRAWAL, operationTime,
+                        trxDay, amount, currencyIndex);
+                } catch (RuntimeException e) {
+                    this.credit(amount, currencyIndex);
+                    throw e;
+                }
+            }
+            this.journal().append(TransactionType.WITHDRAWAL, operationTime, trxDay, amount, currencyIndex,
+                description);
+            if (l != null) {
+                l.awaitDurable(lsn);
+            }
+            posted = true;
+        } finally {
+            if (cache != null) {
+                complete(cache, msb, lsb, posted);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 冪等キーの記帳の結果を確定する
+     * 
+     * <p>
+     * 記帳がディスクに書き出されたときだけ記帳済みにします。記帳できなかったとき(書き出しを待つ間に失敗したときを含む)は
+     * 登録を削除して、同じ冪等キーで再送された要求を受け付けます。記帳中に待っていた再送の要求は、この結果で再開します。
+     * 
+     * @param cache 冪等キーの重複確認
+     * @param msb 冪等キーの上位64ビット
+     * @param lsb 冪等キーの下位64ビット
+     * @param posted 記帳がディスクに書き出されたか
+     */
+    private static void complete(IdempotencyCache cache, long msb, long lsb, boolean posted) {
+        if (posted) {
+            cache.commit(msb, lsb);
+        } else {
+            cache.remove(msb, lsb);
+        }
+    }
+
+    /**
+     * 利息元加
+     * 
+     * <p>
+     * 利息を口座に入金します。取引区分は利息元加です。先行書き込みログが設定されているときは、
+     * 取引をログに記録し、ディスクに書き出されてから完了します。
+     * 利息の計算は{@link InterestAccrual}で行います。
+     * 
+     * @param amount 利息の金額
+     * @param currency 通貨コード
+     * @param trxDate 取引日(利息の計算期間の終わりの日)
+     * @throws IllegalArgumentException 金額が1以上でないとき、通貨コードまたは取引日が正しくないとき
+     * @throws java.io.UncheckedIOException 先行書き込みログに記録できないとき
+     */
+    public void payInterest(long amount, String currency, LocalDate trxDate) {
+        int currencyIndex = CurrencyTable.indexOf(currency);
+        checkPosting(amount, currencyIndex, trxDate);
+        WriteAheadLog l = this.log;
+        long lsn = this.postInterest(amount, System.currentTimeMillis(), (int)trxDate.toEpochDay(), currencyIndex);
+        if (l != null) {
+            l.awaitDurable(lsn);
+        }
+    }
+
+    /**
+     * 利息を入金する
+     * 
+     * <p>
+     * 利息元加の取引を記録して口座残高に加算します。ディスクへの書き出しは待ちません。
+     * 一括して入金する場合に、呼び出し元で最後のログ順序番号の書き出しをまとめて待つために使用します。
+     * 金額の正当性チェックは呼び出し元で行います。
+     * 
+     * <p>
+     * 円の利息元加では、入金した金額を未払いの利息から差し引きます(未払いの利息を超える部分は差し引きません)。
+     * 先行書き込みログから回復するときも同じように差し引くため、利息元加のレコード1件で入金と未払いの利息の
+     * 減少が記録されます。
+     * 
+     * @param amount 利息の金額
+     * @param operationTime 操作日時(Unixエポック時刻のミリ秒)
+     * @param trxDate 取引日(エポック日)
+     * @param currencyIndex 通貨インデックス
+     * @return ログ順序番号、先行書き込みログが設定されていないときは0
+     */
+    long postInterest(long amount, long operationTime, int trxDate, int currencyIndex) {
+        WriteAheadLog l = this.log;
+        long lsn = l == null ? 0L
+            : l.append(this.accountId, this.accountKey(), TransactionType.INTEREST, operationTime, trxDate, amount,
+                currencyIndex);
+        this.credit(amount, currencyIndex);
+        if (currencyIndex == CurrencyTable.JPY) {
+            this.deductAccruedInterest(amount);
+        }
+        this.journal().append(TransactionType.INTEREST, operationTime, trxDate, amount, currencyIndex, "利息");
+        return lsn;
+    }
+
+    /**
+     * 利息を計上する
+     * 
+     * <p>
+     * 取引日の利息を計上済みでなければ、計上済みの取引日を更新し、未払いの利息にCASで加算してから、利息計上の
+     * レコードを先行書き込みログに記録します。桁あふれの確認は加算と同じCASの中で行います。記録できなかったときは
+     * 加算した利息と計上済みの取引日を戻します。計上済みの取引日は利息計上のレコードの取引日とスナップショットで
+     * 永続化するため、再起動の後に同じ日の利息計上をやり直しても二重には計上しません。
+     * 入出金明細には記録しません。ディスクへの書き出しは待ちません。
+     * 
+     * @param units 加算する利息(1/(365×100万)円単位)
+     * @param operationTime 操作日時(Unixエポック時刻のミリ秒)
+     * @param trxDate 取引日(エポック日)
+     * @return ログ順序番号、先行書き込みログが設定されていないときは0、取引日の利息を計上済みのときは-1
+     * @throws ArithmeticException 未払いの利息が桁あふれするとき(未払いの利息は変わらない)
+     * @throws java.io.UncheckedIOException 先行書き込みログに記録できないとき(未払いの利息は変わらない)
+     */
+    long accrueInterest(long units, long operationTime, int trxDate) {
+        int through;
+        do {
+            through = this.accruedThrough;
+            if (trxDate <= through) {
+                return -1L;
+            }
+        } while (!ACCRUED_THROUGH.compareAndSet(this, through, trxDate));
+        try {
+            long current;
+            do {
+                current = this.accruedInterest;
+            } while (!ACCRUED_INTEREST.compareAndSet(this, current, Math.addExact(current, units)));
+        } catch (ArithmeticException e) {
+            ACCRUED_THROUGH.compareAndSet(this, trxDate, through);
+            throw e;
+        }
+        WriteAheadLog l = this.log;
+        try {
+            return l == null ? 0L
+                : l.append(this.accountId, this.accountKey(), TransactionType.INTEREST_ACCRUAL, operationTime,
+                    trxDate, units, CurrencyTable.JPY);
+        } catch (RuntimeException e) {
+            ACCRUED_INTEREST.getAndAdd(this, -units);
+            ACCRUED_THROUGH.compareAndSet(this, trxDate, through);
+            throw e;
+        }
+    }
+
+    /* 円の利息元加の金額を未払いの利息から差し引く */
+    private void deductAccruedInterest(long amount) {
+        long current;
+        do {
+            current = this.accruedInterest;
+        } while (!ACCRUED_INTEREST.compareAndSet(this, current, InterestAccrual.deduct(current, amount)));
+    }
+
+    /**
+     * 振替を記帳する
+     * 
+     * <p>
+     * 振替({@link TransferEngine})で、この口座(振替元)の口座残高をCASで確保し、振替出金と振替入金を1つの振替として
+     * 先行書き込みログに記録してから({@link WriteAheadLog#appendTransfer})、振替先の口座残高に加算します。
+     * 記録できなかったときは確保した口座残高を戻すため、どちらの口座残高もログに記録されずに変わることはありません。
+     * 振替元と振替先の口座残高の更新は預け入れ・払い戻しと同じCASで行うため、同時に行われる預け入れ・払い戻しとの間で
+     * 口座残高が負になったり失われたりすることはありません(記録から振替先への加算までの間は、振替金額はどちらの口座残高
+     * にも含まれません)。ディスクへの書き出しは待ちません。金額と通貨の正当性チェックは呼び出し元で行います。
+     * 
+     * @param to 振替先の口座
+     * @param amount 振替金額
+     * @param operationTime 操作日時(Unixエポック時刻のミリ秒)
+     * @param trxDate 取引日(エポック日)
+     * @param currencyIndex 通貨インデックス
+     * @param description 摘要
+     * @return 振替入金のログ順序番号、先行書き込みログが設定されていないときは0、口座残高が不足しているときは-1
+     * @throws IllegalArgumentException 振替元と振替先の先行書き込みログが異なるとき
+     * @throws java.io.UncheckedIOException 先行書き込みログに記録できないとき(確保した口座残高は戻す)
+     */
+    long postTransfer(Account to, long amount, long operationTime, int trxDate, int currencyIndex,
+            String description) {
+        WriteAheadLog l = this.log;
+        if (l != to.log) {
+            // 振替出金と振替入金を1つのログに記録できない
+            throw new IllegalArgumentException("振替元と振替先の口座は同じ先行書き込みログに記録しなくてはならない");
+        }
+        if (this.debit(amount, currencyIndex) < 0) {
+            return -1L;
+        }
+        long lsn = 0L;
+        if (l != null) {
+            try {
+                lsn = l.appendTransfer(this.accountId, this.accountKey(), to.accountId, to.accountKey(), operationTime,
+                    trxDate, amount, currencyIndex);
+            } catch (RuntimeException e) {
+                this.credit(amount, currencyIndex);
+                throw e;
+            }
+        }
+        this.journal().append(TransactionType.TRANSFER_OUT, operationTime, trxDate, amount, currencyIndex,
+            description);
+        to.credit(amount, currencyIndex);
+        to.journal().append(TransactionType.TRANSFER_IN, operationTime, trxDate, amount, currencyIndex,
+            description);
+        return lsn;
+    }
+
+    /**
+     * 他のログへの振替の振替出金を記帳する
+     * 
+     * <p>
+     * 振替先の口座が別の先行書き込みログに記録されるときの振替({@link TransferEngine})の1段階目です。この口座(振替元)
+     * の口座残高をCASで確保し、他のログへの振替出金として記録してから({@link WriteAheadLog#appendTransferPrepare})、
+     * 入出金明細に振替出金を追記します。記録できなかったときは確保した口座残高を戻します。
+     * ディスクへの書き出しは待ちません。金額と通貨の正当性チェックは呼び出し元で行います。
+     * 
+     * @param amount 振替金額
+     * @param operationTime 操作日時(Unixエポック時刻のミリ秒)
+     * @param trxDate 取引日(エポック日)
+     * @param currencyIndex 通貨インデックス
+     * @param description 摘要
+     * @return 振替出金のログ順序番号、口座残高が不足しているときは-1
+     * @throws IllegalStateException 先行書き込みログが設定されていないとき
+     * @throws java.io.UncheckedIOException 先行書き込みログに記録できないとき(確保した口座残高は戻す)
+     */
+    long prepareTransfer(long amount, long operationTime, int trxDate, int currencyIndex, String description) {
+        WriteAheadLog l = this.log;
+        if (l == null) {
+            throw new IllegalStateException("先行書き込みログが設定されていない");
+        }
+        if (this.debit(amount, currencyIndex) < 0) {
+            return -1L;
+        }
+        long lsn;
+        try {
+            lsn = l.appendTransferPrepare(this.accountId, this.accountKey(), operationTime, trxDate, amount,
+                currencyIndex);
+        } catch (RuntimeException e) {
+            this.credit(amount, currencyIndex);
+            throw e;
+        }
+        this.journal().append(TransactionType.TRANSFER_OUT, operationTime, trxDate, amount, currencyIndex,
+            description);
+        return lsn;
+    }
+
+    /**
+     * 他のログからの振替の振替入金を記帳する
+     * 
+     * <p>
+     * 別の先行書き込みログに記録された振替出金({@link #prepareTransfer})に対応する振替入金を、この口座のログに
+     * 記録してから({@link WriteAheadLog#appendTransferCredit})、口座残高に加算します。振替元の口座を指定したときは
+     * 振替の取消です。ディスクへの書き出しは待ちません。
+     * 
+     * @param source 振替元の口座
+     * @param prepareLsn 振替元のログの振替出金のログ順序番号
+     * @param amount 振替金額
+     * @param operationTime 操作日時(Unixエポック時刻のミリ秒)
+     * @param trxDate 取引日(エポック日)
+     * @param currencyIndex 通貨インデックス
+     * @param description 摘要
+     * @return 振替入金のログ順序番号
+     * @throws IllegalStateException 先行書き込みログが設定されていないとき
+     * @throws java.io.UncheckedIOException 先行書き込みログに記録できないとき(口座残高は変わらない)
+     */
+    long postTransferCredit(Account source, long prepareLsn, long amount, long operationTime, int trxDate,
+            int currencyIndex, String description) {
+        WriteAheadLog l = this.log;
+        if (l == null) {
+            throw new IllegalStateException("先行書き込みログが設定されていない");
+        }
+        long lsn = l.appendTransferCredit(source.accountId, source.accountKey(), prepareLsn, this.accountId,
+            this.accountKey(), operationTime, trxDate, amount, currencyIndex);
+        this.credit(amount, currencyIndex);
+        this.journal().append(TransactionType.TRANSFER_IN, operationTime, trxDate, amount, currencyIndex,
+            description);
+        return lsn;
+    }
+
+    /**
+     * 一括記帳する
+     * 
+     * <p>
+     * 一括記帳({@link BulkPosting})で、この口座の複数の入出金を記帳順に適用します。各払い戻しは、それより前の明細を
+     * 適用した時点の残高が不足しているときに残高不足とし、残りの明細の適用を続けます。
+     * 
+     * <p>
+     * 口座残高は、記帳の途中で最も少なくなる残高までの減少分を先に確保し(払い戻しの分)、明細を先行書き込みログに
+     * 記録してから残りを加算します(預け入れの分)。預け入れは{@link #deposit}と同じくログに記録した後で口座残高に
+     * 反映されるため、記録できなかった預け入れを他の払い戻しが使うことはありません。口座残高の更新は確保と加算の2回、
+     * 入出金明細の追記は1回の排他で行います。ディスクへの書き出しは待ちません。
+     * 金額と通貨の正当性チェックは呼び出し元で行います。
+     * 
+     * <p>
+     * 記帳した明細は、明細の位置の範囲の前に記帳順のまま詰めます。
+     * 
+     * @param amounts 取引金額(正は預け入れ、負は払い戻し)
+     * @param entries 明細の位置(この口座の明細がfromからtoの範囲に記帳順に並ぶ)
+     * @param from 明細の位置の範囲(この位置を含む)
+     * @param to 明細の位置の範囲(この位置を含まない)
+     * @param results 明細ごとの結果({@link BulkPosting#POSTED}、{@link BulkPosting#INSUFFICIENT_BALANCE}、
+     *        または{@link BulkPosting#FAILED}を設定する)
+     * @param operationTime 操作日時(Unixエポック時刻のミリ秒)
+     * @param trxDate 取引日(エポック日)
+     * @param currencyIndex 通貨インデックス
+     * @param description 摘要
+     * @return 最後に記録したログ順序番号、記録しなかったときは0
+     * @throws java.io.UncheckedIOException 先行書き込みログに記録できないとき(記録できなかった明細の結果は
+     *         {@link BulkPosting#FAILED}とし、記録済みの明細だけを記帳する)
+     */
+    long postBatch(long[] amounts, int[] entries, int from, int to, byte[] results, long operationTime,
+            int trxDate, int currencyIndex, String description) {
+        // 記帳の途中で最も少なくなる残高までを確保する
+        long reserve;
+        long remainder;
+        for (;;) {
+            long current = this.balanceOf(currencyIndex);
+            long after = settle(current, amounts, entries, from, to, results);
+            long lowest = current;
+            long running = current;
+            for (int i = from; i < to; i++) {
+                if (results[entries[i]] == BulkPosting.POSTED) {
+                    running += amounts[entries[i]];
+                    lowest = Math.min(lowest, running);
+                }
+            }
+            reserve = current - lowest;
+            remainder = after - lowest;
+            if (reserve == 0L || this.tryReserve(current, reserve, currencyIndex)) {
+                break;
+            }
+        }
+
+        // 記帳した明細を前に詰める
+        int end = from;
+        for (int i = from; i < to; i++) {
+            if (results[entries[i]] == BulkPosting.POSTED) {
+                entries[end++] = entries[i];
+            }
+        }
+
+        WriteAheadLog l = this.log;
+        long lsn = 0L;
+        if (l != null) {
+            long key = this.accountKey();
+            for (int i = from; i < end; i++) {
+                long amount = amounts[entries[i]];
+                try {
+                    lsn = l.append(this.accountId, key, amount > 0 ? TransactionType.DEPOSIT
+                        : TransactionType.WITHDRAWAL, operationTime, trxDate, Math.abs(amount), currencyIndex);
+                } catch (RuntimeException e) {
+                    // 記録済みの明細だけを反映する(確保した金額と記録済みの明細の合計は、途中の残高の最小値以上のため0以上)
+                    long logged = reserve;
+                    for (int j = from; j < i; j++) {
+                        logged += amounts[entries[j]];
+                    }
+                    if (logged != 0L) {
+                        this.adjust(logged, currencyIndex);
+                    }
+                    for (int j = i; j < end; j++) {
+                        results[entries[j]] = BulkPosting.FAILED;
+                    }
+                    this.journal().appendAll(amounts, entries, from, i, operationTime, trxDate, currencyIndex,
+                        description);
+                    throw e;
+                }
+            }
+        }
+        if (remainder != 0L) {
+            this.adjust(remainder, currencyIndex);
+        }
+        this.journal().appendAll(amounts, entries, from, end, operationTime, trxDate, currencyIndex, description);
+        return lsn;
+    }
+
+    /* 指定された通貨の口座残高(高負荷口座では部分残高の合計) */
+    private long balanceOf(int currencyIndex) {
+        if (currencyIndex != CurrencyTable.JPY) {
+            return (long)FOREIGN_BALANCE.getVolatile(this.foreignBalances(), currencyIndex);
+        }
+        ShardedBalance s = this.shardedBalance;
+        return s == null ? this.balance : s.sum();
+    }
+
+    /* 読み取った口座残高から金額を確保する(口座残高が変わっていたとき、または不足しているときはfalse) */
+    private boolean tryReserve(long current, long amount, int currencyIndex) {
+        if (currencyIndex != CurrencyTable.JPY) {
+            return FOREIGN_BALANCE.compareAndSet(this.foreignBalances(), currencyIndex, current, current - amount);
+        }
+        ShardedBalance s = this.shardedBalance;
+        return s == null ? BALANCE.compareAndSet(this, current, current - amount) : s.tryDebit(amount) >= 0;
+    }
+
+    /* 記帳順に明細を適用して結果を設定し、適用後の残高を求める */
+    private static long settle(long balance, long[] amounts, int[] entries, int from, int to, byte[] results) {
+        for (int i = from; i < to; i++) {
+            long amount = amounts[entries[i]];
+            if (amount < 0 && balance < -amount) {
+                results[entries[i]] = BulkPosting.INSUFFICIENT_BALANCE;
+            } else {
+                balance += amount;
+                results[entries[i]] = BulkPosting.POSTED;
+            }
+        }
+        return balance;
+    }
+
+    /* 残高の確認をせずに口座残高を増減する */
+    private void adjust(long delta, int currencyIndex) {
+        ShardedBalance s = this.shardedBalance;
+        if (currencyIndex != CurrencyTable.JPY) {
+            FOREIGN_BALANCE.getAndAdd(this.foreignBalances(), currencyIndex, delta);
+        } else if (s == null) {
+            BALANCE.getAndAdd(this, delta);
+        } else if (delta >= 0) {
+            s.add(delta);
+        } else {
+            s.subtract(-delta);
+        }
+    }
+
+    /**
+     * 未払いの利息を取得する
+     * 
+     * @return 未払いの利息(1/(365×100万)円単位)
+     */
+    long accruedInterest() {
+        return this.accruedInterest;
+    }
+
+    /**
+     * 未払いの利息を設定する
+     * 
+     * @param accruedInterest 未払いの利息(1/(365×100万)円単位)
+     */
+    void accruedInterest(long accruedInterest) {
+        this.accruedInterest = accruedInterest;
+    }
+
+    /**
+     * 利息を計上済みの最後の取引日を取得する
+     * 
+     * @return 取引日(エポック日)、利息を計上していないときは{@link Integer#MIN_VALUE}
+     */
+    int accruedThrough() {
+        return this.accruedThrough;
+    }
+
+    /**
+     * 利息を計上済みの最後の取引日を設定する
+     * 
+     * @param accruedThrough 取引日(エポック日)、利息を計上していないときは{@link Integer#MIN_VALUE}
+     */
+    void accruedThrough(int accruedThrough) {
+        this.accruedThrough = accruedThrough;
+    }
+
+    /**
+     * 先行書き込みログを取得する
+     * 
+     * @return 先行書き込みログ、設定されていないときはnull
+     */
+    WriteAheadLog writeAheadLog() {
+        return this.log;
+    }
+
+    /**
+     * 先行書き込みログを設定する
+     * 
+     * <p>
+     * 設定した後の預け入れ・払い戻しは、先行書き込みログに記録されます。複数の口座で同じログを共有します。
+     * nullを設定したときは記録しません。
+     * 
+     * @param log 先行書き込みログ
+     */
+    public void setWriteAheadLog(WriteAheadLog log) {
+        this.log = log;
+    }
+
+    /**
+     * 冪等キーの重複確認を設定する
+     * 
+     * <p>
+     * 冪等キーを指定した預け入れ・払い戻しで、再送された要求を判定するために使用します。複数の口座で同じインスタンスを
+     * 共有します。冪等キーを指定しない預け入れ・払い戻しでは使用しません。
+     * 
+     * @param cache 冪等キーの重複確認
+     */
+    public void setIdempotencyCache(IdempotencyCache cache) {
+        this.idempotencyCache = cache;
+    }
+
+    /**
+     * 冪等キーの重複確認を取得する
+     * 
+     * @param requestId 冪等キー
+     * @return 冪等キーの重複確認
+     * @throws IllegalArgumentException 冪等キーがnullのとき
+     * @throws IllegalStateException 冪等キーの重複確認が設定されていないとき
+     */
+    private IdempotencyCache idempotencyCache(BinaryUlid requestId) {
+        if (requestId == null) {
+            throw new IllegalArgumentException("冪等キーを指定しなくてはならない");
+        }
+        IdempotencyCache cache = this.idempotencyCache;
+        if (cache == null) {
+            throw new IllegalStateException("冪等キーの重複確認が設定されていない");
+        }
+        return cache;
+    }
+
+    /**
+     * 高負荷口座に指定する
+     * 
+     * <p>
+     * 給与資金口座や加盟店の精算口座など、多数のスレッドから同時に入金される口座の残高を部分残高に分割します
+     * ({@link ShardedBalance})。入金はスレッドごとの部分残高に加算するため、1つの口座残高を奪い合いません。
+     * 払い戻しでは必要に応じて部分残高を集約し、口座残高が負にならないことを保証します。
+     * 残高照会は部分残高を合計するため、指定しない口座よりも遅くなります。
+     * 
+     * <p>
+     * 口座の取引を開始する前(他のスレッドが預け入れ・払い戻しを行っていないとき)に呼び出します。
+     * 既に指定されているときは何もしません。指定を解除することはできません。
+     */
+    public synchronized void enableShardedBalance() {
+        if (this.shardedBalance == null) {
+            this.shardedBalance = new ShardedBalance((long)BALANCE.getAndSet(this, 0L));
+        }
+    }
+
+    /**
+     * 高負荷口座に指定されているかを判定する
+     * 
+     * @return true 口座残高を分割している
+     * @return false 口座残高を分割していない
+     */
+    public boolean isShardedBalance() {
+        return this.shardedBalance != null;
+    }
+
+    /**
+     * 口座キーを求める
+     * 
+     * @return 金融機関コード、店番、預金種目コード、口座番号の口座キー
+     */
+    long accountKey() {
+        return PackedAccountKey.pack(this.bankCode, this.branchOfficeNumber, this.accountTypeCode, this.accountNumber);
+    }
+
+    /**
+     * 口座の表記を変更する
+     * 
+     * <p>
+     * 取引店変更や店舗の統廃合で、金融機関コード、店番、預金種目コード、口座番号を変更後の口座キーの値に変更します。
+     * 口座識別子は変わりません。先行書き込みログが設定されているときは、口座表記変更として変更後の口座キーを
+     * 記録してから変更するため、スナップショットやログから回復した口座も変更後の口座キーになります。
+     * 口座の表記から口座識別子への索引({@link AccountKeyIndex})が、索引のロック中に呼び出します。
+     * 
+     * <p>
+     * 各項目は個別に変更するため、変更と同時に行った取引のレコードには変更前か変更後の口座キーが記録されることが
+     * あります。回復する口座キーは口座表記変更のレコードで決まるため、回復の結果は変わりません。
+     * 
+     * @param key 変更後の口座キー
+     * @return ログ順序番号、先行書き込みログが設定されていないとき、または口座キーが変わらないときは0
+     * @throws IllegalArgumentException 口座キーが正しくないとき
+     * @throws java.io.UncheckedIOException 先行書き込みログに記録できないとき(口座の表記は変わらない)
+     */
+    synchronized long renumber(long key) {
+        if (!PackedAccountKey.isValid(key)) {
+            throw new IllegalArgumentException("口座キーに変換できない値が含まれています");
+        }
+        if (key == this.accountKey()) {
+            return 0L;
+        }
+        WriteAheadLog l = this.log;
+        long lsn = l == null ? 0L
+            : l.append(this.accountId, key, TransactionType.ACCOUNT_KEY_CHANGE, System.currentTimeMillis(),
+                (int)LocalDate.now().toEpochDay(), key, CurrencyTable.JPY);
+        this.applyAccountKey(key);
+        return lsn;
+    }
+
+    /* 口座キーの各項目を設定する */
+    private void applyAccountKey(long key) {
+        this.bankCode = PackedAccountKey.toBankCode(key);
+        this.branchOfficeNumber = PackedAccountKey.toBranchOfficeNumber(key);
+        this.accountTypeCode = PackedAccountKey.toAccountTypeCode(key);
+        this.accountNumber = PackedAccountKey.toAccountNumber(key);
+    }
+
+    /**
+     * 先行書き込みログの取引を適用する
+     * 
+     * <p>
+     * ログから口座残高を回復するときに使用します。ログに記録された順に適用するため、払い戻しでは残高不足のチェックを
+     * 行わずに減算します(すべての取引を適用した後の残高は記録時の残高と一致します)。ログには記録しません。
+     * 利息計上は未払いの利息に加算して計上済みの取引日を更新し、円の利息元加は未払いの利息から差し引きます。
+     * 口座表記変更は口座の表記を取引金額の口座キーに変更します。
+     * 
+     * @param type 取引区分
+     * @param operationTime 操作日時(Unixエポック時刻のミリ秒)
+     * @param trxDate 取引日(エポック日)
+     * @param amount 取引金額
+     * @param currencyIndex 通貨インデックス
+     */
+    void replay(TransactionType type, long operationTime, int trxDate, long amount, int currencyIndex) {
+        if (type == TransactionType.INTEREST_ACCRUAL) {
+            ACCRUED_INTEREST.getAndAdd(this, amount);
+            this.accruedThrough = Math.max(this.accruedThrough, trxDate);
+            return;
+        }
+        if (type == TransactionType.ACCOUNT_KEY_CHANGE) {
+            this.applyAccountKey(amount);
+            return;
+        }
+        this.adjust(type.isCredit() ? amount : -amount, currencyIndex);
+        if (type == TransactionType.INTEREST && currencyIndex == CurrencyTable.JPY) {
+            this.deductAccruedInterest(amount);
+        }
+        this.journal().append(type, operationTime, trxDate, amount, currencyIndex, null);
+    }
+
+    /**
+     * 預け入れ・払い戻しのパラメーターをチェックする
+     * 
+     * @param amount 取引金額
+     * @param currencyIndex 通貨インデックス(通貨コードが正しくないときは-1)
+     * @param trxDate 取引日
+     * @throws IllegalArgumentException 金額が1以上でないとき、通貨コードまたは取引日が正しくないとき
+     */
+    private static void checkPosting(long amount, int currencyIndex, LocalDate trxDate) {
+        if (amount <= 0) {
+            throw new IllegalArgumentException("取引金額は1以上でなくてはならない");
+        }
+        if (currencyIndex < 0 || CurrencyTable.size() <= currencyIndex) {
+            throw new IllegalArgumentException("通貨コードは取り扱い通貨のISO 4217通貨コードでなくてはならない");
+        }
+        if (trxDate == null) {
+            throw new IllegalArgumentException("取引日を指定しなくてはならない");
+        }
+    }
+
+    /**
+     * 入出金明細を取得する
+     * 
+     * <p>
+     * 入出金明細がまだないときは作成します。口座の大半は取引が少ないため、入出金明細は最初の取引で作成します。
+     * 
+     * @return 入出金明細
+     */
+    TransactionJournal journal() {
+        TransactionJournal j = this.journal;
+        if (j == null) {
+            // 同時に作成されたときは先に設定された入出金明細を使用する
+            JOURNAL.compareAndSet(this, null, new TransactionJournal());
+            j = this.journal;
+        }
+        return j;
+    }
+
+    /**
+     * 外貨の口座残高を取得する
+     * 
+     * <p>
+     * 外貨の口座残高がまだないときは作成します。外貨預金を持つ口座は一部のため、最初の外貨の取引で作成します。
+     * 
+     * @return 通貨インデックスを添字とする外貨の口座残高
+     */
+    private long[] foreignBalances() {
+        long[] fb = this.foreignBalances;
+        if (fb == null) {
+            // 同時に作成されたときは先に設定された配列を使用する
+            FOREIGN_BALANCES.compareAndSet(this, null, new long[CurrencyTable.size()]);
+            fb = this.foreignBalances;
+        }
+        return fb;
+    }
+
+    /**
+     * 指定された通貨の口座残高に加算する
+     * 
+     * @param amount 加算する金額
+     * @param currencyIndex 通貨インデックス
+     */
+    void credit(long amount, int currencyIndex) {
+        if (currencyIndex == CurrencyTable.JPY) {
+            this.credit(amount);
+        } else {
+            FOREIGN_BALANCE.getAndAdd(this.foreignBalances(), currencyIndex, amount);
+        }
+    }
+
+    /**
+     * 指定された通貨の口座残高から減算する
+     * 
+     * <p>
+     * 指定された通貨の口座残高が金額以上のときだけ、CASで減算します。
+     * 
+     * @param amount 減算する金額
+     * @param currencyIndex 通貨インデックス
+     * @return 減算後の口座残高、口座残高が不足しているときは-1
+     */
+    long debit(long amount, int currencyIndex) {
+        if (currencyIndex == CurrencyTable.JPY) {
+            return this.debit(amount);
+        }
+        long[] fb = this.foreignBalances();
+        long current;
+        do {
+            current = (long)FOREIGN_BALANCE.getVolatile(fb, currencyIndex);
+            if (current < amount) {
+                return -1L; // 残高不足
+            }
+        } while (!FOREIGN_BALANCE.compareAndSet(fb, currencyIndex, current, current - amount));
+        return current - amount;
+    }
+
+    /**
+     * 口座残高に加算する
+     * 
+     * <p>
+     * 円の口座残高にアトミックに加算します。高負荷口座では呼び出したスレッドの部分残高に加算します。
+     * 金額の正当性チェックは呼び出し元で行います。
+     * 
+     * @param amount 加算する金額
+     */
+    void credit(long amount) {
+        ShardedBalance s = this.shardedBalance;
+        if (s != null) {
+            s.add(amount);
+        } else {
+            BALANCE.getAndAdd(this, amount);
+        }
+    }
+
+    /**
+     * 口座残高から減算する
+     * 
+     * <p>
+     * 円の口座残高が金額以上のときだけ、CASで口座残高から減算します。CASに失敗したとき(他のスレッドが口座残高を更新したとき)は
+     * 口座残高を読み直して再試行します。高負荷口座では集約済みの残高から減算します({@link ShardedBalance#tryDebit(long)})。
+     * 金額の正当性チェックは呼び出し元で行います。
+     * 
+     * @param amount 減算する金額
+     * @return 減算後の口座残高(高負荷口座では集約済みの残高)、口座残高が不足しているときは-1
+     */
+    long debit(long amount) {
+        ShardedBalance s = this.shardedBalance;
+        if (s != null) {
+            return s.tryDebit(amount);
+        }
+        long current;
+        do {
+            current = this.balance;
+            if (current < amount) {
+                return -1L; // 残高不足
+            }
+        } while (!BALANCE.compareAndSet(this, current, current - amount));
+        return current - amount;
+    }
 
+    /**
+     * 口座識別子を取得する
+     * @return 口座識別子
+     */
+    public AccountId getAccountId() {
+        return this.accountId;
     }
 
     /**
      * 口座残高を照会する
-     * @return 口座残高
+     * 
+     * <p>
+     * 円の口座残高を返します。外貨の口座残高は{@link #getBalance(int)}で照会します。
+     * 高負荷口座では部分残高の合計を返します。
+     * 
+     * @return 円の口座残高
      */
     public long getBalance() {
-        return this.balance;
+        ShardedBalance s = this.shardedBalance;
+        return s == null ? this.balance : s.sum();
+    }
+
+    /**
+     * 通貨を指定して口座残高を照会する
+     * 
+     * @param currency 通貨コード
+     * @return 指定された通貨の口座残高
+     * @throws IllegalArgumentException 通貨コードが正しくないとき
+     */
+    public long getBalance(String currency) {
+        int currencyIndex = CurrencyTable.indexOf(currency);
+        if (currencyIndex < 0) {
+            throw new IllegalArgumentException("通貨コードは取り扱い通貨のISO 4217通貨コードでなくてはならない");
+        }
+        return this.getBalance(currencyIndex);
+    }
+
+    /**
+     * 通貨インデックスを指定して口座残高を照会する
+     * 
+     * <p>
+     * オブジェクトを作成せずに照会します。外貨の取引がない口座の外貨の口座残高は0です。
+     * 
+     * @param currencyIndex 通貨インデックス({@link CurrencyTable})
+     * @return 指定された通貨の口座残高
+     * @throws IllegalArgumentException 通貨インデックスが正しくないとき
+     */
+    public long getBalance(int currencyIndex) {
+        if (currencyIndex == CurrencyTable.JPY) {
+            return this.getBalance();
+        }
+        if (currencyIndex < 0 || CurrencyTable.size() <= currencyIndex) {
+            throw new IllegalArgumentException("通貨インデックスが正しくない");
+        }
+        long[] fb = this.foreignBalances;
+        return fb == null ? 0L : (long)FOREIGN_BALANCE.getVolatile(fb, currencyIndex);
     }
 
     /**
@@ -141,17 +1227,164 @@ public class Account {
      * 口座保有者の通帳に印刷される内容は、取引履歴から編集して作成します。
      * @param fromDate 取引日の範囲(いつから)
      * @param toDate 取引日の範囲(いつまで)
-     * @param maxCount 明細の最大数
-     * @param pageSize 
      * @return 取引履歴
      * 取引履歴の内容
      * 取引区分: 預け入れ、払い戻し、通帳記帳、残高照会、入手金明細照会、利息元加
      * 操作日時: 取引を行った日時
      * 取引日: 対顧客上の取引日(通帳に印字される取引の日付。利息計算の基準となる。)
      * 取引金額: 取引の金額
+     * <p>
+     * 取引履歴の各要素は「取引区分,操作日時,取引日,取引金額,通貨コード,摘要」の形式の文字列です。
+     * 操作日時はISO 8601形式(UTC)です。取引日の範囲は入出金明細の取引日の列を二分探索して求めます。
+     * fromDate、toDateがnullのときは範囲を限定しません。
+     * 明細が多い口座では、ページ単位で照会する{@link #getTransactionHistories(LocalDate, LocalDate, int)}を使用します。
      */
     public String[] getTransactionHistories(LocalDate fromDate, LocalDate toDate) {
-        return this.transactions;
+        TransactionJournal j = this.journal;
+        if (j == null) {
+            return new String[0];
+        }
+        int end = j.size();
+        int fromDay = fromDate == null ? Integer.MIN_VALUE : (int)fromDate.toEpochDay();
+        int toDay = toDate == null ? Integer.MAX_VALUE : (int)toDate.toEpochDay();
+        if (j.isSorted()) {
+            // 取引日の列を二分探索して範囲を求める
+            int from = j.firstOnOrAfter(fromDay, end);
+            int to = Math.max(from, j.firstAfter(toDay, end));
+            String[] histories = new String[to - from];
+            for (int i = from; i < to; i++) {
+                histories[i - from] = TransactionHistoryPage.format(j, i);
+            }
+            return histories;
+        } else {
+            // 取引日が前後した明細があるときは、範囲に該当する明細がないチャンクを読み飛ばしながら確認する
+            List<String> histories = new ArrayList<>();
+            int i = j.nextInRange(fromDay, toDay, 0, end);
+            while (i < end) {
+                histories.add(TransactionHistoryPage.format(j, i));
+                i = j.nextInRange(fromDay, toDay, i + 1, end);
+            }
+            return histories.toArray(new String[0]);
+        }
+    }
+
+    /**
+     * 通帳記帳の起点を現在の口座残高にする
+     * 
+     * <p>
+     * スナップショットなどから口座残高を設定した直後(入出金明細を適用する前)に呼び出します。以降の通帳記帳は、
+     * この時点の円の口座残高から差引残高を求め、この後に追記された明細から記帳します。
+     */
+    synchronized void startPassbook() {
+        TransactionJournal j = this.journal;
+        this.passbookPosition = j == null ? 0 : j.size();
+        this.passbookBalance = this.getBalance();
+    }
+
+    /**
+     * 通帳記帳
+     * 
+     * <p>
+     * 前回の通帳記帳より後の入出金明細のうち、未記帳の円の預け入れ、払い戻し、利息元加を通帳の明細行に編集して、
+     * 文字の配列に書き込みます。明細行の形式は{@link PassbookFormatter}のとおりで、1行は
+     * {@value PassbookFormatter#LINE_WIDTH}文字です。差引残高は前回記帳した残高から明細を順に加減算して求めます。
+     * 1行以上記帳したときは、通帳記帳の取引を入出金明細に記録します。
+     * 
+     * <p>
+     * 書き込む行数は最大行数までです。戻り値が最大行数と等しいときは未記帳の明細が残っていることがあり、
+     * 次の通帳記帳(通帳の次のページ)で続きを記帳します。書き込み先の配列は呼び出しをまたいで再利用できます。
+     * 
+     * <p>
+     * 記帳済みの位置と差引残高は永続化しません。スナップショットから復元した口座({@link AccountSnapshot#restore})は、
+     * スナップショットの時点の口座残高を前回記帳した残高とし、先行書き込みログから回復した明細(スナップショットより後の
+     * 明細)を記帳します。再起動の前に記帳済みの明細も、スナップショットより後のものは再び記帳されます。
+     * 
+     * @param trxDate 取引日
+     * @param dst 書き込み先
+     * @param offset 書き込みを開始する位置
+     * @param maxLines 書き込む最大行数
+     * @return 書き込んだ行数
+     * @throws IllegalArgumentException 取引日がnullのとき、最大行数が1以上でないとき、
+     *         または書き込み先の配列の長さが不足しているとき
+     */
+    public synchronized int updatePassbook(LocalDate trxDate, char[] dst, int offset, int maxLines) {
+        if (trxDate == null) {
+            throw new IllegalArgumentException("取引日を指定しなくてはならない");
+        }
+        if (maxLines < 1) {
+            throw new IllegalArgumentException("記帳する行数は1以上でなくてはならない");
+        }
+        if (dst == null || offset < 0 || (dst.length - offset) / PassbookFormatter.LINE_WIDTH < maxLines) {
+            throw new IllegalArgumentException("通帳の明細行を書き込む配列の長さが不足しています");
+        }
+        TransactionJournal j = this.journal();
+        int end = j.size();
+        int i = this.passbookPosition;
+        long balance = this.passbookBalance;
+        int lines = 0;
+        for (; i < end && lines < maxLines; i++) {
+            if (j.currencyIndex(i) != CurrencyTable.JPY) {
+                // 通帳は円の口座残高を記帳する(外貨の入出金は外貨預金の明細で確認する)
+                continue;
+            }
+            TransactionType type = j.type(i);
+            long amount = j.amount(i);
+            if (type.isCredit()) {
+                balance += amount;
+                PassbookFormatter.formatLine(j.trxDate(i), j.description(i), 0L, amount, balance, dst,
+                    offset + lines++ * PassbookFormatter.LINE_WIDTH);
+            } else if (type.isDebit()) {
+                balance -= amount;
+                PassbookFormatter.formatLine(j.trxDate(i), j.description(i), amount, 0L, balance, dst,
+                    offset + lines++ * PassbookFormatter.LINE_WIDTH);
+            }
+        }
+        this.passbookPosition = i;
+        this.passbookBalance = balance;
+        if (lines > 0) {
+            j.append(TransactionType.PASSBOOK_UPDATE, System.currentTimeMillis(), (int)trxDate.toEpochDay(), 0L,
+                CurrencyTable.JPY, null);
+        }
+        return lines;
+    }
+
+    /**
+     * 取引履歴をページ単位で照会する
+     * 
+     * <p>
+     * 取引日の範囲に該当する取引履歴の最初のページを取得します。続きのページは、ページのカーソル
+     * ({@link TransactionHistoryPage#getNextCursor()})を指定して{@link #getTransactionHistories(String, int)}で
+     * 照会します。ページは入出金明細を複製しないため、明細の件数によらず1ページの件数に比例する時間で照会できます。
+     * fromDate、toDateがnullのときは範囲を限定しません。
+     * 
+     * @param fromDate 取引日の範囲(いつから)
+     * @param toDate 取引日の範囲(いつまで)
+     * @param pageSize 1ページの件数
+     * @return 取引履歴のページ
+     * @throws IllegalArgumentException 1ページの件数が1以上{@value TransactionHistoryPage#MAX_PAGE_SIZE}以下でないとき
+     */
+    public TransactionHistoryPage getTransactionHistories(LocalDate fromDate, LocalDate toDate, int pageSize) {
+        int fromDay = fromDate == null ? Integer.MIN_VALUE : (int)fromDate.toEpochDay();
+        int toDay = toDate == null ? Integer.MAX_VALUE : (int)toDate.toEpochDay();
+        return TransactionHistoryPage.first(this.journal, this.cursorTag(), fromDay, toDay, pageSize);
+    }
+
+    /**
+     * 取引履歴の続きのページを照会する
+     * 
+     * @param cursor 前のページのカーソル
+     * @param pageSize 1ページの件数
+     * @return 取引履歴のページ
+     * @throws IllegalArgumentException カーソルがこの口座で発行したものでないとき、
+     *         または1ページの件数が1以上{@value TransactionHistoryPage#MAX_PAGE_SIZE}以下でないとき
+     */
+    public TransactionHistoryPage getTransactionHistories(String cursor, int pageSize) {
+        return TransactionHistoryPage.next(this.journal, this.cursorTag(), cursor, pageSize);
+    }
+
+    /* カーソルを発行した口座を確認するための値 */
+    private long cursorTag() {
+        return this.accountId.mostSignificantBits() ^ Long.rotateLeft(this.accountId.leastSignificantBits(), 32);
     }
 
     /**
@@ -0,0 +1,373 @@
+package com.cocreativeds;
+
+import java.nio.BufferOverflowException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+
+/**
+ * 口座のバイナリ形式
+ *
+ * <p>
+ * 口座と口座の識別に使用する値オブジェクトを、{@link ByteBuffer}に直接読み書きするユーティリティクラスです。
+ * 電文や永続化したレコードの基礎となる形式で、書き込みでは文字列などの一時オブジェクトを作成しません。
+ *
+ * <p>
+ * 各項目の形式は次のとおりです。
+ * <ul>
+ * <li>口座識別子: ULIDの128ビット(ビッグエンディアン、16バイト)</li>
+ * <li>金融機関コード: 4桁のパック10進数(2バイト)</li>
+ * <li>店番: 3桁のパック10進数(上位の4ビットは0、2バイト)</li>
+ * <li>預金種目コード: 1桁のパック10進数(上位の4ビットは0、1バイト)</li>
+ * <li>口座番号: 7桁のパック10進数(上位の4ビットは0、4バイト)</li>
+ * <li>口座残高: ZigZag符号化した可変長整数(1〜10バイト)</li>
+ * <li>外貨の口座残高: 件数(1バイト)に続けて、通貨インデックス(1バイト)と口座残高(可変長整数)を件数分</li>
+ * <li>未払いの利息: 1/(365×100万)円単位の可変長整数(1〜10バイト)</li>
+ * <li>利息を計上済みの最後の取引日: エポック日の可変長整数(1〜5バイト、利息を計上していないときは{@link Integer#MIN_VALUE})</li>
+ * </ul>
+ * 口座は口座識別子、金融機関コード、店番、預金種目コード、口座番号、円の口座残高、外貨の口座残高、未払いの利息、
+ * 利息を計上済みの最後の取引日の順で、
+ * 最大{@value #MAX_ACCOUNT_SIZE}バイトです。外貨の口座残高は0でない通貨だけを書き込みます(外貨の取引がない口座は件数の0だけです)。
+ * 入出金明細は含みません(先行書き込みログで永続化します)。
+ *
+ * <p>
+ * バッファーの残りが不足しているときは{@link BufferOverflowException}または
+ * {@link BufferUnderflowException}をスローします。読み込みで例外が発生したときのバッファーの位置は不定です。
+ */
+public final class AccountCodec {
+
+    /**
+     * 口座識別子のバイト数
+     */
+    public static final int ACCOUNT_ID_SIZE = 16;
+
+    /**
+     * 口座のキー(金融機関コード、店番、預金種目コード、口座番号)のバイト数
+     */
+    public static final int ACCOUNT_KEY_SIZE = 9;
+
+    /**
+     * 可変長整数の最大バイト数
+     */
+    public static final int MAX_VARLONG_SIZE = 10;
+
+    /**
+     * int型の値の可変長整数の最大バイト数
+     */
+    public static final int MAX_VARINT_SIZE = 5;
+
+    /**
+     * 口座の最大バイト数
+     */
+    public static final int MAX_ACCOUNT_SIZE = ACCOUNT_ID_SIZE + ACCOUNT_KEY_SIZE + MAX_VARLONG_SIZE + 1
+        + (CurrencyTable.MAX_CURRENCIES - 1) * (1 + MAX_VARLONG_SIZE) + MAX_VARLONG_SIZE + MAX_VARINT_SIZE;
+
+    private AccountCodec() {
+    }
+
+    /**
+     * 口座を書き込む
+     *
+     * @param account 口座
+     * @param dst 書き込み先
+     * @throws BufferOverflowException バッファーの残りが不足しているとき
+     */
+    public static void writeAccount(Account account, ByteBuffer dst) {
+        writeAccountId(account.getAccountId(), dst);
+        writeAccountKey(account.accountKey(), dst);
+        writeVarLong(account.getBalance(), dst);
+        // 外貨の口座残高は通貨ごとに1回だけ読み取り、書き込んだ件数を後から設定する
+        // (取引と並行して書き込んでも、件数と書き込んだ口座残高が食い違わない)
+        int countPosition = dst.position();
+        dst.put((byte)0);
+        int n = CurrencyTable.size();
+        int count = 0;
+        for (int i = CurrencyTable.JPY + 1; i < n; i++) {
+            long balance = account.getBalance(i);
+            if (balance != 0L) {
+                dst.put((byte)i);
+                writeVarLong(balance, dst);
+                count++;
+            }
+        }
+        dst.put(countPosition, (byte)count);
+        writeVarLong(account.accruedInterest(), dst);
+        writeVarLong(account.accruedThrough(), dst);
+    }
+
+    /**
+     * 口座を読み込む
+     *
+     * @param src 読み込み元
+     * @return 口座
+     * @throws IllegalArgumentException パック10進数に数字以外の値が含まれているとき、通貨インデックスが正しくないとき、
+     *         利息を計上済みの取引日が正しくないとき
+     * @throws BufferUnderflowException バッファーの残りが不足しているとき
+     */
+    public static Account readAccount(ByteBuffer src) {
+        AccountId accountId = readAccountId(src);
+        long key = readAccountKey(src);
+        long balance = readVarLong(src);
+        Account a = new Account(PackedAccountKey.toBankCode(key), PackedAccountKey.toBranchOfficeNumber(key),
+            PackedAccountKey.toAccountTypeCode(key), PackedAccountKey.toAccountNumber(key), accountId);
+        a.credit(balance);
+        int count = src.get() & 0xff;
+        for (int i = 0; i < count; i++) {
+            int currencyIndex = src.get() & 0xff;
+            if (currencyIndex == CurrencyTable.JPY || CurrencyTable.size() <= currencyIndex) {
+                throw new IllegalArgumentException("通貨インデックスが正しくない");
+            }
+            a.credit(readVarLong(src), currencyIndex);
+        }
+        a.accruedInterest(readVarLong(src));
+        long accruedThrough = readVarLong(src);
+        if (accruedThrough != (int)accruedThrough) {
+            throw new IllegalArgumentException("利息を計上済みの取引日が正しくない");
+        }
+        a.accruedThrough((int)accruedThrough);
+        a.startPassbook();
+        return a;
+    }
+
+    /**
+     * 口座識別子を書き込む
+     *
+     * @param accountId 口座識別子
+     * @param dst 書き込み先
+     * @throws BufferOverflowException バッファーの残りが不足しているとき
+     */
+    public static void writeAccountId(AccountId accountId, ByteBuffer dst) {
+        if (dst.remaining() < ACCOUNT_ID_SIZE) {
+            throw new BufferOverflowException();
+        }
+        dst.putLong(accountId.mostSignificantBits());
+        dst.putLong(accountId.leastSignificantBits());
+    }
+
+    /**
+     * 口座識別子を読み込む
+     *
+     * @param src 読み込み元
+     * @return 口座識別子
+     * @throws BufferUnderflowException バッファーの残りが不足しているとき
+     */
+    public static AccountId readAccountId(ByteBuffer src) {
+        if (src.remaining() < ACCOUNT_ID_SIZE) {
+            throw new BufferUnderflowException();
+        }
+        long msb = src.getLong();
+        long lsb = src.getLong();
+        return new AccountId(new BinaryUlid(msb, lsb));
+    }
+
+    /**
+     * 口座のキーを書き込む
+     *
+     * <p>
+     * 口座キー({@link PackedAccountKey})の金融機関コード、店番、預金種目コード、口座番号をパック10進数で書き込みます。
+     *
+     * @param key 口座キー
+     * @param dst 書き込み先
+     * @throws IllegalArgumentException 口座キーが正しくないとき
+     * @throws BufferOverflowException バッファーの残りが不足しているとき
+     */
+    public static void writeAccountKey(long key, ByteBuffer dst) {
+        if (!PackedAccountKey.isValid(key)) {
+            throw new IllegalArgumentException("口座キーに変換できない値が含まれています");
+        }
+        if (dst.remaining() < ACCOUNT_KEY_SIZE) {
+            throw new BufferOverflowException();
+        }
+        dst.putShort((short)toBcd(PackedAccountKey.bankCode(key)));
+        dst.putShort((short)toBcd(PackedAccountKey.branchOfficeNumber(key)));
+        dst.put((byte)toBcd(PackedAccountKey.accountTypeCode(key)));
+        dst.putInt(toBcd(PackedAccountKey.accountNumber(key)));
+    }
+
+    /**
+     * 口座のキーを読み込む
+     *
+     * @param src 読み込み元
+     * @return 口座キー
+     * @throws IllegalArgumentException パック10進数に数字以外の値が含まれているとき
+     * @throws BufferUnderflowException バッファーの残りが不足しているとき
+     */
+    public static long readAccountKey(ByteBuffer src) {
+        if (src.remaining() < ACCOUNT_KEY_SIZE) {
+            throw new BufferUnderflowException();
+        }
+        int bankCode = fromBcd(src.getShort() & 0xffff, 4);
+        int boNumber = fromBcd(src.getShort() & 0xffff, 3);
+        int accountTypeCode = fromBcd(src.get() & 0xff, 1);
+        int accountNumber = fromBcd(src.getInt(), 7);
+        return PackedAccountKey.pack(bankCode, boNumber, accountTypeCode, accountNumber);
+    }
+
+    /**
+     * 金融機関コードを書き込む
+     *
+     * @param bankCode 金融機関コード
+     * @param dst 書き込み先
+     * @throws BufferOverflowException バッファーの残りが不足しているとき
+     */
+    public static void writeBankCode(BankCode bankCode, ByteBuffer dst) {
+        dst.putShort((short)toBcd(CodeValidator.digitsValue(bankCode.getBankCode())));
+    }
+
+    /**
+     * 金融機関コードを読み込む
+     *
+     * @param src 読み込み元
+     * @return 正規化された金融機関コード
+     * @throws IllegalArgumentException パック10進数に数字以外の値が含まれているとき
+     * @throws BufferUnderflowException バッファーの残りが不足しているとき
+     */
+    public static BankCode readBankCode(ByteBuffer src) {
+        return BankCode.of(fromBcd(src.getShort() & 0xffff, 4));
+    }
+
+    /**
+     * 店番を書き込む
+     *
+     * @param boNumber 店番
+     * @param dst 書き込み先
+     * @throws BufferOverflowException バッファーの残りが不足しているとき
+     */
+    public static void writeBranchOfficeNumber(BranchOfficeNumber boNumber, ByteBuffer dst) {
+        dst.putShort((short)toBcd(CodeValidator.digitsValue(boNumber.getBranchOfficeNumber())));
+    }
+
+    /**
+     * 店番を読み込む
+     *
+     * @param src 読み込み元
+     * @return 正規化された店番
+     * @throws IllegalArgumentException パック10進数に数字以外の値が含まれているとき
+     * @throws BufferUnderflowException バッファーの残りが不足しているとき
+     */
+    public static BranchOfficeNumber readBranchOfficeNumber(ByteBuffer src) {
+        return BranchOfficeNumber.of(fromBcd(src.getShort() & 0xffff, 3));
+    }
+
+    /**
+     * 預金種目コードを書き込む
+     *
+     * @param accountTypeCode 預金種目コード
+     * @param dst 書き込み先
+     * @throws BufferOverflowException バッファーの残りが不足しているとき
+     */
+    public static void writeAccountTypeCode(AccountTypeCode accountTypeCode, ByteBuffer dst) {
+        dst.put((byte)toBcd(CodeValidator.digitsValue(accountTypeCode.getAccountTypeCode())));
+    }
+
+    /**
+     * 預金種目コードを読み込む
+     *
+     * @param src 読み込み元
+     * @return 正規化された預金種目コード
+     * @throws IllegalArgumentException パック10進数に数字以外の値が含まれているとき
+     * @throws BufferUnderflowException バッファーの残りが不足しているとき
+     */
+    public static AccountTypeCode readAccountTypeCode(ByteBuffer src) {
+        return AccountTypeCode.of(fromBcd(src.get() & 0xff, 1));
+    }
+
+    /**
+     * 口座番号を書き込む
+     *
+     * @param accountNumber 口座番号
+     * @param dst 書き込み先
+     * @throws BufferOverflowException バッファーの残りが不足しているとき
+     */
+    public static void writeAccountNumber(AccountNumber accountNumber, ByteBuffer dst) {
+        dst.putInt(toBcd(CodeValidator.digitsValue(accountNumber.getAccountNumber())));
+    }
+
+    /**
+     * 口座番号を読み込む
+     *
+     * @param src 読み込み元
+     * @return 口座番号
+     * @throws IllegalArgumentException パック10進数に数字以外の値が含まれているとき
+     * @throws BufferUnderflowException バッファーの残りが不足しているとき
+     */
+    public static AccountNumber readAccountNumber(ByteBuffer src) {
+        return new AccountNumber(CodeValidator.toDigits(fromBcd(src.getInt(), 7), 7));
+    }
+
+    /**
+     * 可変長整数を書き込む
+     *
+     * <p>
+     * ZigZag符号化(0, -1, 1, -2, ... を 0, 1, 2, 3, ... に対応させる)した値を、下位から7ビットずつ書き込みます。
+     * 各バイトの最上位ビットは続きのバイトがあることを表します。絶対値が64未満の値は1バイトです。
+     *
+     * @param value 値
+     * @param dst 書き込み先
+     * @throws BufferOverflowException バッファーの残りが不足しているとき
+     */
+    public static void writeVarLong(long value, ByteBuffer dst) {
+        long v = (value << 1) ^ (value >> 63);
+        while ((v & ~0x7fL) != 0L) {
+            dst.put((byte)((v & 0x7f) | 0x80));
+            v >>>= 7;
+        }
+        dst.put((byte)v);
+    }
+
+    /**
+     * 可変長整数を読み込む
+     *
+     * @param src 読み込み元
+     * @return 値
+     * @throws IllegalArgumentException 可変長整数が10バイトを超えるとき
+     * @throws BufferUnderflowException バッファーの残りが不足しているとき
+     */
+    public static long readVarLong(ByteBuffer src) {
+        long v = 0L;
+        for (int shift = 0; shift < 64; shift += 7) {
+            byte b = src.get();
+            v |= (long)(b & 0x7f) << shift;
+            if (b >= 0) {
+                return (v >>> 1) ^ -(v & 1);
+            }
+        }
+        throw new IllegalArgumentException("可変長整数が長すぎます");
+    }
+
+    /**
+     * 可変長整数のバイト数を求める
+     *
+     * @param value 値
+     * @return バイト数
+     */
+    public static int varLongSize(long value) {
+        long v = (value << 1) ^ (value >> 63);
+        return Math.max(1, (64 - Long.numberOfLeadingZeros(v) + 6) / 7);
+    }
+
+    /* 8桁以下の数値をパック10進数に変換する */
+    private static int toBcd(int value) {
+        int bcd = 0;
+        for (int shift = 0; value != 0; shift += 4) {
+            bcd |= (value % 10) << shift;
+            value /= 10;
+        }
+        return bcd;
+    }
+
+    /* パック10進数を数値に変換する */
+    private static int fromBcd(int bcd, int digits) {
+        int value = 0;
+        for (int shift = (digits - 1) * 4; shift >= 0; shift -= 4) {
+            int d = (bcd >>> shift) & 0xf;
+            if (d > 9) {
+                throw new IllegalArgumentException("パック10進数に数字以外の値が含まれています");
+            }
+            value = value * 10 + d;
+        }
+        if ((bcd >>> (digits * 4)) != 0 && digits < 8) {
+            throw new IllegalArgumentException("パック10進数に数字以外の値が含まれています");
+        }
+        return value;
+    }
+}
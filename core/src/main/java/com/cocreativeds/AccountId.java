@@ -1,6 +1,5 @@
 package com.cocreativeds;
 
-import java.util.Objects;
 /**
  * Account ID class.
  * <p>
@@ -18,10 +17,12 @@ import java.util.Objects;
  * 
  */
 
-public class AccountId {
+public class AccountId implements Comparable<AccountId> {
 
-    /* 口座識別子 */
-    private String accountId;
+    /* 口座識別子(ULIDの上位64ビット) */
+    private long msb;
+    /* 口座識別子(ULIDの下位64ビット) */
+    private long lsb;
 
     /**
      * コンストラクター。
@@ -43,7 +44,20 @@ public class AccountId {
      * 26桁の0(ゼロ)を設定します。
      */
     public AccountId() {
-        this("00000000000000000000000000");
+        this(BinaryUlid.ZERO);
+    }
+
+    /**
+     * コンストラクター。
+     * 
+     * <p>
+     * 指定されたバイナリ型ULIDを口座識別子としてインスタンスを生成します。文字列のデコードは行いません。
+     * 
+     * @param ulid 口座識別子(バイナリ型ULID)
+     * @throws IllegalArgumentException 口座識別子がnullのとき
+     */
+    public AccountId(BinaryUlid ulid) {
+        this.setUlid(ulid);
     }
 
     /**
@@ -55,7 +69,7 @@ public class AccountId {
      * @return 口座識別子
      */
     public String getAccountId() {
-        return this.accountId;
+        return BinaryUlid.toString(this.msb, this.lsb);
     }
     /**
      * 口座識別子を設定する。
@@ -67,28 +81,81 @@ public class AccountId {
      * @throws IllegalArgumentException 口座識別子が26桁のCrockford Base32文字列でないとき
      */
     public void setAccountId(String accountId) {
-        if (accountId == null) {
+        /* 口座識別子はULIDです。ULIDはCrockford Base32(0〜9とI, L, O, Uを除く大文字英字)でエンコードされた文字列です。
+           ULIDは128ビットのため、先頭の文字は0〜7でなくてはなりません。文字のチェックはデコードと同時に行います。*/
+        BinaryUlid ulid;
+        try {
+            ulid = BinaryUlid.parse(accountId);
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("口座識別子は26桁の文字列でなくてはならない", e);
+        }
+        this.msb = ulid.getMostSignificantBits();
+        this.lsb = ulid.getLeastSignificantBits();
+    }
+
+    /**
+     * 口座識別子をバイナリ型ULIDで取得する。
+     * 
+     * @return 口座識別子(バイナリ型ULID)
+     */
+    public BinaryUlid getUlid() {
+        return new BinaryUlid(this.msb, this.lsb);
+    }
+
+    /**
+     * 口座識別子をバイナリ型ULIDで設定する。
+     * 
+     * @param ulid 口座識別子(バイナリ型ULID)
+     * @throws IllegalArgumentException 口座識別子がnullのとき
+     */
+    public void setUlid(BinaryUlid ulid) {
+        if (ulid == null) {
             throw new IllegalArgumentException("口座識別子は26桁の文字列でなくてはならない");
-        } else {
-            /* 口座識別子はULIDです。ULIDはCrockford Base32(0〜9とI, L, O, Uを除く大文字英字)でエンコードされた文字列です。*/
-            if (accountId.matches("[0-9A-HJKMNP-TV-Z]{26}")) {  // 26桁の文字列？
-                this.accountId = accountId;
-            } else {
-                throw new IllegalArgumentException("口座識別子は26桁の文字列でなくてはならない");
-            }
         }
+        this.msb = ulid.getMostSignificantBits();
+        this.lsb = ulid.getLeastSignificantBits();
+    }
+
+    /**
+     * 口座識別子のタイムスタンプを取得する。
+     * 
+     * <p>
+     * 口座識別子は口座開設時に採番するため、タイムスタンプは口座を開設した時刻(ミリ秒単位のUnixエポック時刻)です。
+     * 
+     * @return 口座識別子のタイムスタンプ
+     */
+    public long getTimestamp() {
+        return this.msb >>> 16;
+    }
+
+    /**
+     * 口座識別子(ULIDの上位64ビット)を取得する。
+     * 
+     * @return 口座識別子の上位64ビット
+     */
+    long mostSignificantBits() {
+        return this.msb;
+    }
+
+    /**
+     * 口座識別子(ULIDの下位64ビット)を取得する。
+     * 
+     * @return 口座識別子の下位64ビット
+     */
+    long leastSignificantBits() {
+        return this.lsb;
     }
 
     /**
      * 口座識別子を生成する
      * 
      * <p>
-     * ULIDを生成し、口座識別子として設定します。
+     * ULIDを生成し、口座識別子として設定します。文字列へのエンコードは行わずバイナリ型ULIDのまま設定します。
      * 
      * @return 口座識別子
      */
     public void generateAccountId() {
-        this.setAccountId(ULID.generate());
+        this.setUlid(UlidGenerator.current().generateBinary());
     }
     /**
      * 文字列表現
@@ -100,7 +167,7 @@ public class AccountId {
      */
     @Override
     public String toString() {
-        return "口座識別子: " + this.accountId;
+        return "口座識別子: " + this.getAccountId();
     }
 
     /**
@@ -119,7 +186,7 @@ public class AccountId {
                 return true;
             } else {
                 AccountId a = (AccountId)o;
-                if (this.accountId.equals(a.accountId)) { //口座識別子が一致する?
+                if (this.msb == a.msb && this.lsb == a.lsb) { //口座識別子が一致する?
                     return true;
                 } else {
                     return false;
@@ -133,26 +200,29 @@ public class AccountId {
     /**
      * ハッシュ値を得る
      * 
-     * <p>インスタンスのハッシュ値を返します。
+     * <p>インスタンスのハッシュ値を返します。{@link BinaryUlid#hashCode()}と同じく、上位64ビットと下位64ビットの
+     * 排他的論理和から求めます(口座識別子の下位80ビットは乱数のため、文字列に変換せずに十分に分散します)。
      * 
      * @return ハッシュ値
      */
     @Override
     public int hashCode() {
-        return Objects.hash(this.accountId);
+        return Long.hashCode(this.msb ^ this.lsb);
     }
 
     /**
      * 大小関係を判定する
      * 
      * <p>インスタンスの大小関係を判定し結果を返します。大小関係の判定は口座識別子で行います。
+     * 口座識別子を符号なし128ビット整数として比較するため、文字列型の口座識別子の辞書順と同じ結果になります。
      * 
      * @return 負 比較対象が大きい
      * @return 0 比較対象と等しい
      * @return 正 比較対象が小さい
      */
+    @Override
     public int compareTo(AccountId o) {
-        return this.accountId.compareTo(o.accountId);
+        return BinaryUlid.compare(this.msb, this.lsb, o.msb, o.lsb);
     }
 
     /**
@@ -164,6 +234,6 @@ public class AccountId {
      */
     @Override
     public AccountId clone() {
-        return new AccountId(this.accountId);
+        return new AccountId(new BinaryUlid(this.msb, this.lsb));
     }
 }
\ No newline at end of file
@@ -0,0 +1,728 @@
+package com.cocreativeds;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.LongUnaryOperator;
+
+/**
+ * 口座の表記から口座識別子への索引
+ *
+ * <p>
+ * 銀行口座保有者が認識する口座の表記(金融機関コード、店番、預金種目、口座番号)から口座識別子を求める、
+ * スレッドセーフな索引です。取引店変更や店舗の統廃合で店番や口座番号が変更されても、口座識別子は変わりません。
+ * 索引は口座の表記の変更({@link #rekey(long, long)})と、店舗単位の一括変更({@link #moveBranch(BankCode,
+ * BranchOfficeNumber, BranchOfficeNumber)})を提供します。
+ *
+ * <p>
+ * 索引は金融機関コードと店番ごとの区画に分かれています。区画の一覧は変更しない配列で保持し、
+ * 店舗単位の一括変更では、変更後の区画を別に作成してから区画の一覧を1回で置き換えます。
+ * 検索は排他制御を行わず、一括変更の途中でも待たされません。検索は一括変更の前の状態か後の状態の
+ * どちらかを参照し、一部の口座だけが変更された店舗を参照することはありません。複数の口座を検索するときに
+ * 同じ状態を参照するには{@link #view()}を使用します。
+ *
+ * <p>
+ * 1口座の表記の変更では、変更後の口座キーを登録してから変更前の口座キーを削除します。変更の途中では
+ * 両方の口座キーで口座識別子が求められることがありますが、どちらの口座キーでも求められない状態はありません。
+ *
+ * <p>
+ * 登録、削除、1口座の変更は並行して行えます。店舗単位の一括変更は、これらと排他的に行います。
+ *
+ * <p>
+ * 口座の登録簿を指定して作成した索引は、口座の表記を変更するときに、登録簿の口座の口座キーもロック中に変更します
+ * ({@link Account#renumber(long)})。口座に先行書き込みログが設定されているときは口座表記変更を記録するため、
+ * 変更後の口座キーはスナップショットやログから回復した口座にも反映されます。登録簿を指定しない索引は、
+ * 索引だけを変更します。
+ *
+ * <p>
+ * 区画は口座キーをlong型のまま保持するオープンアドレス法のハッシュ表で、検索は区画の楽観的読み取りで行います。
+ * 検索でキーのボクシングやオブジェクトの作成は発生しません。
+ */
+public class AccountKeyIndex {
+
+    /* 口座キーから区画の番号(金融機関コードと店番の7桁)を求めるための除数 */
+    private static final long BRANCH_DIVISOR = 100_000_000L;
+
+    /* 空きを表すキー(口座キーは0以上のため使用されない) */
+    private static final long EMPTY = -1L;
+
+    /* ハッシュ値を求めるための乗数(黄金比) */
+    private static final long GOLDEN_RATIO = 0x9e3779b97f4a7c15L;
+
+    /* 区画の初期容量 */
+    private static final int INITIAL_CAPACITY = 16;
+
+    /* 区画の一覧(変更するときは新しいインスタンスに置き換える) */
+    private volatile Directory directory = new Directory(new int[0], new Partition[0]);
+
+    /* 登録・削除・1口座の変更は共有ロック、店舗単位の一括変更は排他ロックで行う(検索はロックしない) */
+    private final ReentrantReadWriteLock writers = new ReentrantReadWriteLock();
+
+    /* 口座の登録簿(表記を変更するときに口座の口座キーも変更する、nullのときは索引だけを変更する) */
+    private final AccountRegistry registry;
+
+    /**
+     * 索引を作成する
+     *
+     * <p>
+     * 口座の表記の変更では、索引だけを変更します。
+     */
+    public AccountKeyIndex() {
+        this(null);
+    }
+
+    /**
+     * 口座の登録簿の口座の表記も変更する索引を作成する
+     *
+     * @param registry 口座の登録簿、nullのときは索引だけを変更する
+     */
+    public AccountKeyIndex(AccountRegistry registry) {
+        this.registry = registry;
+    }
+
+    /**
+     * 口座識別子を取得する
+     *
+     * @param key 口座キー
+     * @return 口座識別子、登録されていないときはnull
+     */
+    public AccountId get(long key) {
+        return find(this.directory, key);
+    }
+
+    /**
+     * 口座識別子を取得する
+     *
+     * @param bankCode 金融機関コード
+     * @param boNumber 店番
+     * @param accountTypeCode 預金種目コード
+     * @param accountNumber 口座番号
+     * @return 口座識別子、登録されていないときはnull
+     */
+    public AccountId get(BankCode bankCode, BranchOfficeNumber boNumber, AccountTypeCode accountTypeCode,
+            AccountNumber accountNumber) {
+        return this.get(PackedAccountKey.pack(bankCode, boNumber, accountTypeCode, accountNumber));
+    }
+
+    /**
+     * 現在の区画の一覧を参照するビューを取得する
+     *
+     * <p>
+     * ビューは取得した時点の区画の一覧を参照し続けるため、ビューで行う検索は店舗単位の一括変更について
+     * 同じ状態(一括変更の前か後のどちらか)を参照します。取得した後の1口座の登録・削除・変更は反映されることがあります。
+     *
+     * @return ビュー
+     */
+    public View view() {
+        return new View(this.directory);
+    }
+
+    /**
+     * 口座識別子を登録する
+     *
+     * @param key 口座キー
+     * @param accountId 口座識別子
+     * @return 以前に登録されていた口座識別子、登録されていなかったときはnull
+     * @throws IllegalArgumentException 口座キーが正しくないとき、または口座識別子がnullのとき
+     */
+    public AccountId put(long key, AccountId accountId) {
+        checkKey(key);
+        if (accountId == null) {
+            throw new IllegalArgumentException("口座識別子を指定しなくてはならない");
+        }
+        this.writers.readLock().lock();
+        try {
+            return this.partition(branchOf(key)).put(key, accountId);
+        } finally {
+            this.writers.readLock().unlock();
+        }
+    }
+
+    /**
+     * 口座を登録する
+     *
+     * <p>
+     * 口座の現在の口座キーで口座識別子を登録します。
+     *
+     * @param account 口座
+     * @return 以前に登録されていた口座識別子、登録されていなかったときはnull
+     * @throws IllegalArgumentException 口座がnullのとき
+     */
+    public AccountId put(Account account) {
+        if (account == null) {
+            throw new IllegalArgumentException("口座を指定しなくてはならない");
+        }
+        return this.put(account.accountKey(), account.getAccountId().clone());
+    }
+
+    /**
+     * 口座識別子の登録を削除する
+     *
+     * @param key 口座キー
+     * @return 削除した口座識別子、登録されていなかったときはnull
+     */
+    public AccountId remove(long key) {
+        if (!PackedAccountKey.isValid(key)) {
+            return null;
+        }
+        this.writers.readLock().lock();
+        try {
+            Partition p = this.directory.get(branchOf(key));
+            return p == null ? null : p.remove(key);
+        } finally {
+            this.writers.readLock().unlock();
+        }
+    }
+
+    /**
+     * 口座の表記を変更する
+     *
+     * <p>
+     * 変更前の口座キーに登録されている口座識別子を、変更後の口座キーに登録し直します。
+     * 登録簿を指定したときは、登録簿の口座の口座キーも変更し、口座表記変更のレコードが書き出されるまで待ち合わせます。
+     * 口座の変更に失敗したときは索引を元に戻します。
+     *
+     * @param from 変更前の口座キー
+     * @param to 変更後の口座キー
+     * @return 口座識別子
+     * @throws IllegalArgumentException 口座キーが正しくないとき
+     * @throws IllegalStateException 変更前の口座キーが登録されていないとき、変更後の口座キーが使用されているとき、
+     *         または口座が登録簿に登録されていないとき
+     * @throws java.io.UncheckedIOException 口座表記変更を先行書き込みログに記録できないとき
+     */
+    public AccountId rekey(long from, long to) {
+        checkKey(from);
+        checkKey(to);
+        AccountId accountId;
+        Account account;
+        long lsn = 0L;
+        this.writers.readLock().lock();
+        try {
+            Partition source = this.directory.get(branchOf(from));
+            accountId = source == null ? null : source.get(from);
+            if (accountId == null) {
+                throw new IllegalStateException("変更前の口座キーが登録されていない: " + PackedAccountKey.toString(from));
+            }
+            if (from == to) {
+                return accountId;
+            }
+            account = this.accountOf(accountId);
+            Partition target = this.partition(branchOf(to));
+            if (target.putIfAbsent(to, accountId) != null) {
+                throw new IllegalStateException("変更後の口座キーは使用されています: " + PackedAccountKey.toString(to));
+            }
+            if (!source.remove(from, accountId)) {
+                // 同じ口座キーの変更または削除が先に行われた
+                target.remove(to, accountId);
+                throw new IllegalStateException("変更前の口座キーが登録されていない: " + PackedAccountKey.toString(from));
+            }
+            if (account != null) {
+                try {
+                    lsn = account.renumber(to);
+                } catch (RuntimeException e) {
+                    source.put(from, accountId);
+                    target.remove(to, accountId);
+                    throw e;
+                }
+            }
+        } finally {
+            this.writers.readLock().unlock();
+        }
+        if (lsn > 0L) {
+            account.writeAheadLog().awaitDurable(lsn);
+        }
+        return accountId;
+    }
+
+    /**
+     * 店舗の口座を別の店番に移す
+     *
+     * <p>
+     * 店舗の統廃合で、店舗のすべての口座の店番を変更します。預金種目と口座番号は変更しません。
+     *
+     * @param bankCode 金融機関コード
+     * @param from 変更前の店番
+     * @param to 変更後の店番
+     * @return 変更した口座の数
+     * @throws IllegalStateException 変更後の口座キーが使用されているとき(このときは何も変更しない)
+     */
+    public int moveBranch(BankCode bankCode, BranchOfficeNumber from, BranchOfficeNumber to) {
+        long delta = (long)(CodeValidator.digitsValue(to.getBranchOfficeNumber())
+            - CodeValidator.digitsValue(from.getBranchOfficeNumber())) * BRANCH_DIVISOR;
+        return this.rekeyBranch(bankCode, from, key -> key + delta);
+    }
+
+    /**
+     * 店舗の口座の表記を一括して変更する
+     *
+     * <p>
+     * 店舗のすべての口座キーを、関数で求めた口座キーに変更します。変更後の口座キーは別の店舗のものでも構いません。
+     * 変更はすべての口座について検査してから1回で公開するため、検索は変更前の状態か変更後の状態のどちらかを
+     * 参照します。検査で誤りが見つかったときは何も変更しません。
+     *
+     * <p>
+     * 登録簿を指定したときは、検査の後、公開する前に登録簿の口座の口座キーを変更し、口座表記変更のレコードが
+     * 書き出されるまで待ち合わせます。口座の変更に失敗したときは、変更した口座を元に戻し、索引は変更しません。
+     *
+     * @param bankCode 金融機関コード
+     * @param boNumber 店番
+     * @param renumber 変更前の口座キーから変更後の口座キーを求める関数
+     * @return 変更した口座の数
+     * @throws IllegalArgumentException 関数がnullのとき、または関数が正しくない口座キーを返したとき
+     * @throws IllegalStateException 変更後の口座キーが重複するとき、変更の対象でない口座が使用しているとき、
+     *         または口座が登録簿に登録されていないとき
+     * @throws java.io.UncheckedIOException 口座表記変更を先行書き込みログに記録できないとき
+     */
+    public int rekeyBranch(BankCode bankCode, BranchOfficeNumber boNumber, LongUnaryOperator renumber) {
+        if (renumber == null) {
+            throw new IllegalArgumentException("口座キーを変更する関数を指定しなくてはならない");
+        }
+        int branch = CodeValidator.digitsValue(bankCode.getBankCode()) * 1000
+            + CodeValidator.digitsValue(boNumber.getBranchOfficeNumber());
+        // 先行書き込みログごとの口座表記変更の最後のログ順序番号
+        Map<WriteAheadLog, Long> durable = new HashMap<>();
+        int moved;
+        this.writers.writeLock().lock();
+        try {
+            Directory current = this.directory;
+            Partition source = current.get(branch);
+            if (source == null || source.size() == 0) {
+                return 0;
+            }
+
+            // 変更後の区画を、変更前の区画とは別に作成する(排他ロック中のため変更前の区画は変わらない)
+            Map<Integer, Partition> changed = new HashMap<>();
+            changed.put(branch, new Partition());
+            Table table = source.table;
+            long[] tos = new long[table.keys.length];
+            for (int i = 0; i < table.keys.length; i++) {
+                long from = table.keys[i];
+                if (from == EMPTY) {
+                    continue;
+                }
+                long to = renumber.applyAsLong(from);
+                checkKey(to);
+                tos[i] = to;
+                int b = branchOf(to);
+                Partition target = changed.get(b);
+                if (target == null) {
+                    Partition existing = current.get(b);
+                    target = existing == null ? new Partition() : existing.copy();
+                    changed.put(b, target);
+                }
+                if (target.putIfAbsent(to, table.values[i]) != null) {
+                    throw new IllegalStateException("変更後の口座キーは使用されています: " + PackedAccountKey.toString(to));
+                }
+            }
+            if (this.registry != null) {
+                this.renumberAccounts(table, tos, durable);
+            }
+            this.directory = current.with(changed);
+            moved = source.size();
+        } finally {
+            this.writers.writeLock().unlock();
+        }
+        for (Map.Entry<WriteAheadLog, Long> e : durable.entrySet()) {
+            e.getKey().awaitDurable(e.getValue());
+        }
+        return moved;
+    }
+
+    /*
+     * 区画の口座の口座キーを変更する(排他ロック中に呼び出す)
+     * 
+     * すべての口座が登録簿にあることを確かめてから変更し、途中で失敗したときは変更した口座を元に戻す。
+     */
+    private void renumberAccounts(Table table, long[] tos, Map<WriteAheadLog, Long> durable) {
+        Account[] accounts = new Account[table.keys.length];
+        for (int i = 0; i < table.keys.length; i++) {
+            if (table.keys[i] != EMPTY) {
+                accounts[i] = this.accountOf(table.values[i]);
+            }
+        }
+        int done = 0;
+        try {
+            for (; done < accounts.length; done++) {
+                if (accounts[done] == null) {
+                    continue;
+                }
+                long lsn = accounts[done].renumber(tos[done]);
+                if (lsn > 0L) {
+                    durable.merge(accounts[done].writeAheadLog(), lsn, Math::max);
+                }
+            }
+        } catch (RuntimeException e) {
+            for (int i = 0; i < done; i++) {
+                if (accounts[i] == null) {
+                    continue;
+                }
+                try {
+                    accounts[i].renumber(table.keys[i]);
+                } catch (RuntimeException suppressed) {
+                    e.addSuppressed(suppressed);
+                }
+            }
+            throw e;
+        }
+    }
+
+    /* 口座識別子の口座を登録簿から求める(登録簿を指定していないときはnull) */
+    private Account accountOf(AccountId accountId) {
+        if (this.registry == null) {
+            return null;
+        }
+        Account account = this.registry.get(accountId);
+        if (account == null) {
+            throw new IllegalStateException("口座が登録簿に登録されていない: " + accountId);
+        }
+        return account;
+    }
+
+    /**
+     * 登録件数を取得する
+     *
+     * @return 登録件数
+     */
+    public int size() {
+        int size = 0;
+        for (Partition p : this.directory.partitions) {
+            size += p.size();
+        }
+        return size;
+    }
+
+    /**
+     * 店舗の登録件数を取得する
+     *
+     * @param bankCode 金融機関コード
+     * @param boNumber 店番
+     * @return 登録件数
+     */
+    public int size(BankCode bankCode, BranchOfficeNumber boNumber) {
+        Partition p = this.directory.get(CodeValidator.digitsValue(bankCode.getBankCode()) * 1000
+            + CodeValidator.digitsValue(boNumber.getBranchOfficeNumber()));
+        return p == null ? 0 : p.size();
+    }
+
+    /**
+     * 索引のビュー
+     *
+     * <p>
+     * {@link AccountKeyIndex#view()}で取得した時点の区画の一覧で検索します。
+     */
+    public static final class View {
+        private final Directory directory;
+
+        private View(Directory directory) {
+            this.directory = directory;
+        }
+
+        /**
+         * 口座識別子を取得する
+         *
+         * @param key 口座キー
+         * @return 口座識別子、登録されていないときはnull
+         */
+        public AccountId get(long key) {
+            return find(this.directory, key);
+        }
+    }
+
+    /* 区画の一覧から口座識別子を検索する */
+    private static AccountId find(Directory directory, long key) {
+        if (!PackedAccountKey.isValid(key)) {
+            return null;
+        }
+        Partition p = directory.get(branchOf(key));
+        return p == null ? null : p.get(key);
+    }
+
+    /* 区画を取得する(ないときは作成する) */
+    private Partition partition(int branch) {
+        Partition p = this.directory.get(branch);
+        if (p != null) {
+            return p;
+        }
+        synchronized (this) {
+            Directory current = this.directory;
+            p = current.get(branch);
+            if (p == null) {
+                p = new Partition();
+                this.directory = current.with(Map.of(branch, p));
+            }
+            return p;
+        }
+    }
+
+    /* 口座キーの区画の番号 */
+    private static int branchOf(long key) {
+        return (int)(key / BRANCH_DIVISOR);
+    }
+
+    private static void checkKey(long key) {
+        if (!PackedAccountKey.isValid(key)) {
+            throw new IllegalArgumentException("口座キーに変換できない値が含まれています");
+        }
+    }
+
+    /**
+     * 金融機関コードと店番ごとの区画
+     *
+     * <p>
+     * 口座キーをlong型のまま保持するハッシュ表({@link PackedAccountKeyMap}と同じ線形探索と後方移動による削除)です。
+     * 変更は書き込みロックで行い、検索は楽観的読み取りで行って、変更と重なったときだけ読み取りロックで検索し直します。
+     */
+    private static final class Partition {
+        /* 検索は楽観的読み取り、変更は書き込みロックで行う */
+        private final StampedLock lock = new StampedLock();
+        /* ハッシュ表(拡張するときは新しいインスタンスに置き換える) */
+        Table table;
+        /* 登録件数 */
+        private volatile int size;
+
+        Partition() {
+            this.table = new Table(INITIAL_CAPACITY);
+        }
+
+        private Partition(Table table, int size) {
+            this.table = table;
+            this.size = size;
+        }
+
+        AccountId get(long key) {
+            long stamp = this.lock.tryOptimisticRead();
+            if (stamp != 0L) {
+                AccountId accountId = this.table.find(key);
+                if (this.lock.validate(stamp)) {
+                    return accountId;
+                }
+            }
+            stamp = this.lock.readLock();
+            try {
+                return this.table.find(key);
+            } finally {
+                this.lock.unlockRead(stamp);
+            }
+        }
+
+        int size() {
+            return this.size;
+        }
+
+        AccountId put(long key, AccountId accountId) {
+            long stamp = this.lock.writeLock();
+            try {
+                Table t = this.table;
+                int i = t.slotOf(key);
+                if (t.keys[i] == key) {
+                    AccountId previous = t.values[i];
+                    t.values[i] = accountId;
+                    return previous;
+                }
+                this.insert(t, i, key, accountId);
+                return null;
+            } finally {
+                this.lock.unlockWrite(stamp);
+            }
+        }
+
+        AccountId putIfAbsent(long key, AccountId accountId) {
+            long stamp = this.lock.writeLock();
+            try {
+                Table t = this.table;
+                int i = t.slotOf(key);
+                if (t.keys[i] == key) {
+                    return t.values[i];
+                }
+                this.insert(t, i, key, accountId);
+                return null;
+            } finally {
+                this.lock.unlockWrite(stamp);
+            }
+        }
+
+        AccountId remove(long key) {
+            long stamp = this.lock.writeLock();
+            try {
+                Table t = this.table;
+                int i = t.slotOf(key);
+                if (t.keys[i] != key) {
+                    return null;
+                }
+                AccountId removed = t.values[i];
+                t.delete(i);
+                this.size--;
+                return removed;
+            } finally {
+                this.lock.unlockWrite(stamp);
+            }
+        }
+
+        boolean remove(long key, AccountId accountId) {
+            long stamp = this.lock.writeLock();
+            try {
+                Table t = this.table;
+                int i = t.slotOf(key);
+                if (t.keys[i] != key || !t.values[i].equals(accountId)) {
+                    return false;
+                }
+                t.delete(i);
+                this.size--;
+                return true;
+            } finally {
+                this.lock.unlockWrite(stamp);
+            }
+        }
+
+        Partition copy() {
+            long stamp = this.lock.readLock();
+            try {
+                return new Partition(this.table.copy(), this.size);
+            } finally {
+                this.lock.unlockRead(stamp);
+            }
+        }
+
+        /* 空き位置に登録する(書き込みロック中に呼び出す) */
+        private void insert(Table t, int i, long key, AccountId accountId) {
+            t.keys[i] = key;
+            t.values[i] = accountId;
+            if (++this.size > t.threshold) {
+                this.table = t.resize(t.keys.length << 1);
+            }
+        }
+    }
+
+    /**
+     * 区画のハッシュ表
+     *
+     * <p>
+     * キーと値の配列は長さが同じで、置き換えずに使用するため、楽観的読み取りの途中で別のインスタンスに
+     * 置き換えられても配列の範囲外を参照することはありません。
+     */
+    private static final class Table {
+        /* キー(口座キー) */
+        final long[] keys;
+        /* 値(口座識別子) */
+        final AccountId[] values;
+        /* 拡張を行う登録件数(負荷率3/4) */
+        final int threshold;
+        /* ハッシュ値から添字を求めるためのシフト数 */
+        private final int shift;
+
+        Table(int capacity) {
+            this.keys = new long[capacity];
+            Arrays.fill(this.keys, EMPTY);
+            this.values = new AccountId[capacity];
+            this.threshold = capacity - (capacity >> 2);
+            this.shift = Long.numberOfLeadingZeros(capacity - 1);
+        }
+
+        /* 口座識別子を検索する(変更と重なっても終了するように、探索は容量の回数までとする) */
+        AccountId find(long key) {
+            long[] k = this.keys;
+            int mask = k.length - 1;
+            int i = this.indexOf(key);
+            for (int n = 0; n <= mask; n++, i = (i + 1) & mask) {
+                long candidate = k[i];
+                if (candidate == key) {
+                    return this.values[i];
+                } else if (candidate == EMPTY) {
+                    return null;
+                }
+            }
+            return null;
+        }
+
+        /* 口座キーの位置、登録されていないときは登録する空き位置を求める */
+        int slotOf(long key) {
+            int mask = this.keys.length - 1;
+            int i = this.indexOf(key);
+            while (this.keys[i] != key && this.keys[i] != EMPTY) {
+                i = (i + 1) & mask;
+            }
+            return i;
+        }
+
+        /* 位置の登録を削除し、後続のキーのうち本来の位置が空いた位置以前にあるものを空いた位置に移動する */
+        void delete(int i) {
+            int mask = this.keys.length - 1;
+            int gap = i;
+            for (int j = (gap + 1) & mask; this.keys[j] != EMPTY; j = (j + 1) & mask) {
+                int home = this.indexOf(this.keys[j]);
+                if (((j - home) & mask) >= ((j - gap) & mask)) {
+                    this.keys[gap] = this.keys[j];
+                    this.values[gap] = this.values[j];
+                    gap = j;
+                }
+            }
+            this.keys[gap] = EMPTY;
+            this.values[gap] = null;
+        }
+
+        Table copy() {
+            return this.resize(this.keys.length);
+        }
+
+        /* 指定された容量のハッシュ表に登録し直す */
+        Table resize(int capacity) {
+            Table t = new Table(capacity);
+            for (int j = 0; j < this.keys.length; j++) {
+                if (this.keys[j] != EMPTY) {
+                    int i = t.slotOf(this.keys[j]);
+                    t.keys[i] = this.keys[j];
+                    t.values[i] = this.values[j];
+                }
+            }
+            return t;
+        }
+
+        private int indexOf(long key) {
+            return (int)((key * GOLDEN_RATIO) >>> this.shift);
+        }
+    }
+
+    /**
+     * 区画の一覧
+     *
+     * <p>
+     * 区画の番号の昇順に並べた配列で、作成した後は変更しません。
+     */
+    private static final class Directory {
+        final int[] branches;
+        final Partition[] partitions;
+
+        Directory(int[] branches, Partition[] partitions) {
+            this.branches = branches;
+            this.partitions = partitions;
+        }
+
+        Partition get(int branch) {
+            int i = Arrays.binarySearch(this.branches, branch);
+            return i < 0 ? null : this.partitions[i];
+        }
+
+        /* 区画を追加または置き換えた一覧を作成する */
+        Directory with(Map<Integer, Partition> changes) {
+            int[] b = Arrays.copyOf(this.branches, this.branches.length + changes.size());
+            Partition[] p = Arrays.copyOf(this.partitions, b.length);
+            int n = this.branches.length;
+            for (Map.Entry<Integer, Partition> e : changes.entrySet()) {
+                int i = Arrays.binarySearch(b, 0, n, e.getKey());
+                if (i >= 0) {
+                    p[i] = e.getValue();
+                } else {
+                    i = -i - 1;
+                    System.arraycopy(b, i, b, i + 1, n - i);
+                    System.arraycopy(p, i, p, i + 1, n - i);
+                    b[i] = e.getKey();
+                    p[i] = e.getValue();
+                    n++;
+                }
+            }
+            return new Directory(Arrays.copyOf(b, n), Arrays.copyOf(p, n));
+        }
+    }
+}
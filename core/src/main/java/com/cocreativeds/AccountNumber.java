@@ -1,6 +1,6 @@
 package com.cocreativeds;
-import java.util.Random;
 import java.util.Objects;
+import java.util.concurrent.ThreadLocalRandom;
 /**
  * Account number class.
  * 
@@ -13,7 +13,7 @@ import java.util.Objects;
  * 日本の銀行における口座番号7桁を表すクラス
  * 
  */
-public class AccountNumber {
+public class AccountNumber implements Comparable<AccountNumber> {
 
     /* 口座番号 */
     private String accountNumber;
@@ -60,7 +60,7 @@ public class AccountNumber {
         if (accountNumber == null) {
             throw new IllegalArgumentException("口座番号は7桁の数字でなくてはならない");
         } else {
-            if (accountNumber.matches("[0-9]{7}")) {  // 7桁の数字？
+            if (CodeValidator.isDigits(accountNumber, 7)) {  // 7桁の数字？
                 this.accountNumber = accountNumber;
             } else {
                 throw new IllegalArgumentException("口座番号は7桁の数字でなくてはならない");
@@ -72,13 +72,12 @@ public class AccountNumber {
      * 口座番号の採番
      * 
      * <p>
-     * 口座番号を採番します。
+     * 口座番号を無作為に採番します。既存の口座番号との重複は確認しません。
+     * 重複しない口座番号が必要なときは{@link AccountNumberAllocator}を使用します。
      */
     public void generateAccountNumber() {
-        Random random = new Random();
-        int a = random.nextInt(10000000);
-        String accountNumber = String.format("%07d",a);
-        this.setAccountNumber(accountNumber);
+        int a = ThreadLocalRandom.current().nextInt(10000000);
+        this.setAccountNumber(CodeValidator.toDigits(a, 7));
     }
     /**
      * 文字列表現
@@ -136,6 +135,7 @@ public class AccountNumber {
      * @return 0 比較対象と等しい
      * @return 正 比較対象が小さい
      */
+    @Override
     public int compareTo(AccountNumber o) {
         return this.accountNumber.compareTo(o.accountNumber);
     }
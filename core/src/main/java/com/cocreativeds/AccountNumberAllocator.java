@@ -0,0 +1,215 @@
+package com.cocreativeds;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * 口座番号の採番
+ *
+ * <p>
+ * 金融機関コード、店番、預金種目ごとに、使用済みの口座番号をビットマップ(1,000万ビット、約1.2MB)で管理し、
+ * 重複しない口座番号を採番します。ビットマップは最初の採番または予約のときに作成します。
+ *
+ * <p>
+ * 採番はビットマップの無作為に選んだ位置から始め、以降は前回の採番の続きから空いている口座番号を探します。
+ * 64個の口座番号を1語で判定するため、口座が多い店舗でも一括採番は線形時間で行えます。
+ * 口座番号"0000000"は未開設の口座の初期値のため採番しません。
+ *
+ * <p>
+ * インスタンスはスレッドセーフです。排他制御は金融機関コード、店番、預金種目ごとに行います。
+ */
+public class AccountNumberAllocator {
+
+    /* 口座番号の数(0000000〜9999999) */
+    private static final int NUMBERS = 10_000_000;
+    /* ビットマップの語数 */
+    private static final int WORDS = NUMBERS / Long.SIZE;
+
+    /* 金融機関コード、店番、預金種目ごとのビットマップ */
+    private final ConcurrentHashMap<Integer, Bitmap> bitmaps = new ConcurrentHashMap<>();
+
+    /**
+     * 口座番号を採番する
+     *
+     * @param bankCode 金融機関コード
+     * @param boNumber 店番
+     * @param accountTypeCode 預金種目コード
+     * @return 口座番号
+     * @throws IllegalStateException 口座番号に空きがないとき
+     */
+    public AccountNumber allocate(BankCode bankCode, BranchOfficeNumber boNumber, AccountTypeCode accountTypeCode) {
+        return this.allocate(bankCode, boNumber, accountTypeCode, 1)[0];
+    }
+
+    /**
+     * 口座番号を一括して採番する
+     *
+     * @param bankCode 金融機関コード
+     * @param boNumber 店番
+     * @param accountTypeCode 預金種目コード
+     * @param count 採番する件数
+     * @return 口座番号
+     * @throws IllegalArgumentException 件数が負のとき
+     * @throws IllegalStateException 口座番号の空きが件数に満たないとき
+     */
+    public AccountNumber[] allocate(BankCode bankCode, BranchOfficeNumber boNumber, AccountTypeCode accountTypeCode,
+            int count) {
+        int[] numbers = new int[count < 0 ? 0 : count];
+        this.allocate(bankCode, boNumber, accountTypeCode, numbers, 0, count);
+        AccountNumber[] accountNumbers = new AccountNumber[numbers.length];
+        for (int i = 0; i < numbers.length; i++) {
+            accountNumbers[i] = new AccountNumber(CodeValidator.toDigits(numbers[i], 7));
+        }
+        return accountNumbers;
+    }
+
+    /**
+     * 口座番号を一括して採番する
+     *
+     * <p>
+     * 採番した口座番号を数値のまま配列に格納します。
+     *
+     * @param bankCode 金融機関コード
+     * @param boNumber 店番
+     * @param accountTypeCode 預金種目コード
+     * @param dst 格納先の配列
+     * @param offset 格納を開始する位置
+     * @param count 採番する件数
+     * @throws IllegalArgumentException 件数が負のとき、または格納先の配列の長さが不足しているとき
+     * @throws IllegalStateException 口座番号の空きが件数に満たないとき
+     */
+    void allocate(BankCode bankCode, BranchOfficeNumber boNumber, AccountTypeCode accountTypeCode, int[] dst,
+            int offset, int count) {
+        if (count < 0) {
+            throw new IllegalArgumentException("採番する件数は0以上でなくてはならない");
+        }
+        if (offset < 0 || dst.length - offset < count) {
+            throw new IllegalArgumentException("口座番号を格納する配列の長さが不足しています");
+        }
+        this.bitmap(bankCode, boNumber, accountTypeCode).allocate(dst, offset, count);
+    }
+
+    /**
+     * 口座番号を使用済みにする
+     *
+     * <p>
+     * 既存の口座の口座番号を、採番の対象から除くために使用します。
+     *
+     * @param bankCode 金融機関コード
+     * @param boNumber 店番
+     * @param accountTypeCode 預金種目コード
+     * @param accountNumber 口座番号
+     * @return true 使用済みにした
+     * @return false すでに使用済みだった
+     */
+    public boolean reserve(BankCode bankCode, BranchOfficeNumber boNumber, AccountTypeCode accountTypeCode,
+            AccountNumber accountNumber) {
+        return this.bitmap(bankCode, boNumber, accountTypeCode)
+            .set(CodeValidator.digitsValue(accountNumber.getAccountNumber()), true);
+    }
+
+    /**
+     * 口座番号を未使用に戻す
+     *
+     * @param bankCode 金融機関コード
+     * @param boNumber 店番
+     * @param accountTypeCode 預金種目コード
+     * @param accountNumber 口座番号
+     * @return true 未使用に戻した
+     * @return false 使用済みでなかった
+     */
+    public boolean release(BankCode bankCode, BranchOfficeNumber boNumber, AccountTypeCode accountTypeCode,
+            AccountNumber accountNumber) {
+        int number = CodeValidator.digitsValue(accountNumber.getAccountNumber());
+        if (number == 0) {
+            return false; // "0000000"は常に使用済み
+        }
+        return this.bitmap(bankCode, boNumber, accountTypeCode).set(number, false);
+    }
+
+    /**
+     * 口座番号の空きの数を取得する
+     *
+     * @param bankCode 金融機関コード
+     * @param boNumber 店番
+     * @param accountTypeCode 預金種目コード
+     * @return 採番できる口座番号の数
+     */
+    public int available(BankCode bankCode, BranchOfficeNumber boNumber, AccountTypeCode accountTypeCode) {
+        Bitmap b = this.bitmaps.get(branchKey(bankCode, boNumber, accountTypeCode));
+        return b == null ? NUMBERS - 1 : b.available();
+    }
+
+    /* 金融機関コード、店番、預金種目のビットマップを取得する(ないときは作成する) */
+    private Bitmap bitmap(BankCode bankCode, BranchOfficeNumber boNumber, AccountTypeCode accountTypeCode) {
+        return this.bitmaps.computeIfAbsent(branchKey(bankCode, boNumber, accountTypeCode), k -> new Bitmap());
+    }
+
+    /* 金融機関コード、店番、預金種目コードの8桁の数値 */
+    private static int branchKey(BankCode bankCode, BranchOfficeNumber boNumber, AccountTypeCode accountTypeCode) {
+        return CodeValidator.digitsValue(bankCode.getBankCode()) * 10_000
+            + CodeValidator.digitsValue(boNumber.getBranchOfficeNumber()) * 10
+            + CodeValidator.digitsValue(accountTypeCode.getAccountTypeCode());
+    }
+
+    /**
+     * 使用済みの口座番号のビットマップ
+     */
+    private static final class Bitmap {
+        /* 口座番号nはwords[n / 64]のビット(n % 64) */
+        private final long[] words = new long[WORDS];
+        /* 使用済みの口座番号の数 */
+        private int used;
+        /* 次の採番で探索を開始する語 */
+        private int cursor;
+
+        Bitmap() {
+            this.words[0] = 1L; // "0000000"
+            this.used = 1;
+            this.cursor = ThreadLocalRandom.current().nextInt(WORDS);
+        }
+
+        synchronized void allocate(int[] dst, int offset, int count) {
+            if (NUMBERS - this.used < count) {
+                throw new IllegalStateException("口座番号の空きがない");
+            }
+            int n = 0;
+            int w = this.cursor;
+            while (n < count) {
+                long free = ~this.words[w];
+                while (free != 0L && n < count) {
+                    int bit = Long.numberOfTrailingZeros(free);
+                    free &= free - 1;
+                    this.words[w] |= 1L << bit;
+                    dst[offset + n++] = (w << 6) | bit;
+                }
+                if (n < count) {
+                    w = w + 1 == WORDS ? 0 : w + 1;
+                }
+            }
+            this.cursor = w;
+            this.used += count;
+        }
+
+        synchronized boolean set(int number, boolean value) {
+            int w = number >>> 6;
+            long mask = 1L << number;
+            boolean current = (this.words[w] & mask) != 0L;
+            if (current == value) {
+                return false;
+            }
+            if (value) {
+                this.words[w] |= mask;
+                this.used++;
+            } else {
+                this.words[w] &= ~mask;
+                this.used--;
+            }
+            return true;
+        }
+
+        synchronized int available() {
+            return NUMBERS - this.used;
+        }
+    }
+}
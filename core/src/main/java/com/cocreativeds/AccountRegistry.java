@@ -0,0 +1,222 @@
+package com.cocreativeds;
+
+import java.time.Instant;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * 口座の登録簿
+ *
+ * <p>
+ * 口座識別子から口座を求める、スレッドセーフな登録簿です。口座識別子による検索はハッシュ表
+ * ({@link ConcurrentHashMap})で行い、口座識別子の順序による範囲の検索はスキップリスト
+ * ({@link ConcurrentSkipListMap})で行います。口座識別子はULIDのため、口座識別子の順序は口座を開設した時刻の順序と
+ * 一致します。「ある期間に開設された口座」は全件を走査せずに求められます。
+ *
+ * <p>
+ * 登録と削除は口座識別子ごとに排他制御し、ハッシュ表とスキップリストを同時に更新します。検索は排他制御を
+ * 行いません。範囲の検索の結果は、検索中に行われた登録・削除を反映することも反映しないこともあります。
+ *
+ * <p>
+ * 登録簿は口座識別子の複製をキーとして保持します。登録した後で口座の口座識別子を変更しても、登録簿のキーは
+ * 変わりません。
+ */
+public class AccountRegistry implements Iterable<Account> {
+
+    /* 口座識別子による検索 */
+    private final ConcurrentHashMap<AccountId, Account> accounts;
+    /* 口座識別子の順序による検索 */
+    private final ConcurrentSkipListMap<AccountId, Account> ordered = new ConcurrentSkipListMap<>();
+
+    /**
+     * デフォルトコンストラクター
+     */
+    public AccountRegistry() {
+        this.accounts = new ConcurrentHashMap<>();
+    }
+
+    /**
+     * コンストラクター
+     *
+     * <p>
+     * 指定された口座数を拡張なしで登録できる容量で登録簿を作成します。
+     *
+     * @param expectedSize 登録を予定する口座数
+     * @throws IllegalArgumentException 口座数が負のとき
+     */
+    public AccountRegistry(int expectedSize) {
+        if (expectedSize < 0) {
+            throw new IllegalArgumentException("登録を予定する件数は0以上でなくてはならない");
+        }
+        this.accounts = new ConcurrentHashMap<>(expectedSize);
+    }
+
+    /**
+     * 口座を取得する
+     *
+     * @param accountId 口座識別子
+     * @return 口座、登録されていないときはnull
+     */
+    public Account get(AccountId accountId) {
+        return accountId == null ? null : this.accounts.get(accountId);
+    }
+
+    /**
+     * 口座を登録する
+     *
+     * <p>
+     * 口座の口座識別子をキーとして登録します。同じ口座識別子の口座が登録されているときは置き換えます。
+     *
+     * @param account 口座
+     * @return 以前に登録されていた口座、登録されていなかったときはnull
+     * @throws IllegalArgumentException 口座がnullのとき
+     */
+    public Account put(Account account) {
+        AccountId key = keyOf(account);
+        Account[] previous = new Account[1];
+        this.accounts.compute(key, (k, current) -> {
+            previous[0] = current;
+            this.ordered.put(k, account);
+            return account;
+        });
+        return previous[0];
+    }
+
+    /**
+     * 口座が登録されていないときだけ登録する
+     *
+     * @param account 口座
+     * @return 登録されていた口座、登録されていなかったとき(登録したとき)はnull
+     * @throws IllegalArgumentException 口座がnullのとき
+     */
+    public Account putIfAbsent(Account account) {
+        AccountId key = keyOf(account);
+        Account[] previous = new Account[1];
+        this.accounts.compute(key, (k, current) -> {
+            if (current != null) {
+                previous[0] = current;
+                return current;
+            }
+            this.ordered.put(k, account);
+            return account;
+        });
+        return previous[0];
+    }
+
+    /**
+     * 口座を一括して登録する
+     *
+     * @param accounts 口座
+     * @throws IllegalArgumentException 口座がnullのとき
+     */
+    public void putAll(Iterable<Account> accounts) {
+        for (Account a : accounts) {
+            this.put(a);
+        }
+    }
+
+    /**
+     * 口座の登録を削除する
+     *
+     * @param accountId 口座識別子
+     * @return 削除した口座、登録されていなかったときはnull
+     */
+    public Account remove(AccountId accountId) {
+        if (accountId == null) {
+            return null;
+        }
+        Account[] removed = new Account[1];
+        this.accounts.computeIfPresent(accountId, (k, current) -> {
+            removed[0] = current;
+            this.ordered.remove(k);
+            return null;
+        });
+        return removed[0];
+    }
+
+    /**
+     * 登録されている口座数を取得する
+     *
+     * @return 口座数
+     */
+    public int size() {
+        return this.accounts.size();
+    }
+
+    /**
+     * 口座が登録されているかを判定する
+     *
+     * @return true 口座が登録されていない
+     * @return false 口座が登録されている
+     */
+    public boolean isEmpty() {
+        return this.accounts.isEmpty();
+    }
+
+    /**
+     * 口座識別子の範囲で口座を取得する
+     *
+     * <p>
+     * 口座識別子がfrom以上to未満の口座を口座識別子の昇順で返します。戻り値は登録簿のビューで、
+     * 登録簿の変更が反映されます。
+     *
+     * @param from 口座識別子の範囲(この口座識別子を含む)
+     * @param to 口座識別子の範囲(この口座識別子を含まない)
+     * @return 口座
+     * @throws IllegalArgumentException 範囲がnullのとき、またはfromがtoより大きいとき
+     */
+    public Collection<Account> range(AccountId from, AccountId to) {
+        if (from == null || to == null || from.compareTo(to) > 0) {
+            throw new IllegalArgumentException("口座識別子の範囲が正しくない");
+        }
+        return this.ordered.subMap(from, true, to, false).values();
+    }
+
+    /**
+     * 開設した時刻の範囲で口座を取得する
+     *
+     * <p>
+     * 口座識別子(ULID)のタイムスタンプがfrom以上to未満の口座を口座識別子の昇順で返します。
+     * タイムスタンプはミリ秒の精度で比較します。
+     *
+     * @param from 開設した時刻の範囲(この時刻を含む)
+     * @param to 開設した時刻の範囲(この時刻を含まない)
+     * @return 口座
+     * @throws IllegalArgumentException 範囲がnullのとき、ULIDのタイムスタンプで表せないとき、
+     *         またはfromがtoより後のとき
+     */
+    public Collection<Account> openedBetween(Instant from, Instant to) {
+        if (from == null || to == null) {
+            throw new IllegalArgumentException("口座識別子の範囲が正しくない");
+        }
+        return this.range(lowest(from.toEpochMilli()), lowest(to.toEpochMilli()));
+    }
+
+    /**
+     * 口座識別子の昇順で口座を走査する
+     *
+     * @return 口座のイテレーター
+     */
+    @Override
+    public Iterator<Account> iterator() {
+        return this.ordered.values().iterator();
+    }
+
+    /* 指定された時刻のタイムスタンプを持つ最小の口座識別子 */
+    private static AccountId lowest(long epochMilli) {
+        if (epochMilli < 0 || ULID.MAX_TIME < epochMilli) {
+            throw new IllegalArgumentException("口座識別子の範囲が正しくない");
+        }
+        return new AccountId(BinaryUlid.minOf(epochMilli));
+    }
+
+    /* 口座のキーとする口座識別子の複製 */
+    private static AccountId keyOf(Account account) {
+        if (account == null) {
+            throw new IllegalArgumentException("口座を指定しなくてはならない");
+        }
+        return account.getAccountId().clone();
+    }
+}
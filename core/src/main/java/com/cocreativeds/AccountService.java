@@ -0,0 +1,237 @@
+package com.cocreativeds;
+
+import java.io.Closeable;
+import java.time.LocalDate;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * 口座の照会・記帳の受け付け
+ *
+ * <p>
+ * 残高照会、預け入れ、払い戻し、取引履歴の照会の要求を受け付け、要求ごとに仮想スレッドで処理します。
+ * 要求の結果は{@link CompletableFuture}で返し、受け付けたスレッドは処理を待ちません。
+ *
+ * <p>
+ * 先行書き込みログが設定された口座の記帳は、取引がディスクに書き出されるまで待ちます。書き出しの待ち合わせは
+ * {@link java.util.concurrent.locks.ReentrantLock}で行うため、仮想スレッドはキャリアスレッドを占有せずに待ちます。
+ * 多数の要求が同時に書き出しを待つほど、グループコミットで1回の書き出しにまとめられる取引が増えます。
+ *
+ * <p>
+ * 同時に処理する要求の数には上限を設けます。上限を超えた要求は処理せずに、{@link RejectedExecutionException}で
+ * 完了します。仮想スレッドのスタックや待ち行列が際限なく増えることはありません。
+ */
+public class AccountService implements Closeable {
+
+    /* 口座の登録簿 */
+    private final AccountRegistry registry;
+    /* 要求を処理するスレッド */
+    private final ExecutorService executor;
+    /* 同時に処理する要求の数の上限 */
+    private final int maxRequests;
+    /* 処理中の要求の許可 */
+    private final Semaphore permits;
+
+    /**
+     * コンストラクター
+     *
+     * <p>
+     * 要求ごとに仮想スレッドを作成して処理します。
+     *
+     * @param registry 口座の登録簿
+     * @param maxRequests 同時に処理する要求の数の上限
+     * @throws IllegalArgumentException 登録簿がnullのとき、または上限が1以上でないとき
+     */
+    public AccountService(AccountRegistry registry, int maxRequests) {
+        this(registry, Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("account-service-", 0).factory()),
+            maxRequests);
+    }
+
+    /**
+     * コンストラクター
+     *
+     * <p>
+     * 指定されたスレッドで要求を処理します。プラットフォームスレッドのプールと比較するときなどに使用します。
+     * スレッドは{@link #close()}で終了します。
+     *
+     * @param registry 口座の登録簿
+     * @param executor 要求を処理するスレッド
+     * @param maxRequests 同時に処理する要求の数の上限
+     * @throws IllegalArgumentException 登録簿またはスレッドがnullのとき、または上限が1以上でないとき
+     */
+    public AccountService(AccountRegistry registry, ExecutorService executor, int maxRequests) {
+        if (registry == null || executor == null) {
+            throw new IllegalArgumentException("口座の登録簿と要求を処理するスレッドを指定しなくてはならない");
+        }
+        if (maxRequests < 1) {
+            throw new IllegalArgumentException("同時に処理する要求の数の上限は1以上でなくてはならない");
+        }
+        this.registry = registry;
+        this.executor = executor;
+        this.maxRequests = maxRequests;
+        this.permits = new Semaphore(maxRequests);
+    }
+
+    /**
+     * 残高を照会する
+     *
+     * @param accountId 口座識別子
+     * @param currency 通貨コード
+     * @return 指定された通貨の口座残高
+     */
+    public CompletableFuture<Long> getBalance(AccountId accountId, String currency) {
+        return this.submit(accountId, a -> a.getBalance(currency));
+    }
+
+    /**
+     * 預け入れる
+     *
+     * @param accountId 口座識別子
+     * @param amount 預け入れする金額
+     * @param currency 通貨コード
+     * @param trxDate 取引日
+     * @param description 摘要
+     * @return 記帳(先行書き込みログが設定されているときはディスクへの書き出し)の完了
+     * @see Account#deposit(long, String, LocalDate, String)
+     */
+    public CompletableFuture<Void> deposit(AccountId accountId, long amount, String currency, LocalDate trxDate,
+            String description) {
+        return this.submit(accountId, a -> {
+            a.deposit(amount, currency, trxDate, description);
+            return null;
+        });
+    }
+
+    /**
+     * 払い戻す
+     *
+     * @param accountId 口座識別子
+     * @param amount 払い戻す金額
+     * @param currency 通貨コード
+     * @param trxDate 取引日
+     * @param description 摘要
+     * @return 記帳(先行書き込みログが設定されているときはディスクへの書き出し)の完了
+     * @see Account#withdrawal(long, String, LocalDate, String)
+     */
+    public CompletableFuture<Void> withdrawal(AccountId accountId, long amount, String currency, LocalDate trxDate,
+            String description) {
+        return this.submit(accountId, a -> {
+            a.withdrawal(amount, currency, trxDate, description);
+            return null;
+        });
+    }
+
+    /**
+     * 取引履歴の最初のページを照会する
+     *
+     * @param accountId 口座識別子
+     * @param fromDate 取引日の範囲(この日を含む)
+     * @param toDate 取引日の範囲(この日を含む)
+     * @param pageSize 1ページの件数
+     * @return 取引履歴のページ
+     * @see Account#getTransactionHistories(LocalDate, LocalDate, int)
+     */
+    public CompletableFuture<TransactionHistoryPage> getTransactionHistories(AccountId accountId,
+            LocalDate fromDate, LocalDate toDate, int pageSize) {
+        return this.submit(accountId, a -> a.getTransactionHistories(fromDate, toDate, pageSize));
+    }
+
+    /**
+     * 取引履歴の続きのページを照会する
+     *
+     * @param accountId 口座識別子
+     * @param cursor 前のページのカーソル
+     * @param pageSize 1ページの件数
+     * @return 取引履歴のページ
+     * @see Account#getTransactionHistories(String, int)
+     */
+    public CompletableFuture<TransactionHistoryPage> getTransactionHistories(AccountId accountId, String cursor,
+            int pageSize) {
+        return this.submit(accountId, a -> a.getTransactionHistories(cursor, pageSize));
+    }
+
+    /**
+     * 処理中の要求の数を取得する
+     *
+     * @return 処理中の要求の数
+     */
+    public int getActiveRequests() {
+        return this.maxRequests - this.permits.availablePermits();
+    }
+
+    /**
+     * 受け付けを終了する
+     *
+     * <p>
+     * 新しい要求は{@link RejectedExecutionException}で完了します。処理中の要求があるときは、終わるまで待ちます。
+     */
+    @Override
+    public void close() {
+        this.executor.shutdown();
+        boolean interrupted = false;
+        while (true) {
+            try {
+                if (this.executor.awaitTermination(1, TimeUnit.MINUTES)) {
+                    break;
+                }
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * 要求を受け付ける
+     *
+     * <p>
+     * 口座が見つからないときは{@link IllegalArgumentException}で、処理中の要求の数が上限に達しているとき、
+     * または受け付けを終了したときは{@link RejectedExecutionException}で完了します。
+     * 要求の処理でスローされた例外はそのまま完了の例外とします。
+     *
+     * @param accountId 口座識別子
+     * @param request 口座に対する処理
+     * @return 処理の結果
+     */
+    private <T> CompletableFuture<T> submit(AccountId accountId, Function<Account, T> request) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        if (!this.permits.tryAcquire()) {
+            result.completeExceptionally(new RejectedExecutionException("同時に処理できる要求の数を超えている"));
+            return result;
+        }
+        try {
+            this.executor.execute(() -> {
+                T value = null;
+                Throwable failure = null;
+                try {
+                    Account a = this.registry.get(accountId);
+                    if (a == null) {
+                        throw new IllegalArgumentException("口座が見つからない");
+                    }
+                    value = request.apply(a);
+                } catch (Throwable e) {
+                    failure = e;
+                } finally {
+                    // 完了を待っていたスレッドがすぐに次の要求を受け付けられるように、完了する前に許可を返す
+                    this.permits.release();
+                }
+                if (failure == null) {
+                    result.complete(value);
+                } else {
+                    result.completeExceptionally(failure);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            this.permits.release();
+            result.completeExceptionally(e);
+        }
+        return result;
+    }
+}
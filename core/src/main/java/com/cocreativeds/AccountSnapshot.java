@@ -0,0 +1,708 @@
+package com.cocreativeds;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.CRC32C;
+
+/**
+ * Account book snapshot.
+ *
+ * <p>
+ * A compact binary image of every account: the binary ULID, the packed account key, the
+ * balances (yen and foreign currencies) and the accrued interest with the day it was accrued through, as of a log sequence number of the write-ahead log. At startup the newest snapshot is
+ * loaded and only the log records after it are replayed.
+ *
+ * <p>
+ * 口座のスナップショット
+ * <p>
+ * すべての口座の口座識別子(バイナリ型ULID)、口座キー({@link PackedAccountKey})、口座残高(円と外貨)、未払いの利息と
+ * 利息を計上済みの最後の取引日を、
+ * 先行書き込みログのあるログ順序番号の時点で保存したものです。起動時は最新のスナップショットを読み込み、そのログ順序番号より後の
+ * レコードだけをログから適用します。
+ *
+ * <p>
+ * スナップショットの口座残高は、口座のインスタンスからではなく、前回のスナップショットに先行書き込みログの
+ * レコードを適用して求めます。取引の処理と並行して作成しても、口座残高とログ順序番号が食い違うことはありません。
+ * 口座のインスタンスからは口座識別子と口座キー(店番や口座番号の変更を含む)だけを取得します。
+ * ログに記録された口座表記変更({@link Account#renumber(long)})は、ログから適用して口座キーに反映します。
+ *
+ * <p>
+ * ファイルの形式(ビッグエンディアン)
+ * <pre>
+ * ヘッダー    識別子"TCBS"(int)、版数(int)、ログ順序番号(long)、口座数(int)
+ * 口座(32バイト × 口座数)  口座識別子の上位64ビット(long)、下位64ビット(long)、口座キー(long)、円の口座残高(long)
+ * 外貨(版数2以上のとき)  件数(int)、外貨の口座残高(16バイト × 件数)
+ *             外貨の口座残高は口座の位置(int)、通貨インデックス(int)、口座残高(long)
+ * 利息(版数3以上のとき)  件数(int)、未払いの利息(版数3は12バイト、版数4は16バイト × 件数)
+ *             未払いの利息は口座の位置(int)、未払いの利息(long、1/(365×100万)円単位)、
+ *             利息を計上済みの最後の取引日(int、エポック日、版数4のときだけ)
+ * トレーラー  ヘッダー、口座、外貨、利息のCRC-32C(int)
+ * </pre>
+ * 外貨の口座残高は0でないものだけを、未払いの利息は未払いの利息が0でないか利息を計上したことのある口座だけを
+ * 書き込みます。利息の項目があるスナップショットは版数4で、利息の項目がないスナップショットは版数2で、
+ * 外貨の口座残高もないスナップショットは版数1で書き込みます。版数3(利息を計上済みの取引日を含まない)の
+ * スナップショットも読み込めます。
+ */
+public final class AccountSnapshot {
+
+    /**
+     * 口座1件の長さ(バイト)
+     */
+    public static final int ENTRY_SIZE = 32;
+
+    /* ファイルの識別子("TCBS") */
+    private static final int MAGIC = 0x54434253;
+    /* ファイルの版数 */
+    private static final int VERSION = 1;
+    /* 外貨の口座残高を含むファイルの版数 */
+    private static final int FOREIGN_VERSION = 2;
+    /* 未払いの利息を含むファイルの版数 */
+    private static final int ACCRUED_VERSION = 3;
+    /* 未払いの利息と利息を計上済みの取引日を含むファイルの版数 */
+    private static final int ACCRUED_THROUGH_VERSION = 4;
+    /* 外貨の口座残高1件の長さ */
+    private static final int FOREIGN_ENTRY_SIZE = 16;
+    /* 未払いの利息1件の長さ(版数3) */
+    private static final int ACCRUED_ENTRY_SIZE = 12;
+    /* 未払いの利息1件の長さ(版数4) */
+    private static final int ACCRUED_THROUGH_ENTRY_SIZE = 16;
+    /* 利息を計上していない口座の計上済みの取引日 */
+    private static final int NOT_ACCRUED = Integer.MIN_VALUE;
+    /* ヘッダーの長さ */
+    private static final int HEADER_SIZE = 20;
+    /* トレーラーの長さ */
+    private static final int TRAILER_SIZE = 4;
+    /* 入出力の単位(口座の長さの倍数) */
+    private static final int IO_BUFFER_SIZE = ENTRY_SIZE * 32 * 1024;
+
+    /* ファイル名の接頭辞と接尾辞(snapshot-ログ順序番号20桁.bin) */
+    private static final String FILE_PREFIX = "snapshot-";
+    private static final String FILE_SUFFIX = ".bin";
+
+    /* 口座のない、ログ順序番号0のスナップショット */
+    private static final AccountSnapshot EMPTY = new AccountSnapshot(0L, 0, new long[0], new long[0], new long[0],
+        new long[0], new long[0][], new long[0], new int[0]);
+
+    /* ログ順序番号 */
+    private final long lsn;
+    /* 口座数 */
+    private final int size;
+    /* 口座識別子の上位64ビット */
+    private final long[] msbs;
+    /* 口座識別子の下位64ビット */
+    private final long[] lsbs;
+    /* 口座キー */
+    private final long[] keys;
+    /* 円の口座残高 */
+    private final long[] balances;
+    /* 外貨の口座残高(口座ごとの通貨インデックスを添字とする配列、外貨の口座残高のない口座はnull) */
+    private final long[][] foreign;
+    /* 未払いの利息(1/(365×100万)円単位) */
+    private final long[] accrued;
+    /* 利息を計上済みの最後の取引日(エポック日、利息を計上していない口座はNOT_ACCRUED) */
+    private final int[] accruedThrough;
+
+    private AccountSnapshot(long lsn, int size, long[] msbs, long[] lsbs, long[] keys, long[] balances,
+            long[][] foreign, long[] accrued, int[] accruedThrough) {
+        this.lsn = lsn;
+        this.size = size;
+        this.msbs = msbs;
+        this.lsbs = lsbs;
+        this.keys = keys;
+        this.balances = balances;
+        this.foreign = foreign;
+        this.accrued = accrued;
+        this.accruedThrough = accruedThrough;
+    }
+
+    /**
+     * 口座のないスナップショットを取得する
+     *
+     * <p>
+     * 最初のスナップショットを作成するときの前回のスナップショットとして使用します。
+     *
+     * @return ログ順序番号0の口座のないスナップショット
+     */
+    public static AccountSnapshot empty() {
+        return EMPTY;
+    }
+
+    /**
+     * スナップショットを作成する
+     *
+     * <p>
+     * 前回のスナップショットに、先行書き込みログの書き出し済みのレコードのうち前回のスナップショットより後のものを
+     * 適用して、新しいスナップショットを作成します。口座のインスタンスからは口座識別子と口座キーを取得し、
+     * 取引のない口座も含めます。取引の処理と並行して呼び出すことができます。
+     *
+     * @param previous 前回のスナップショット
+     * @param log 先行書き込みログ
+     * @param accounts 口座
+     * @return スナップショット
+     * @throws IllegalArgumentException パラメーターがnullのとき、または前回のスナップショットがログより新しいとき
+     * @throws IOException ログファイルを読み込めないとき
+     */
+    public static AccountSnapshot checkpoint(AccountSnapshot previous, WriteAheadLog log, Iterable<Account> accounts)
+            throws IOException {
+        if (previous == null || log == null || accounts == null) {
+            throw new IllegalArgumentException("前回のスナップショット、ログ、口座を指定しなくてはならない");
+        }
+        long toLsn = log.getDurableLsn();
+        if (toLsn < previous.lsn) {
+            throw new IllegalArgumentException("スナップショットがログより新しい");
+        }
+        Builder b = new Builder(previous);
+        for (Account a : accounts) {
+            AccountId id = a.getAccountId();
+            long msb = id.mostSignificantBits();
+            long lsb = id.leastSignificantBits();
+            if (msb == 0L && lsb == 0L) {
+                continue; // 開設前の口座
+            }
+            int i = b.indexOf(msb, lsb);
+            if (i < 0) {
+                b.add(msb, lsb, a.accountKey(), 0L);
+            } else {
+                b.keys[i] = a.accountKey(); // 店番や口座番号の変更を反映する
+            }
+        }
+        log.read(previous.lsn, toLsn, (msb, lsb, accountKey, type, operationTime, trxDate, amount, currencyIndex) -> {
+            int i = b.indexOf(msb, lsb);
+            if (i < 0) {
+                i = b.add(msb, lsb, accountKey, 0L);
+            }
+            b.apply(i, type, trxDate, amount, currencyIndex);
+        });
+        return b.build(toLsn);
+    }
+
+    /**
+     * 口座を復元する
+     *
+     * <p>
+     * スナップショットの口座のインスタンスを作成し、先行書き込みログのスナップショットより後のレコードを適用します。
+     * スナップショットの後に開設された口座は、レコードの口座識別子と口座キーから作成します。
+     * 通帳記帳はスナップショットの時点の口座残高を起点とし、ログから適用した明細を未記帳として記帳します
+     * ({@link Account#updatePassbook})。ログには取引を記録する前に呼び出します。
+     *
+     * @param log 先行書き込みログ
+     * @return 口座
+     * @throws IllegalArgumentException ログがnullのとき、またはスナップショットがログより新しいとき
+     * @throws IllegalStateException ログに取引を記録した後に呼び出したとき
+     * @throws IOException ログファイルを読み込めないとき
+     */
+    public List<Account> restore(WriteAheadLog log) throws IOException {
+        if (log == null) {
+            throw new IllegalArgumentException("ログを指定しなくてはならない");
+        }
+        List<Account> accounts = new ArrayList<>(this.size);
+        for (int i = 0; i < this.size; i++) {
+            accounts.add(newAccount(this.msbs[i], this.lsbs[i], this.keys[i], this.balances[i], this.foreign[i],
+                this.accrued[i], this.accruedThrough[i]));
+        }
+        Builder b = new Builder(this);
+        log.replay(this.lsn, (msb, lsb, accountKey, type, operationTime, trxDate, amount, currencyIndex) -> {
+            int i = b.indexOf(msb, lsb);
+            if (i < 0) {
+                i = b.add(msb, lsb, accountKey, 0L);
+                accounts.add(newAccount(msb, lsb, accountKey, 0L, null, 0L, NOT_ACCRUED));
+            }
+            accounts.get(i).replay(type, operationTime, trxDate, amount, currencyIndex);
+        });
+        return accounts;
+    }
+
+    /* 口座のインスタンスを作成する */
+    private static Account newAccount(long msb, long lsb, long key, long balance, long[] foreign, long accrued,
+            int accruedThrough) {
+        Account a = new Account(PackedAccountKey.toBankCode(key), PackedAccountKey.toBranchOfficeNumber(key),
+            PackedAccountKey.toAccountTypeCode(key), PackedAccountKey.toAccountNumber(key),
+            new AccountId(new BinaryUlid(msb, lsb)));
+        if (balance != 0L) {
+            a.credit(balance);
+        }
+        if (foreign != null) {
+            for (int c = CurrencyTable.JPY + 1; c < foreign.length; c++) {
+                if (foreign[c] != 0L) {
+                    a.credit(foreign[c], c);
+                }
+            }
+        }
+        a.accruedInterest(accrued);
+        a.accruedThrough(accruedThrough);
+        a.startPassbook();
+        return a;
+    }
+
+    /**
+     * ログ順序番号を取得する
+     *
+     * @return スナップショットに反映済みの最後のログ順序番号
+     */
+    public long getLsn() {
+        return this.lsn;
+    }
+
+    /**
+     * 口座数を取得する
+     *
+     * @return 口座数
+     */
+    public int size() {
+        return this.size;
+    }
+
+    /**
+     * スナップショットをファイルに書き込む
+     *
+     * <p>
+     * 一時ファイルに書き込んでディスクに書き出した後、指定されたファイルに置き換えます。
+     * 書き込みの途中で停止しても、指定されたファイルが不完全な内容になることはありません。
+     *
+     * @param path ファイル
+     * @throws IOException ファイルに書き込めないとき
+     */
+    public void write(Path path) throws IOException {
+        Path tmp = path.resolveSibling(path.getFileName() + ".tmp");
+        CRC32C crc = new CRC32C();
+        try (FileChannel ch = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer buffer = ByteBuffer.allocateDirect(IO_BUFFER_SIZE);
+            int foreignCount = this.foreignCount();
+            int accruedCount = this.accruedCount();
+            int version = accruedCount > 0 ? ACCRUED_THROUGH_VERSION : foreignCount > 0 ? FOREIGN_VERSION : VERSION;
+            buffer.putInt(MAGIC).putInt(version).putLong(this.lsn).putInt(this.size);
+            writeFully(ch, buffer, crc);
+            for (int i = 0; i < this.size; i++) {
+                if (buffer.remaining() < ENTRY_SIZE) {
+                    writeFully(ch, buffer, crc);
+                }
+                buffer.putLong(this.msbs[i]).putLong(this.lsbs[i]).putLong(this.keys[i]).putLong(this.balances[i]);
+            }
+            if (version >= FOREIGN_VERSION) {
+                if (buffer.remaining() < Integer.BYTES) {
+                    writeFully(ch, buffer, crc);
+                }
+                buffer.putInt(foreignCount);
+                for (int i = 0; i < this.size; i++) {
+                    long[] f = this.foreign[i];
+                    for (int c = CurrencyTable.JPY + 1; f != null && c < f.length; c++) {
+                        if (f[c] != 0L) {
+                            if (buffer.remaining() < FOREIGN_ENTRY_SIZE) {
+                                writeFully(ch, buffer, crc);
+                            }
+                            buffer.putInt(i).putInt(c).putLong(f[c]);
+                        }
+                    }
+                }
+            }
+            if (version == ACCRUED_THROUGH_VERSION) {
+                if (buffer.remaining() < Integer.BYTES) {
+                    writeFully(ch, buffer, crc);
+                }
+                buffer.putInt(accruedCount);
+                for (int i = 0; i < this.size; i++) {
+                    if (this.accrued[i] != 0L || this.accruedThrough[i] != NOT_ACCRUED) {
+                        if (buffer.remaining() < ACCRUED_THROUGH_ENTRY_SIZE) {
+                            writeFully(ch, buffer, crc);
+                        }
+                        buffer.putInt(i).putLong(this.accrued[i]).putInt(this.accruedThrough[i]);
+                    }
+                }
+            }
+            writeFully(ch, buffer, crc);
+            buffer.putInt((int)crc.getValue());
+            writeFully(ch, buffer, null);
+            ch.force(true);
+        }
+        Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /* 0でない外貨の口座残高の件数を求める */
+    private int foreignCount() {
+        int count = 0;
+        for (int i = 0; i < this.size; i++) {
+            long[] f = this.foreign[i];
+            for (int c = CurrencyTable.JPY + 1; f != null && c < f.length; c++) {
+                if (f[c] != 0L) {
+                    count++;
+                }
+            }
+        }
+        return count;
+    }
+
+    /* 未払いの利息が0でないか、利息を計上したことのある口座の件数を求める */
+    private int accruedCount() {
+        int count = 0;
+        for (int i = 0; i < this.size; i++) {
+            if (this.accrued[i] != 0L || this.accruedThrough[i] != NOT_ACCRUED) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /* バッファの内容をすべて書き込み、バッファを空にする */
+    private static void writeFully(FileChannel ch, ByteBuffer buffer, CRC32C crc) throws IOException {
+        buffer.flip();
+        if (crc != null) {
+            crc.update(buffer.duplicate());
+        }
+        while (buffer.hasRemaining()) {
+            ch.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    /**
+     * スナップショットをファイルから読み込む
+     *
+     * @param path ファイル
+     * @return スナップショット
+     * @throws IOException ファイルを読み込めないとき、またはファイルが壊れているとき
+     */
+    public static AccountSnapshot load(Path path) throws IOException {
+        try (FileChannel ch = FileChannel.open(path, StandardOpenOption.READ)) {
+            ByteBuffer buffer = ByteBuffer.allocateDirect(IO_BUFFER_SIZE);
+            CRC32C crc = new CRC32C();
+            buffer.limit(HEADER_SIZE);
+            readFully(ch, buffer, crc);
+            int magic = buffer.getInt();
+            int version = buffer.getInt();
+            long lsn = buffer.getLong();
+            int size = buffer.getInt();
+            long entriesEnd = HEADER_SIZE + (long)size * ENTRY_SIZE;
+            if (magic != MAGIC || version < VERSION || ACCRUED_THROUGH_VERSION < version || lsn < 0 || size < 0
+                || (version == VERSION && ch.size() != entriesEnd + TRAILER_SIZE)
+                || (version == FOREIGN_VERSION && ch.size() < entriesEnd + Integer.BYTES + TRAILER_SIZE)
+                || (version >= ACCRUED_VERSION && ch.size() < entriesEnd + 2 * Integer.BYTES + TRAILER_SIZE)) {
+                throw new IOException("スナップショットが壊れています: " + path);
+            }
+            long[] msbs = new long[size];
+            long[] lsbs = new long[size];
+            long[] keys = new long[size];
+            long[] balances = new long[size];
+            int i = 0;
+            while (i < size) {
+                buffer.clear();
+                buffer.limit(Math.min(IO_BUFFER_SIZE, (size - i) * ENTRY_SIZE));
+                readFully(ch, buffer, crc);
+                while (buffer.hasRemaining()) {
+                    msbs[i] = buffer.getLong();
+                    lsbs[i] = buffer.getLong();
+                    keys[i] = buffer.getLong();
+                    balances[i] = buffer.getLong();
+                    i++;
+                }
+            }
+            long[][] foreign = new long[size][];
+            long[] accrued = new long[size];
+            int[] accruedThrough = new int[size];
+            Arrays.fill(accruedThrough, NOT_ACCRUED);
+            if (version >= FOREIGN_VERSION) {
+                long end = readForeign(ch, buffer, crc, foreign, entriesEnd, version >= ACCRUED_VERSION, path);
+                if (version >= ACCRUED_VERSION) {
+                    readAccrued(ch, buffer, crc, accrued, accruedThrough, version == ACCRUED_THROUGH_VERSION, end,
+                        path);
+                }
+            }
+            buffer.clear();
+            buffer.limit(TRAILER_SIZE);
+            readFully(ch, buffer, null);
+            if (buffer.getInt() != (int)crc.getValue()) {
+                throw new IOException("スナップショットが壊れています: " + path);
+            }
+            return new AccountSnapshot(lsn, size, msbs, lsbs, keys, balances, foreign, accrued, accruedThrough);
+        }
+    }
+
+    /* 外貨の口座残高を読み込み、続く項目の位置を返す(followedは利息が続くとき) */
+    private static long readForeign(FileChannel ch, ByteBuffer buffer, CRC32C crc, long[][] foreign,
+            long entriesEnd, boolean followed, Path path) throws IOException {
+        buffer.clear();
+        buffer.limit(Integer.BYTES);
+        readFully(ch, buffer, crc);
+        int count = buffer.getInt();
+        long end = entriesEnd + Integer.BYTES + (long)count * FOREIGN_ENTRY_SIZE;
+        if (count < 0 || (followed ? ch.size() < end + Integer.BYTES + TRAILER_SIZE
+            : ch.size() != end + TRAILER_SIZE)) {
+            throw new IOException("スナップショットが壊れています: " + path);
+        }
+        int n = 0;
+        while (n < count) {
+            buffer.clear();
+            buffer.limit(Math.min(IO_BUFFER_SIZE, (count - n) * FOREIGN_ENTRY_SIZE));
+            readFully(ch, buffer, crc);
+            while (buffer.hasRemaining()) {
+                int i = buffer.getInt();
+                int c = buffer.getInt();
+                long balance = buffer.getLong();
+                if (i < 0 || foreign.length <= i || c <= CurrencyTable.JPY || CurrencyTable.size() <= c) {
+                    throw new IOException("スナップショットが壊れています: " + path);
+                }
+                if (foreign[i] == null) {
+                    foreign[i] = new long[CurrencyTable.size()];
+                }
+                foreign[i][c] = balance;
+                n++;
+            }
+        }
+        return end;
+    }
+
+    /* 未払いの利息を読み込む(withThroughは利息を計上済みの取引日を含む版数4のとき) */
+    private static void readAccrued(FileChannel ch, ByteBuffer buffer, CRC32C crc, long[] accrued,
+            int[] accruedThrough, boolean withThrough, long start, Path path) throws IOException {
+        int entrySize = withThrough ? ACCRUED_THROUGH_ENTRY_SIZE : ACCRUED_ENTRY_SIZE;
+        buffer.clear();
+        buffer.limit(Integer.BYTES);
+        readFully(ch, buffer, crc);
+        int count = buffer.getInt();
+        if (count < 0 || ch.size() != start + Integer.BYTES + (long)count * entrySize + TRAILER_SIZE) {
+            throw new IOException("スナップショットが壊れています: " + path);
+        }
+        int n = 0;
+        while (n < count) {
+            buffer.clear();
+            buffer.limit(Math.min(IO_BUFFER_SIZE / entrySize, count - n) * entrySize);
+            readFully(ch, buffer, crc);
+            while (buffer.hasRemaining()) {
+                int i = buffer.getInt();
+                if (i < 0 || accrued.length <= i) {
+                    throw new IOException("スナップショットが壊れています: " + path);
+                }
+                accrued[i] = buffer.getLong();
+                if (withThrough) {
+                    accruedThrough[i] = buffer.getInt();
+                }
+                n++;
+            }
+        }
+    }
+
+    /* バッファの上限まで読み込み、読み込んだ内容を読み出せる状態にする */
+    private static void readFully(FileChannel ch, ByteBuffer buffer, CRC32C crc) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (ch.read(buffer) < 0) {
+                throw new IOException("スナップショットが壊れています");
+            }
+        }
+        buffer.flip();
+        if (crc != null) {
+            crc.update(buffer.duplicate());
+        }
+    }
+
+    /**
+     * ディレクトリから最新のスナップショットを読み込む
+     *
+     * <p>
+     * ログ順序番号が最も大きいスナップショットを読み込みます。スナップショットが壊れているときは、
+     * その前のスナップショットを読み込みます。
+     *
+     * @param dir ディレクトリ
+     * @return 最新のスナップショット、スナップショットがないときは{@link #empty()}
+     * @throws IOException ディレクトリを読み込めないとき
+     */
+    public static AccountSnapshot loadLatest(Path dir) throws IOException {
+        long[] lsns = list(dir);
+        for (int i = lsns.length - 1; i >= 0; i--) {
+            try {
+                return load(pathOf(dir, lsns[i]));
+            } catch (IOException e) {
+                // 壊れているスナップショットは使用しない
+            }
+        }
+        return EMPTY;
+    }
+
+    /**
+     * スナップショットのファイルを求める
+     *
+     * @param dir ディレクトリ
+     * @param lsn ログ順序番号
+     * @return ファイル(snapshot-ログ順序番号20桁.bin)
+     */
+    static Path pathOf(Path dir, long lsn) {
+        String digits = Long.toString(lsn);
+        return dir.resolve(FILE_PREFIX + "0".repeat(20 - digits.length()) + digits + FILE_SUFFIX);
+    }
+
+    /**
+     * ディレクトリにあるスナップショットのログ順序番号を求める
+     *
+     * @param dir ディレクトリ
+     * @return ログ順序番号(昇順)
+     * @throws IOException ディレクトリを読み込めないとき
+     */
+    static long[] list(Path dir) throws IOException {
+        if (!Files.isDirectory(dir)) {
+            return new long[0];
+        }
+        long[] lsns = new long[8];
+        int count = 0;
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(dir, FILE_PREFIX + "*" + FILE_SUFFIX)) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                String digits = name.substring(FILE_PREFIX.length(), name.length() - FILE_SUFFIX.length());
+                if (!CodeValidator.isDigits(digits, 20)) {
+                    continue;
+                }
+                if (count == lsns.length) {
+                    lsns = Arrays.copyOf(lsns, count * 2);
+                }
+                lsns[count++] = Long.parseLong(digits);
+            }
+        }
+        lsns = Arrays.copyOf(lsns, count);
+        Arrays.sort(lsns);
+        return lsns;
+    }
+
+    /**
+     * スナップショットの組み立て
+     *
+     * <p>
+     * 口座識別子から口座の位置を求めるため、オープンアドレス法のハッシュ表を持ちます。
+     */
+    private static final class Builder {
+
+        /* ハッシュ値を求めるための乗数(黄金比) */
+        private static final long GOLDEN_RATIO = 0x9e3779b97f4a7c15L;
+
+        long[] msbs;
+        long[] lsbs;
+        long[] keys;
+        long[] balances;
+        long[][] foreign;
+        long[] accrued;
+        int[] accruedThrough;
+        int size;
+
+        /* 口座の位置 + 1(0は空き) */
+        private int[] slots;
+        private int shift;
+
+        Builder(AccountSnapshot base) {
+            int capacity = Math.max(16, base.size + base.size / 4);
+            this.msbs = Arrays.copyOf(base.msbs, capacity);
+            this.lsbs = Arrays.copyOf(base.lsbs, capacity);
+            this.keys = Arrays.copyOf(base.keys, capacity);
+            this.balances = Arrays.copyOf(base.balances, capacity);
+            this.accrued = Arrays.copyOf(base.accrued, capacity);
+            this.accruedThrough = Arrays.copyOf(base.accruedThrough, capacity);
+            this.foreign = new long[capacity][];
+            for (int i = 0; i < base.size; i++) {
+                this.foreign[i] = base.foreign[i] == null ? null : base.foreign[i].clone();
+            }
+            this.size = base.size;
+            this.rehash(capacity);
+        }
+
+        /* 口座の位置を求める(ないときは-1) */
+        int indexOf(long msb, long lsb) {
+            int mask = this.slots.length - 1;
+            for (int s = this.slotOf(msb, lsb); ; s = (s + 1) & mask) {
+                int i = this.slots[s] - 1;
+                if (i < 0) {
+                    return -1;
+                }
+                if (this.msbs[i] == msb && this.lsbs[i] == lsb) {
+                    return i;
+                }
+            }
+        }
+
+        /* 口座を追加して位置を返す */
+        int add(long msb, long lsb, long key, long balance) {
+            if (this.size == this.msbs.length) {
+                int capacity = this.size * 2;
+                this.msbs = Arrays.copyOf(this.msbs, capacity);
+                this.lsbs = Arrays.copyOf(this.lsbs, capacity);
+                this.keys = Arrays.copyOf(this.keys, capacity);
+                this.balances = Arrays.copyOf(this.balances, capacity);
+                this.accrued = Arrays.copyOf(this.accrued, capacity);
+                this.accruedThrough = Arrays.copyOf(this.accruedThrough, capacity);
+                this.foreign = Arrays.copyOf(this.foreign, capacity);
+                this.rehash(capacity);
+            }
+            int i = this.size++;
+            this.msbs[i] = msb;
+            this.lsbs[i] = lsb;
+            this.keys[i] = key;
+            this.balances[i] = balance;
+            this.accruedThrough[i] = NOT_ACCRUED;
+            this.insert(i);
+            return i;
+        }
+
+        /* 口座にレコードを適用する(口座のインスタンスの回復と同じ規則で、口座残高、未払いの利息、口座キーを更新する) */
+        void apply(int i, TransactionType type, int trxDate, long amount, int currencyIndex) {
+            if (type == TransactionType.INTEREST_ACCRUAL) {
+                this.accrued[i] += amount;
+                this.accruedThrough[i] = Math.max(this.accruedThrough[i], trxDate);
+                return;
+            }
+            if (type == TransactionType.ACCOUNT_KEY_CHANGE) {
+                this.keys[i] = amount;
+                return;
+            }
+            this.adjust(i, currencyIndex, type.isCredit() ? amount : -amount);
+            if (type == TransactionType.INTEREST && currencyIndex == CurrencyTable.JPY) {
+                this.accrued[i] = InterestAccrual.deduct(this.accrued[i], amount);
+            }
+        }
+
+        /* 口座の指定された通貨の口座残高を増減する */
+        private void adjust(int i, int currencyIndex, long delta) {
+            if (currencyIndex == CurrencyTable.JPY) {
+                this.balances[i] += delta;
+                return;
+            }
+            if (this.foreign[i] == null) {
+                this.foreign[i] = new long[CurrencyTable.size()];
+            }
+            this.foreign[i][currencyIndex] += delta;
+        }
+
+        AccountSnapshot build(long lsn) {
+            return new AccountSnapshot(lsn, this.size, Arrays.copyOf(this.msbs, this.size),
+                Arrays.copyOf(this.lsbs, this.size), Arrays.copyOf(this.keys, this.size),
+                Arrays.copyOf(this.balances, this.size), Arrays.copyOf(this.foreign, this.size),
+                Arrays.copyOf(this.accrued, this.size), Arrays.copyOf(this.accruedThrough, this.size));
+        }
+
+        /* 口座の数の2倍以上の2のべき乗の大きさでハッシュ表を作り直す */
+        private void rehash(int capacity) {
+            int length = Integer.highestOneBit(Math.max(capacity, 8) * 2 - 1) << 1;
+            this.slots = new int[length];
+            this.shift = Long.numberOfLeadingZeros(length - 1);
+            for (int i = 0; i < this.size; i++) {
+                this.insert(i);
+            }
+        }
+
+        private void insert(int i) {
+            int mask = this.slots.length - 1;
+            int s = this.slotOf(this.msbs[i], this.lsbs[i]);
+            while (this.slots[s] != 0) {
+                s = (s + 1) & mask;
+            }
+            this.slots[s] = i + 1;
+        }
+
+        private int slotOf(long msb, long lsb) {
+            return (int)(((msb ^ lsb) * GOLDEN_RATIO) >>> this.shift);
+        }
+    }
+}
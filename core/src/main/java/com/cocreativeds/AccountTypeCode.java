@@ -1,6 +1,7 @@
 package com.cocreativeds;
 
 import java.util.Objects;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 /**
  * 預金種目コードクラス
  * <p>
@@ -11,6 +12,9 @@ public class AccountTypeCode implements Comparable<AccountTypeCode>, Cloneable {
     /* 預金種目コード */
     private String accountTypeCode;
 
+    /* 正規化されたインスタンスの表(預金種目コードの数値を添字とする) */
+    private static final AtomicReferenceArray<AccountTypeCode> CANONICAL = new AtomicReferenceArray<>(10);
+
     /**
      * 預金種目コードを設定してインスタンスを生成する
      * @param ac 預金種目コード
@@ -29,6 +33,51 @@ public class AccountTypeCode implements Comparable<AccountTypeCode>, Cloneable {
         this.accountTypeCode = "0";
     }
 
+    /**
+     * 預金種目コードのインスタンスを取得する
+     * <p>
+     * 同じ預金種目コードに対しては常に同一の不変インスタンスを返します。そのため、このメソッドで取得したインスタンス
+     * 同士は参照の比較(==)で等価判定ができます。取得したインスタンスの預金種目コードは変更できません。
+     * 変更可能なインスタンスが必要なときはclone()でコピーします。
+     * 正規化されたインスタンスの使用は任意です。コンストラクターで生成したインスタンスは従来どおり変更できます。
+     * @param ac 預金種目コード
+     * @return 正規化された預金種目コードのインスタンス
+     * @throws IllegalArgumentException 預金種目コードは1桁の数字でなくてはならない
+     */
+    public static AccountTypeCode of(String ac) {
+        if (CodeValidator.isDigits(ac, 1)) {  // 1桁の数字？
+            int index = CodeValidator.digitsValue(ac);
+            AccountTypeCode canonical = CANONICAL.get(index);
+            if (canonical == null) {
+                // 同時に生成されたときは先に登録されたインスタンスを使用する
+                CANONICAL.compareAndSet(index, null, new Canonical(ac));
+                canonical = CANONICAL.get(index);
+            }
+            return canonical;
+        } else {
+            throw new IllegalArgumentException("預金種目コードは1桁の数字でなくてはならない");
+        }
+    }
+
+    /**
+     * 預金種目コードの数値から正規化されたインスタンスを取得する
+     * <p>
+     * 正規化されたインスタンスが既にあるときは文字列を生成せずに返します。
+     * @param value 預金種目コードの数値(0〜9)
+     * @return 正規化された預金種目コードのインスタンス
+     * @throws IllegalArgumentException 預金種目コードは1桁の数字でなくてはならない
+     */
+    static AccountTypeCode of(int value) {
+        if (value < 0 || 9 < value) {
+            throw new IllegalArgumentException("預金種目コードは1桁の数字でなくてはならない");
+        }
+        AccountTypeCode canonical = CANONICAL.get(value);
+        if (canonical == null) {
+            canonical = of(CodeValidator.toDigits(value, 1));
+        }
+        return canonical;
+    }
+
     /**
      * 預金種目を取得する
      * @return 預金種目コード
@@ -45,7 +94,7 @@ public class AccountTypeCode implements Comparable<AccountTypeCode>, Cloneable {
         if (bo == null) {
             throw new IllegalArgumentException("預金種目コードは1桁の数字でなくてはならない");
         } else {
-            if (bo.matches("[0-9]{1}")) {  // 3桁の数字？
+            if (CodeValidator.isDigits(bo, 1)) {  // 1桁の数字？
                 this.accountTypeCode = bo;
             } else {
                 throw new IllegalArgumentException("預金種目コードは1桁の数字でなくてはならない");
@@ -111,4 +160,26 @@ public class AccountTypeCode implements Comparable<AccountTypeCode>, Cloneable {
     public AccountTypeCode clone() {
         return new AccountTypeCode(this.accountTypeCode);
     }
+
+    /**
+     * 正規化された預金種目コード
+     * <p>
+     * of()で取得する不変の預金種目コードです。預金種目コードの設定はUnsupportedOperationExceptionとなります。
+     */
+    private static final class Canonical extends AccountTypeCode {
+
+        private Canonical(String ac) {
+            // setterは変更できないため、形式チェック済みの預金種目コードを直接設定する
+            ((AccountTypeCode)this).accountTypeCode = ac;
+        }
+
+        /**
+         * 預金種目コードを設定する
+         * @throws UnsupportedOperationException 正規化された預金種目コードは変更できない
+         */
+        @Override
+        public void setAccountTypeCode(String ac) {
+            throw new UnsupportedOperationException("正規化された預金種目コードは変更できない");
+        }
+    }
 }
@@ -1,5 +1,6 @@
 package com.cocreativeds;
 import java.util.Objects;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 /**
  * 金融機関コードクラス
  * <p>
@@ -10,6 +11,9 @@ public class BankCode implements Comparable<BankCode>, Cloneable {
     /* 金融機関コード */
     private String bankCode;
 
+    /* 正規化されたインスタンスの表(金融機関コードの数値を添字とする) */
+    private static final AtomicReferenceArray<BankCode> CANONICAL = new AtomicReferenceArray<>(10000);
+
     /**
      * 金融機関コードを設定してインスタンスを生成する
      * @param bc 金融機関コード
@@ -28,6 +32,51 @@ public class BankCode implements Comparable<BankCode>, Cloneable {
         this.bankCode = "0000";
     }
 
+    /**
+     * 金融機関コードのインスタンスを取得する
+     * <p>
+     * 同じ金融機関コードに対しては常に同一の不変インスタンスを返します。そのため、このメソッドで取得したインスタンス
+     * 同士は参照の比較(==)で等価判定ができます。取得したインスタンスの金融機関コードは変更できません。
+     * 変更可能なインスタンスが必要なときはclone()でコピーします。
+     * 正規化されたインスタンスの使用は任意です。コンストラクターで生成したインスタンスは従来どおり変更できます。
+     * @param bc 金融機関コード
+     * @return 正規化された金融機関コードのインスタンス
+     * @throws IllegalArgumentException 金融機関コードは4桁の数字でなくてはならない
+     */
+    public static BankCode of(String bc) {
+        if (CodeValidator.isDigits(bc, 4)) {  // 4桁の数字？
+            int index = CodeValidator.digitsValue(bc);
+            BankCode canonical = CANONICAL.get(index);
+            if (canonical == null) {
+                // 同時に生成されたときは先に登録されたインスタンスを使用する
+                CANONICAL.compareAndSet(index, null, new Canonical(bc));
+                canonical = CANONICAL.get(index);
+            }
+            return canonical;
+        } else {
+            throw new IllegalArgumentException("金融機関コードは4桁の数字でなくてはならない");
+        }
+    }
+
+    /**
+     * 金融機関コードの数値から正規化されたインスタンスを取得する
+     * <p>
+     * 正規化されたインスタンスが既にあるときは文字列を生成せずに返します。
+     * @param value 金融機関コードの数値(0〜9999)
+     * @return 正規化された金融機関コードのインスタンス
+     * @throws IllegalArgumentException 金融機関コードは4桁の数字でなくてはならない
+     */
+    static BankCode of(int value) {
+        if (value < 0 || 9999 < value) {
+            throw new IllegalArgumentException("金融機関コードは4桁の数字でなくてはならない");
+        }
+        BankCode canonical = CANONICAL.get(value);
+        if (canonical == null) {
+            canonical = of(CodeValidator.toDigits(value, 4));
+        }
+        return canonical;
+    }
+
     /**
      * 金融機関コードを取得する
      * @return 金融機関コード
@@ -44,7 +93,7 @@ public class BankCode implements Comparable<BankCode>, Cloneable {
         if (bc == null) {
             throw new IllegalArgumentException("金融機関コードは4桁の数字でなくてはならない");
         } else {
-            if (bc.matches("[0-9]{4}")) {  // 4桁の数字？
+            if (CodeValidator.isDigits(bc, 4)) {  // 4桁の数字？
                 this.bankCode = bc;
             } else {
                 throw new IllegalArgumentException("金融機関コードは4桁の数字でなくてはならない");
@@ -107,4 +156,26 @@ public class BankCode implements Comparable<BankCode>, Cloneable {
     public BankCode clone() {
         return new BankCode(this.bankCode);
     }
+
+    /**
+     * 正規化された金融機関コード
+     * <p>
+     * of()で取得する不変の金融機関コードです。金融機関コードの設定はUnsupportedOperationExceptionとなります。
+     */
+    private static final class Canonical extends BankCode {
+
+        private Canonical(String bc) {
+            // setterは変更できないため、形式チェック済みの金融機関コードを直接設定する
+            ((BankCode)this).bankCode = bc;
+        }
+
+        /**
+         * 金融機関コードを設定する
+         * @throws UnsupportedOperationException 正規化された金融機関コードは変更できない
+         */
+        @Override
+        public void setBankCode(String bc) {
+            throw new UnsupportedOperationException("正規化された金融機関コードは変更できない");
+        }
+    }
 }
@@ -0,0 +1,312 @@
+package com.cocreativeds;
+
+/**
+ * Binary ULID class.
+ *
+ * <p>
+ * BinaryUlid holds a ULID as a 128-bit binary value (two longs) instead of a 26-character string.
+ * The ordering of BinaryUlid is the same as the lexicographic ordering of the string form.
+ *
+ * <p>
+ * バイナリ型ULIDクラス
+ * <p>
+ * ULIDを26桁の文字列ではなく128ビットのバイナリ値(long型2つ)として保持する不変クラスです。
+ * 上位64ビットはタイムスタンプ(48ビット)と乱数の上位16ビット、下位64ビットは乱数の下位64ビットです。
+ * 大小関係は文字列型ULIDの辞書順と一致します。文字列型ULIDとの相互変換はCrockford Base32で行います。
+ */
+public final class BinaryUlid implements Comparable<BinaryUlid> {
+
+    /**
+     * 値がゼロのULID("00000000000000000000000000")
+     */
+    public static final BinaryUlid ZERO = new BinaryUlid(0L, 0L);
+
+    /* 乱数のバイト数 */
+    private static final int RANDOM_BYTES = 10;
+
+    /* 上位64ビット(タイムスタンプ48ビットと乱数の上位16ビット) */
+    private final long msb;
+    /* 下位64ビット(乱数の下位64ビット) */
+    private final long lsb;
+
+    /**
+     * コンストラクター
+     *
+     * <p>
+     * 上位64ビットと下位64ビットを指定してインスタンスを生成します。
+     *
+     * @param msb 上位64ビット
+     * @param lsb 下位64ビット
+     */
+    public BinaryUlid(long msb, long lsb) {
+        this.msb = msb;
+        this.lsb = lsb;
+    }
+
+    /**
+     * 文字列型ULIDからインスタンスを生成する
+     *
+     * <p>
+     * 26桁のCrockford Base32文字列をデコードします。128ビットを超える値(先頭の文字が8以上)はULIDとして不正です。
+     *
+     * @param ulid 文字列型のULID
+     * @return バイナリ型ULID
+     * @throws IllegalArgumentException 26桁のCrockford Base32文字列でないとき、または128ビットを超えるとき
+     */
+    public static BinaryUlid parse(CharSequence ulid) {
+        if (ulid == null || ulid.length() != UlidGenerator.ULID_CHARS || ulid.charAt(0) > '7') {
+            throw new IllegalArgumentException("ULIDは26桁のCrockford Base32文字列でなくてはならない");
+        }
+        long high = 0L;
+        long low = 0L;
+        for (int i = 0; i < UlidGenerator.ULID_CHARS; i++) {
+            int value = ULID.decodeChar(ulid.charAt(i));
+            if (value < 0) {
+                throw new IllegalArgumentException("ULIDは26桁のCrockford Base32文字列でなくてはならない");
+            }
+            // 128ビットの値を5ビット左にシフトして、デコードした5ビットを右端に加える
+            high = (high << 5) | (low >>> 59);
+            low = (low << 5) | value;
+        }
+        return new BinaryUlid(high, low);
+    }
+
+    /**
+     * バイト型配列からインスタンスを生成する
+     *
+     * @param bytes 128ビットのULID(ビッグエンディアン)を含むバイト型配列
+     * @param offset ULIDの先頭の位置
+     * @return バイナリ型ULID
+     * @throws IllegalArgumentException 配列にULIDの16バイトが含まれないとき
+     */
+    public static BinaryUlid fromBytes(byte[] bytes, int offset) {
+        if (bytes == null || offset < 0 || bytes.length - offset < UlidGenerator.ULID_BYTES) {
+            throw new IllegalArgumentException("ULIDを含むbyte型配列の長さが不足しています");
+        }
+        long high = 0L;
+        long low = 0L;
+        for (int i = 0; i < 8; i++) {
+            high = (high << 8) | (bytes[offset + i] & 0xff);
+            low = (low << 8) | (bytes[offset + 8 + i] & 0xff);
+        }
+        return new BinaryUlid(high, low);
+    }
+
+    /**
+     * 指定された時刻の最小のULIDを生成する
+     *
+     * <p>
+     * タイムスタンプが指定された時刻で、乱数がすべてゼロのULIDです。ULIDの順に並べた集合から、
+     * ある時刻以降に生成されたULIDを範囲検索するときの下限(この値を含む)として使用します。
+     *
+     * @param time ミリ秒単位のUnixエポック時刻
+     * @return 指定された時刻の最小のULID
+     * @throws IllegalArgumentException タイムスタンプが最小値未満または最大値より大きいとき
+     */
+    public static BinaryUlid minOf(long time) {
+        checkTime(time);
+        return new BinaryUlid(time << 16, 0L);
+    }
+
+    /**
+     * 指定された時刻の最大のULIDを生成する
+     *
+     * <p>
+     * タイムスタンプが指定された時刻で、乱数のビットがすべて1のULIDです。ULIDの順に並べた集合から、
+     * ある時刻までに生成されたULIDを範囲検索するときの上限(この値を含む)として使用します。
+     *
+     * @param time ミリ秒単位のUnixエポック時刻
+     * @return 指定された時刻の最大のULID
+     * @throws IllegalArgumentException タイムスタンプが最小値未満または最大値より大きいとき
+     */
+    public static BinaryUlid maxOf(long time) {
+        checkTime(time);
+        return new BinaryUlid((time << 16) | 0xffffL, -1L);
+    }
+
+    /**
+     * タイムスタンプを取得する
+     *
+     * @return ミリ秒単位のUnixエポック時刻(上位48ビット)
+     */
+    public long getTimestamp() {
+        return this.msb >>> 16;
+    }
+
+    /**
+     * 乱数をバイト型配列に格納する
+     *
+     * <p>
+     * 80ビットの乱数をビッグエンディアンで配列のoffsetの位置から10バイト格納します。
+     * 格納した配列とタイムスタンプを{@link ULID#genULIDString(long, byte[])}に指定すると、元のULID文字列になります。
+     *
+     * @param dst 格納先のバイト型配列
+     * @param offset 格納を開始する位置
+     * @throws IllegalArgumentException 格納先の配列に乱数を格納する領域がないとき
+     */
+    public void getRandomness(byte[] dst, int offset) {
+        if (dst == null || offset < 0 || dst.length - offset < RANDOM_BYTES) {
+            throw new IllegalArgumentException("乱数を格納するbyte型配列の長さが不足しています");
+        }
+        dst[offset] = (byte)(this.msb >>> 8);
+        dst[offset + 1] = (byte)this.msb;
+        for (int i = 0; i < 8; i++) {
+            dst[offset + 2 + i] = (byte)(this.lsb >>> (56 - i * 8));
+        }
+    }
+
+    /**
+     * 上位64ビットを取得する
+     *
+     * @return 上位64ビット
+     */
+    public long getMostSignificantBits() {
+        return this.msb;
+    }
+
+    /**
+     * 下位64ビットを取得する
+     *
+     * @return 下位64ビット
+     */
+    public long getLeastSignificantBits() {
+        return this.lsb;
+    }
+
+    /**
+     * char型配列にエンコードする
+     *
+     * <p>
+     * Crockford Base32エンコードした26文字を配列のoffsetの位置から格納します。
+     *
+     * @param dst 格納先のchar型配列
+     * @param offset 格納を開始する位置
+     * @throws IllegalArgumentException 格納先の配列にULIDを格納する領域がないとき
+     */
+    public void toChars(char[] dst, int offset) {
+        if (dst == null || offset < 0 || dst.length - offset < UlidGenerator.ULID_CHARS) {
+            throw new IllegalArgumentException("ULIDを格納するchar型配列の長さが不足しています");
+        }
+        encode(this.msb, this.lsb, dst, offset);
+    }
+
+    /**
+     * バイト型配列に格納する
+     *
+     * <p>
+     * 128ビットの値をビッグエンディアンで配列のoffsetの位置から16バイト格納します。
+     *
+     * @param dst 格納先のバイト型配列
+     * @param offset 格納を開始する位置
+     * @throws IllegalArgumentException 格納先の配列にULIDを格納する領域がないとき
+     */
+    public void toBytes(byte[] dst, int offset) {
+        if (dst == null || offset < 0 || dst.length - offset < UlidGenerator.ULID_BYTES) {
+            throw new IllegalArgumentException("ULIDを格納するbyte型配列の長さが不足しています");
+        }
+        for (int i = 0; i < 8; i++) {
+            dst[offset + i] = (byte)(this.msb >>> (56 - i * 8));
+            dst[offset + 8 + i] = (byte)(this.lsb >>> (56 - i * 8));
+        }
+    }
+
+    /**
+     * 文字列表現
+     *
+     * @return 26桁の文字列型ULID
+     */
+    @Override
+    public String toString() {
+        return toString(this.msb, this.lsb);
+    }
+
+    /**
+     * 等価判定
+     *
+     * @return true 等価である
+     * @return false 等価でない
+     */
+    @Override
+    public boolean equals(Object o) {
+        if (o instanceof BinaryUlid) { //比較対象はBinaryUlidクラスのインスタンス?
+            BinaryUlid u = (BinaryUlid)o;
+            return this.msb == u.msb && this.lsb == u.lsb;
+        } else {
+            return false;
+        }
+    }
+
+    /**
+     * ハッシュ値を得る
+     *
+     * <p>
+     * 下位80ビットは乱数のため、上位64ビットと下位64ビットの排他的論理和からハッシュ値を求めます。
+     *
+     * @return ハッシュ値
+     */
+    @Override
+    public int hashCode() {
+        return Long.hashCode(this.msb ^ this.lsb);
+    }
+
+    /**
+     * 大小関係を判定する
+     *
+     * <p>
+     * 符号なし128ビット整数として比較します。文字列型ULIDの辞書順と同じ結果になります。
+     *
+     * @return 負 比較対象が大きい
+     * @return 0 比較対象と等しい
+     * @return 正 比較対象が小さい
+     */
+    @Override
+    public int compareTo(BinaryUlid o) {
+        return compare(this.msb, this.lsb, o.msb, o.lsb);
+    }
+
+    /* タイムスタンプの正当性チェック */
+    private static void checkTime(long time) {
+        if (time < 0L || ULID.MAX_TIME < time) {
+            throw new IllegalArgumentException("タイムスタンプが最小値未満または最大値を超えています");
+        }
+    }
+
+    /**
+     * 128ビットの値の大小関係を判定する
+     *
+     * @param msb1 比較元の上位64ビット
+     * @param lsb1 比較元の下位64ビット
+     * @param msb2 比較対象の上位64ビット
+     * @param lsb2 比較対象の下位64ビット
+     * @return 負: 比較対象が大きい 0: 等しい 正: 比較対象が小さい
+     */
+    static int compare(long msb1, long lsb1, long msb2, long lsb2) {
+        int c = Long.compareUnsigned(msb1, msb2);
+        return c != 0 ? c : Long.compareUnsigned(lsb1, lsb2);
+    }
+
+    /**
+     * 128ビットの値をchar型配列にエンコードする
+     *
+     * @param msb 上位64ビット
+     * @param lsb 下位64ビット
+     * @param dst 格納先のchar型配列
+     * @param offset 格納を開始する位置
+     */
+    static void encode(long msb, long lsb, char[] dst, int offset) {
+        ULID.encode(msb >>> 16, msb & 0xffffL, lsb, dst, offset);
+    }
+
+    /**
+     * 128ビットの値を文字列型ULIDに変換する
+     *
+     * @param msb 上位64ビット
+     * @param lsb 下位64ビット
+     * @return 26桁の文字列型ULID
+     */
+    static String toString(long msb, long lsb) {
+        char[] chars = new char[UlidGenerator.ULID_CHARS];
+        encode(msb, lsb, chars, 0);
+        return new String(chars);
+    }
+}
@@ -1,5 +1,6 @@
 package com.cocreativeds;
 import java.util.Objects;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 /**
  * 店番クラス
  * <p>
@@ -10,6 +11,9 @@ public class BranchOfficeNumber implements Comparable<BranchOfficeNumber>, Clone
     /* 店番 */
     private String branchOfficeNumber;
 
+    /* 正規化されたインスタンスの表(店番の数値を添字とする) */
+    private static final AtomicReferenceArray<BranchOfficeNumber> CANONICAL = new AtomicReferenceArray<>(1000);
+
     /**
      * 店番を設定してインスタンスを生成する
      * @param bo 店番
@@ -28,6 +32,51 @@ public class BranchOfficeNumber implements Comparable<BranchOfficeNumber>, Clone
         this.branchOfficeNumber = "000";
     }
 
+    /**
+     * 店番のインスタンスを取得する
+     * <p>
+     * 同じ店番に対しては常に同一の不変インスタンスを返します。そのため、このメソッドで取得したインスタンス
+     * 同士は参照の比較(==)で等価判定ができます。取得したインスタンスの店番は変更できません。
+     * 変更可能なインスタンスが必要なときはclone()でコピーします。
+     * 正規化されたインスタンスの使用は任意です。コンストラクターで生成したインスタンスは従来どおり変更できます。
+     * @param bo 店番
+     * @return 正規化された店番のインスタンス
+     * @throws IllegalArgumentException 店番は3桁の数字でなくてはならない
+     */
+    public static BranchOfficeNumber of(String bo) {
+        if (CodeValidator.isDigits(bo, 3)) {  // 3桁の数字？
+            int index = CodeValidator.digitsValue(bo);
+            BranchOfficeNumber canonical = CANONICAL.get(index);
+            if (canonical == null) {
+                // 同時に生成されたときは先に登録されたインスタンスを使用する
+                CANONICAL.compareAndSet(index, null, new Canonical(bo));
+                canonical = CANONICAL.get(index);
+            }
+            return canonical;
+        } else {
+            throw new IllegalArgumentException("店番は3桁の数字でなくてはならない");
+        }
+    }
+
+    /**
+     * 店番の数値から正規化されたインスタンスを取得する
+     * <p>
+     * 正規化されたインスタンスが既にあるときは文字列を生成せずに返します。
+     * @param value 店番の数値(0〜999)
+     * @return 正規化された店番のインスタンス
+     * @throws IllegalArgumentException 店番は3桁の数字でなくてはならない
+     */
+    static BranchOfficeNumber of(int value) {
+        if (value < 0 || 999 < value) {
+            throw new IllegalArgumentException("店番は3桁の数字でなくてはならない");
+        }
+        BranchOfficeNumber canonical = CANONICAL.get(value);
+        if (canonical == null) {
+            canonical = of(CodeValidator.toDigits(value, 3));
+        }
+        return canonical;
+    }
+
     /**
      * 店番を取得する
      * @return 店番
@@ -44,7 +93,7 @@ public class BranchOfficeNumber implements Comparable<BranchOfficeNumber>, Clone
         if (bo == null) {
             throw new IllegalArgumentException("店番は3桁の数字でなくてはならない");
         } else {
-            if (bo.matches("[0-9]{3}")) {  // 3桁の数字？
+            if (CodeValidator.isDigits(bo, 3)) {  // 3桁の数字？
                 this.branchOfficeNumber = bo;
             } else {
                 throw new IllegalArgumentException("店番は3桁の数字でなくてはならない");
@@ -107,4 +156,26 @@ public class BranchOfficeNumber implements Comparable<BranchOfficeNumber>, Clone
     public BranchOfficeNumber clone() {
         return new BranchOfficeNumber(this.branchOfficeNumber);
     }
+
+    /**
+     * 正規化された店番
+     * <p>
+     * of()で取得する不変の店番です。店番の設定はUnsupportedOperationExceptionとなります。
+     */
+    private static final class Canonical extends BranchOfficeNumber {
+
+        private Canonical(String bo) {
+            // setterは変更できないため、形式チェック済みの店番を直接設定する
+            ((BranchOfficeNumber)this).branchOfficeNumber = bo;
+        }
+
+        /**
+         * 店番を設定する
+         * @throws UnsupportedOperationException 正規化された店番は変更できない
+         */
+        @Override
+        public void setBranchOfficeNumber(String bo) {
+            throw new UnsupportedOperationException("正規化された店番は変更できない");
+        }
+    }
 }
@@ -0,0 +1,351 @@
+package com.cocreativeds;
+
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * 一括記帳
+ *
+ * <p>
+ * 全銀形式の総合振込ファイルなど、多数の入出金を一括して記帳します。明細は口座キー({@link PackedAccountKey})と
+ * 取引金額の配列で受け取り、通貨、取引日、摘要はファイル単位で共通とします。明細ごとに文字列や日付のオブジェクトを
+ * 作成しません。
+ *
+ * <p>
+ * 明細を口座ごとにまとめ(同じ口座の明細はファイルの順のまま)、口座ごとに1回の口座残高の更新と1回の入出金明細の
+ * 追記で記帳します({@link Account#postBatch})。異なる口座は{@link ForkJoinPool}で並列に記帳します。
+ * 記帳の結果は明細ごとに返します。残高不足などで記帳できなかった明細があっても、他の明細の記帳は続けます。
+ *
+ * <p>
+ * 先行書き込みログが設定されている口座は、記帳した取引がディスクに書き出されてから完了します(書き出しは
+ * タスクごとにまとめて待ちます)。ログに記録できなかった、または書き出せなかった明細は{@link #FAILED}とし、
+ * 他の口座の記帳は続けます。一括記帳と同時に、同じ口座に通常の預け入れ・払い戻しを行うことができます。
+ */
+public class BulkPosting {
+
+    /**
+     * 記帳した
+     */
+    public static final byte POSTED = 1;
+
+    /**
+     * 口座が見つからないため記帳しなかった
+     */
+    public static final byte NO_ACCOUNT = 2;
+
+    /**
+     * 口座残高が不足しているため記帳しなかった(払い戻し)
+     */
+    public static final byte INSUFFICIENT_BALANCE = 3;
+
+    /**
+     * 取引金額が正しくないため記帳しなかった(0またはLong.MIN_VALUEのとき)
+     */
+    public static final byte INVALID_AMOUNT = 4;
+
+    /**
+     * 先行書き込みログに記録できなかった、またはディスクに書き出せなかった
+     */
+    public static final byte FAILED = 5;
+
+    /* これ以下の明細数のときはタスクを分割しない */
+    private static final int THRESHOLD = 4096;
+
+    /* 口座キーの索引 */
+    private final AccountKeyIndex index;
+    /* 口座の登録簿 */
+    private final AccountRegistry registry;
+    /* 並列に記帳するためのプール */
+    private final ForkJoinPool pool;
+    /* 最後の失敗 */
+    private volatile Exception lastFailure;
+
+    /**
+     * コンストラクター
+     *
+     * <p>
+     * 共通のプール({@link ForkJoinPool#commonPool()})で記帳します。
+     *
+     * @param index 口座キーから口座識別子を求める索引
+     * @param registry 口座識別子から口座を求める登録簿
+     * @throws IllegalArgumentException 索引または登録簿がnullのとき
+     */
+    public BulkPosting(AccountKeyIndex index, AccountRegistry registry) {
+        this(index, registry, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * コンストラクター
+     *
+     * @param index 口座キーから口座識別子を求める索引
+     * @param registry 口座識別子から口座を求める登録簿
+     * @param pool 並列に記帳するためのプール
+     * @throws IllegalArgumentException 索引、登録簿、またはプールがnullのとき
+     */
+    public BulkPosting(AccountKeyIndex index, AccountRegistry registry, ForkJoinPool pool) {
+        if (index == null || registry == null) {
+            throw new IllegalArgumentException("口座を指定しなくてはならない");
+        }
+        if (pool == null) {
+            throw new IllegalArgumentException("プールを指定しなくてはならない");
+        }
+        this.index = index;
+        this.registry = registry;
+        this.pool = pool;
+    }
+
+    /**
+     * 一括記帳する
+     *
+     * <p>
+     * 取引金額が正の明細は預け入れ、負の明細は払い戻しとして記帳します。同じ口座の明細はファイルの順に適用し、
+     * 払い戻しはそれより前の明細を適用した時点の残高で残高不足を判定します。
+     *
+     * @param accountKeys 明細ごとの口座キー(口座キーとして正しくない値の明細は口座が見つからないものとする)
+     * @param amounts 明細ごとの取引金額(正は預け入れ、負は払い戻し)
+     * @param currency 通貨コード
+     * @param trxDate 取引日
+     * @param description 摘要
+     * @return 明細ごとの結果({@link #POSTED}、{@link #NO_ACCOUNT}、{@link #INSUFFICIENT_BALANCE}、{@link #INVALID_AMOUNT}、
+     *         {@link #FAILED})
+     * @throws IllegalArgumentException 口座キーまたは取引金額がnullのとき、件数が一致しないとき、
+     *         通貨コードまたは取引日が正しくないとき
+     */
+    public byte[] post(long[] accountKeys, long[] amounts, String currency, LocalDate trxDate, String description) {
+        if (accountKeys == null || amounts == null || accountKeys.length != amounts.length) {
+            throw new IllegalArgumentException("口座キーと取引金額の件数が一致しない");
+        }
+        int currencyIndex = CurrencyTable.indexOf(currency);
+        if (currencyIndex < 0) {
+            throw new IllegalArgumentException("通貨コードは取り扱い通貨のISO 4217通貨コードでなくてはならない");
+        }
+        if (trxDate == null) {
+            throw new IllegalArgumentException("取引日を指定しなくてはならない");
+        }
+        int n = accountKeys.length;
+        byte[] results = new byte[n];
+
+        // 口座キーごとにグループ番号を振る(最初に現れた順)
+        KeyGroups groups = new KeyGroups(n);
+        int[] groupOf = new int[n];
+        for (int i = 0; i < n; i++) {
+            long amount = amounts[i];
+            if (amount == 0L || amount == Long.MIN_VALUE) {
+                results[i] = INVALID_AMOUNT;
+                groupOf[i] = -1;
+            } else if (!PackedAccountKey.isValid(accountKeys[i])) {
+                results[i] = NO_ACCOUNT;
+                groupOf[i] = -1;
+            } else {
+                groupOf[i] = groups.groupOf(accountKeys[i]);
+            }
+        }
+
+        // グループごとに明細の位置を並べる(計数ソート、同じグループの明細は元の順のまま)
+        int groupCount = groups.size();
+        int[] starts = new int[groupCount + 1];
+        for (int i = 0; i < n; i++) {
+            if (groupOf[i] >= 0) {
+                starts[groupOf[i] + 1]++;
+            }
+        }
+        for (int g = 0; g < groupCount; g++) {
+            starts[g + 1] += starts[g];
+        }
+        int[] entries = new int[starts[groupCount]];
+        int[] next = Arrays.copyOf(starts, groupCount);
+        for (int i = 0; i < n; i++) {
+            if (groupOf[i] >= 0) {
+                entries[next[groupOf[i]]++] = i;
+            }
+        }
+
+        if (groupCount > 0) {
+            this.pool.invoke(new PostTask(this, groups.keys(), starts, entries, amounts, results, 0, groupCount,
+                System.currentTimeMillis(), (int)trxDate.toEpochDay(), currencyIndex, description));
+        }
+        return results;
+    }
+
+    /**
+     * 最後の失敗を取得する
+     *
+     * <p>
+     * 明細の結果を{@link #FAILED}とした原因のうち、最後のものです。
+     *
+     * @return 最後の失敗、失敗していないときはnull
+     */
+    public Exception getLastFailure() {
+        return this.lastFailure;
+    }
+
+    /* 口座キーから口座を求める */
+    private Account lookup(long key) {
+        AccountId id = this.index.get(key);
+        return id == null ? null : this.registry.get(id);
+    }
+
+    /**
+     * 口座ごとに記帳するタスク
+     *
+     * <p>
+     * グループの範囲を明細の件数で分割します。
+     */
+    private static final class PostTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        /* タスクは直列化しない(RecursiveActionがSerializableのため、直列化できない参照はtransientとする) */
+        private final transient BulkPosting posting;
+        private final long[] keys;
+        private final int[] starts;
+        private final int[] entries;
+        private final long[] amounts;
+        private final byte[] results;
+        private final int from;
+        private final int to;
+        private final long operationTime;
+        private final int trxDate;
+        private final int currencyIndex;
+        private final String description;
+
+        PostTask(BulkPosting posting, long[] keys, int[] starts, int[] entries, long[] amounts, byte[] results,
+                int from, int to, long operationTime, int trxDate, int currencyIndex, String description) {
+            this.posting = posting;
+            this.keys = keys;
+            this.starts = starts;
+            this.entries = entries;
+            this.amounts = amounts;
+            this.results = results;
+            this.from = from;
+            this.to = to;
+            this.operationTime = operationTime;
+            this.trxDate = trxDate;
+            this.currencyIndex = currencyIndex;
+            this.description = description;
+        }
+
+        @Override
+        protected void compute() {
+            if (this.to - this.from > 1 && this.starts[this.to] - this.starts[this.from] > THRESHOLD) {
+                // 明細の件数が半分になるグループで分割する
+                int half = (this.starts[this.from] + this.starts[this.to]) >>> 1;
+                int mid = Arrays.binarySearch(this.starts, this.from + 1, this.to, half);
+                mid = mid >= 0 ? mid : Math.min(Math.max(-mid - 1, this.from + 1), this.to - 1);
+                invokeAll(this.subtask(this.from, mid), this.subtask(mid, this.to));
+                return;
+            }
+            // 書き出しを待つログとログ順序番号(口座ごとには待たずに、タスクの最後にまとめて待つ)
+            WriteAheadLog pendingLog = null;
+            long pendingLsn = 0L;
+            // 書き出しを待っている最初のグループ(このグループから記帳した明細はすべて同じログに記録している)
+            int pendingFrom = this.from;
+            for (int g = this.from; g < this.to; g++) {
+                Account a = this.posting.lookup(this.keys[g]);
+                if (a == null) {
+                    for (int i = this.starts[g]; i < this.starts[g + 1]; i++) {
+                        this.results[this.entries[i]] = NO_ACCOUNT;
+                    }
+                    continue;
+                }
+                WriteAheadLog l = a.writeAheadLog();
+                if (l != pendingLog && pendingLog != null) {
+                    this.awaitDurable(pendingLog, pendingLsn, pendingFrom, g);
+                    pendingLog = null;
+                }
+                long lsn;
+                try {
+                    lsn = a.postBatch(this.amounts, this.entries, this.starts[g], this.starts[g + 1], this.results,
+                        this.operationTime, this.trxDate, this.currencyIndex, this.description);
+                } catch (RuntimeException e) {
+                    // 記録できなかった明細はpostBatchがFAILEDとしている。記録済みの明細は書き出しを待つ
+                    this.posting.lastFailure = e;
+                    lsn = l == null ? 0L : l.getLastLsn();
+                }
+                if (lsn != 0L) {
+                    if (pendingLog == null) {
+                        pendingFrom = g;
+                    }
+                    pendingLog = l;
+                    pendingLsn = lsn;
+                }
+            }
+            if (pendingLog != null) {
+                this.awaitDurable(pendingLog, pendingLsn, pendingFrom, this.to);
+            }
+        }
+
+        /* ディスクへの書き出しを待つ。書き出せなかったときは、待っていたグループの記帳した明細の結果を失敗とする */
+        private void awaitDurable(WriteAheadLog log, long lsn, int fromGroup, int toGroup) {
+            try {
+                log.awaitDurable(lsn);
+            } catch (RuntimeException e) {
+                this.posting.lastFailure = e;
+                for (int i = this.starts[fromGroup]; i < this.starts[toGroup]; i++) {
+                    if (this.results[this.entries[i]] == POSTED) {
+                        this.results[this.entries[i]] = FAILED;
+                    }
+                }
+            }
+        }
+
+        private PostTask subtask(int from, int to) {
+            return new PostTask(this.posting, this.keys, this.starts, this.entries, this.amounts, this.results, from,
+                to, this.operationTime, this.trxDate, this.currencyIndex, this.description);
+        }
+    }
+
+    /**
+     * 口座キーのグループ番号の表
+     *
+     * <p>
+     * 口座キーをlong型のまま保持するオープンアドレス法(線形探索)のハッシュ表で、口座キーに最初に現れた順の番号を振ります。
+     */
+    private static final class KeyGroups {
+        /* 空きを表す値(正しい口座キーは負にならない) */
+        private static final long EMPTY = -1L;
+
+        private final long[] table;
+        private final int[] groups;
+        private final long[] keys;
+        private final int mask;
+        private int size;
+
+        KeyGroups(int expectedSize) {
+            int capacity = Integer.highestOneBit(Math.max(2, expectedSize) * 2 - 1) << 1;
+            this.table = new long[capacity];
+            this.groups = new int[capacity];
+            this.keys = new long[Math.max(1, expectedSize)];
+            this.mask = capacity - 1;
+            Arrays.fill(this.table, EMPTY);
+        }
+
+        /* 口座キーのグループ番号を求める(初めての口座キーには新しい番号を振る) */
+        int groupOf(long key) {
+            int i = (int)((key * 0x9e3779b97f4a7c15L) >>> 32) & this.mask;
+            for (;;) {
+                long k = this.table[i];
+                if (k == key) {
+                    return this.groups[i];
+                }
+                if (k == EMPTY) {
+                    this.table[i] = key;
+                    this.groups[i] = this.size;
+                    this.keys[this.size] = key;
+                    return this.size++;
+                }
+                i = (i + 1) & this.mask;
+            }
+        }
+
+        int size() {
+            return this.size;
+        }
+
+        /* グループ番号の順の口座キー */
+        long[] keys() {
+            return this.keys;
+        }
+    }
+}
@@ -0,0 +1,168 @@
+package com.cocreativeds;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * スナップショットの定期作成
+ *
+ * <p>
+ * 専用のスレッドで一定の間隔ごとに{@link AccountSnapshot}を作成し、ディレクトリに書き込みます。
+ * 取引を処理するスレッドはスナップショットの作成を待ちません。ディレクトリには最新のスナップショットと、
+ * 最新のスナップショットが壊れていたときのための1つ前のスナップショットを残します。
+ */
+public class Checkpointer implements Closeable {
+
+    /* スナップショットのディレクトリ */
+    private final Path dir;
+    /* 先行書き込みログ */
+    private final WriteAheadLog log;
+    /* 口座 */
+    private final Supplier<? extends Iterable<Account>> accounts;
+    /* スナップショットを作成するスレッド */
+    private final ScheduledExecutorService executor;
+
+    /* 最新のスナップショット */
+    private AccountSnapshot latest;
+    /* 定期作成の最後の失敗 */
+    private volatile Exception lastFailure;
+
+    /**
+     * 定期作成を開始する
+     *
+     * <p>
+     * ディレクトリの最新のスナップショットを前回のスナップショットとして、定期作成を開始します。
+     *
+     * @param dir スナップショットのディレクトリ
+     * @param log 先行書き込みログ
+     * @param accounts 口座を取得する関数
+     * @param interval スナップショットを作成する間隔(0のときは定期作成を行わない)
+     * @return スナップショットの定期作成
+     * @throws IllegalArgumentException パラメーターが正しくないとき
+     * @throws IOException ディレクトリを作成できないとき
+     */
+    public static Checkpointer start(Path dir, WriteAheadLog log, Supplier<? extends Iterable<Account>> accounts,
+            Duration interval) throws IOException {
+        if (interval == null || interval.isNegative()) {
+            throw new IllegalArgumentException("スナップショットを作成する間隔は0以上でなくてはならない");
+        }
+        Checkpointer checkpointer = new Checkpointer(dir, log, accounts);
+        if (!interval.isZero()) {
+            // 構築が終わってから定期作成のスレッドに渡す
+            long nanos = interval.toNanos();
+            checkpointer.executor.scheduleWithFixedDelay(checkpointer::runCheckpoint, nanos, nanos,
+                TimeUnit.NANOSECONDS);
+        }
+        return checkpointer;
+    }
+
+    /**
+     * コンストラクター
+     *
+     * @param dir スナップショットのディレクトリ
+     * @param log 先行書き込みログ
+     * @param accounts 口座を取得する関数
+     * @throws IllegalArgumentException パラメーターが正しくないとき
+     * @throws IOException ディレクトリを作成できないとき
+     */
+    private Checkpointer(Path dir, WriteAheadLog log, Supplier<? extends Iterable<Account>> accounts)
+            throws IOException {
+        if (dir == null || log == null || accounts == null) {
+            throw new IllegalArgumentException("ディレクトリ、ログ、口座を指定しなくてはならない");
+        }
+        this.dir = dir;
+        this.log = log;
+        this.accounts = accounts;
+        Files.createDirectories(dir);
+        this.latest = AccountSnapshot.loadLatest(dir);
+        ScheduledThreadPoolExecutor e = new ScheduledThreadPoolExecutor(1, r -> {
+            Thread t = new Thread(r, "checkpointer");
+            t.setDaemon(true);
+            return t;
+        });
+        e.setExecuteExistingDelayedTasksAfterShutdownPolicy(false);
+        this.executor = e;
+    }
+
+    /**
+     * スナップショットを作成する
+     *
+     * <p>
+     * 定期作成とは別に、すぐにスナップショットを作成します。
+     *
+     * @return 作成したスナップショット
+     * @throws IOException ログを読み込めないとき、またはスナップショットを書き込めないとき
+     */
+    public synchronized AccountSnapshot checkpoint() throws IOException {
+        AccountSnapshot previous = this.latest;
+        AccountSnapshot next = AccountSnapshot.checkpoint(previous, this.log, this.accounts.get());
+        next.write(AccountSnapshot.pathOf(this.dir, next.getLsn()));
+        this.latest = next;
+        // 最新と1つ前のスナップショットを残す
+        for (long lsn : AccountSnapshot.list(this.dir)) {
+            if (lsn < previous.getLsn()) {
+                Files.deleteIfExists(AccountSnapshot.pathOf(this.dir, lsn));
+            }
+        }
+        return next;
+    }
+
+    /**
+     * 最新のスナップショットを取得する
+     *
+     * @return 最新のスナップショット
+     */
+    public synchronized AccountSnapshot getLatest() {
+        return this.latest;
+    }
+
+    /**
+     * 定期作成の最後の失敗を取得する
+     *
+     * @return 最後の失敗、失敗していないときはnull
+     */
+    public Exception getLastFailure() {
+        return this.lastFailure;
+    }
+
+    /**
+     * 定期作成を終了する
+     *
+     * <p>
+     * 作成中のスナップショットがあるときは、書き込みが終わるまで待ちます。
+     */
+    @Override
+    public void close() {
+        this.executor.shutdown();
+        boolean interrupted = false;
+        while (true) {
+            try {
+                if (this.executor.awaitTermination(1, TimeUnit.MINUTES)) {
+                    break;
+                }
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /* 定期作成の処理 */
+    private void runCheckpoint() {
+        try {
+            this.checkpoint();
+            this.lastFailure = null;
+        } catch (IOException | RuntimeException e) {
+            this.lastFailure = e; // 次の間隔で再試行する
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package com.cocreativeds;
+
+/**
+ * 識別子の文字種チェック
+ *
+ * <p>
+ * 金融機関コード、店番、預金種目コード、口座番号の形式チェックを正規表現を使用せずに行います。
+ * String.matchesは呼び出しごとにPatternをコンパイルするため、大量のインスタンスを生成する処理では
+ * 文字の範囲を直接判定するこのクラスのメソッドを使用します。
+ */
+final class CodeValidator {
+
+    private CodeValidator() {
+    }
+
+    /**
+     * 指定された桁数の数字であるかを判定する
+     *
+     * <p>
+     * 正規表現"[0-9]{length}"と同じ判定を行います。
+     *
+     * @param s 判定する文字列
+     * @param length 桁数
+     * @return true 指定された桁数の数字である
+     * @return false 指定された桁数の数字でない(nullを含む)
+     */
+    static boolean isDigits(String s, int length) {
+        if (s == null || s.length() != length) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            char c = s.charAt(i);
+            if (c < '0' || '9' < c) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 数字の文字列を整数に変換する
+     *
+     * <p>
+     * {@link #isDigits(String, int)}でチェック済みの文字列を、Integer.parseIntを使用せずに変換します。
+     *
+     * @param s 数字の文字列(9桁以下)
+     * @return 整数値
+     */
+    static int digitsValue(String s) {
+        int value = 0;
+        for (int i = 0; i < s.length(); i++) {
+            value = value * 10 + (s.charAt(i) - '0');
+        }
+        return value;
+    }
+
+    /**
+     * 整数を指定された桁数の数字の文字列に変換する
+     *
+     * <p>
+     * 桁数に満たない場合は先頭をゼロで埋めます。String.formatを使用せずに変換します。
+     *
+     * @param value 整数値(0以上)
+     * @param length 桁数
+     * @return 数字の文字列
+     */
+    static String toDigits(int value, int length) {
+        char[] chars = new char[length];
+        for (int i = length - 1; i >= 0; i--) {
+            chars[i] = (char)('0' + value % 10);
+            value /= 10;
+        }
+        return new String(chars);
+    }
+}
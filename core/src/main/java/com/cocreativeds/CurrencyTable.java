@@ -0,0 +1,94 @@
+package com.cocreativeds;
+
+import java.util.Arrays;
+
+/**
+ * 通貨コード表
+ *
+ * <p>
+ * 取り扱う通貨のISO 4217通貨コード(英大文字3桁)と通貨インデックスの対応表です。
+ * 通貨インデックスは0から始まる連番で、0は円(JPY)です。取引履歴などには通貨コードの文字列の代わりに
+ * 通貨インデックスを記録します。通貨コードから通貨インデックスへの変換は、3桁の英字を数値に変換した値を
+ * 添字とする表を引いて行うため、文字列の比較は行いません。
+ */
+public final class CurrencyTable {
+
+    /**
+     * 円(JPY)の通貨インデックス
+     */
+    public static final int JPY = 0;
+
+    /**
+     * 取り扱う通貨の最大数(通貨インデックスは1バイトで記録できる)
+     */
+    public static final int MAX_CURRENCIES = 16;
+
+    /* 通貨インデックスを添字とする通貨コード */
+    private static final String[] CODES = {
+        "JPY", "USD", "EUR", "GBP", "AUD", "NZD", "CAD", "CHF",
+        "CNY", "HKD", "SGD", "KRW", "THB", "SEK", "NOK", "DKK"
+    };
+
+    /* 通貨コードの3桁の英字(26進数)を添字とする通貨インデックス(取り扱わない通貨は-1) */
+    private static final byte[] INDEX = new byte[26 * 26 * 26];
+
+    static {
+        Arrays.fill(INDEX, (byte)-1);
+        for (int i = 0; i < CODES.length; i++) {
+            INDEX[slot(CODES[i])] = (byte)i;
+        }
+    }
+
+    private CurrencyTable() {
+    }
+
+    /**
+     * 通貨コードから通貨インデックスを取得する
+     *
+     * @param code 通貨コード(ISO 4217)
+     * @return 通貨インデックス、取り扱わない通貨コードのときは-1
+     */
+    public static int indexOf(String code) {
+        int slot = slot(code);
+        return slot < 0 ? -1 : INDEX[slot];
+    }
+
+    /**
+     * 通貨インデックスから通貨コードを取得する
+     *
+     * @param index 通貨インデックス
+     * @return 通貨コード(ISO 4217)
+     * @throws IllegalArgumentException 通貨インデックスが正しくないとき
+     */
+    public static String code(int index) {
+        if (index < 0 || CODES.length <= index) {
+            throw new IllegalArgumentException("通貨インデックスが正しくない");
+        }
+        return CODES[index];
+    }
+
+    /**
+     * 取り扱う通貨の数を取得する
+     *
+     * @return 通貨の数
+     */
+    public static int size() {
+        return CODES.length;
+    }
+
+    /* 英大文字3桁の通貨コードを26進数の数値に変換する(形式が正しくないときは-1) */
+    private static int slot(String code) {
+        if (code == null || code.length() != 3) {
+            return -1;
+        }
+        int slot = 0;
+        for (int i = 0; i < 3; i++) {
+            char c = code.charAt(i);
+            if (c < 'A' || 'Z' < c) {
+                return -1;
+            }
+            slot = slot * 26 + (c - 'A');
+        }
+        return slot;
+    }
+}
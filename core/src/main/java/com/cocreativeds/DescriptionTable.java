@@ -0,0 +1,74 @@
+package com.cocreativeds;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 摘要の表
+ *
+ * <p>
+ * 取引履歴に記録する摘要を重複なく保持し、摘要ごとに番号(摘要参照)を割り当てます。取引履歴には摘要の文字列の
+ * 代わりに摘要参照を記録します。"振込"、"ATM"のように同じ摘要が多くの口座で繰り返し使用されるため、
+ * 摘要の文字列は1つだけ保持されます。
+ */
+final class DescriptionTable {
+
+    /**
+     * 摘要なし(null)を表す摘要参照
+     */
+    static final int NONE = -1;
+
+    /* 摘要参照の割り当て */
+    private static final ConcurrentHashMap<String, Integer> REFERENCES = new ConcurrentHashMap<>();
+
+    /* 摘要参照を添字とする摘要(拡張時は新しい配列に置き換える) */
+    private static volatile String[] descriptions = new String[256];
+
+    /* 割り当て済みの摘要参照の数 */
+    private static int count;
+
+    private DescriptionTable() {
+    }
+
+    /**
+     * 摘要の摘要参照を取得する
+     *
+     * <p>
+     * 初めての摘要には新しい摘要参照を割り当てます。
+     *
+     * @param description 摘要
+     * @return 摘要参照、摘要がnullのときは{@link #NONE}
+     */
+    static int referenceOf(String description) {
+        if (description == null) {
+            return NONE;
+        }
+        Integer ref = REFERENCES.get(description);
+        if (ref != null) {
+            return ref;
+        }
+        return REFERENCES.computeIfAbsent(description, DescriptionTable::register);
+    }
+
+    /**
+     * 摘要参照から摘要を取得する
+     *
+     * @param ref 摘要参照
+     * @return 摘要、摘要参照が{@link #NONE}のときはnull
+     */
+    static String description(int ref) {
+        return ref == NONE ? null : descriptions[ref];
+    }
+
+    /* 摘要を登録して摘要参照を割り当てる(computeIfAbsentから呼び出される) */
+    private static synchronized Integer register(String description) {
+        String[] array = descriptions;
+        if (count == array.length) {
+            String[] grown = new String[array.length << 1];
+            System.arraycopy(array, 0, grown, 0, array.length);
+            array = grown;
+        }
+        array[count] = description;
+        descriptions = array; // 摘要を格納した後で公開する
+        return count++;
+    }
+}
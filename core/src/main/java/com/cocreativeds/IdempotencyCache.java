@@ -0,0 +1,450 @@
+package com.cocreativeds;
+
+import java.util.Arrays;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.LongSupplier;
+
+/**
+ * 冪等キーの重複確認
+ *
+ * <p>
+ * ATMや各チャネルがタイムアウトで再送した預け入れ・払い戻しを二重に記帳しないように、要求ごとの冪等キー(ULID)を
+ * 有効期間の間だけ記憶します。冪等キーは{@link BinaryUlid}と同じ上位64ビットと下位64ビットのlong型のまま、
+ * オープンアドレス法(線形探索)のハッシュ表に保持するため、1件あたりのメモリーは一定(16バイトと空き)で、
+ * 登録・確認でオブジェクトを作成しません。
+ *
+ * <p>
+ * ハッシュ表は現在の世代と1つ前の世代の2つです。登録は現在の世代に行い、確認は両方の世代で行います。
+ * 現在の世代を開始してから有効期間が経過したとき、または現在の世代に登録できる件数に達したときに、
+ * 1つ前の世代を破棄して世代を交代します。破棄した冪等キーのうち最も新しいタイムスタンプ以前の冪等キーと、
+ * タイムスタンプが有効期間より古い冪等キーは、重複を確認できないため受け付けません。
+ * 世代ごとに登録した冪等キーの最も新しいタイムスタンプを保持し、それより新しい冪等キーはハッシュ表を探索せずに
+ * 未登録と判定します(ULIDのタイムスタンプは要求の順に増えるため、初めての要求の大半はこの判定で済みます)。
+ *
+ * <p>
+ * 冪等キーごとに、記帳中か記帳済みかを保持します。{@link #register}で記帳中として登録し、記帳がディスクに書き出されたら
+ * {@link #commit}で記帳済みに、記帳できなかったときは{@link #remove}で登録を削除します(失敗した要求は再送を受け付けます)。
+ * 記帳中の冪等キーで再送された要求は、最初の要求の記帳が完了するか失敗するまで待ちます。最初の要求が記帳済みになったときは
+ * 重複として扱い、失敗したときは再送された要求を記帳中として登録します。そのため、受け付け済みと判定した要求が
+ * 後から失敗することはありません。
+ *
+ * <p>
+ * インスタンスはスレッドセーフです。複数の口座で同じインスタンスを共有します。冪等キーは下位64ビットでストライプに
+ * 振り分け、ストライプごとの{@link ReentrantLock}で排他します(世代もストライプごとに持ち、登録できる件数は
+ * ストライプ数で等分します)。記帳中の冪等キーを待つときはストライプの{@link Condition}で待つため、
+ * 仮想スレッドのキャリアスレッドを占有しません。確認する冪等キーがストライプの両方の世代の最も新しいタイムスタンプより
+ * 新しいときは、ロックを取得せずに未登録と判定します。記憶した冪等キーはディスクに書き出さないため、
+ * 再起動すると失われます。
+ */
+public class IdempotencyCache {
+
+    /* 登録できる件数の上限 */
+    private static final int MAX_CAPACITY = 1 << 28;
+
+    /* ストライプ数の上限 */
+    private static final int MAX_STRIPES = 64;
+    /* 1ストライプに登録できる件数の下限の目安(登録できる件数が少ないときはストライプに分けない) */
+    private static final int MIN_STRIPE_CAPACITY = 1024;
+
+    /* 冪等キーの状態 */
+    private static final byte ABSENT = 0;
+    private static final byte IN_FLIGHT = 1;
+    private static final byte COMMITTED = 2;
+
+    /* ハッシュ値を求めるための乗数(黄金比) */
+    private static final long GOLDEN_RATIO = 0x9e3779b97f4a7c15L;
+
+    /* 有効期間(ミリ秒) */
+    private final long window;
+    /* 現在時刻(ミリ秒単位のUnixエポック時刻) */
+    private final LongSupplier clock;
+    /* ストライプ(数は2のべき乗) */
+    private final Stripe[] stripes;
+
+    /**
+     * コンストラクター
+     *
+     * @param capacity 1世代に登録できる件数
+     * @param window 有効期間(ミリ秒)
+     * @throws IllegalArgumentException 件数または有効期間が正しくないとき
+     */
+    public IdempotencyCache(int capacity, long window) {
+        this(capacity, window, System::currentTimeMillis);
+    }
+
+    /**
+     * コンストラクター
+     *
+     * <p>
+     * 世代の交代と有効期間の判定に使用する時計を指定します。
+     *
+     * @param capacity 1世代に登録できる件数
+     * @param window 有効期間(ミリ秒)
+     * @param clock ミリ秒単位のUnixエポック時刻を返す時計
+     * @throws IllegalArgumentException 件数または有効期間が正しくないとき、時計がnullのとき
+     */
+    public IdempotencyCache(int capacity, long window, LongSupplier clock) {
+        if (capacity < 1 || MAX_CAPACITY < capacity) {
+            throw new IllegalArgumentException("登録できる件数は1以上" + MAX_CAPACITY + "以下でなくてはならない");
+        }
+        if (window < 1 || ULID.MAX_TIME < window) {
+            throw new IllegalArgumentException("有効期間は1ミリ秒以上でなくてはならない");
+        }
+        if (clock == null) {
+            throw new IllegalArgumentException("時計を指定しなくてはならない");
+        }
+        this.window = window;
+        this.clock = clock;
+        int n = Integer.highestOneBit(Math.max(1, Math.min(MAX_STRIPES, capacity / MIN_STRIPE_CAPACITY)));
+        int stripeCapacity = (capacity + n - 1) / n;
+        // 負荷率が2/3以下になる長さ
+        int length = Integer.highestOneBit(stripeCapacity + (stripeCapacity >> 1)) << 1;
+        long now = clock.getAsLong();
+        this.stripes = new Stripe[n];
+        for (int i = 0; i < n; i++) {
+            this.stripes[i] = new Stripe(stripeCapacity, length, now);
+        }
+    }
+
+    /**
+     * 冪等キーを記帳中として登録する
+     *
+     * <p>
+     * 同じ冪等キーが記帳中のときは、記帳済みになるか登録が削除されるまで待ちます。
+     *
+     * @param key 冪等キー
+     * @return true 登録した(初めての要求、または記帳できなかった要求の再送)
+     * @return false 記帳済み(再送された要求)
+     * @throws IllegalArgumentException 冪等キーがnullまたはゼロのとき、有効期間を過ぎているとき、
+     *         タイムスタンプが現在時刻より有効期間以上新しいとき
+     */
+    public boolean register(BinaryUlid key) {
+        if (key == null) {
+            throw new IllegalArgumentException("冪等キーを指定しなくてはならない");
+        }
+        return this.register(key.getMostSignificantBits(), key.getLeastSignificantBits());
+    }
+
+    /**
+     * 冪等キーを記帳中として登録する
+     *
+     * <p>
+     * 同じ冪等キーが記帳中のときは、記帳済みになるか登録が削除されるまで待ちます。
+     * 待っている間に割り込まれても待ち続け、割り込みの状態を設定したまま戻ります。
+     *
+     * @param msb 冪等キーの上位64ビット
+     * @param lsb 冪等キーの下位64ビット
+     * @return true 登録した(初めての要求、または記帳できなかった要求の再送)
+     * @return false 記帳済み(再送された要求)
+     * @throws IllegalArgumentException 冪等キーがゼロのとき、有効期間を過ぎているとき、
+     *         タイムスタンプが現在時刻より有効期間以上新しいとき
+     */
+    public boolean register(long msb, long lsb) {
+        if (msb == 0L && lsb == 0L) {
+            throw new IllegalArgumentException("冪等キーが正しくない");
+        }
+        long timestamp = msb >>> 16;
+        Stripe s = this.stripeOf(lsb);
+        s.lock.lock();
+        try {
+            long now;
+            for (;;) {
+                now = this.clock.getAsLong();
+                if (timestamp >= now + this.window) {
+                    throw new IllegalArgumentException("冪等キーのタイムスタンプが現在時刻より新しい");
+                }
+                if (now - s.current.start >= this.window) {
+                    s.rotate(now);
+                }
+                byte state = s.stateOf(msb, lsb);
+                if (state == COMMITTED) {
+                    return false;
+                } else if (state == ABSENT) {
+                    break;
+                }
+                // 最初の要求の記帳が完了するか失敗するまで待つ
+                s.settled.awaitUninterruptibly();
+            }
+            if (timestamp < s.horizon || timestamp <= now - this.window) {
+                throw new IllegalArgumentException("冪等キーの有効期間を過ぎている");
+            }
+            if (s.current.size >= s.capacity) {
+                s.rotate(now);
+                if (timestamp < s.horizon) {
+                    throw new IllegalArgumentException("冪等キーの有効期間を過ぎている");
+                }
+            }
+            s.current.add(msb, lsb, timestamp);
+            return true;
+        } finally {
+            s.lock.unlock();
+        }
+    }
+
+    /**
+     * 冪等キーが登録されているかを判定する
+     *
+     * @param key 冪等キー
+     * @return true 登録されている(記帳中または記帳済み)
+     * @return false 登録されていない
+     * @throws IllegalArgumentException 冪等キーがnullのとき
+     */
+    public boolean contains(BinaryUlid key) {
+        if (key == null) {
+            throw new IllegalArgumentException("冪等キーを指定しなくてはならない");
+        }
+        long msb = key.getMostSignificantBits();
+        long lsb = key.getLeastSignificantBits();
+        Stripe s = this.stripeOf(lsb);
+        if (s.isNewer(msb >>> 16)) {
+            return false;
+        }
+        s.lock.lock();
+        try {
+            return s.stateOf(msb, lsb) != ABSENT;
+        } finally {
+            s.lock.unlock();
+        }
+    }
+
+    /**
+     * 冪等キーを記帳済みにする
+     *
+     * <p>
+     * 記帳がディスクに書き出された後で呼び出します。以降に同じ冪等キーで再送された要求は重複として扱い、
+     * 記帳中に待っていた要求も重複として戻ります。
+     *
+     * @param msb 冪等キーの上位64ビット
+     * @param lsb 冪等キーの下位64ビット
+     * @return true 記帳済みにした
+     * @return false 登録されていなかった
+     */
+    public boolean commit(long msb, long lsb) {
+        Stripe s = this.stripeOf(lsb);
+        s.lock.lock();
+        try {
+            boolean committed = s.current.setState(msb, lsb, COMMITTED) || s.previous.setState(msb, lsb, COMMITTED);
+            s.settled.signalAll();
+            return committed;
+        } finally {
+            s.lock.unlock();
+        }
+    }
+
+    /**
+     * 冪等キーの登録を削除する
+     *
+     * <p>
+     * 登録した後に記帳できなかったとき、同じ冪等キーで再送された要求を受け付けるために削除します。
+     * 記帳中に待っていた要求は、再送された要求として記帳中に登録し直します。
+     *
+     * @param msb 冪等キーの上位64ビット
+     * @param lsb 冪等キーの下位64ビット
+     * @return true 削除した
+     * @return false 登録されていなかった
+     */
+    public boolean remove(long msb, long lsb) {
+        Stripe s = this.stripeOf(lsb);
+        s.lock.lock();
+        try {
+            boolean removed = s.current.remove(msb, lsb) || s.previous.remove(msb, lsb);
+            s.settled.signalAll();
+            return removed;
+        } finally {
+            s.lock.unlock();
+        }
+    }
+
+    /**
+     * 登録件数を取得する
+     *
+     * @return 両方の世代の登録件数
+     */
+    public int size() {
+        int size = 0;
+        for (Stripe s : this.stripes) {
+            s.lock.lock();
+            try {
+                size += s.current.size + s.previous.size;
+            } finally {
+                s.lock.unlock();
+            }
+        }
+        return size;
+    }
+
+    /* 冪等キーのストライプを求める(下位64ビットは乱数のため、下位のビットで振り分ける) */
+    private Stripe stripeOf(long lsb) {
+        return this.stripes[(int)lsb & (this.stripes.length - 1)];
+    }
+
+    /**
+     * ストライプ
+     *
+     * <p>
+     * 現在の世代と1つ前の世代、受け付ける冪等キーのタイムスタンプの下限を持ち、ロックで排他します。
+     * 世代の参照と世代の最も新しいタイムスタンプは、ロックを取得しない判定のためにvolatileとします。
+     */
+    private static final class Stripe {
+        /* ストライプのロック */
+        final ReentrantLock lock = new ReentrantLock();
+        /* 記帳中の冪等キーが記帳済みになったか削除されたことの通知 */
+        final Condition settled = this.lock.newCondition();
+        /* 1世代に登録できる件数 */
+        final int capacity;
+        /* 現在の世代 */
+        volatile Generation current;
+        /* 1つ前の世代 */
+        volatile Generation previous;
+        /* 受け付ける冪等キーのタイムスタンプの下限(破棄した世代の最も新しいタイムスタンプの次) */
+        long horizon;
+
+        Stripe(int capacity, int length, long now) {
+            this.capacity = capacity;
+            this.current = new Generation(length, now);
+            this.previous = new Generation(length, now);
+        }
+
+        /* 両方の世代のどの冪等キーよりも新しいタイムスタンプであるかを判定する(ロックは不要) */
+        boolean isNewer(long timestamp) {
+            // 世代の交代は1つ前の世代、現在の世代の順に書き換えるため、現在の世代を先に読む
+            // (交代後の現在の世代を読んだときは、交代前の現在の世代を1つ前の世代として読む)
+            Generation c = this.current;
+            Generation p = this.previous;
+            return timestamp > c.maxTimestamp && timestamp > p.maxTimestamp;
+        }
+
+        /* 両方の世代から冪等キーの状態を求める */
+        byte stateOf(long msb, long lsb) {
+            byte state = this.current.state(msb, lsb);
+            return state != ABSENT ? state : this.previous.state(msb, lsb);
+        }
+
+        /* 1つ前の世代を破棄して、現在の世代を1つ前の世代にする */
+        void rotate(long now) {
+            Generation g = this.previous;
+            if (g.size > 0) {
+                this.horizon = Math.max(this.horizon, g.maxTimestamp + 1);
+            }
+            g.clear(now);
+            this.previous = this.current;
+            this.current = g;
+        }
+    }
+
+    /**
+     * 1世代の冪等キーのハッシュ表
+     */
+    private static final class Generation {
+        /* 冪等キー(偶数の添字に上位64ビット、続く奇数の添字に下位64ビット、上位・下位ともにゼロの要素は空き) */
+        final long[] keys;
+        /* 冪等キーの状態(冪等キーの添字の半分を添字とする) */
+        final byte[] states;
+        /* ハッシュ値から添字を求めるためのシフト数 */
+        final int shift;
+        /* 登録件数 */
+        int size;
+        /* 世代を開始した時刻 */
+        long start;
+        /* 登録した冪等キーの最も新しいタイムスタンプ(ロックを取得しない判定で参照する) */
+        volatile long maxTimestamp;
+
+        Generation(int length, long start) {
+            // 上位と下位を隣り合わせに置き、1回の探索で参照するキャッシュラインを1つにする
+            this.keys = new long[length << 1];
+            this.states = new byte[length];
+            this.shift = 64 - Integer.numberOfTrailingZeros(length);
+            this.start = start;
+        }
+
+        byte state(long msb, long lsb) {
+            int i = this.find(msb, lsb);
+            return i < 0 ? ABSENT : this.states[i >> 1];
+        }
+
+        boolean setState(long msb, long lsb, byte state) {
+            int i = this.find(msb, lsb);
+            if (i < 0) {
+                return false;
+            }
+            this.states[i >> 1] = state;
+            return true;
+        }
+
+        /* 冪等キーの添字を求める(登録されていないときは-1) */
+        private int find(long msb, long lsb) {
+            if ((msb >>> 16) > this.maxTimestamp) {
+                // 登録したどの冪等キーよりも新しい(初めての要求の大半は探索せずに判定できる)
+                return -1;
+            }
+            long[] k = this.keys;
+            int mask = k.length - 1;
+            for (int i = this.indexOf(lsb); ; i = (i + 2) & mask) {
+                long m = k[i];
+                long l = k[i + 1];
+                if (m == msb && l == lsb) {
+                    return i;
+                } else if (m == 0L && l == 0L) {
+                    return -1;
+                }
+            }
+        }
+
+        void add(long msb, long lsb, long timestamp) {
+            long[] k = this.keys;
+            int mask = k.length - 1;
+            int i = this.indexOf(lsb);
+            while (k[i] != 0L || k[i + 1] != 0L) {
+                i = (i + 2) & mask;
+            }
+            k[i] = msb;
+            k[i + 1] = lsb;
+            this.states[i >> 1] = IN_FLIGHT;
+            this.size++;
+            this.maxTimestamp = Math.max(this.maxTimestamp, timestamp);
+        }
+
+        boolean remove(long msb, long lsb) {
+            long[] k = this.keys;
+            int mask = k.length - 1;
+            int i = this.indexOf(lsb);
+            for (; k[i] != msb || k[i + 1] != lsb; i = (i + 2) & mask) {
+                if (k[i] == 0L && k[i + 1] == 0L) {
+                    return false;
+                }
+            }
+            // 後続のキーのうち、本来の位置が空いた位置以前にあるものを空いた位置に移動する
+            int gap = i;
+            for (int j = (gap + 2) & mask; k[j] != 0L || k[j + 1] != 0L; j = (j + 2) & mask) {
+                int home = this.indexOf(k[j + 1]);
+                if (((j - home) & mask) >= ((j - gap) & mask)) {
+                    k[gap] = k[j];
+                    k[gap + 1] = k[j + 1];
+                    this.states[gap >> 1] = this.states[j >> 1];
+                    gap = j;
+                }
+            }
+            k[gap] = 0L;
+            k[gap + 1] = 0L;
+            this.states[gap >> 1] = ABSENT;
+            this.size--;
+            return true;
+        }
+
+        void clear(long start) {
+            if (this.size > 0) {
+                Arrays.fill(this.keys, 0L);
+                Arrays.fill(this.states, ABSENT);
+            }
+            this.size = 0;
+            this.start = start;
+            this.maxTimestamp = 0L;
+        }
+
+        /* 冪等キーの探索を開始する位置(偶数の添字)を求める(下位64ビットは乱数のため、下位だけで分散する) */
+        private int indexOf(long lsb) {
+            return (int)((lsb * GOLDEN_RATIO) >>> this.shift) << 1;
+        }
+    }
+}
@@ -0,0 +1,284 @@
+package com.cocreativeds;
+
+import java.time.LocalDate;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * 利息計算のバッチ
+ *
+ * <p>
+ * 日次の最終残高に基づいて普通預金の利息を計算し、利払日に利息元加の取引として一括して入金します。
+ * 日次処理({@link #accrue(Account[], LocalDate)})は口座残高 × 年利率 ÷ 365 をその日の利息として未払いの利息に加算し、
+ * 利払日の処理({@link #post(Account[], LocalDate)})は未払いの利息の1円未満を切り捨てて入金します。
+ * 切り捨てた端数は次の計算期間に繰り越します。
+ *
+ * <p>
+ * 未払いの利息は1/(365×100万)円を単位とするlong型の固定小数点数で保持します。年利率は100万分率で指定するため、
+ * 日々の利息(口座残高 × 年利率)は端数を含めて整数で正確に表せます。BigDecimalや浮動小数点数は使用しません。
+ * 桁あふれしたときは{@link ArithmeticException}をスローします(年利率1%で1年分の利息を未払いのまま保持するとき、
+ * 口座残高が約2.5兆円まで計算できます)。
+ *
+ * <p>
+ * 口座の配列を{@link ForkJoinPool}で分割して並列に処理します。1つの口座は1つのタスクだけが処理します。
+ * 利息計上(未払いの利息の加算)と利息元加の取引は先行書き込みログに記録し、ディスクへの書き出しはタスクごとに
+ * まとめて待ちます。同じ口座に対して複数のバッチを同時に実行してはなりません。
+ *
+ * <p>
+ * 未払いの利息は先行書き込みログとスナップショット({@link AccountSnapshot})で永続化します。回復では利息計上の
+ * レコードを未払いの利息に加算し、円の利息元加のレコードの金額を未払いの利息から差し引くため、日次処理と
+ * 利払日の間に再起動しても未払いの利息は失われません。
+ *
+ * <p>
+ * 口座ごとに利息を計上済みの最後の取引日を保持し、利息計上のレコードの取引日とスナップショットで永続化します。
+ * 日次処理はその日以前の利息を計上済みの口座を処理しないため、日次処理の途中で停止して同じ日の日次処理を
+ * やり直しても、利息を二重に計上しません。
+ */
+public class InterestAccrual {
+
+    /**
+     * 1年の日数(うるう年も365日で日割りする)
+     */
+    public static final long DAYS_PER_YEAR = 365L;
+
+    /**
+     * 年利率の単位(100万分率)
+     */
+    public static final long RATE_SCALE = 1_000_000L;
+
+    /* 未払いの利息の1円あたりの単位数 */
+    static final long UNITS_PER_YEN = DAYS_PER_YEAR * RATE_SCALE;
+
+    /* これ以下の口座数のときはタスクを分割しない */
+    private static final int THRESHOLD = 4096;
+
+    /* 年利率(100万分率) */
+    private final long annualRate;
+    /* 並列に処理するためのプール */
+    private final ForkJoinPool pool;
+
+    /**
+     * コンストラクター
+     *
+     * <p>
+     * 共通のプール({@link ForkJoinPool#commonPool()})で処理します。
+     *
+     * @param annualRate 年利率(100万分率、年0.001%のとき10)
+     * @throws IllegalArgumentException 年利率が負のとき
+     */
+    public InterestAccrual(long annualRate) {
+        this(annualRate, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * コンストラクター
+     *
+     * @param annualRate 年利率(100万分率、年0.001%のとき10)
+     * @param pool 並列に処理するためのプール
+     * @throws IllegalArgumentException 年利率が負のとき、またはプールがnullのとき
+     */
+    public InterestAccrual(long annualRate, ForkJoinPool pool) {
+        if (annualRate < 0) {
+            throw new IllegalArgumentException("年利率は0以上でなくてはならない");
+        }
+        if (pool == null) {
+            throw new IllegalArgumentException("プールを指定しなくてはならない");
+        }
+        this.annualRate = annualRate;
+        this.pool = pool;
+    }
+
+    /**
+     * 1日分の利息を計算する
+     *
+     * <p>
+     * 日次処理の終わりに、その日の最終残高から1日分の利息を計算して未払いの利息に加算します。
+     * 口座残高が0以下の口座と、取引日以降の利息を計上済みの口座には利息を付けません。先行書き込みログが
+     * 設定されている口座は、利息計上のレコードがディスクに書き出されてから完了します。
+     *
+     * @param accounts 口座
+     * @param trxDate 取引日(利息を計上する日)
+     * @return 利息を付けた口座の数
+     * @throws IllegalArgumentException 口座または取引日がnullのとき
+     * @throws ArithmeticException 利息が桁あふれしたとき
+     * @throws java.io.UncheckedIOException 先行書き込みログに記録できないとき
+     */
+    public long accrue(Account[] accounts, LocalDate trxDate) {
+        if (accounts == null) {
+            throw new IllegalArgumentException("口座を指定しなくてはならない");
+        }
+        if (trxDate == null) {
+            throw new IllegalArgumentException("取引日を指定しなくてはならない");
+        }
+        return this.pool.invoke(new AccrueTask(accounts, 0, accounts.length, this.annualRate,
+            System.currentTimeMillis(), (int)trxDate.toEpochDay()));
+    }
+
+    /**
+     * 未払いの利息を入金する
+     *
+     * <p>
+     * 利払日に、未払いの利息の1円以上の部分を利息元加の取引として入金します。1円未満の端数は未払いの利息に残します。
+     * 先行書き込みログが設定されている口座は、入金した取引がディスクに書き出されてから完了します。
+     *
+     * @param accounts 口座
+     * @param trxDate 取引日(利払日)
+     * @return 入金した利息の合計(円)
+     * @throws IllegalArgumentException 口座または取引日がnullのとき
+     * @throws java.io.UncheckedIOException 先行書き込みログに記録できないとき
+     */
+    public long post(Account[] accounts, LocalDate trxDate) {
+        if (accounts == null) {
+            throw new IllegalArgumentException("口座を指定しなくてはならない");
+        }
+        if (trxDate == null) {
+            throw new IllegalArgumentException("取引日を指定しなくてはならない");
+        }
+        return this.pool.invoke(new PostTask(accounts, 0, accounts.length, System.currentTimeMillis(),
+            (int)trxDate.toEpochDay()));
+    }
+
+    /**
+     * 未払いの利息を取得する
+     *
+     * @param account 口座
+     * @return 未払いの利息(円、1円未満を切り捨てた金額)
+     */
+    public static long accruedInterest(Account account) {
+        return account.accruedInterest() / UNITS_PER_YEN;
+    }
+
+    /**
+     * 未払いの利息から利息元加の金額を差し引く
+     *
+     * @param accrued 未払いの利息(1/(365×100万)円単位)
+     * @param amount 利息元加の金額(円)
+     * @return 差し引いた後の未払いの利息(未払いの利息を超える金額のときは0)
+     */
+    static long deduct(long accrued, long amount) {
+        return amount <= accrued / UNITS_PER_YEN ? accrued - amount * UNITS_PER_YEN : 0L;
+    }
+
+    /**
+     * 1日分の利息を計算するタスク
+     */
+    private static final class AccrueTask extends RecursiveTask<Long> {
+        private static final long serialVersionUID = 1L;
+
+        /* 口座の配列(タスクは直列化しない) */
+        private final transient Account[] accounts;
+        private final int from;
+        private final int to;
+        private final long annualRate;
+        private final long operationTime;
+        private final int trxDate;
+
+        AccrueTask(Account[] accounts, int from, int to, long annualRate, long operationTime, int trxDate) {
+            this.accounts = accounts;
+            this.from = from;
+            this.to = to;
+            this.annualRate = annualRate;
+            this.operationTime = operationTime;
+            this.trxDate = trxDate;
+        }
+
+        @Override
+        protected Long compute() {
+            if (this.to - this.from > THRESHOLD) {
+                int mid = (this.from + this.to) >>> 1;
+                AccrueTask left = new AccrueTask(this.accounts, this.from, mid, this.annualRate, this.operationTime,
+                    this.trxDate);
+                left.fork();
+                long right = new AccrueTask(this.accounts, mid, this.to, this.annualRate, this.operationTime,
+                    this.trxDate).compute();
+                return left.join() + right;
+            }
+            long count = 0;
+            // 書き出しを待つログとログ順序番号(口座ごとには待たずに、タスクの最後にまとめて待つ)
+            WriteAheadLog pendingLog = null;
+            long pendingLsn = 0L;
+            for (int i = this.from; i < this.to; i++) {
+                Account a = this.accounts[i];
+                long balance = a.getBalance();
+                if (balance <= 0 || this.trxDate <= a.accruedThrough()) {
+                    continue;
+                }
+                WriteAheadLog l = a.writeAheadLog();
+                if (l != pendingLog && pendingLog != null) {
+                    pendingLog.awaitDurable(pendingLsn);
+                    pendingLog = null;
+                }
+                long lsn = a.accrueInterest(Math.multiplyExact(balance, this.annualRate), this.operationTime,
+                    this.trxDate);
+                if (lsn < 0) {
+                    continue; // 並行して計上済み
+                }
+                pendingLog = l;
+                pendingLsn = lsn;
+                count++;
+            }
+            if (pendingLog != null) {
+                pendingLog.awaitDurable(pendingLsn);
+            }
+            return count;
+        }
+    }
+
+    /**
+     * 未払いの利息を入金するタスク
+     */
+    private static final class PostTask extends RecursiveTask<Long> {
+        private static final long serialVersionUID = 1L;
+
+        /* 口座の配列(タスクは直列化しない) */
+        private final transient Account[] accounts;
+        private final int from;
+        private final int to;
+        private final long operationTime;
+        private final int trxDate;
+
+        PostTask(Account[] accounts, int from, int to, long operationTime, int trxDate) {
+            this.accounts = accounts;
+            this.from = from;
+            this.to = to;
+            this.operationTime = operationTime;
+            this.trxDate = trxDate;
+        }
+
+        @Override
+        protected Long compute() {
+            if (this.to - this.from > THRESHOLD) {
+                int mid = (this.from + this.to) >>> 1;
+                PostTask left = new PostTask(this.accounts, this.from, mid, this.operationTime, this.trxDate);
+                left.fork();
+                long right = new PostTask(this.accounts, mid, this.to, this.operationTime, this.trxDate).compute();
+                return left.join() + right;
+            }
+            long total = 0;
+            // 書き出しを待つログとログ順序番号(口座ごとには待たずに、タスクの最後にまとめて待つ)
+            WriteAheadLog pendingLog = null;
+            long pendingLsn = 0L;
+            for (int i = this.from; i < this.to; i++) {
+                Account a = this.accounts[i];
+                long accrued = a.accruedInterest();
+                long yen = accrued / UNITS_PER_YEN;
+                if (yen <= 0) {
+                    continue;
+                }
+                WriteAheadLog l = a.writeAheadLog();
+                if (l != pendingLog && pendingLog != null) {
+                    pendingLog.awaitDurable(pendingLsn);
+                }
+                // 利息元加の記帳で未払いの利息から差し引く
+                long lsn = a.postInterest(yen, this.operationTime, this.trxDate, CurrencyTable.JPY);
+                pendingLog = l;
+                pendingLsn = lsn;
+                total += yen;
+            }
+            if (pendingLog != null) {
+                pendingLog.awaitDurable(pendingLsn);
+            }
+            return total;
+        }
+    }
+}
@@ -0,0 +1,244 @@
+package com.cocreativeds;
+
+/**
+ * Packed account key.
+ *
+ * <p>
+ * A customer-facing account is identified by its bank code(4 digits), branch office number
+ * (3 digits), account type code(1 digit) and account number(7 digits). These 15 decimal digits
+ * are packed into a primitive long without allocation.
+ *
+ * <p>
+ * 口座キー
+ * <p>
+ * 銀行口座保有者が認識する口座の表記(金融機関コード4桁、店番3桁、預金種目1桁、口座番号7桁の計15桁)を
+ * long型の整数1つに変換するユーティリティクラスです。口座キーは15桁の数字をそのまま10進数として解釈した値です。
+ * <p>
+ * 口座キー = 金融機関コード × 10^11 + 店番 × 10^8 + 預金種目コード × 10^7 + 口座番号
+ * <p>
+ * 口座キーの大小関係は、金融機関コード、店番、預金種目、口座番号の順に比較した大小関係と一致します。
+ * 文字列の連結やボクシングを行わずに口座を検索するために使用します。
+ */
+public final class PackedAccountKey {
+
+    /**
+     * 口座キーの最大値(15桁の9)
+     */
+    public static final long MAX_KEY = 999_999_999_999_999L;
+
+    /**
+     * 口座の表記("0001-123-1-1234567")の長さ
+     */
+    public static final int FORMATTED_LENGTH = 18;
+
+    /* 金融機関コードの重み */
+    private static final long BANK_CODE_WEIGHT = 100_000_000_000L;
+    /* 店番の重み */
+    private static final long BRANCH_OFFICE_NUMBER_WEIGHT = 100_000_000L;
+    /* 預金種目コードの重み */
+    private static final long ACCOUNT_TYPE_CODE_WEIGHT = 10_000_000L;
+
+    private PackedAccountKey() {
+    }
+
+    /**
+     * 口座キーを求める
+     *
+     * @param bankCode 金融機関コード
+     * @param boNumber 店番
+     * @param accountTypeCode 預金種目コード
+     * @param accountNumber 口座番号
+     * @return 口座キー
+     */
+    public static long pack(BankCode bankCode, BranchOfficeNumber boNumber, AccountTypeCode accountTypeCode,
+            AccountNumber accountNumber) {
+        return pack(CodeValidator.digitsValue(bankCode.getBankCode()),
+            CodeValidator.digitsValue(boNumber.getBranchOfficeNumber()),
+            CodeValidator.digitsValue(accountTypeCode.getAccountTypeCode()),
+            CodeValidator.digitsValue(accountNumber.getAccountNumber()));
+    }
+
+    /**
+     * 口座キーを求める
+     *
+     * @param bankCode 金融機関コード(0〜9999)
+     * @param boNumber 店番(0〜999)
+     * @param accountTypeCode 預金種目コード(0〜9)
+     * @param accountNumber 口座番号(0〜9999999)
+     * @return 口座キー
+     * @throws IllegalArgumentException いずれかの値が範囲外のとき
+     */
+    public static long pack(int bankCode, int boNumber, int accountTypeCode, int accountNumber) {
+        if (bankCode < 0 || 9999 < bankCode
+            || boNumber < 0 || 999 < boNumber
+            || accountTypeCode < 0 || 9 < accountTypeCode
+            || accountNumber < 0 || 9_999_999 < accountNumber) {
+            throw new IllegalArgumentException("口座キーに変換できない値が含まれています");
+        }
+        return bankCode * BANK_CODE_WEIGHT
+            + boNumber * BRANCH_OFFICE_NUMBER_WEIGHT
+            + accountTypeCode * ACCOUNT_TYPE_CODE_WEIGHT
+            + accountNumber;
+    }
+
+    /**
+     * 口座の表記を口座キーに変換する
+     *
+     * <p>
+     * "0001-123-1-1234567"(金融機関コード-店番-預金種目-口座番号)の形式の文字列を、部分文字列を生成せずに変換します。
+     *
+     * @param s 口座の表記
+     * @return 口座キー
+     * @throws IllegalArgumentException 口座の表記が正しくないとき
+     */
+    public static long parse(CharSequence s) {
+        if (s == null || s.length() != FORMATTED_LENGTH
+            || s.charAt(4) != '-' || s.charAt(8) != '-' || s.charAt(10) != '-') {
+            throw new IllegalArgumentException("口座の表記は「金融機関コード-店番-預金種目-口座番号」でなくてはならない");
+        }
+        long key = 0L;
+        for (int i = 0; i < FORMATTED_LENGTH; i++) {
+            if (i == 4 || i == 8 || i == 10) {
+                continue; // 区切り文字
+            }
+            char c = s.charAt(i);
+            if (c < '0' || '9' < c) {
+                throw new IllegalArgumentException("口座の表記は「金融機関コード-店番-預金種目-口座番号」でなくてはならない");
+            }
+            key = key * 10 + (c - '0');
+        }
+        return key;
+    }
+
+    /**
+     * 口座キーが正しい範囲にあるかを判定する
+     *
+     * @param key 口座キー
+     * @return true 正しい口座キーである
+     * @return false 正しい口座キーでない
+     */
+    public static boolean isValid(long key) {
+        return 0L <= key && key <= MAX_KEY;
+    }
+
+    /**
+     * 口座キーから金融機関コードの数値を取り出す
+     *
+     * @param key 口座キー
+     * @return 金融機関コード(0〜9999)
+     */
+    public static int bankCode(long key) {
+        return (int)(key / BANK_CODE_WEIGHT);
+    }
+
+    /**
+     * 口座キーから店番の数値を取り出す
+     *
+     * @param key 口座キー
+     * @return 店番(0〜999)
+     */
+    public static int branchOfficeNumber(long key) {
+        return (int)(key / BRANCH_OFFICE_NUMBER_WEIGHT % 1000);
+    }
+
+    /**
+     * 口座キーから預金種目コードの数値を取り出す
+     *
+     * @param key 口座キー
+     * @return 預金種目コード(0〜9)
+     */
+    public static int accountTypeCode(long key) {
+        return (int)(key / ACCOUNT_TYPE_CODE_WEIGHT % 10);
+    }
+
+    /**
+     * 口座キーから口座番号の数値を取り出す
+     *
+     * @param key 口座キー
+     * @return 口座番号(0〜9999999)
+     */
+    public static int accountNumber(long key) {
+        return (int)(key % ACCOUNT_TYPE_CODE_WEIGHT);
+    }
+
+    /**
+     * 口座キーの金融機関コードを取得する
+     *
+     * @param key 口座キー
+     * @return 正規化された金融機関コード
+     */
+    public static BankCode toBankCode(long key) {
+        return BankCode.of(bankCode(key));
+    }
+
+    /**
+     * 口座キーの店番を取得する
+     *
+     * @param key 口座キー
+     * @return 正規化された店番
+     */
+    public static BranchOfficeNumber toBranchOfficeNumber(long key) {
+        return BranchOfficeNumber.of(branchOfficeNumber(key));
+    }
+
+    /**
+     * 口座キーの預金種目コードを取得する
+     *
+     * @param key 口座キー
+     * @return 正規化された預金種目コード
+     */
+    public static AccountTypeCode toAccountTypeCode(long key) {
+        return AccountTypeCode.of(accountTypeCode(key));
+    }
+
+    /**
+     * 口座キーの口座番号を取得する
+     *
+     * @param key 口座キー
+     * @return 口座番号
+     */
+    public static AccountNumber toAccountNumber(long key) {
+        return new AccountNumber(CodeValidator.toDigits(accountNumber(key), 7));
+    }
+
+    /**
+     * 口座キーを口座の表記に変換してchar型配列に格納する
+     *
+     * <p>
+     * "0001-123-1-1234567"の形式の18文字を配列のoffsetの位置から格納します。
+     *
+     * @param key 口座キー
+     * @param dst 格納先のchar型配列
+     * @param offset 格納を開始する位置
+     * @throws IllegalArgumentException 口座キーが正しくないとき、または格納先の配列の長さが不足しているとき
+     */
+    public static void format(long key, char[] dst, int offset) {
+        if (!isValid(key)) {
+            throw new IllegalArgumentException("口座キーに変換できない値が含まれています");
+        }
+        if (dst == null || offset < 0 || dst.length - offset < FORMATTED_LENGTH) {
+            throw new IllegalArgumentException("口座の表記を格納するchar型配列の長さが不足しています");
+        }
+        // 口座番号の末尾から先頭に向かって数字を格納する
+        for (int i = FORMATTED_LENGTH - 1; i >= 0; i--) {
+            if (i == 4 || i == 8 || i == 10) {
+                dst[offset + i] = '-';
+            } else {
+                dst[offset + i] = (char)('0' + key % 10);
+                key /= 10;
+            }
+        }
+    }
+
+    /**
+     * 口座キーを口座の表記に変換する
+     *
+     * @param key 口座キー
+     * @return 口座の表記("0001-123-1-1234567")
+     */
+    public static String toString(long key) {
+        char[] chars = new char[FORMATTED_LENGTH];
+        format(key, chars, 0);
+        return new String(chars);
+    }
+}
@@ -0,0 +1,238 @@
+package com.cocreativeds;
+
+import java.util.Arrays;
+
+/**
+ * 口座キーから口座識別子への対応表
+ *
+ * <p>
+ * 口座キー({@link PackedAccountKey})をキー、口座識別子を値とするオープンアドレス法(線形探索)のハッシュ表です。
+ * キーをlong型のまま保持するため、検索時にキーのボクシングや文字列の連結は発生しません。
+ * 他行からの振込の受け付けで口座の表記("0001-123-1-1234567")から口座識別子を求める場合に使用します。
+ *
+ * <p>
+ * インスタンスはスレッドセーフではありません。
+ */
+public class PackedAccountKeyMap {
+
+    /* 空きを表すキー(口座キーは0以上のため使用されない) */
+    private static final long EMPTY = -1L;
+
+    /* ハッシュ値を求めるための乗数(黄金比) */
+    private static final long GOLDEN_RATIO = 0x9e3779b97f4a7c15L;
+
+    /* 負荷率の上限 */
+    private static final float LOAD_FACTOR = 0.75f;
+
+    /* 既定の初期容量 */
+    private static final int DEFAULT_CAPACITY = 16;
+
+    /* キー(口座キー) */
+    private long[] keys;
+    /* 値(口座識別子) */
+    private AccountId[] values;
+    /* 登録件数 */
+    private int size;
+    /* 拡張を行う登録件数 */
+    private int threshold;
+    /* ハッシュ値から添字を求めるためのシフト数 */
+    private int shift;
+
+    /**
+     * デフォルトコンストラクター
+     */
+    public PackedAccountKeyMap() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * コンストラクター
+     *
+     * <p>
+     * 指定された件数を拡張なしで登録できる容量でインスタンスを生成します。
+     *
+     * @param expectedSize 登録を予定する件数
+     * @throws IllegalArgumentException 件数が負のとき
+     */
+    public PackedAccountKeyMap(int expectedSize) {
+        if (expectedSize < 0) {
+            throw new IllegalArgumentException("登録を予定する件数は0以上でなくてはならない");
+        }
+        this.allocate(capacityFor(expectedSize));
+    }
+
+    /**
+     * 口座識別子を取得する
+     *
+     * @param key 口座キー
+     * @return 口座識別子、登録されていないときはnull
+     */
+    public AccountId get(long key) {
+        if (key < 0) {
+            return null;
+        }
+        int mask = this.keys.length - 1;
+        for (int i = this.indexOf(key); ; i = (i + 1) & mask) {
+            long k = this.keys[i];
+            if (k == key) {
+                return this.values[i];
+            } else if (k == EMPTY) {
+                return null;
+            }
+        }
+    }
+
+    /**
+     * 口座キーが登録されているかを判定する
+     *
+     * @param key 口座キー
+     * @return true 登録されている
+     * @return false 登録されていない
+     */
+    public boolean containsKey(long key) {
+        return this.get(key) != null;
+    }
+
+    /**
+     * 口座識別子を登録する
+     *
+     * @param key 口座キー
+     * @param accountId 口座識別子
+     * @return 以前に登録されていた口座識別子、登録されていなかったときはnull
+     * @throws IllegalArgumentException 口座キーが正しくないとき、または口座識別子がnullのとき
+     */
+    public AccountId put(long key, AccountId accountId) {
+        if (!PackedAccountKey.isValid(key)) {
+            throw new IllegalArgumentException("口座キーに変換できない値が含まれています");
+        }
+        if (accountId == null) {
+            throw new IllegalArgumentException("口座識別子を指定しなくてはならない");
+        }
+        int mask = this.keys.length - 1;
+        int i = this.indexOf(key);
+        for (; this.keys[i] != EMPTY; i = (i + 1) & mask) {
+            if (this.keys[i] == key) {
+                AccountId previous = this.values[i];
+                this.values[i] = accountId;
+                return previous;
+            }
+        }
+        this.keys[i] = key;
+        this.values[i] = accountId;
+        if (++this.size > this.threshold) {
+            this.rehash(this.keys.length << 1);
+        }
+        return null;
+    }
+
+    /**
+     * 口座識別子の登録を削除する
+     *
+     * <p>
+     * 削除した位置より後ろの同じ探索列にあるキーを前に詰めるため、削除済みの目印は残りません。
+     *
+     * @param key 口座キー
+     * @return 削除した口座識別子、登録されていなかったときはnull
+     */
+    public AccountId remove(long key) {
+        if (key < 0) {
+            return null;
+        }
+        int mask = this.keys.length - 1;
+        int i = this.indexOf(key);
+        for (; this.keys[i] != key; i = (i + 1) & mask) {
+            if (this.keys[i] == EMPTY) {
+                return null;
+            }
+        }
+        AccountId removed = this.values[i];
+
+        // 後続のキーのうち、本来の位置が空いた位置以前にあるものを空いた位置に移動する
+        int gap = i;
+        for (int j = (gap + 1) & mask; this.keys[j] != EMPTY; j = (j + 1) & mask) {
+            int home = this.indexOf(this.keys[j]);
+            if (((j - home) & mask) >= ((j - gap) & mask)) {
+                this.keys[gap] = this.keys[j];
+                this.values[gap] = this.values[j];
+                gap = j;
+            }
+        }
+        this.keys[gap] = EMPTY;
+        this.values[gap] = null;
+        this.size--;
+        return removed;
+    }
+
+    /**
+     * 登録件数を取得する
+     *
+     * @return 登録件数
+     */
+    public int size() {
+        return this.size;
+    }
+
+    /**
+     * 登録されているかを判定する
+     *
+     * @return true 登録されていない
+     * @return false 登録されている
+     */
+    public boolean isEmpty() {
+        return this.size == 0;
+    }
+
+    /**
+     * すべての登録を削除する
+     */
+    public void clear() {
+        Arrays.fill(this.keys, EMPTY);
+        Arrays.fill(this.values, null);
+        this.size = 0;
+    }
+
+    /* 口座キーの探索を開始する位置を求める */
+    private int indexOf(long key) {
+        return (int)((key * GOLDEN_RATIO) >>> this.shift);
+    }
+
+    /* 指定された容量の配列を確保する */
+    private void allocate(int capacity) {
+        this.keys = new long[capacity];
+        Arrays.fill(this.keys, EMPTY);
+        this.values = new AccountId[capacity];
+        this.threshold = (int)(capacity * LOAD_FACTOR);
+        this.shift = Long.numberOfLeadingZeros(capacity - 1);
+    }
+
+    /* 容量を変更して登録をやり直す */
+    private void rehash(int capacity) {
+        long[] oldKeys = this.keys;
+        AccountId[] oldValues = this.values;
+        this.allocate(capacity);
+        int mask = capacity - 1;
+        for (int j = 0; j < oldKeys.length; j++) {
+            if (oldKeys[j] != EMPTY) {
+                int i = this.indexOf(oldKeys[j]);
+                while (this.keys[i] != EMPTY) {
+                    i = (i + 1) & mask;
+                }
+                this.keys[i] = oldKeys[j];
+                this.values[i] = oldValues[j];
+            }
+        }
+    }
+
+    /* 登録件数に対して必要な容量(2のべき乗)を求める */
+    private static int capacityFor(int expectedSize) {
+        long required = (long)Math.ceil(expectedSize / (double)LOAD_FACTOR) + 1;
+        int capacity = DEFAULT_CAPACITY;
+        while (capacity < required) {
+            if (capacity >= (1 << 30)) {
+                throw new IllegalArgumentException("登録を予定する件数が多すぎます");
+            }
+            capacity <<= 1;
+        }
+        return capacity;
+    }
+}
@@ -0,0 +1,416 @@
+package com.cocreativeds;
+
+import java.io.Closeable;
+import java.time.LocalDate;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 口座を分割した単一書き込みスレッドの記帳
+ *
+ * <p>
+ * 口座を口座識別子でN個のシャードに分け、シャードごとに1つの専用スレッドだけが記帳します。記帳の要求は
+ * シャードごとの固定長の待ち行列({@link PostingRing})に追加し、受け付けたスレッドは記帳を待ちません。
+ * 記帳の結果は、シャードのスレッドから{@link Listener}に通知します。
+ *
+ * <p>
+ * 同じ口座は常に同じスレッドが記帳するため、口座残高のCASや入出金明細の排他が競合することはありません。
+ * 口座ごとの記帳は要求を追加した順(同じスレッドから追加したとき)に行います。このクラスで記帳する口座には、
+ * 他のスレッドから預け入れ・払い戻しを行わないでください(行っても口座残高は正しく保たれますが、競合が発生します)。
+ *
+ * <p>
+ * シャードのスレッドは待ち行列からまとめて取り出して記帳し、先行書き込みログが設定された口座は、
+ * 取り出した記帳の最後にまとめてディスクへの書き出しを待ちます。結果の通知は書き出しの後に行います。
+ * 待ち行列が一杯のときは{@link #tryPost}はfalseを返し、{@link #post}は空きができるまで待ちます。
+ */
+public class PartitionedPosting implements Closeable {
+
+    /**
+     * 先行書き込みログに記録できなかった、またはディスクに書き出せなかった
+     */
+    public static final byte FAILED = BulkPosting.FAILED;
+
+    /**
+     * 記帳の結果の通知先
+     *
+     * <p>
+     * シャードのスレッドから呼び出されます。処理に時間がかかると、そのシャードの記帳が遅れます。
+     */
+    @FunctionalInterface
+    public interface Listener {
+
+        /**
+         * 記帳した
+         *
+         * @param tag 記帳を要求したときに指定した値
+         * @param result 結果({@link BulkPosting#POSTED}、{@link BulkPosting#NO_ACCOUNT}、
+         *        {@link BulkPosting#INSUFFICIENT_BALANCE}、{@link BulkPosting#INVALID_AMOUNT}、{@link #FAILED})
+         */
+        void posted(long tag, byte result);
+    }
+
+    /* 1回に待ち行列から取り出す件数 */
+    private static final int BATCH_SIZE = 256;
+    /* スレッドが休止するまでの空回りの回数 */
+    private static final int SPINS = 100;
+    /* 休止の最大時間(ナノ秒)。追加したスレッドが起こすが、念のため一定時間で起きる */
+    private static final long PARK_NANOS = 10_000_000L;
+
+    /* 口座の登録簿 */
+    private final AccountRegistry registry;
+    /* 記帳の結果の通知先 */
+    private final Listener listener;
+    /* シャード */
+    private final Shard[] shards;
+
+    /* 受け付けを終了したか */
+    private volatile boolean closed;
+    /* 最後の失敗 */
+    private volatile Exception lastFailure;
+
+    /**
+     * コンストラクター
+     *
+     * <p>
+     * シャードごとのスレッドを開始します。
+     *
+     * @param registry 口座の登録簿
+     * @param shards シャード数
+     * @param capacity シャードごとの待ち行列の長さ(2のべき乗に切り上げる)
+     * @param listener 記帳の結果の通知先
+     * @throws IllegalArgumentException 登録簿または通知先がnullのとき、シャード数または待ち行列の長さが1以上でないとき
+     */
+    public PartitionedPosting(AccountRegistry registry, int shards, int capacity, Listener listener) {
+        if (registry == null || listener == null) {
+            throw new IllegalArgumentException("口座の登録簿と結果の通知先を指定しなくてはならない");
+        }
+        if (shards < 1) {
+            throw new IllegalArgumentException("シャード数は1以上でなくてはならない");
+        }
+        if (capacity < 1 || (1 << 30) < capacity) {
+            throw new IllegalArgumentException("待ち行列の長さは1以上" + (1 << 30) + "以下でなくてはならない");
+        }
+        this.registry = registry;
+        this.listener = listener;
+        int length = capacity == 1 ? 1 : Integer.highestOneBit(capacity - 1) << 1;
+        this.shards = new Shard[shards];
+        for (int i = 0; i < shards; i++) {
+            this.shards[i] = new Shard(new PostingRing(length));
+        }
+        for (int i = 0; i < shards; i++) {
+            Thread t = new Thread(this.shards[i], "posting-shard-" + i);
+            t.setDaemon(true);
+            this.shards[i].thread = t;
+            t.start();
+        }
+    }
+
+    /**
+     * シャードを求める
+     *
+     * <p>
+     * ULIDの乱数部の下位64ビットを符号なし整数としてシャード数で割った余りです。
+     *
+     * @param accountId 口座識別子
+     * @param shards シャード数
+     * @return シャード(0からシャード数-1)
+     */
+    public static int shardOf(AccountId accountId, int shards) {
+        return (int)Long.remainderUnsigned(accountId.leastSignificantBits(), shards);
+    }
+
+    /**
+     * シャード数を取得する
+     *
+     * @return シャード数
+     */
+    public int shards() {
+        return this.shards.length;
+    }
+
+    /**
+     * 記帳を要求する
+     *
+     * <p>
+     * 取引金額が正のときは預け入れ、負のときは払い戻しとして記帳します。待ち行列が一杯のときは追加せずにfalseを返します。
+     *
+     * @param accountId 口座識別子
+     * @param amount 取引金額(正は預け入れ、負は払い戻し)
+     * @param currencyIndex 通貨インデックス
+     * @param trxDate 取引日
+     * @param description 摘要
+     * @param tag 結果の通知で記帳を識別する値
+     * @return true 受け付けた
+     * @return false 待ち行列に空きがない
+     * @throws IllegalArgumentException 口座識別子がnullのとき、通貨インデックスまたは取引日が正しくないとき
+     * @throws IllegalStateException 受け付けを終了しているとき
+     */
+    public boolean tryPost(AccountId accountId, long amount, int currencyIndex, LocalDate trxDate,
+            String description, long tag) {
+        Shard s = this.shardFor(accountId, currencyIndex, trxDate);
+        if (!s.ring.offer(accountId, amount, currencyIndex, (int)trxDate.toEpochDay(), description, tag)) {
+            return false;
+        }
+        s.wakeUp();
+        return true;
+    }
+
+    /**
+     * 記帳を要求する
+     *
+     * <p>
+     * 待ち行列が一杯のときは、空きができるまで待ちます。
+     *
+     * @param accountId 口座識別子
+     * @param amount 取引金額(正は預け入れ、負は払い戻し)
+     * @param currencyIndex 通貨インデックス
+     * @param trxDate 取引日
+     * @param description 摘要
+     * @param tag 結果の通知で記帳を識別する値
+     * @throws IllegalArgumentException 口座識別子がnullのとき、通貨インデックスまたは取引日が正しくないとき
+     * @throws IllegalStateException 受け付けを終了しているとき
+     */
+    public void post(AccountId accountId, long amount, int currencyIndex, LocalDate trxDate, String description,
+            long tag) {
+        Shard s = this.shardFor(accountId, currencyIndex, trxDate);
+        int day = (int)trxDate.toEpochDay();
+        for (int idle = 0; !s.ring.offer(accountId, amount, currencyIndex, day, description, tag); idle++) {
+            if (this.closed) {
+                throw new IllegalStateException("記帳の受け付けを終了している");
+            }
+            s.wakeUp();
+            backOff(idle);
+        }
+        s.wakeUp();
+    }
+
+    /**
+     * 要求した記帳を待つ
+     *
+     * <p>
+     * 呼び出す前に受け付けたすべての記帳の結果が通知されるまで待ちます。
+     */
+    public void flush() {
+        for (Shard s : this.shards) {
+            long target = s.ring.claimed();
+            for (int idle = 0; s.completed < target; idle++) {
+                if (!s.thread.isAlive()) {
+                    return;
+                }
+                backOff(idle);
+            }
+        }
+    }
+
+    /**
+     * 最後の失敗を取得する
+     *
+     * @return 先行書き込みログへの記録、書き出し、または結果の通知の最後の失敗、失敗していないときはnull
+     */
+    public Exception getLastFailure() {
+        return this.lastFailure;
+    }
+
+    /**
+     * 受け付けを終了する
+     *
+     * <p>
+     * 受け付けた記帳をすべて記帳してから、シャードのスレッドを終了します。記帳を要求するスレッドを止めてから
+     * 呼び出します(終了と同時に要求された記帳は、記帳されないことがあります)。
+     */
+    @Override
+    public void close() {
+        this.closed = true;
+        boolean interrupted = false;
+        for (Shard s : this.shards) {
+            LockSupport.unpark(s.thread);
+            while (true) {
+                try {
+                    s.thread.join();
+                    break;
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /* パラメーターを確認して口座のシャードを求める */
+    private Shard shardFor(AccountId accountId, int currencyIndex, LocalDate trxDate) {
+        if (accountId == null) {
+            throw new IllegalArgumentException("口座識別子を指定しなくてはならない");
+        }
+        if (currencyIndex < 0 || CurrencyTable.size() <= currencyIndex) {
+            throw new IllegalArgumentException("通貨コードは取り扱い通貨のISO 4217通貨コードでなくてはならない");
+        }
+        if (trxDate == null) {
+            throw new IllegalArgumentException("取引日を指定しなくてはならない");
+        }
+        if (this.closed) {
+            throw new IllegalStateException("記帳の受け付けを終了している");
+        }
+        return this.shards[shardOf(accountId, this.shards.length)];
+    }
+
+    /* 空回り、譲歩、短い休止の順に待つ */
+    private static void backOff(int idle) {
+        if (idle < SPINS) {
+            Thread.onSpinWait();
+        } else if (idle < SPINS * 2) {
+            Thread.yield();
+        } else {
+            LockSupport.parkNanos(1000L);
+        }
+    }
+
+    /**
+     * シャード
+     *
+     * <p>
+     * 待ち行列から取り出した記帳を、スレッドの専用の配列に写してから記帳します。
+     */
+    private final class Shard implements Runnable {
+        private final PostingRing ring;
+        private Thread thread;
+
+        /* 休止しているか */
+        private volatile boolean parked;
+        /* 結果を通知した記帳の数 */
+        private volatile long completed;
+
+        /* 取り出した記帳 */
+        private final AccountId[] accountIds = new AccountId[BATCH_SIZE];
+        private final long[] amounts = new long[BATCH_SIZE];
+        private final int[] currencyIndexes = new int[BATCH_SIZE];
+        private final int[] trxDates = new int[BATCH_SIZE];
+        private final String[] descriptions = new String[BATCH_SIZE];
+        private final long[] tags = new long[BATCH_SIZE];
+        private final int[] entries = new int[BATCH_SIZE];
+        private final byte[] results = new byte[BATCH_SIZE];
+        /* ディスクへの書き出しを待つ記帳 */
+        private final boolean[] logged = new boolean[BATCH_SIZE];
+
+        Shard(PostingRing ring) {
+            this.ring = ring;
+        }
+
+        /* 休止しているときは起こす */
+        void wakeUp() {
+            if (this.parked) {
+                LockSupport.unpark(this.thread);
+            }
+        }
+
+        @Override
+        public void run() {
+            int idle = 0;
+            for (;;) {
+                boolean stopping = PartitionedPosting.this.closed;
+                int n = this.drain();
+                if (n > 0) {
+                    this.process(n);
+                    idle = 0;
+                } else if (stopping) {
+                    return; // 終了を指示された後に待ち行列が空になった
+                } else if (++idle < SPINS) {
+                    Thread.onSpinWait();
+                } else {
+                    this.parked = true;
+                    if (this.ring.peek() == null && !PartitionedPosting.this.closed) {
+                        LockSupport.parkNanos(this, PARK_NANOS);
+                    }
+                    this.parked = false;
+                }
+            }
+        }
+
+        /* 待ち行列から取り出す */
+        private int drain() {
+            int n = 0;
+            PostingRing.Slot s;
+            while (n < BATCH_SIZE && (s = this.ring.peek()) != null) {
+                this.accountIds[n] = s.accountId;
+                this.amounts[n] = s.amount;
+                this.currencyIndexes[n] = s.currencyIndex;
+                this.trxDates[n] = s.trxDate;
+                this.descriptions[n] = s.description;
+                this.tags[n] = s.tag;
+                this.ring.release();
+                n++;
+            }
+            return n;
+        }
+
+        /* 取り出した記帳を記帳し、結果を通知する */
+        private void process(int n) {
+            long operationTime = System.currentTimeMillis();
+            WriteAheadLog pendingLog = null;
+            long pendingLsn = 0L;
+            for (int i = 0; i < n; i++) {
+                this.logged[i] = false;
+                long amount = this.amounts[i];
+                if (amount == 0L || amount == Long.MIN_VALUE) {
+                    this.results[i] = BulkPosting.INVALID_AMOUNT;
+                    continue;
+                }
+                Account a = PartitionedPosting.this.registry.get(this.accountIds[i]);
+                if (a == null) {
+                    this.results[i] = BulkPosting.NO_ACCOUNT;
+                    continue;
+                }
+                WriteAheadLog l = a.writeAheadLog();
+                if (l != pendingLog && pendingLog != null) {
+                    this.awaitDurable(pendingLog, pendingLsn, i);
+                    pendingLog = null;
+                }
+                this.entries[i] = i;
+                long lsn;
+                try {
+                    lsn = a.postBatch(this.amounts, this.entries, i, i + 1, this.results, operationTime,
+                        this.trxDates[i], this.currencyIndexes[i], this.descriptions[i]);
+                } catch (RuntimeException e) {
+                    PartitionedPosting.this.lastFailure = e;
+                    this.results[i] = FAILED;
+                    continue;
+                }
+                if (lsn != 0L) {
+                    pendingLog = l;
+                    pendingLsn = lsn;
+                    this.logged[i] = true;
+                }
+            }
+            if (pendingLog != null) {
+                this.awaitDurable(pendingLog, pendingLsn, n);
+            }
+            for (int i = 0; i < n; i++) {
+                try {
+                    PartitionedPosting.this.listener.posted(this.tags[i], this.results[i]);
+                } catch (RuntimeException e) {
+                    PartitionedPosting.this.lastFailure = e;
+                }
+                this.accountIds[i] = null;
+                this.descriptions[i] = null;
+            }
+            this.completed += n; // このスレッドだけが更新する
+        }
+
+        /* ディスクへの書き出しを待つ。書き出せなかったときは、待っていた記帳の結果を失敗とする */
+        private void awaitDurable(WriteAheadLog log, long lsn, int to) {
+            try {
+                log.awaitDurable(lsn);
+            } catch (RuntimeException e) {
+                PartitionedPosting.this.lastFailure = e;
+                for (int i = 0; i < to; i++) {
+                    if (this.logged[i]) {
+                        this.results[i] = FAILED;
+                    }
+                }
+            }
+            for (int i = 0; i < to; i++) {
+                this.logged[i] = false;
+            }
+        }
+    }
+}
@@ -0,0 +1,143 @@
+package com.cocreativeds;
+
+import java.util.Arrays;
+
+/**
+ * 通帳の明細行の編集
+ *
+ * <p>
+ * 通帳に印字する1行を、固定長の文字列として文字の配列に書き込むユーティリティクラスです。
+ * 行ごとに文字列を作成しないため、通帳記帳を大量に行っても一時オブジェクトは発生しません。
+ *
+ * <p>
+ * 1行は{@value #LINE_WIDTH}文字で、改行を含みません。各項目の位置は次のとおりです(幅は文字数です)。
+ * <ul>
+ * <li>0〜9: 取引日(yyyy-MM-dd)</li>
+ * <li>11〜20: 摘要(10文字を超える部分は切り捨てる)</li>
+ * <li>21〜34: お支払金額(右詰め、3桁ごとにカンマで区切る)</li>
+ * <li>35〜48: お預り金額(右詰め、3桁ごとにカンマで区切る)</li>
+ * <li>49〜63: 差引残高(右詰め、3桁ごとにカンマで区切る)</li>
+ * </ul>
+ * 金額が項目の幅に収まらないときは、項目を'*'で埋めます。
+ */
+public final class PassbookFormatter {
+
+    /**
+     * 1行の文字数
+     */
+    public static final int LINE_WIDTH = 64;
+
+    /* 各項目の開始位置と幅 */
+    private static final int DATE = 0;
+    private static final int DESCRIPTION = 11;
+    private static final int DESCRIPTION_WIDTH = 10;
+    private static final int WITHDRAWAL = 21;
+    private static final int DEPOSIT = 35;
+    private static final int AMOUNT_WIDTH = 14;
+    private static final int BALANCE = 49;
+    private static final int BALANCE_WIDTH = 15;
+
+    private PassbookFormatter() {
+    }
+
+    /**
+     * 明細行を書き込む
+     *
+     * @param trxDate 取引日(エポック日)
+     * @param description 摘要、ないときはnull
+     * @param withdrawal お支払金額、ないときは0
+     * @param deposit お預り金額、ないときは0
+     * @param balance 差引残高
+     * @param dst 書き込み先
+     * @param offset 書き込みを開始する位置
+     */
+    public static void formatLine(int trxDate, String description, long withdrawal, long deposit, long balance,
+            char[] dst, int offset) {
+        Arrays.fill(dst, offset, offset + LINE_WIDTH, ' ');
+        formatDate(trxDate, dst, offset + DATE);
+        if (description != null) {
+            int n = Math.min(description.length(), DESCRIPTION_WIDTH);
+            description.getChars(0, n, dst, offset + DESCRIPTION);
+        }
+        if (withdrawal != 0) {
+            formatAmount(withdrawal, dst, offset + WITHDRAWAL, AMOUNT_WIDTH);
+        }
+        if (deposit != 0) {
+            formatAmount(deposit, dst, offset + DEPOSIT, AMOUNT_WIDTH);
+        }
+        formatAmount(balance, dst, offset + BALANCE, BALANCE_WIDTH);
+    }
+
+    /**
+     * 取引日をyyyy-MM-dd形式で書き込む
+     *
+     * <p>
+     * LocalDateを作成せずに、エポック日から年月日を求めます(0000年〜9999年)。
+     *
+     * @param epochDay エポック日
+     * @param dst 書き込み先
+     * @param offset 書き込みを開始する位置
+     */
+    static void formatDate(int epochDay, char[] dst, int offset) {
+        // 3月1日を年の始まりとして、400年周期で年月日を求める
+        long z = epochDay + 719_468L;
+        long era = Math.floorDiv(z, 146_097L);
+        long doe = z - era * 146_097L;
+        long yoe = (doe - doe / 1460 + doe / 36_524 - doe / 146_096) / 365;
+        long doy = doe - (365 * yoe + yoe / 4 - yoe / 100);
+        long mp = (5 * doy + 2) / 153;
+        int day = (int)(doy - (153 * mp + 2) / 5 + 1);
+        int month = (int)(mp < 10 ? mp + 3 : mp - 9);
+        int year = (int)(yoe + era * 400 + (month <= 2 ? 1 : 0));
+        writeDigits(year, dst, offset, 4);
+        dst[offset + 4] = '-';
+        writeDigits(month, dst, offset + 5, 2);
+        dst[offset + 7] = '-';
+        writeDigits(day, dst, offset + 8, 2);
+    }
+
+    /**
+     * 金額を右詰めで書き込む
+     *
+     * @param amount 金額
+     * @param dst 書き込み先
+     * @param offset 項目の開始位置
+     * @param width 項目の幅
+     */
+    static void formatAmount(long amount, char[] dst, int offset, int width) {
+        int p = offset + width;
+        // 負の数のまま桁を取り出す(Long.MIN_VALUEの符号を反転すると桁あふれするため)
+        long v = amount > 0 ? -amount : amount;
+        int digits = 0;
+        do {
+            if (digits > 0 && digits % 3 == 0) {
+                if (--p < offset) {
+                    break;
+                }
+                dst[p] = ',';
+            }
+            if (--p < offset) {
+                break;
+            }
+            dst[p] = (char)('0' - v % 10);
+            v /= 10;
+            digits++;
+        } while (v != 0);
+        if (amount < 0 && p > offset) {
+            dst[--p] = '-';
+        } else if (amount < 0 || v != 0) {
+            p = offset - 1; // 収まらない
+        }
+        if (p < offset) {
+            Arrays.fill(dst, offset, offset + width, '*');
+        }
+    }
+
+    /* 0埋めの固定桁数で数値を書き込む */
+    private static void writeDigits(int value, char[] dst, int offset, int digits) {
+        for (int i = digits - 1; i >= 0; i--) {
+            dst[offset + i] = (char)('0' + value % 10);
+            value /= 10;
+        }
+    }
+}
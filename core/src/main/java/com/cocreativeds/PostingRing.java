@@ -0,0 +1,140 @@
+package com.cocreativeds;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+
+/**
+ * 記帳の待ち行列
+ *
+ * <p>
+ * 複数のスレッドが追加し、1つのスレッドが取り出す固定長のリングバッファーです(MPSC)。要素はあらかじめ作成しておき、
+ * 追加では要素の項目に値を設定するだけで、記帳ごとにオブジェクトを作成しません。
+ *
+ * <p>
+ * 各要素のシーケンス番号で、要素の状態を表します。追加する位置をtとすると、シーケンス番号がtの要素は空き、
+ * t+1の要素は追加済みです。取り出したスレッドはシーケンス番号を1周後の位置(t+長さ)にして要素を空けます。
+ * 追加する位置はCASで確保し、確保した要素に値を設定してからシーケンス番号を更新します。
+ */
+final class PostingRing {
+
+    /**
+     * 待ち行列の要素
+     */
+    static final class Slot {
+        /* シーケンス番号 */
+        volatile long sequence;
+
+        AccountId accountId;
+        long amount;
+        int currencyIndex;
+        int trxDate;
+        String description;
+        long tag;
+
+        Slot(long sequence) {
+            this.sequence = sequence;
+        }
+    }
+
+    /* 要素 */
+    private final Slot[] slots;
+    /* 位置から要素の添字を求めるマスク */
+    private final int mask;
+
+    /* 次に追加する位置(追加するスレッドがCASで更新する) */
+    private volatile long tail;
+    /* 次に取り出す位置(取り出すスレッドだけが更新する) */
+    private long head;
+
+    /* 次に追加する位置を更新するためのVarHandle */
+    private static final VarHandle TAIL;
+
+    static {
+        try {
+            TAIL = MethodHandles.lookup().findVarHandle(PostingRing.class, "tail", long.class);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    /**
+     * コンストラクター
+     *
+     * @param capacity 長さ(2のべき乗)
+     */
+    PostingRing(int capacity) {
+        this.slots = new Slot[capacity];
+        for (int i = 0; i < capacity; i++) {
+            this.slots[i] = new Slot(i);
+        }
+        this.mask = capacity - 1;
+    }
+
+    /**
+     * 記帳を追加する
+     *
+     * @param accountId 口座識別子
+     * @param amount 取引金額
+     * @param currencyIndex 通貨インデックス
+     * @param trxDate 取引日(エポック日)
+     * @param description 摘要
+     * @param tag 結果の通知で記帳を識別する値
+     * @return true 追加した
+     * @return false 待ち行列に空きがない
+     */
+    boolean offer(AccountId accountId, long amount, int currencyIndex, int trxDate, String description, long tag) {
+        for (;;) {
+            long t = this.tail;
+            Slot s = this.slots[(int)t & this.mask];
+            long sequence = s.sequence;
+            if (sequence == t) {
+                if (TAIL.compareAndSet(this, t, t + 1)) {
+                    s.accountId = accountId;
+                    s.amount = amount;
+                    s.currencyIndex = currencyIndex;
+                    s.trxDate = trxDate;
+                    s.description = description;
+                    s.tag = tag;
+                    s.sequence = t + 1;
+                    return true;
+                }
+            } else if (sequence < t) {
+                return false; // 1周前の要素がまだ取り出されていない
+            }
+            // 他のスレッドが先に確保した
+        }
+    }
+
+    /**
+     * 次に取り出す要素を取得する
+     *
+     * <p>
+     * 取り出すスレッドだけが呼び出します。要素の値を読み終えたら{@link #release()}で空けます。
+     *
+     * @return 要素、追加済みの要素がないときはnull
+     */
+    Slot peek() {
+        Slot s = this.slots[(int)this.head & this.mask];
+        return s.sequence == this.head + 1 ? s : null;
+    }
+
+    /**
+     * 取り出した要素を空ける
+     */
+    void release() {
+        Slot s = this.slots[(int)this.head & this.mask];
+        s.accountId = null;
+        s.description = null;
+        s.sequence = this.head + this.slots.length;
+        this.head++;
+    }
+
+    /**
+     * 追加のために確保された位置の数を取得する
+     *
+     * @return これまでに確保された位置の数
+     */
+    long claimed() {
+        return this.tail;
+    }
+}
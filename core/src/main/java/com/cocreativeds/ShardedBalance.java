@@ -0,0 +1,166 @@
+package com.cocreativeds;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+
+/**
+ * 分割した口座残高
+ *
+ * <p>
+ * 給与資金口座、加盟店の精算口座、別段預金などの高負荷口座の残高を、複数の部分残高に分けて保持します。
+ * 入金はスレッドごとに選んだ部分残高に加算するため、多数のスレッドから同時に入金しても1つの変数を奪い合いません
+ * ({@link java.util.concurrent.atomic.LongAdder}と同様の方式です)。
+ *
+ * <p>
+ * 出金は集約済みの残高からCASで減算します。集約済みの残高が不足しているときは部分残高を集約してから再試行し、
+ * 集約しても不足しているときに残高不足とします。集約を待つ間に他のスレッドが集約したときは、集約する部分残高が
+ * なくても集約済みの残高を読み直してから判定します。部分残高は出金では減算しないため、負になることはありません。
+ * したがって、同時に出金が行われても口座残高が負になることはありません。
+ *
+ * <p>
+ * 残高の照会({@link #sum()})は集約済みの残高と部分残高の合計です。同時に行われている入金は含まれないことがあります。
+ */
+final class ShardedBalance {
+
+    /* 部分残高の最大数 */
+    private static final int MAX_SHARDS = 64;
+    /* 部分残高の間隔(long型の数)。隣接する部分残高が同じキャッシュラインに載らないように128バイトずつ空ける */
+    private static final int STRIDE = 16;
+
+    /* 部分残高の数(2のべき乗) */
+    private final int shards;
+    /* 部分残高(STRIDEおきに使用する) */
+    private final long[] cells;
+
+    /* 集約済みの残高(VarHandleによるCASで更新する) */
+    private volatile long base;
+
+    /* 集約済みの残高を更新するためのVarHandle */
+    private static final VarHandle BASE;
+    /* 部分残高を更新するためのVarHandle */
+    private static final VarHandle CELLS = MethodHandles.arrayElementVarHandle(long[].class);
+
+    static {
+        try {
+            BASE = MethodHandles.lookup().findVarHandle(ShardedBalance.class, "base", long.class);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    /**
+     * コンストラクター
+     *
+     * <p>
+     * 部分残高の数は、利用可能なプロセッサー数以上の2のべき乗({@value #MAX_SHARDS}以下)です。
+     *
+     * @param balance 口座残高の初期値
+     */
+    ShardedBalance(long balance) {
+        this(balance, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * コンストラクター
+     *
+     * @param balance 口座残高の初期値
+     * @param parallelism 同時に入金するスレッド数の見込み(部分残高の数はこの値以上の2のべき乗、{@value #MAX_SHARDS}以下)
+     */
+    ShardedBalance(long balance, int parallelism) {
+        int n = Math.max(1, Math.min(MAX_SHARDS, parallelism));
+        this.shards = n == 1 ? 1 : Integer.highestOneBit(n - 1) << 1;
+        this.cells = new long[this.shards * STRIDE];
+        this.base = balance;
+    }
+
+    /**
+     * 部分残高の数を取得する
+     *
+     * @return 部分残高の数
+     */
+    int shards() {
+        return this.shards;
+    }
+
+    /**
+     * 入金する
+     *
+     * <p>
+     * 呼び出したスレッドの部分残高にアトミックに加算します。
+     *
+     * @param amount 金額
+     */
+    void add(long amount) {
+        CELLS.getAndAdd(this.cells, this.cellIndex(), amount);
+    }
+
+    /**
+     * 出金する
+     *
+     * <p>
+     * 集約済みの残高が金額以上のときだけ、CASで減算します。不足しているときは部分残高を集約して再試行します。
+     *
+     * @param amount 金額
+     * @return 減算後の集約済みの残高、口座残高が不足しているときは-1
+     */
+    long tryDebit(long amount) {
+        for (;;) {
+            long current = this.base;
+            if (current < amount) {
+                // 集約する部分残高がなくても、待っている間に他のスレッドが集約していれば足りることがある
+                if (!this.collect() && this.base < amount) {
+                    return -1L; // 残高不足
+                }
+            } else if (BASE.compareAndSet(this, current, current - amount)) {
+                return current - amount;
+            }
+        }
+    }
+
+    /**
+     * 残高の確認をせずに出金する
+     *
+     * <p>
+     * 先行書き込みログから口座残高を回復するときに使用します。
+     *
+     * @param amount 金額
+     */
+    void subtract(long amount) {
+        BASE.getAndAdd(this, -amount);
+    }
+
+    /**
+     * 口座残高を求める
+     *
+     * <p>
+     * 部分残高の集約と同時に行わないように排他します(集約中の金額を数え落とさないため)。
+     *
+     * @return 集約済みの残高と部分残高の合計
+     */
+    synchronized long sum() {
+        long sum = this.base;
+        for (int i = 0; i < this.cells.length; i += STRIDE) {
+            sum += (long)CELLS.getVolatile(this.cells, i);
+        }
+        return sum;
+    }
+
+    /* 部分残高を集約済みの残高に移す。移した金額があるときはtrue */
+    private synchronized boolean collect() {
+        long total = 0L;
+        for (int i = 0; i < this.cells.length; i += STRIDE) {
+            total += (long)CELLS.getAndSet(this.cells, i, 0L);
+        }
+        if (total == 0L) {
+            return false;
+        }
+        BASE.getAndAdd(this, total);
+        return true;
+    }
+
+    /* 呼び出したスレッドの部分残高の位置 */
+    private int cellIndex() {
+        long h = Thread.currentThread().threadId() * 0x9e3779b97f4a7c15L;
+        return ((int)(h >>> 32) & (this.shards - 1)) * STRIDE;
+    }
+}
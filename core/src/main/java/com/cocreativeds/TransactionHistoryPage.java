@@ -0,0 +1,333 @@
+package com.cocreativeds;
+
+import java.nio.ByteBuffer;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.Base64;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * 取引履歴のページ
+ *
+ * <p>
+ * 取引履歴を決まった件数ずつ照会するためのページです。ページは入出金明細を複製せずに、明細の位置だけを保持します。
+ * 各明細の項目は参照したときに入出金明細から読み出し、取引履歴の文字列は{@link #get(int)}を呼び出したときに編集します。
+ *
+ * <p>
+ * 次のページは{@link #getNextCursor()}で取得したカーソルを{@link Account#getTransactionHistories(String, int)}に
+ * 指定して照会します。カーソルは照会の条件と続きの位置を表す文字列で、内容は利用者に公開しません。
+ * 最初のページを照会した後に追記された明細は、続きのページにも含めません。
+ */
+public final class TransactionHistoryPage implements Iterable<String> {
+
+    /**
+     * 1ページの最大件数
+     */
+    public static final int MAX_PAGE_SIZE = 1000;
+
+    /* 空のページ */
+    static final TransactionHistoryPage EMPTY = new TransactionHistoryPage(null, 0, 0, null, null);
+
+    /* カーソルの長さ(バイト数) */
+    private static final int CURSOR_SIZE = 25;
+    /* 明細が取引日の順に並んでいるときの照会(範囲を連続した位置で表す) */
+    private static final byte SORTED = 0;
+    /* 取引日が前後した明細があるときの照会(明細を順に確認する) */
+    private static final byte UNSORTED = 1;
+
+    /* 入出金明細 */
+    private final TransactionJournal journal;
+    /* 連続した位置の最初の位置(positionsがnullのとき) */
+    private final int start;
+    /* 明細の件数 */
+    private final int size;
+    /* 明細の位置(連続していないときだけ使用する) */
+    private final int[] positions;
+    /* 次のページのカーソル */
+    private final String nextCursor;
+
+    private TransactionHistoryPage(TransactionJournal journal, int start, int size, int[] positions,
+            String nextCursor) {
+        this.journal = journal;
+        this.start = start;
+        this.size = size;
+        this.positions = positions;
+        this.nextCursor = nextCursor;
+    }
+
+    /**
+     * 最初のページを照会する
+     *
+     * @param journal 入出金明細
+     * @param tag 口座を表す値(カーソルを発行した口座の確認に使用する)
+     * @param fromDay 取引日の範囲(この日を含む、エポック日)
+     * @param toDay 取引日の範囲(この日を含む、エポック日)
+     * @param pageSize 1ページの件数
+     * @return ページ
+     */
+    static TransactionHistoryPage first(TransactionJournal journal, long tag, int fromDay, int toDay,
+            int pageSize) {
+        checkPageSize(pageSize);
+        if (journal == null) {
+            return EMPTY;
+        }
+        int end = journal.size();
+        if (journal.isSorted()) {
+            int from = journal.firstOnOrAfter(fromDay, end);
+            int to = Math.max(from, journal.firstAfter(toDay, end));
+            return sorted(journal, tag, from, to, pageSize);
+        }
+        return unsorted(journal, tag, fromDay, toDay, 0, end, pageSize);
+    }
+
+    /**
+     * 続きのページを照会する
+     *
+     * @param journal 入出金明細
+     * @param tag 口座を表す値
+     * @param cursor カーソル
+     * @param pageSize 1ページの件数
+     * @return ページ
+     * @throws IllegalArgumentException カーソルが正しくないとき、またはページの件数が範囲外のとき
+     */
+    static TransactionHistoryPage next(TransactionJournal journal, long tag, String cursor, int pageSize) {
+        checkPageSize(pageSize);
+        ByteBuffer b = decode(cursor);
+        if (b.getLong() != tag || journal == null) {
+            throw new IllegalArgumentException("カーソルが正しくない");
+        }
+        int fromDay = b.getInt();
+        int toDay = b.getInt();
+        int position = b.getInt();
+        int end = b.getInt();
+        byte mode = b.get();
+        if (position < 0 || end < position || journal.size() < end || (mode != SORTED && mode != UNSORTED)) {
+            throw new IllegalArgumentException("カーソルが正しくない");
+        }
+        return mode == SORTED ? sorted(journal, tag, position, end, pageSize)
+            : unsorted(journal, tag, fromDay, toDay, position, end, pageSize);
+    }
+
+    /* 連続した位置の範囲[from, to)からページを作成する */
+    private static TransactionHistoryPage sorted(TransactionJournal journal, long tag, int from, int to,
+            int pageSize) {
+        int size = Math.min(pageSize, to - from);
+        String next = from + size < to ? encode(tag, 0, 0, from + size, to, SORTED) : null;
+        return new TransactionHistoryPage(journal, from, size, null, next);
+    }
+
+    /* 位置from以降の明細を順に確認して、取引日が範囲内のものからページを作成する */
+    private static TransactionHistoryPage unsorted(TransactionJournal journal, long tag, int fromDay, int toDay,
+            int from, int end, int pageSize) {
+        int[] positions = new int[pageSize];
+        int size = 0;
+        // ページが一杯になったときは、続きに該当する明細があるかを確認してからカーソルを発行する
+        int i = journal.nextInRange(fromDay, toDay, from, end);
+        while (i < end && size < pageSize) {
+            positions[size++] = i;
+            i = journal.nextInRange(fromDay, toDay, i + 1, end);
+        }
+        String next = i < end ? encode(tag, fromDay, toDay, i, end, UNSORTED) : null;
+        return new TransactionHistoryPage(journal, 0, size, positions, next);
+    }
+
+    /**
+     * 明細の件数を取得する
+     *
+     * @return 明細の件数
+     */
+    public int size() {
+        return this.size;
+    }
+
+    /**
+     * 明細があるかを判定する
+     *
+     * @return true 明細がない
+     * @return false 明細がある
+     */
+    public boolean isEmpty() {
+        return this.size == 0;
+    }
+
+    /**
+     * 取引履歴を取得する
+     *
+     * <p>
+     * 取引履歴は「取引区分,操作日時,取引日,取引金額,通貨コード,摘要」の形式の文字列です
+     * ({@link Account#getTransactionHistories(LocalDate, LocalDate)}と同じ形式)。
+     *
+     * @param i ページ内の位置
+     * @return 取引履歴
+     * @throws IndexOutOfBoundsException 位置が範囲外のとき
+     */
+    public String get(int i) {
+        return format(this.journal, this.position(i));
+    }
+
+    /**
+     * 取引区分を取得する
+     *
+     * @param i ページ内の位置
+     * @return 取引区分
+     * @throws IndexOutOfBoundsException 位置が範囲外のとき
+     */
+    public TransactionType type(int i) {
+        return this.journal.type(this.position(i));
+    }
+
+    /**
+     * 操作日時を取得する
+     *
+     * @param i ページ内の位置
+     * @return 操作日時
+     * @throws IndexOutOfBoundsException 位置が範囲外のとき
+     */
+    public Instant operationTime(int i) {
+        return Instant.ofEpochMilli(this.journal.operationTime(this.position(i)));
+    }
+
+    /**
+     * 取引日を取得する
+     *
+     * @param i ページ内の位置
+     * @return 取引日
+     * @throws IndexOutOfBoundsException 位置が範囲外のとき
+     */
+    public LocalDate trxDate(int i) {
+        return LocalDate.ofEpochDay(this.journal.trxDate(this.position(i)));
+    }
+
+    /**
+     * 取引金額を取得する
+     *
+     * @param i ページ内の位置
+     * @return 取引金額
+     * @throws IndexOutOfBoundsException 位置が範囲外のとき
+     */
+    public long amount(int i) {
+        return this.journal.amount(this.position(i));
+    }
+
+    /**
+     * 通貨コードを取得する
+     *
+     * @param i ページ内の位置
+     * @return 通貨コード
+     * @throws IndexOutOfBoundsException 位置が範囲外のとき
+     */
+    public String currency(int i) {
+        return CurrencyTable.code(this.journal.currencyIndex(this.position(i)));
+    }
+
+    /**
+     * 摘要を取得する
+     *
+     * @param i ページ内の位置
+     * @return 摘要、ないときはnull
+     * @throws IndexOutOfBoundsException 位置が範囲外のとき
+     */
+    public String description(int i) {
+        return this.journal.description(this.position(i));
+    }
+
+    /**
+     * 次のページのカーソルを取得する
+     *
+     * @return カーソル、次のページがないときはnull
+     */
+    public String getNextCursor() {
+        return this.nextCursor;
+    }
+
+    /**
+     * 次のページがあるかを判定する
+     *
+     * @return true 次のページがある
+     * @return false このページが最後のページ
+     */
+    public boolean hasNextPage() {
+        return this.nextCursor != null;
+    }
+
+    /**
+     * ページ内の取引履歴を順に編集する
+     *
+     * @return 取引履歴のイテレーター
+     */
+    @Override
+    public Iterator<String> iterator() {
+        return new Iterator<String>() {
+            private int next;
+
+            @Override
+            public boolean hasNext() {
+                return this.next < TransactionHistoryPage.this.size;
+            }
+
+            @Override
+            public String next() {
+                if (!this.hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                return TransactionHistoryPage.this.get(this.next++);
+            }
+        };
+    }
+
+    /**
+     * 取引履歴の1件を文字列に編集する
+     *
+     * @param j 入出金明細
+     * @param i 明細の位置
+     * @return 取引区分,操作日時,取引日,取引金額,通貨コード,摘要
+     */
+    static String format(TransactionJournal j, int i) {
+        String description = j.description(i);
+        return j.type(i).getLabel() + ","
+            + Instant.ofEpochMilli(j.operationTime(i)) + ","
+            + LocalDate.ofEpochDay(j.trxDate(i)) + ","
+            + j.amount(i) + ","
+            + CurrencyTable.code(j.currencyIndex(i)) + ","
+            + (description == null ? "" : description);
+    }
+
+    /* ページ内の位置から明細の位置を求める */
+    private int position(int i) {
+        if (i < 0 || this.size <= i) {
+            throw new IndexOutOfBoundsException(i);
+        }
+        return this.positions == null ? this.start + i : this.positions[i];
+    }
+
+    private static void checkPageSize(int pageSize) {
+        if (pageSize < 1 || MAX_PAGE_SIZE < pageSize) {
+            throw new IllegalArgumentException("1ページの件数は1以上" + MAX_PAGE_SIZE + "以下でなくてはならない");
+        }
+    }
+
+    /* カーソルを文字列に変換する */
+    private static String encode(long tag, int fromDay, int toDay, int position, int end, byte mode) {
+        ByteBuffer b = ByteBuffer.allocate(CURSOR_SIZE);
+        b.putLong(tag).putInt(fromDay).putInt(toDay).putInt(position).putInt(end).put(mode);
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(b.array());
+    }
+
+    /* 文字列をカーソルに変換する */
+    private static ByteBuffer decode(String cursor) {
+        if (cursor == null) {
+            throw new IllegalArgumentException("カーソルを指定しなくてはならない");
+        }
+        byte[] bytes;
+        try {
+            bytes = Base64.getUrlDecoder().decode(cursor);
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("カーソルが正しくない", e);
+        }
+        if (bytes.length != CURSOR_SIZE) {
+            throw new IllegalArgumentException("カーソルが正しくない");
+        }
+        return ByteBuffer.wrap(bytes);
+    }
+}
@@ -0,0 +1,352 @@
+package com.cocreativeds;
+
+/**
+ * 取引履歴(入出金明細)
+ *
+ * <p>
+ * 1つの口座の取引履歴を、項目ごとのプリミティブ型の配列(列)で保持する追記専用のクラスです。
+ * 保持する項目は、取引区分コード、操作日時(Unixエポック時刻のミリ秒)、取引日(エポック日)、取引金額、
+ * 通貨インデックス、摘要参照です。
+ *
+ * <p>
+ * 明細はチャンク単位で格納します。チャンクが一杯になると次のチャンクを追加するため、既存の明細のコピーは
+ * 発生しません。取引履歴を持つ口座の大半は明細が少ないため、最初のチャンクは8件とし、チャンクを追加するごとに
+ * 容量を2倍にして最大1024件とします。
+ *
+ * <p>
+ * 入出金の明細(口座残高が増減する明細)の取引日が追記順に並んでいる(直前の入出金の明細の取引日以降である)間は、
+ * 取引日の範囲による検索を二分探索で行えます。取引日が前後した入出金の明細が追記された場合は{@link #isSorted()}が
+ * falseとなり、利用者は{@link #nextInRange(int, int, int, int)}で検索します。チャンクごとに取引日の最小値と最大値を
+ * 保持しているため、範囲に該当する明細がないチャンクは読み飛ばします。通帳記帳などの入出金以外の明細は並び順の判定に含めず、二分探索では
+ * 直前の入出金の明細の取引日にあるものとして扱います(入出金の明細より前にあるときは、どの取引日よりも前とします)。
+ *
+ * <p>
+ * 追記は口座ごとに排他制御します。照会は排他制御を行わずに、照会を開始した時点で追記済みの明細を参照します。
+ */
+public class TransactionJournal {
+
+    /* 最初のチャンクの容量 */
+    private static final int FIRST_CHUNK_CAPACITY = 8;
+    /* チャンクの最大容量 */
+    private static final int MAX_CHUNK_CAPACITY = 1024;
+    /* 容量を2倍にしていくチャンクの数(8, 16, ..., 1024) */
+    private static final int GROWING_CHUNKS = 8;
+    /* 容量を2倍にしていくチャンクに格納できる明細の件数 */
+    private static final int GROWING_CAPACITY = FIRST_CHUNK_CAPACITY * ((1 << GROWING_CHUNKS) - 1);
+
+    /**
+     * 取引履歴のチャンク
+     */
+    private static final class Chunk {
+        final byte[] typeCodes;
+        final long[] operationTimes;
+        final int[] trxDates;
+        final long[] amounts;
+        final short[] currencyIndexes;
+        final int[] descriptionRefs;
+        /* 格納した明細の取引日の最小値と最大値(追記の排他の中で更新し、件数の公開より前に書き込む) */
+        int minTrxDate = Integer.MAX_VALUE;
+        int maxTrxDate = Integer.MIN_VALUE;
+
+        Chunk(int capacity) {
+            this.typeCodes = new byte[capacity];
+            this.operationTimes = new long[capacity];
+            this.trxDates = new int[capacity];
+            this.amounts = new long[capacity];
+            this.currencyIndexes = new short[capacity];
+            this.descriptionRefs = new int[capacity];
+        }
+    }
+
+    /* チャンクの一覧(チャンクを追加するときは新しい配列に置き換える) */
+    private volatile Chunk[] chunks = new Chunk[] {new Chunk(FIRST_CHUNK_CAPACITY)};
+    /* 明細の件数(明細を格納した後で更新する) */
+    private volatile int size;
+    /* 入出金の明細の取引日が追記順に並んでいるか */
+    private volatile boolean sorted = true;
+    /* 最後に追記した入出金の明細の取引日(追記の排他の中で参照する) */
+    private int lastPostingTrxDate = Integer.MIN_VALUE;
+
+    /**
+     * 明細を追記する
+     *
+     * @param type 取引区分
+     * @param operationTime 操作日時(Unixエポック時刻のミリ秒)
+     * @param trxDate 取引日(エポック日)
+     * @param amount 取引金額
+     * @param currencyIndex 通貨インデックス
+     * @param description 摘要
+     * @return 追記した明細の位置
+     */
+    public synchronized int append(TransactionType type, long operationTime, int trxDate, long amount,
+            int currencyIndex, String description) {
+        return this.store(type, operationTime, trxDate, amount, currencyIndex, DescriptionTable.referenceOf(description));
+    }
+
+    /**
+     * 入出金の明細をまとめて追記する
+     *
+     * <p>
+     * 一括記帳で、1つの口座の複数の入出金を1回の排他で追記します。取引金額が正の明細は預け入れ、
+     * 負の明細は払い戻しとして、金額の絶対値を追記します。操作日時、取引日、通貨、摘要はすべての明細で共通です。
+     *
+     * @param amounts 取引金額(正は預け入れ、負は払い戻し)
+     * @param positions 追記する取引金額の位置
+     * @param from 追記する位置の範囲(この位置を含む)
+     * @param to 追記する位置の範囲(この位置を含まない)
+     * @param operationTime 操作日時(Unixエポック時刻のミリ秒)
+     * @param trxDate 取引日(エポック日)
+     * @param currencyIndex 通貨インデックス
+     * @param description 摘要
+     */
+    synchronized void appendAll(long[] amounts, int[] positions, int from, int to, long operationTime, int trxDate,
+            int currencyIndex, String description) {
+        int descriptionRef = DescriptionTable.referenceOf(description);
+        for (int i = from; i < to; i++) {
+            long amount = amounts[positions[i]];
+            this.store(amount > 0 ? TransactionType.DEPOSIT : TransactionType.WITHDRAWAL, operationTime, trxDate,
+                Math.abs(amount), currencyIndex, descriptionRef);
+        }
+    }
+
+    /* 明細を格納する(呼び出し元で排他する) */
+    private int store(TransactionType type, long operationTime, int trxDate, long amount, int currencyIndex,
+            int descriptionRef) {
+        int index = this.size;
+        Chunk[] current = this.chunks;
+        int chunkIndex = chunkIndex(index);
+        if (chunkIndex == current.length) {
+            Chunk[] grown = new Chunk[current.length + 1];
+            System.arraycopy(current, 0, grown, 0, current.length);
+            grown[chunkIndex] = new Chunk(chunkCapacity(chunkIndex));
+            this.chunks = grown;
+            current = grown;
+        }
+        Chunk chunk = current[chunkIndex];
+        int offset = chunkOffset(index);
+        chunk.typeCodes[offset] = type.getCode();
+        chunk.operationTimes[offset] = operationTime;
+        chunk.trxDates[offset] = trxDate;
+        chunk.amounts[offset] = amount;
+        chunk.currencyIndexes[offset] = (short)currencyIndex;
+        chunk.descriptionRefs[offset] = descriptionRef;
+        chunk.minTrxDate = Math.min(chunk.minTrxDate, trxDate);
+        chunk.maxTrxDate = Math.max(chunk.maxTrxDate, trxDate);
+
+        if (isPosting(type)) {
+            if (trxDate < this.lastPostingTrxDate) {
+                this.sorted = false;
+            } else {
+                this.lastPostingTrxDate = trxDate;
+            }
+        }
+        this.size = index + 1; // 明細を格納した後で件数を公開する
+        return index;
+    }
+
+    /**
+     * 明細の件数を取得する
+     *
+     * @return 明細の件数
+     */
+    public int size() {
+        return this.size;
+    }
+
+    /**
+     * 取引区分を取得する
+     *
+     * @param index 明細の位置
+     * @return 取引区分
+     */
+    public TransactionType type(int index) {
+        return TransactionType.ofCode(this.chunk(index).typeCodes[chunkOffset(index)]);
+    }
+
+    /**
+     * 操作日時を取得する
+     *
+     * @param index 明細の位置
+     * @return 操作日時(Unixエポック時刻のミリ秒)
+     */
+    public long operationTime(int index) {
+        return this.chunk(index).operationTimes[chunkOffset(index)];
+    }
+
+    /**
+     * 取引日を取得する
+     *
+     * @param index 明細の位置
+     * @return 取引日(エポック日)
+     */
+    public int trxDate(int index) {
+        return this.chunk(index).trxDates[chunkOffset(index)];
+    }
+
+    /**
+     * 取引金額を取得する
+     *
+     * @param index 明細の位置
+     * @return 取引金額
+     */
+    public long amount(int index) {
+        return this.chunk(index).amounts[chunkOffset(index)];
+    }
+
+    /**
+     * 通貨インデックスを取得する
+     *
+     * @param index 明細の位置
+     * @return 通貨インデックス
+     */
+    public int currencyIndex(int index) {
+        return this.chunk(index).currencyIndexes[chunkOffset(index)];
+    }
+
+    /**
+     * 摘要を取得する
+     *
+     * @param index 明細の位置
+     * @return 摘要
+     */
+    public String description(int index) {
+        return DescriptionTable.description(this.chunk(index).descriptionRefs[chunkOffset(index)]);
+    }
+
+    /**
+     * 取引日が指定日以降である最初の明細の位置を求める
+     *
+     * <p>
+     * 取引日の列を二分探索します。取引日が追記順に並んでいる({@link #isSorted()}がtrue)ときに使用します。
+     * 入出金以外の明細は、直前の入出金の明細の取引日で比較します。
+     *
+     * @param trxDate 取引日(エポック日)
+     * @param end 検索範囲の終わり(この位置は含まない)
+     * @return 明細の位置、該当する明細がないときはend
+     */
+    public int firstOnOrAfter(int trxDate, int end) {
+        int low = 0;
+        int high = end;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (this.searchDate(mid) < trxDate) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * 取引日が指定日より後である最初の明細の位置を求める
+     *
+     * <p>
+     * 取引日の列を二分探索します。取引日が追記順に並んでいる({@link #isSorted()}がtrue)ときに使用します。
+     *
+     * @param trxDate 取引日(エポック日)
+     * @param end 検索範囲の終わり(この位置は含まない)
+     * @return 明細の位置、該当する明細がないときはend
+     */
+    public int firstAfter(int trxDate, int end) {
+        return trxDate == Integer.MAX_VALUE ? end : this.firstOnOrAfter(trxDate + 1, end);
+    }
+
+    /**
+     * 取引日が範囲内である次の明細の位置を求める
+     *
+     * <p>
+     * 位置fromから順に明細を確認します。取引日が前後した明細がある({@link #isSorted()}がfalse)ときに使用します。
+     * 取引日の最小値と最大値が範囲と重ならないチャンクは、明細を確認せずに読み飛ばします。
+     *
+     * @param fromDay 取引日の範囲(この日を含む、エポック日)
+     * @param toDay 取引日の範囲(この日を含む、エポック日)
+     * @param from 検索範囲の始まり(この位置を含む)
+     * @param end 検索範囲の終わり(この位置は含まない)
+     * @return 明細の位置、該当する明細がないときはend
+     */
+    public int nextInRange(int fromDay, int toDay, int from, int end) {
+        int i = from;
+        while (i < end) {
+            int k = chunkIndex(i);
+            int start = chunkStart(k);
+            int chunkEnd = Math.min(end, start + chunkCapacity(k));
+            Chunk chunk = this.chunks[k];
+            if (chunk.maxTrxDate < fromDay || toDay < chunk.minTrxDate) {
+                i = chunkEnd;
+                continue;
+            }
+            int[] trxDates = chunk.trxDates;
+            for (; i < chunkEnd; i++) {
+                int day = trxDates[i - start];
+                if (fromDay <= day && day <= toDay) {
+                    return i;
+                }
+            }
+        }
+        return end;
+    }
+
+    /**
+     * 取引日が追記順に並んでいるかを判定する
+     *
+     * @return true 取引日が追記順に並んでいる(取引日の範囲を二分探索できる)
+     * @return false 取引日が前後した明細がある
+     */
+    public boolean isSorted() {
+        return this.sorted;
+    }
+
+    /* 二分探索で比較する取引日を求める(入出金以外の明細は直前の入出金の明細の取引日とする) */
+    private int searchDate(int index) {
+        for (int i = index; i >= 0; i--) {
+            Chunk chunk = this.chunk(i);
+            int offset = chunkOffset(i);
+            if (isPosting(TransactionType.ofCode(chunk.typeCodes[offset]))) {
+                return chunk.trxDates[offset];
+            }
+        }
+        return Integer.MIN_VALUE;
+    }
+
+    /* 口座残高が増減する明細であるかを判定する */
+    private static boolean isPosting(TransactionType type) {
+        return type.isCredit() || type.isDebit();
+    }
+
+    /* 明細を格納しているチャンクを取得する */
+    private Chunk chunk(int index) {
+        return this.chunks[chunkIndex(index)];
+    }
+
+    /* 明細の位置からチャンクの番号を求める */
+    private static int chunkIndex(int index) {
+        if (index < GROWING_CAPACITY) {
+            // チャンクkには位置 8*(2^k - 1) 〜 8*(2^(k+1) - 1) - 1 の明細を格納する
+            return 31 - Integer.numberOfLeadingZeros(index / FIRST_CHUNK_CAPACITY + 1);
+        }
+        return GROWING_CHUNKS + (index - GROWING_CAPACITY) / MAX_CHUNK_CAPACITY;
+    }
+
+    /* チャンクの最初の明細の位置を求める */
+    private static int chunkStart(int chunkIndex) {
+        if (chunkIndex < GROWING_CHUNKS) {
+            return FIRST_CHUNK_CAPACITY * ((1 << chunkIndex) - 1);
+        }
+        return GROWING_CAPACITY + (chunkIndex - GROWING_CHUNKS) * MAX_CHUNK_CAPACITY;
+    }
+
+    /* 明細の位置からチャンク内の位置を求める */
+    private static int chunkOffset(int index) {
+        if (index < GROWING_CAPACITY) {
+            int k = chunkIndex(index);
+            return index - FIRST_CHUNK_CAPACITY * ((1 << k) - 1);
+        }
+        return (index - GROWING_CAPACITY) % MAX_CHUNK_CAPACITY;
+    }
+
+    /* チャンクの容量を求める */
+    private static int chunkCapacity(int chunkIndex) {
+        return chunkIndex < GROWING_CHUNKS ? FIRST_CHUNK_CAPACITY << chunkIndex : MAX_CHUNK_CAPACITY;
+    }
+}
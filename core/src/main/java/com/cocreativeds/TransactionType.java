@@ -0,0 +1,106 @@
+package com.cocreativeds;
+
+/**
+ * 取引区分
+ *
+ * <p>
+ * 取引履歴に記録する取引の区分です。取引区分コードは取引履歴や永続化した記録の中で取引区分を表す1バイトの値です。
+ */
+public enum TransactionType {
+
+    /** 預け入れ */
+    DEPOSIT(1, "預け入れ"),
+    /** 払い戻し */
+    WITHDRAWAL(2, "払い戻し"),
+    /** 通帳記帳 */
+    PASSBOOK_UPDATE(3, "通帳記帳"),
+    /** 残高照会 */
+    BALANCE_INQUIRY(4, "残高照会"),
+    /** 入出金明細照会 */
+    HISTORY_INQUIRY(5, "入出金明細照会"),
+    /** 利息元加 */
+    INTEREST(6, "利息元加"),
+
+    /** 振替出金 */
+    TRANSFER_OUT(7, "振替出金"),
+
+    /** 振替入金 */
+    TRANSFER_IN(8, "振替入金"),
+
+    /** 利息計上(未払いの利息の加算、先行書き込みログにだけ記録し、入出金明細には含めない) */
+    INTEREST_ACCRUAL(9, "利息計上"),
+
+    /** 口座表記変更(変更後の口座キーを記録する、先行書き込みログにだけ記録し、入出金明細には含めない) */
+    ACCOUNT_KEY_CHANGE(10, "口座表記変更");
+
+    /* 取引区分コードを添字とする取引区分の表 */
+    private static final TransactionType[] BY_CODE = new TransactionType[11];
+
+    static {
+        for (TransactionType t : values()) {
+            BY_CODE[t.code] = t;
+        }
+    }
+
+    /* 取引区分コード */
+    private final byte code;
+    /* 取引区分名 */
+    private final String label;
+
+    private TransactionType(int code, String label) {
+        this.code = (byte)code;
+        this.label = label;
+    }
+
+    /**
+     * 取引区分コードを取得する
+     *
+     * @return 取引区分コード
+     */
+    public byte getCode() {
+        return this.code;
+    }
+
+    /**
+     * 取引区分名を取得する
+     *
+     * @return 取引区分名
+     */
+    public String getLabel() {
+        return this.label;
+    }
+
+    /**
+     * 口座残高が増える取引であるかを判定する
+     *
+     * @return true 預け入れ、利息元加、または振替入金
+     * @return false それ以外
+     */
+    public boolean isCredit() {
+        return this == DEPOSIT || this == INTEREST || this == TRANSFER_IN;
+    }
+
+    /**
+     * 口座残高が減る取引であるかを判定する
+     *
+     * @return true 払い戻しまたは振替出金
+     * @return false それ以外
+     */
+    public boolean isDebit() {
+        return this == WITHDRAWAL || this == TRANSFER_OUT;
+    }
+
+    /**
+     * 取引区分コードから取引区分を取得する
+     *
+     * @param code 取引区分コード
+     * @return 取引区分
+     * @throws IllegalArgumentException 取引区分コードが正しくないとき
+     */
+    public static TransactionType ofCode(int code) {
+        if (code <= 0 || BY_CODE.length <= code) {
+            throw new IllegalArgumentException("取引区分コードが正しくない");
+        }
+        return BY_CODE[code];
+    }
+}
@@ -0,0 +1,276 @@
+package com.cocreativeds;
+
+import java.io.IOException;
+import java.time.LocalDate;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Function;
+
+/**
+ * 口座振替
+ *
+ * <p>
+ * 同じ銀行の2つの口座の間で資金を振り替えます。振替元の口座残高の確保、振替出金と振替入金の記録、振替先の口座残高への
+ * 加算を、口座残高の合計が変わらないように行います。
+ *
+ * <p>
+ * 振替元と振替先の口座が同じ先行書き込みログに記録されるときは、振替出金と振替入金を1つの振替(連続する2つの
+ * レコード)として一度に記録します({@link WriteAheadLog#appendTransfer})。ログから回復するときは両方のレコードを
+ * 読み込めた振替だけを適用するため、記録の途中で停止しても、振替元だけから出金された状態にはなりません。
+ * 口座残高は振替の記録の前には振替元から確保するだけで、記録できなかったときは戻し、ログに記録されずに口座残高が
+ * 変わることはありません。
+ *
+ * <p>
+ * 振替元と振替先の口座が別のログに記録されるとき(別のシャードの口座)は、2段階で振り替えます。振替元の口座残高を
+ * 確保して振替元のログに振替出金を記録し({@link WriteAheadLog#appendTransferPrepare})、その書き出しを待ってから、
+ * 振替先のログに振替出金を参照する振替入金を記録して({@link WriteAheadLog#appendTransferCredit})振替先に加算します。
+ * 振替先に記録できなかったときは、振替元のログに取消の振替入金を記録して振替元に戻します。振替出金を書き出した後、
+ * 振替入金を書き出す前に停止したときは、回復のときに取消の振替入金を記録します({@link #recover})。
+ * 一方の口座だけに先行書き込みログが設定されている振替は行いません。
+ *
+ * <p>
+ * 口座をロックしません。振替元の口座残高の確保と振替先への加算は預け入れ・払い戻しと同じCASで行うため、
+ * 振替と同時に同じ口座の預け入れ・払い戻しや逆方向の振替を行っても、口座残高が負になったり失われたりすることはなく、
+ * 口座をロックする順序もないためデッドロックも起こりません。先行書き込みログが設定されている口座は、
+ * 振替がディスクに書き出されてから完了します。
+ *
+ * <p>
+ * 確保から振替先への加算までの間は、振替金額はどちらの口座残高にも含まれません。口座残高を1口座ずつ読んで合計すると、
+ * 実行中の振替の金額が含まれなかったり、両方の口座に含まれたりします。振替の両方の取引が反映された状態で合計を求める
+ * ときは{@link #totalBalance}を使用します。振替は実行中にゲートの共有ロックを保持し、合計は排他ロックで実行中の振替の
+ * 完了を待ってから求めます。
+ */
+public class TransferEngine {
+
+    /* 振替を取り消して振替元に戻すときの摘要 */
+    private static final String CANCEL_DESCRIPTION = "振替取消";
+
+    /* 振替の実行中は共有ロック、口座残高の合計を求めるときは排他ロックを取得する */
+    private final ReentrantReadWriteLock gate = new ReentrantReadWriteLock();
+
+    /**
+     * コンストラクター
+     */
+    public TransferEngine() {
+    }
+
+    /**
+     * 振り替える
+     *
+     * @param from 振替元の口座
+     * @param to 振替先の口座
+     * @param amount 振替金額
+     * @param currency 通貨コード
+     * @param trxDate 取引日
+     * @param description 摘要
+     * @throws IllegalArgumentException 口座がnullのとき、振替元と振替先が同じ口座のとき、金額が1以上でないとき、
+     *         通貨コードまたは取引日が正しくないとき、一方の口座だけに先行書き込みログが設定されているとき
+     * @throws IllegalStateException 振替元の口座残高が不足しているとき
+     * @throws java.io.UncheckedIOException 先行書き込みログに記録できないとき
+     */
+    public void transfer(Account from, Account to, long amount, String currency, LocalDate trxDate,
+            String description) {
+        this.transfer(from, to, amount, CurrencyTable.indexOf(currency), trxDate, description);
+    }
+
+    /**
+     * 振り替える
+     *
+     * @param from 振替元の口座
+     * @param to 振替先の口座
+     * @param amount 振替金額
+     * @param currencyIndex 通貨インデックス
+     * @param trxDate 取引日
+     * @param description 摘要
+     * @throws IllegalArgumentException 口座がnullのとき、振替元と振替先が同じ口座のとき、金額が1以上でないとき、
+     *         通貨インデックスまたは取引日が正しくないとき、一方の口座だけに先行書き込みログが設定されているとき
+     * @throws IllegalStateException 振替元の口座残高が不足しているとき
+     * @throws java.io.UncheckedIOException 先行書き込みログに記録できないとき(別のログの口座の間の振替で、
+     *         振替出金を記録した後に振替入金も取消も記録できなかったときは、回復のときに振替元に戻す)
+     */
+    public void transfer(Account from, Account to, long amount, int currencyIndex, LocalDate trxDate,
+            String description) {
+        if (from == null || to == null) {
+            throw new IllegalArgumentException("振替元と振替先の口座を指定しなくてはならない");
+        }
+        if (from.getAccountId().equals(to.getAccountId())) {
+            throw new IllegalArgumentException("振替元と振替先が同じ口座");
+        }
+        if (amount <= 0) {
+            throw new IllegalArgumentException("取引金額は1以上でなくてはならない");
+        }
+        if (currencyIndex < 0 || CurrencyTable.size() <= currencyIndex) {
+            throw new IllegalArgumentException("通貨コードは取り扱い通貨のISO 4217通貨コードでなくてはならない");
+        }
+        if (trxDate == null) {
+            throw new IllegalArgumentException("取引日を指定しなくてはならない");
+        }
+        WriteAheadLog l = from.writeAheadLog();
+        WriteAheadLog m = to.writeAheadLog();
+        if ((l == null) != (m == null)) {
+            throw new IllegalArgumentException("振替元と振替先の口座の一方だけに先行書き込みログが設定されている");
+        }
+        long operationTime = System.currentTimeMillis();
+        int day = (int)trxDate.toEpochDay();
+        long lsn;
+        this.gate.readLock().lock();
+        try {
+            lsn = l == m ? from.postTransfer(to, amount, operationTime, day, currencyIndex, description)
+                : transferBetweenLogs(from, l, to, amount, operationTime, day, currencyIndex, description);
+        } finally {
+            this.gate.readLock().unlock();
+        }
+        if (lsn < 0) {
+            throw new IllegalStateException("口座残高が不足しているため振り替えできない");
+        }
+        if (m != null) {
+            m.awaitDurable(lsn);
+        }
+    }
+
+    /* 別のログに記録される口座の間で2段階で振り替える(ゲートの共有ロック中に呼び出す) */
+    private static long transferBetweenLogs(Account from, WriteAheadLog fromLog, Account to, long amount,
+            long operationTime, int trxDate, int currencyIndex, String description) {
+        long prepared = from.prepareTransfer(amount, operationTime, trxDate, currencyIndex, description);
+        if (prepared < 0) {
+            return -1L;
+        }
+        fromLog.awaitDurable(prepared);
+        try {
+            return to.postTransferCredit(from, prepared, amount, operationTime, trxDate, currencyIndex, description);
+        } catch (RuntimeException e) {
+            // 振替先に記録できなかったときは振替元に戻す(戻せなかったときは回復のときに戻す)
+            try {
+                long cancelled = from.postTransferCredit(from, prepared, amount, operationTime, trxDate,
+                    currencyIndex, CANCEL_DESCRIPTION);
+                fromLog.awaitDurable(cancelled);
+            } catch (RuntimeException suppressed) {
+                e.addSuppressed(suppressed);
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * 口座残高の合計を求める
+     *
+     * <p>
+     * 実行中の振替の完了を待ち、合計を求める間は新しい振替を開始させないため、振替金額がどちらの口座残高にも
+     * 含まれない状態や、両方の口座残高に含まれる状態を合計することはありません。同時に行われる預け入れ・払い戻しは、
+     * 合計に含まれることも含まれないこともあります。
+     *
+     * @param accounts 口座
+     * @param currency 通貨コード
+     * @return 口座残高の合計
+     * @throws IllegalArgumentException 口座がnullのとき、または通貨コードが正しくないとき
+     */
+    public long totalBalance(Iterable<Account> accounts, String currency) {
+        if (accounts == null) {
+            throw new IllegalArgumentException("口座を指定しなくてはならない");
+        }
+        int currencyIndex = CurrencyTable.indexOf(currency);
+        if (currencyIndex < 0) {
+            throw new IllegalArgumentException("通貨コードは取り扱い通貨のISO 4217通貨コードでなくてはならない");
+        }
+        this.gate.writeLock().lock();
+        try {
+            long total = 0L;
+            for (Account a : accounts) {
+                total += a.getBalance(currencyIndex);
+            }
+            return total;
+        } finally {
+            this.gate.writeLock().unlock();
+        }
+    }
+
+    /**
+     * 別のログの口座の間の振替を回復する
+     *
+     * <p>
+     * すべての先行書き込みログから口座を回復した後、取引を開始する前に呼び出します。他のログへの振替出金のうち、
+     * どのログにも振替入金または取消が記録されていないもの(振替出金を書き出した後、振替入金を書き出す前に停止した
+     * 振替)について、振替元のログに取消の振替入金を記録し、書き出してから振替元の口座残高に戻します。
+     *
+     * @param logs 別のログの口座の間の振替を記録したすべての先行書き込みログ
+     * @param accounts 口座識別子から口座を求める関数
+     * @return 取り消した振替の件数
+     * @throws IllegalArgumentException パラメーターがnullのとき
+     * @throws IllegalStateException 振替元の口座が見つからないとき
+     * @throws IOException ログファイルを読み込めないとき
+     */
+    public int recover(List<WriteAheadLog> logs, Function<AccountId, Account> accounts) throws IOException {
+        if (logs == null || accounts == null) {
+            throw new IllegalArgumentException("ログと口座を求める関数を指定しなくてはならない");
+        }
+        // 振替元の口座ごとの、振替出金のログ順序番号の順の振替出金と、参照された振替出金のログ順序番号
+        Map<AccountId, Map<Long, Prepared>> prepared = new HashMap<>();
+        Map<AccountId, Set<Long>> referenced = new HashMap<>();
+        for (WriteAheadLog log : logs) {
+            log.readTransfers(new WriteAheadLog.TransferVisitor() {
+                @Override
+                public void prepared(long lsn, long msb, long lsb, long accountKey, long operationTime, int trxDate,
+                        long amount, int currencyIndex) {
+                    prepared.computeIfAbsent(new AccountId(new BinaryUlid(msb, lsb)), k -> new TreeMap<>())
+                        .put(lsn, new Prepared(log, lsn, trxDate, amount, currencyIndex));
+                }
+
+                @Override
+                public void referenced(long msb, long lsb, long prepareLsn) {
+                    referenced.computeIfAbsent(new AccountId(new BinaryUlid(msb, lsb)), k -> new HashSet<>())
+                        .add(prepareLsn);
+                }
+            });
+        }
+        int cancelled = 0;
+        for (Map.Entry<AccountId, Map<Long, Prepared>> e : prepared.entrySet()) {
+            AccountId id = e.getKey();
+            Set<Long> done = referenced.getOrDefault(id, Set.of());
+            for (Prepared p : e.getValue().values()) {
+                if (done.contains(p.lsn)) {
+                    continue;
+                }
+                Account account = accounts.apply(id);
+                if (account == null) {
+                    throw new IllegalStateException("ログに記録された口座が見つからない: " + id);
+                }
+                long key = account.accountKey();
+                long operationTime = System.currentTimeMillis();
+                p.log.awaitDurable(p.log.appendTransferCredit(id, key, p.lsn, id, key, operationTime, p.trxDate,
+                    p.amount, p.currencyIndex));
+                account.replay(TransactionType.TRANSFER_IN, operationTime, p.trxDate, p.amount, p.currencyIndex);
+                cancelled++;
+            }
+        }
+        return cancelled;
+    }
+
+    /**
+     * 他のログへの振替出金
+     */
+    private static final class Prepared {
+        /* 振替出金を記録したログ */
+        final WriteAheadLog log;
+        /* 振替出金のログ順序番号 */
+        final long lsn;
+        /* 取引日(エポック日) */
+        final int trxDate;
+        /* 振替金額 */
+        final long amount;
+        /* 通貨インデックス */
+        final int currencyIndex;
+
+        Prepared(WriteAheadLog log, long lsn, int trxDate, long amount, int currencyIndex) {
+            this.log = log;
+            this.lsn = lsn;
+            this.trxDate = trxDate;
+            this.amount = amount;
+            this.currencyIndex = currencyIndex;
+        }
+    }
+}
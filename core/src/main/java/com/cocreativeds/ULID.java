@@ -8,7 +8,7 @@ package com.cocreativeds;
  * 
  */
 
-import java.security.SecureRandom;
+import java.util.Arrays;
 
 public class ULID {
 
@@ -22,7 +22,7 @@ public class ULID {
      * <p>
      * ULIDでは時刻の48ビットを使用します。
      */
-    private static final long MAX_TIME = 0x0000ffffffffffffL;
+    static final long MAX_TIME = 0x0000ffffffffffffL;
 
     /**
      * Crockford Base32エンコードのためのマスク
@@ -52,11 +52,13 @@ public class ULID {
      * 
      * <p>
      * タイムスタンプと乱数からULIDを26バイトの文字列として生成します。
+     * 乱数生成器を毎回作成しないように、スレッドごとのULID生成エンジン({@link UlidGenerator#current()})を使用します。
+     * 同一スレッドで同一ミリ秒内に生成したULIDは単調増加します。
      * 
      * @return ULID
      */
     public static String generate() {
-        return genULIDString(System.currentTimeMillis(), randomValue());
+        return UlidGenerator.current().generate();
     }
     
     /**
@@ -201,19 +203,105 @@ public class ULID {
     }
     
     /**
-     * ULIDの下位10バイト(80ビット)に設定する乱数列を生成する
+     * Crockford Base32デコード表
      * 
      * <p>
-     * バイト型の配列10個に乱数を生成して応答します。<a href="https://docs.oracle.com/javase/jp/21/docs/api/java.base/java/util/Random.html#nextBytes(byte[])">nextByte</a>
-     * メソッドはバイト型配列の長さ分の乱数を生成して配列に配置します。
+     * 文字コードを添字として5ビットの整数値(0〜31)を得るための表です。Crockford Base32で使用しない文字は-1です。
+     * ULIDの正規形である大文字のみをデコードの対象とします。
+     */
+    private static final byte[] DECODE_VALUE = new byte[128];
+
+    static {
+        Arrays.fill(DECODE_VALUE, (byte)-1);
+        for (int i = 0; i < ENCODE_CHAR.length; i++) {
+            DECODE_VALUE[ENCODE_CHAR[i]] = (byte)i;
+        }
+    }
+
+    /**
+     * Crockford Base32の文字を5ビットの整数値にデコードする
+     * 
+     * @param c デコードする文字
+     * @return 5ビットの整数値(0〜31)、Crockford Base32で使用しない文字のときは-1
+     */
+    static int decodeChar(char c) {
+        return c < DECODE_VALUE.length ? DECODE_VALUE[c] : -1;
+    }
+
+    /**
+     * ULID文字列のデコード
+     * 
+     * <p>
+     * 26桁のULID文字列をタイムスタンプと乱数を含むバイナリ型ULIDにデコードします。
+     * タイムスタンプは{@link BinaryUlid#getTimestamp()}、乱数は{@link BinaryUlid#getRandomness(byte[], int)}で取り出します。
+     * 
+     * @param ulid 文字列型のULID
+     * @return バイナリ型ULID
+     * @throws IllegalArgumentException 26桁のCrockford Base32文字列でないとき、または128ビットを超えるとき
+     */
+    public static BinaryUlid decode(CharSequence ulid) {
+        return BinaryUlid.parse(ulid);
+    }
+
+    /**
+     * ULID文字列からタイムスタンプを取り出す
+     * 
+     * <p>
+     * 先頭10文字をデコードして、48ビットのタイムスタンプ(ミリ秒単位のUnixエポック時刻)を求めます。
+     * オブジェクトを作成しないため、文字列型の口座識別子を大量に分類するときに使用します。
+     * 乱数の部分はデコードしませんが、Crockford Base32の文字であることは確認します。
      * 
-     * @return 乱数が含まれるバイト型配列10個
+     * @param ulid 文字列型のULID
+     * @return ミリ秒単位のUnixエポック時刻
+     * @throws IllegalArgumentException 26桁のCrockford Base32文字列でないとき、または128ビットを超えるとき
      */
-    private static byte[] randomValue() {
-        SecureRandom random = new SecureRandom();
-        byte[] bytes = new byte[10];
-        random.nextBytes(bytes);
-        return bytes;
+    public static long timestamp(CharSequence ulid) {
+        if (ulid == null || ulid.length() != UlidGenerator.ULID_CHARS || ulid.charAt(0) > '7') {
+            throw new IllegalArgumentException("ULIDは26桁のCrockford Base32文字列でなくてはならない");
+        }
+        long time = 0L;
+        for (int i = 0; i < UlidGenerator.ULID_CHARS; i++) {
+            int value = decodeChar(ulid.charAt(i));
+            if (value < 0) {
+                throw new IllegalArgumentException("ULIDは26桁のCrockford Base32文字列でなくてはならない");
+            }
+            if (i < 10) {
+                time = (time << 5) | value;
+            }
+        }
+        return time;
+    }
+
+    /**
+     * ULIDをchar型配列にエンコードする
+     * 
+     * <p>
+     * タイムスタンプ(48ビット)と乱数(80ビット)をCrockford Base32エンコードして、配列のoffsetの位置から26文字を格納します。
+     * 乱数は上位16ビットと下位64ビットに分けて指定します。引数の正当性チェックは呼び出し元で行います。
+     * 
+     * @param time ミリ秒単位のUnixエポック時刻
+     * @param randomHigh 乱数の上位16ビット
+     * @param randomLow 乱数の下位64ビット
+     * @param dst エンコード結果を格納するchar型配列
+     * @param offset 格納を開始する位置
+     */
+    static void encode(long time, long randomHigh, long randomLow, char[] dst, int offset) {
+        // タイムスタンプのエンコード(genULIDStringと同様に45ビットシフトから5ビットずつエンコード)
+        for (int i = 0, shiftBit = 45; i < 10; i++, shiftBit -= 5) {
+            dst[offset + i] = ENCODE_CHAR[(int)(time >>> shiftBit) & ENCODE_MASK];
+        }
+
+        /* 乱数のエンコード
+            80ビットの乱数を上位から5ビットずつエンコードします。上位16ビットから3文字(15ビット)を取り出した後、
+            上位16ビットの残り1ビットと下位64ビットの先頭4ビットを合わせて1文字とし、残りの60ビットを12文字にエンコードします。
+        */
+        dst[offset + 10] = ENCODE_CHAR[(int)(randomHigh >>> 11) & ENCODE_MASK];
+        dst[offset + 11] = ENCODE_CHAR[(int)(randomHigh >>> 6) & ENCODE_MASK];
+        dst[offset + 12] = ENCODE_CHAR[(int)(randomHigh >>> 1) & ENCODE_MASK];
+        dst[offset + 13] = ENCODE_CHAR[(int)(((randomHigh & 0x1L) << 4) | (randomLow >>> 60))];
+        for (int i = 14, shiftBit = 55; i < 26; i++, shiftBit -= 5) {
+            dst[offset + i] = ENCODE_CHAR[(int)(randomLow >>> shiftBit) & ENCODE_MASK];
+        }
     }
 
 }
@@ -0,0 +1,262 @@
+package com.cocreativeds;
+
+import java.security.SecureRandom;
+import java.util.Random;
+import java.util.function.LongSupplier;
+
+/**
+ * ULID generator engine.
+ *
+ * <p>
+ * UlidGenerator keeps its entropy source per instance and encodes ULIDs directly into
+ * caller-supplied buffers. In monotonic mode the random part is incremented within the same
+ * millisecond, so that generated ULIDs are strictly sortable in order of generation.
+ *
+ * <p>
+ * ULID生成エンジン
+ * <p>
+ * 乱数生成器をインスタンスごとに保持し、呼び出し元が用意したchar型配列またはbyte型配列にULIDを直接エンコードします。
+ * 単調増加モードでは、同一ミリ秒内に生成するULIDの乱数部を1ずつ増加させます。これにより大量に採番した場合でも
+ * 生成順に厳密にソートできるULIDを生成します。
+ * ULIDの詳細は、@see <a href="https://github.com/ulid/spec">ulid/spec</a>を参照願います。
+ *
+ * <p>
+ * インスタンスはスレッドセーフではありません。スレッドごとにインスタンスを作成するか、{@link #current()}で
+ * スレッドごとのインスタンスを取得して使用します。
+ */
+public final class UlidGenerator {
+
+    /**
+     * 文字列型ULIDの長さ
+     */
+    public static final int ULID_CHARS = 26;
+
+    /**
+     * バイナリ型ULIDの長さ(タイムスタンプ6バイト + 乱数10バイト)
+     */
+    public static final int ULID_BYTES = 16;
+
+    /**
+     * Unixエポック時刻(ミリ秒)の最大値
+     *
+     * <p>
+     * ULIDでは時刻の48ビットを使用します。
+     */
+    private static final long MAX_TIME = 0x0000ffffffffffffL;
+
+    /**
+     * 乱数部の上位16ビットのマスク
+     */
+    private static final long RANDOM_HIGH_MASK = 0xffffL;
+
+    /**
+     * スレッドごとのULID生成エンジン(単調増加モード)
+     */
+    private static final ThreadLocal<UlidGenerator> CURRENT = ThreadLocal.withInitial(() -> new UlidGenerator(true));
+
+    /* 乱数生成器 */
+    private final Random random;
+    /* 時刻(Unixエポック時刻のミリ秒)の取得元 */
+    private final LongSupplier clock;
+    /* 単調増加モード */
+    private final boolean monotonic;
+
+    /* 直前に生成したULIDのタイムスタンプ */
+    private long lastTime = -1L;
+    /* 直前に生成したULIDの乱数部(上位16ビット) */
+    private long randomHigh;
+    /* 直前に生成したULIDの乱数部(下位64ビット) */
+    private long randomLow;
+
+    /**
+     * コンストラクター
+     *
+     * <p>
+     * 乱数生成器として{@link SecureRandom}、時刻としてシステム時刻を使用するインスタンスを生成します。
+     *
+     * @param monotonic true: 単調増加モード false: ULIDごとに乱数を生成する
+     */
+    public UlidGenerator(boolean monotonic) {
+        this(new SecureRandom(), System::currentTimeMillis, monotonic);
+    }
+
+    /**
+     * コンストラクター
+     *
+     * <p>
+     * 指定された乱数生成器と時刻の取得元を使用するインスタンスを生成します。
+     *
+     * @param random 乱数生成器
+     * @param clock 時刻(Unixエポック時刻のミリ秒)の取得元
+     * @param monotonic true: 単調増加モード false: ULIDごとに乱数を生成する
+     * @throws IllegalArgumentException 乱数生成器または時刻の取得元がnullのとき
+     */
+    public UlidGenerator(Random random, LongSupplier clock, boolean monotonic) {
+        if (random == null || clock == null) {
+            throw new IllegalArgumentException("乱数生成器と時刻の取得元を指定しなくてはならない");
+        }
+        this.random = random;
+        this.clock = clock;
+        this.monotonic = monotonic;
+    }
+
+    /**
+     * スレッドごとのULID生成エンジンを取得する
+     *
+     * <p>
+     * 呼び出したスレッド専用の単調増加モードのインスタンスを返します。
+     *
+     * @return ULID生成エンジン
+     */
+    public static UlidGenerator current() {
+        return CURRENT.get();
+    }
+
+    /**
+     * 単調増加モードであるかを判定する
+     *
+     * @return true 単調増加モード
+     * @return false 単調増加モードでない
+     */
+    public boolean isMonotonic() {
+        return this.monotonic;
+    }
+
+    /**
+     * ULID文字列の生成
+     *
+     * <p>
+     * ULIDを生成し26バイトの文字列として返します。
+     *
+     * @return 文字列型のULID
+     */
+    public String generate() {
+        char[] chars = new char[ULID_CHARS];
+        this.generate(chars, 0);
+        return new String(chars);
+    }
+
+    /**
+     * ULIDをchar型配列に生成する
+     *
+     * <p>
+     * ULIDを生成し、Crockford Base32エンコードした26文字を配列のoffsetの位置から格納します。
+     *
+     * @param dst ULIDを格納するchar型配列
+     * @param offset 格納を開始する位置
+     * @throws IllegalArgumentException 格納先の配列にULIDを格納する領域がないとき
+     */
+    public void generate(char[] dst, int offset) {
+        if (dst == null || offset < 0 || dst.length - offset < ULID_CHARS) {
+            throw new IllegalArgumentException("ULIDを格納するchar型配列の長さが不足しています");
+        }
+        this.next();
+        ULID.encode(this.lastTime, this.randomHigh, this.randomLow, dst, offset);
+    }
+
+    /**
+     * ULIDをbyte型配列に生成する
+     *
+     * <p>
+     * ULIDを生成し、128ビットのバイナリ(ビッグエンディアン)として16バイトを配列のoffsetの位置から格納します。
+     * 先頭6バイトがタイムスタンプ、後続の10バイトが乱数です。
+     *
+     * @param dst ULIDを格納するbyte型配列
+     * @param offset 格納を開始する位置
+     * @throws IllegalArgumentException 格納先の配列にULIDを格納する領域がないとき
+     */
+    public void generate(byte[] dst, int offset) {
+        if (dst == null || offset < 0 || dst.length - offset < ULID_BYTES) {
+            throw new IllegalArgumentException("ULIDを格納するbyte型配列の長さが不足しています");
+        }
+        this.next();
+        long msb = (this.lastTime << 16) | this.randomHigh;
+        for (int i = 0; i < 8; i++) {
+            dst[offset + i] = (byte)(msb >>> (56 - i * 8));
+            dst[offset + 8 + i] = (byte)(this.randomLow >>> (56 - i * 8));
+        }
+    }
+
+    /**
+     * バイナリ型ULIDの生成
+     *
+     * <p>
+     * ULIDを生成し128ビットのバイナリ型ULIDとして返します。文字列へのエンコードは行いません。
+     *
+     * @return バイナリ型のULID
+     */
+    public BinaryUlid generateBinary() {
+        this.next();
+        return new BinaryUlid((this.lastTime << 16) | this.randomHigh, this.randomLow);
+    }
+
+    /**
+     * バイナリ型ULIDの一括生成
+     *
+     * <p>
+     * 指定された件数のULIDを生成し、配列のoffsetの位置から格納します。単調増加モードでは時刻の取得は最初の1件だけ行い、
+     * 2件目以降は乱数部に1を加算して生成します。格納されるULIDは昇順に並びます。
+     *
+     * @param dst 格納先の配列
+     * @param offset 格納を開始する位置
+     * @param count 生成する件数
+     * @throws IllegalArgumentException 格納先の配列の長さが不足しているとき
+     * @throws IllegalStateException 時刻がULIDで表現できる範囲外のとき、または同一ミリ秒内で乱数部が桁あふれしたとき
+     */
+    public void generateBinary(BinaryUlid[] dst, int offset, int count) {
+        if (dst == null || offset < 0 || count < 0 || dst.length - offset < count) {
+            throw new IllegalArgumentException("ULIDを格納する配列の長さが不足しています");
+        }
+        for (int i = 0; i < count; i++) {
+            if (i == 0 || !this.monotonic) {
+                this.next();
+            } else {
+                this.increment();
+            }
+            dst[offset + i] = new BinaryUlid((this.lastTime << 16) | this.randomHigh, this.randomLow);
+        }
+    }
+
+    /**
+     * 次のULIDのタイムスタンプと乱数部を求める
+     *
+     * <p>
+     * 単調増加モードで直前のULIDと同一ミリ秒(または時刻が戻ったとき)は、直前の乱数部に1を加算します。
+     * それ以外のときは新たに80ビットの乱数を生成します。
+     *
+     * @throws IllegalStateException 時刻がULIDで表現できる範囲外のとき
+     * @throws IllegalStateException 同一ミリ秒内で乱数部が桁あふれしたとき
+     */
+    private void next() {
+        long now = this.clock.getAsLong();
+        if (now < 0 || MAX_TIME < now) {
+            throw new IllegalStateException("タイムスタンプが最小値未満または最大値を超えています");
+        }
+
+        if (this.monotonic && now <= this.lastTime) {
+            this.increment(); // 同一ミリ秒内は乱数部に1を加算する
+        } else {
+            this.lastTime = now;
+            this.randomHigh = this.random.nextInt() & RANDOM_HIGH_MASK;
+            this.randomLow = this.random.nextLong();
+        }
+    }
+
+    /**
+     * 直前のULIDの乱数部に1を加算する
+     *
+     * <p>
+     * 下位64ビットの桁あふれは上位16ビットに繰り上げます。
+     *
+     * @throws IllegalStateException 乱数部が桁あふれしたとき
+     */
+    private void increment() {
+        this.randomLow++;
+        if (this.randomLow == 0L) {
+            this.randomHigh = (this.randomHigh + 1) & RANDOM_HIGH_MASK;
+            if (this.randomHigh == 0L) {
+                throw new IllegalStateException("同一ミリ秒内に生成できるULIDの上限を超えました");
+            }
+        }
+    }
+}
@@ -0,0 +1,927 @@
+package com.cocreativeds;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+import java.util.zip.CRC32C;
+
+/**
+ * Write-ahead log.
+ *
+ * <p>
+ * Deposits, withdrawals and interest postings are appended to a memory-mapped file as fixed-size
+ * binary records. A background committer forces many records to disk with a single force() call
+ * (group commit), and the balances of the accounts are rebuilt from the log after a crash.
+ *
+ * <p>
+ * 先行書き込みログ
+ * <p>
+ * 預け入れ、払い戻し、利息元加の取引と利息計上(未払いの利息の加算)、口座表記変更(店番や口座番号の変更)を、固定長(64バイト)のバイナリ形式の
+ * レコードとしてメモリーマップトファイルに追記します。ディスクへの書き出し(force)は取引ごとには行わず、コミットスレッドが一定の間隔または一定の件数ごとに
+ * まとめて行います(グループコミット)。取引を行うスレッドは{@link #awaitDurable(long)}で自分のレコードが書き出される
+ * まで待ち合わせます。書き出しの回数が取引の件数より少なくなるため、書き出しの待ち時間がスループットを制限しません。
+ *
+ * <p>
+ * レコードの形式(ビッグエンディアン)
+ * <pre>
+ *  0 ログ順序番号(long、1から連続する)
+ *  8 口座識別子の上位64ビット(long)
+ * 16 口座識別子の下位64ビット(long)
+ * 24 操作日時(long、Unixエポック時刻のミリ秒)
+ * 32 取引金額(long、利息計上では1/(365×100万)円単位の未払いの利息、口座表記変更では変更後の口座キー)
+ * 40 取引日(int、エポック日)
+ * 44 通貨インデックス(short)
+ * 46 取引区分コード(byte)
+ * 47 振替の区分(byte、0:振替以外、1:振替出金、2:振替入金、3:他のログへの振替出金、4:他のログの振替出金の参照)
+ * 48 口座キー(long、{@link PackedAccountKey})
+ * 56 0〜55バイト目のCRC-32C(int)
+ * 60 予備(4バイト)
+ * </pre>
+ * 摘要は固定長のレコードに収まらないため記録しません。
+ *
+ * <p>
+ * 振替は、振替出金と振替入金の2つのレコードを連続するログ順序番号で一度に追記します({@link #appendTransfer})。
+ * 振替出金のレコードのログ順序番号が振替の識別子で、次のレコードが対応する振替入金です。レコードを読み込むときは、
+ * 振替入金のレコードまで読み込めた振替だけを2つのレコードとして渡すため、片方の取引だけが口座残高に反映されることは
+ * ありません。
+ *
+ * <p>
+ * 振替元と振替先の口座が別のログに記録されるときは、2つのログに分けて記録します。振替元のログには他のログへの
+ * 振替出金のレコードを1つ追記し({@link #appendTransferPrepare})、そのレコードが書き出されてから、振替先のログに
+ * 振替出金の参照と振替入金の2つのレコードを連続するログ順序番号で追記します({@link #appendTransferCredit})。
+ * 参照のレコードは振替元の口座識別子と口座キー、取引金額の位置に振替出金のログ順序番号を記録し、口座残高には
+ * 適用しません。参照のない他のログへの振替出金は、回復のときに振替元に戻します({@link TransferEngine#recover})。
+ *
+ * <p>
+ * ログ順序番号nのレコードはファイルの(n - 1) × 64バイト目にあるため、スナップショット以降のレコードは
+ * ファイルを先頭から読まずに読み込めます。
+ * ログを開くと、先頭からレコードを検査して、ログ順序番号が連続しCRCが一致する最後のレコードの次から追記を再開します。
+ * 書き出しの途中で停止したときの不完全なレコード以降は破棄します(振替入金のレコードが不完全な振替は、
+ * 振替出金のレコードも破棄します)。
+ */
+public class WriteAheadLog implements Closeable {
+
+    /**
+     * レコードの長さ(バイト)
+     */
+    public static final int RECORD_SIZE = 64;
+
+    /**
+     * グループコミットの間隔の既定値(書き出しの間に追記されたレコードを次の書き出しでまとめる)
+     */
+    public static final Duration DEFAULT_COMMIT_INTERVAL = Duration.ZERO;
+
+    /**
+     * グループコミットの件数の既定値
+     */
+    public static final int DEFAULT_BATCH_SIZE = 256;
+
+    /* ファイルをマップする単位(バイト) */
+    private static final int DEFAULT_REGION_SIZE = 16 * 1024 * 1024;
+
+    /* レコード内の位置 */
+    private static final int LSN_OFFSET = 0;
+    private static final int ACCOUNT_MSB_OFFSET = 8;
+    private static final int ACCOUNT_LSB_OFFSET = 16;
+    private static final int OPERATION_TIME_OFFSET = 24;
+    private static final int AMOUNT_OFFSET = 32;
+    private static final int TRX_DATE_OFFSET = 40;
+    private static final int CURRENCY_INDEX_OFFSET = 44;
+    private static final int TYPE_CODE_OFFSET = 46;
+    private static final int TRANSFER_LEG_OFFSET = 47;
+    private static final int ACCOUNT_KEY_OFFSET = 48;
+    private static final int CHECKSUM_OFFSET = 56;
+
+    /* 振替の区分 */
+    private static final byte NOT_TRANSFER = 0;
+    private static final byte TRANSFER_OUT = 1;
+    private static final byte TRANSFER_IN = 2;
+    private static final byte TRANSFER_PREPARE = 3;
+    private static final byte TRANSFER_REFERENCE = 4;
+
+    /* ログを開くときに一度に読み込むバイト数 */
+    private static final int SCAN_BUFFER_SIZE = RECORD_SIZE * 1024;
+
+    /* ログファイル */
+    private final FileChannel channel;
+    /* グループコミットの間隔(ナノ秒) */
+    private final long commitIntervalNanos;
+    /* グループコミットの件数 */
+    private final int batchSize;
+    /* ファイルをマップする単位(バイト) */
+    private final int regionSize;
+
+    /* 追記とコミットの排他制御 */
+    private final ReentrantLock lock = new ReentrantLock();
+    /* 追記するレコードのCRC-32C(追記の排他の中で再利用する) */
+    private final CRC32C crc = new CRC32C();
+    /* コミットの要求 */
+    private final Condition commitRequested = this.lock.newCondition();
+    /* コミットの完了 */
+    private final Condition committed = this.lock.newCondition();
+
+    /* 追記中の領域 */
+    private MappedByteBuffer region;
+    /* 追記中の領域のファイル内の位置 */
+    private long regionStart;
+    /* 追記中の領域内の次のレコードの位置 */
+    private int regionPosition;
+    /* 追記中の領域内の書き出し済みの位置 */
+    private int committedPosition;
+    /* 一杯になり、まだ書き出していない領域 */
+    private final List<MappedByteBuffer> filledRegions = new ArrayList<>();
+    /* 最後に追記したレコードのログ順序番号 */
+    private long lastLsn;
+    /* 書き出し済みのログ順序番号 */
+    private volatile long durableLsn;
+    /* ログを開いたときの最後のログ順序番号 */
+    private final long openedLsn;
+    /* コミットの回数 */
+    private long commitCount;
+    /* 閉じられたか */
+    private boolean closed;
+    /* 書き出しの失敗 */
+    private UncheckedIOException failure;
+
+    /* コミットスレッド */
+    private final Thread committer;
+
+    /**
+     * ログを開く
+     *
+     * <p>
+     * グループコミットの間隔と件数には既定値を使用します。
+     *
+     * @param path ログファイル
+     * @throws IOException ログファイルを開けないとき
+     */
+    public WriteAheadLog(Path path) throws IOException {
+        this(path, DEFAULT_COMMIT_INTERVAL, DEFAULT_BATCH_SIZE);
+    }
+
+    /**
+     * ログを開く
+     *
+     * <p>
+     * コミットスレッドは、書き出していないレコードがあるとき、batchSize件のレコードが揃うか、最初のレコードから
+     * commitIntervalが経過するまで待ってからまとめて書き出します。commitIntervalが0のときは待たずに書き出し、
+     * 書き出しの間に追記されたレコードを次の書き出しでまとめます。
+     *
+     * @param path ログファイル
+     * @param commitInterval グループコミットの間隔
+     * @param batchSize グループコミットの件数
+     * @throws IllegalArgumentException パラメーターが正しくないとき
+     * @throws IOException ログファイルを開けないとき
+     */
+    public WriteAheadLog(Path path, Duration commitInterval, int batchSize) throws IOException {
+        this(path, commitInterval, batchSize, DEFAULT_REGION_SIZE);
+    }
+
+    /**
+     * ログを開く
+     *
+     * @param path ログファイル
+     * @param commitInterval グループコミットの間隔
+     * @param batchSize グループコミットの件数
+     * @param regionSize ファイルをマップする単位(レコードの長さの倍数)
+     * @throws IllegalArgumentException パラメーターが正しくないとき
+     * @throws IOException ログファイルを開けないとき
+     */
+    WriteAheadLog(Path path, Duration commitInterval, int batchSize, int regionSize) throws IOException {
+        if (path == null) {
+            throw new IllegalArgumentException("ログファイルを指定しなくてはならない");
+        }
+        if (commitInterval == null || commitInterval.isNegative()) {
+            throw new IllegalArgumentException("グループコミットの間隔は0以上でなくてはならない");
+        }
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("グループコミットの件数は1以上でなくてはならない");
+        }
+        if (regionSize < RECORD_SIZE || regionSize % RECORD_SIZE != 0) {
+            throw new IllegalArgumentException("ファイルをマップする単位はレコードの長さの倍数でなくてはならない");
+        }
+        this.commitIntervalNanos = commitInterval.toNanos();
+        this.batchSize = batchSize;
+        this.regionSize = regionSize;
+        this.channel = FileChannel.open(path,
+            StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            long end = this.scan(0L, Long.MAX_VALUE, null, null);
+            this.clearTail(end);
+            this.regionStart = end - end % regionSize;
+            this.region = this.map(this.regionStart);
+            this.regionPosition = (int)(end - this.regionStart);
+            this.committedPosition = this.regionPosition;
+        } catch (IOException | RuntimeException e) {
+            this.channel.close();
+            throw e;
+        }
+        this.lastLsn = this.regionStart / RECORD_SIZE + this.regionPosition / RECORD_SIZE;
+        this.openedLsn = this.lastLsn;
+        this.durableLsn = this.lastLsn;
+        this.committer = new Thread(this::runCommitter, "wal-committer");
+        this.committer.setDaemon(true);
+        this.committer.start();
+    }
+
+    /**
+     * 取引を記録する
+     *
+     * <p>
+     * レコードをログに追記してログ順序番号を返します。ディスクへの書き出しはコミットスレッドが行うため、
+     * 取引を完了する前に{@link #awaitDurable(long)}で書き出しを待ち合わせます。
+     *
+     * @param accountId 口座識別子
+     * @param accountKey 口座キー
+     * @param type 取引区分(入出金を伴う取引、利息計上、または口座表記変更)
+     * @param operationTime 操作日時(Unixエポック時刻のミリ秒)
+     * @param trxDate 取引日(エポック日)
+     * @param amount 取引金額(口座表記変更では変更後の口座キー)
+     * @param currencyIndex 通貨インデックス
+     * @return ログ順序番号
+     * @throws IllegalArgumentException 口座識別子がnullのとき、口座キーが正しくないとき、
+     *         入出金を伴わない取引区分(利息計上と口座表記変更を除く)のとき、振替の取引区分のとき、
+     *         または口座表記変更の取引金額が口座キーと異なるとき
+     * @throws IllegalStateException ログが閉じられているとき
+     * @throws UncheckedIOException ログファイルに書き込めないとき
+     */
+    public long append(AccountId accountId, long accountKey, TransactionType type, long operationTime, int trxDate,
+            long amount, int currencyIndex) {
+        if (accountId == null) {
+            throw new IllegalArgumentException("口座識別子を指定しなくてはならない");
+        }
+        if (!PackedAccountKey.isValid(accountKey)) {
+            throw new IllegalArgumentException("口座キーに変換できない値が含まれています");
+        }
+        if (type == null || !(type.isCredit() || type.isDebit() || type == TransactionType.INTEREST_ACCRUAL
+            || type == TransactionType.ACCOUNT_KEY_CHANGE)) {
+            throw new IllegalArgumentException("ログに記録する取引は入出金を伴う取引、利息計上、または口座表記変更でなくてはならない");
+        }
+        if (type == TransactionType.ACCOUNT_KEY_CHANGE && amount != accountKey) {
+            throw new IllegalArgumentException("口座表記変更の取引金額は変更後の口座キーでなくてはならない");
+        }
+        if (type == TransactionType.TRANSFER_OUT || type == TransactionType.TRANSFER_IN) {
+            throw new IllegalArgumentException("振替は振替出金と振替入金をまとめて記録しなくてはならない");
+        }
+        this.lock.lock();
+        try {
+            this.ensureWritable();
+            if (this.regionPosition == this.regionSize) {
+                this.nextRegion();
+            }
+            long lsn = this.lastLsn + 1;
+            int p = this.regionPosition;
+            this.put(p, lsn, accountId, accountKey, type, NOT_TRANSFER, operationTime, trxDate, amount,
+                currencyIndex);
+            this.regionPosition = p + RECORD_SIZE;
+            this.lastLsn = lsn;
+            this.requestCommit(1);
+            return lsn;
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    /**
+     * 振替を記録する
+     *
+     * <p>
+     * 振替元の振替出金と振替先の振替入金のレコードを、連続するログ順序番号で一度に追記します。
+     * 振替出金のレコードのログ順序番号が振替の識別子です。2つのレコードは同じコミットで書き出されます。
+     * 振替入金のレコードを書き出す前に停止したときは、ログを開くときに振替出金のレコードも破棄するため、
+     * 回復した口座残高は振替の前のままになります。
+     *
+     * @param from 振替元の口座識別子
+     * @param fromKey 振替元の口座キー
+     * @param to 振替先の口座識別子
+     * @param toKey 振替先の口座キー
+     * @param operationTime 操作日時(Unixエポック時刻のミリ秒)
+     * @param trxDate 取引日(エポック日)
+     * @param amount 振替金額
+     * @param currencyIndex 通貨インデックス
+     * @return 振替入金のレコードのログ順序番号(振替出金のレコードはこの1つ前)
+     * @throws IllegalArgumentException 口座識別子がnullのとき、口座キーが正しくないとき
+     * @throws IllegalStateException ログが閉じられているとき
+     * @throws UncheckedIOException ログファイルに書き込めないとき
+     */
+    public long appendTransfer(AccountId from, long fromKey, AccountId to, long toKey, long operationTime,
+            int trxDate, long amount, int currencyIndex) {
+        return this.appendPair(from, fromKey, TRANSFER_OUT, amount, to, toKey, operationTime, trxDate, amount,
+            currencyIndex);
+    }
+
+    /**
+     * 他のログへの振替の振替出金を記録する
+     *
+     * <p>
+     * 振替先の口座が別のログに記録されるときに、振替元の口座のログに振替出金のレコードを1つ追記します。
+     * 返したログ順序番号が振替の識別子で、振替先のログに振替入金を記録するときに参照します
+     * ({@link #appendTransferCredit})。振替入金を記録する前に、このレコードの書き出しを待ち合わせます。
+     *
+     * @param from 振替元の口座識別子
+     * @param fromKey 振替元の口座キー
+     * @param operationTime 操作日時(Unixエポック時刻のミリ秒)
+     * @param trxDate 取引日(エポック日)
+     * @param amount 振替金額
+     * @param currencyIndex 通貨インデックス
+     * @return ログ順序番号
+     * @throws IllegalArgumentException 口座識別子がnullのとき、口座キーが正しくないとき
+     * @throws IllegalStateException ログが閉じられているとき
+     * @throws UncheckedIOException ログファイルに書き込めないとき
+     */
+    public long appendTransferPrepare(AccountId from, long fromKey, long operationTime, int trxDate, long amount,
+            int currencyIndex) {
+        if (from == null) {
+            throw new IllegalArgumentException("口座識別子を指定しなくてはならない");
+        }
+        if (!PackedAccountKey.isValid(fromKey)) {
+            throw new IllegalArgumentException("口座キーに変換できない値が含まれています");
+        }
+        this.lock.lock();
+        try {
+            this.ensureWritable();
+            if (this.regionPosition == this.regionSize) {
+                this.nextRegion();
+            }
+            long lsn = this.lastLsn + 1;
+            int p = this.regionPosition;
+            this.put(p, lsn, from, fromKey, TransactionType.TRANSFER_OUT, TRANSFER_PREPARE, operationTime, trxDate,
+                amount, currencyIndex);
+            this.regionPosition = p + RECORD_SIZE;
+            this.lastLsn = lsn;
+            this.requestCommit(1);
+            return lsn;
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    /**
+     * 他のログからの振替の振替入金を記録する
+     *
+     * <p>
+     * 振替元のログの振替出金({@link #appendTransferPrepare})を参照するレコードと、振替先の振替入金のレコードを、
+     * 連続するログ順序番号で一度に追記します。振替入金のレコードを書き出す前に停止したときは、ログを開くときに
+     * 参照のレコードも破棄します。振替を取り消して振替元に戻すときは、振替元のログに振替元を振替先として記録します。
+     *
+     * @param source 振替元の口座識別子
+     * @param sourceKey 振替元の口座キー
+     * @param prepareLsn 振替元のログの振替出金のログ順序番号
+     * @param to 振替先の口座識別子
+     * @param toKey 振替先の口座キー
+     * @param operationTime 操作日時(Unixエポック時刻のミリ秒)
+     * @param trxDate 取引日(エポック日)
+     * @param amount 振替金額
+     * @param currencyIndex 通貨インデックス
+     * @return 振替入金のレコードのログ順序番号(参照のレコードはこの1つ前)
+     * @throws IllegalArgumentException 口座識別子がnullのとき、口座キーが正しくないとき、
+     *         または振替出金のログ順序番号が1以上でないとき
+     * @throws IllegalStateException ログが閉じられているとき
+     * @throws UncheckedIOException ログファイルに書き込めないとき
+     */
+    public long appendTransferCredit(AccountId source, long sourceKey, long prepareLsn, AccountId to, long toKey,
+            long operationTime, int trxDate, long amount, int currencyIndex) {
+        if (prepareLsn < 1) {
+            throw new IllegalArgumentException("振替出金のログ順序番号は1以上でなくてはならない");
+        }
+        return this.appendPair(source, sourceKey, TRANSFER_REFERENCE, prepareLsn, to, toKey, operationTime, trxDate,
+            amount, currencyIndex);
+    }
+
+    /* 振替出金または参照のレコードと振替入金のレコードを連続するログ順序番号で追記する */
+    private long appendPair(AccountId from, long fromKey, byte fromLeg, long fromAmount, AccountId to, long toKey,
+            long operationTime, int trxDate, long amount, int currencyIndex) {
+        if (from == null || to == null) {
+            throw new IllegalArgumentException("口座識別子を指定しなくてはならない");
+        }
+        if (!PackedAccountKey.isValid(fromKey) || !PackedAccountKey.isValid(toKey)) {
+            throw new IllegalArgumentException("口座キーに変換できない値が含まれています");
+        }
+        this.lock.lock();
+        try {
+            this.ensureWritable();
+            if (this.regionPosition == this.regionSize) {
+                this.nextRegion();
+            }
+            long lsn = this.lastLsn + 1;
+            int p = this.regionPosition;
+            this.put(p, lsn, from, fromKey, TransactionType.TRANSFER_OUT, fromLeg, operationTime, trxDate,
+                fromAmount, currencyIndex);
+            this.regionPosition = p + RECORD_SIZE;
+            if (this.regionPosition == this.regionSize) {
+                MappedByteBuffer r = this.region;
+                try {
+                    this.nextRegion();
+                } catch (RuntimeException e) {
+                    // 振替出金または参照のレコードだけを残さない
+                    r.putLong(p + LSN_OFFSET, 0L);
+                    this.regionPosition = p;
+                    throw e;
+                }
+            }
+            this.put(this.regionPosition, lsn + 1, to, toKey, TransactionType.TRANSFER_IN, TRANSFER_IN,
+                operationTime, trxDate, amount, currencyIndex);
+            this.regionPosition += RECORD_SIZE;
+            this.lastLsn = lsn + 1;
+            this.requestCommit(2);
+            return lsn + 1;
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    /* 追記中の領域にレコードを書き込む(追記の排他の中で呼び出す) */
+    private void put(int p, long lsn, AccountId accountId, long accountKey, TransactionType type, byte transferLeg,
+            long operationTime, int trxDate, long amount, int currencyIndex) {
+        MappedByteBuffer r = this.region;
+        r.putLong(p + LSN_OFFSET, lsn);
+        r.putLong(p + ACCOUNT_MSB_OFFSET, accountId.mostSignificantBits());
+        r.putLong(p + ACCOUNT_LSB_OFFSET, accountId.leastSignificantBits());
+        r.putLong(p + OPERATION_TIME_OFFSET, operationTime);
+        r.putLong(p + AMOUNT_OFFSET, amount);
+        r.putInt(p + TRX_DATE_OFFSET, trxDate);
+        r.putShort(p + CURRENCY_INDEX_OFFSET, (short)currencyIndex);
+        r.put(p + TYPE_CODE_OFFSET, type.getCode());
+        r.put(p + TRANSFER_LEG_OFFSET, transferLeg);
+        r.putLong(p + ACCOUNT_KEY_OFFSET, accountKey);
+        r.putInt(p + CHECKSUM_OFFSET, checksum(this.crc, r, p));
+    }
+
+    /* 待機中のコミットスレッドを起こすのは、最初のレコードと件数が揃ったときだけ(追記の排他の中で呼び出す) */
+    private void requestCommit(int appended) {
+        long pending = this.lastLsn - this.durableLsn;
+        if (pending == appended || pending >= this.batchSize) {
+            this.commitRequested.signal();
+        }
+    }
+
+    /**
+     * レコードが書き出されるまで待ち合わせる
+     *
+     * @param lsn ログ順序番号
+     * @throws UncheckedIOException ログファイルに書き出せなかったとき
+     */
+    public void awaitDurable(long lsn) {
+        if (this.durableLsn >= lsn) {
+            return;
+        }
+        this.lock.lock();
+        try {
+            while (this.durableLsn < lsn) {
+                if (this.failure != null) {
+                    throw this.failure;
+                }
+                this.committed.awaitUninterruptibly();
+            }
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    /**
+     * 口座残高を回復する
+     *
+     * <p>
+     * ログを開いたときに記録されていたレコードを先頭から順に口座に適用して、口座残高と取引履歴を再構築します。
+     * 取引を記録する前に呼び出します。
+     *
+     * @param accounts 口座識別子から口座を求める関数
+     * @return 適用したレコードの件数
+     * @throws IllegalArgumentException 関数がnullのとき
+     * @throws IllegalStateException 取引を記録した後に呼び出したとき、またはレコードの口座が見つからないとき
+     * @throws IOException ログファイルを読み込めないとき
+     */
+    public long recover(Function<AccountId, Account> accounts) throws IOException {
+        return this.recover(0L, accounts);
+    }
+
+    /**
+     * 口座残高を回復する
+     *
+     * <p>
+     * ログを開いたときに記録されていたレコードのうち、指定されたログ順序番号より後のレコードを順に口座に適用します。
+     * スナップショットから口座を復元した後で、スナップショット以降のレコードだけを適用するために使用します。
+     * 取引を記録する前に呼び出します。
+     *
+     * @param afterLsn 適用済みのログ順序番号(このログ順序番号より後のレコードを適用する)
+     * @param accounts 口座識別子から口座を求める関数
+     * @return 適用したレコードの件数
+     * @throws IllegalArgumentException 関数がnullのとき、またはログ順序番号が記録されている範囲にないとき
+     * @throws IllegalStateException 取引を記録した後に呼び出したとき、またはレコードの口座が見つからないとき
+     * @throws IOException ログファイルを読み込めないとき
+     */
+    public long recover(long afterLsn, Function<AccountId, Account> accounts) throws IOException {
+        if (accounts == null) {
+            throw new IllegalArgumentException("口座を求める関数を指定しなくてはならない");
+        }
+        return this.replay(afterLsn, (msb, lsb, accountKey, type, operationTime, trxDate, amount, currencyIndex) -> {
+            AccountId id = new AccountId(new BinaryUlid(msb, lsb));
+            Account account = accounts.apply(id);
+            if (account == null) {
+                throw new IllegalStateException("ログに記録された口座が見つからない: " + id);
+            }
+            account.replay(type, operationTime, trxDate, amount, currencyIndex);
+        });
+    }
+
+    /**
+     * ログを開いたときに記録されていたレコードのうち、指定されたログ順序番号より後のレコードを読み込む
+     *
+     * @param afterLsn 適用済みのログ順序番号
+     * @param visitor レコードを受け取る関数
+     * @return 読み込んだレコードの件数
+     * @throws IllegalArgumentException ログ順序番号が記録されている範囲にないとき
+     * @throws IllegalStateException 取引を記録した後に呼び出したとき
+     * @throws IOException ログファイルを読み込めないとき
+     */
+    long replay(long afterLsn, RecordVisitor visitor) throws IOException {
+        this.lock.lock();
+        try {
+            if (this.lastLsn != this.openedLsn) {
+                throw new IllegalStateException("ログの回復は取引を記録する前に行わなくてはならない");
+            }
+        } finally {
+            this.lock.unlock();
+        }
+        return this.read(afterLsn, this.openedLsn, visitor);
+    }
+
+    /**
+     * 書き出し済みのレコードを読み込む
+     *
+     * <p>
+     * 取引の記録と並行して呼び出すことができます。スナップショットの作成に使用します。
+     *
+     * @param afterLsn 読み込み済みのログ順序番号(このログ順序番号より後のレコードを読み込む)
+     * @param toLsn 読み込む最後のログ順序番号(書き出し済みであること)
+     * @param visitor レコードを受け取る関数
+     * @return 読み込んだレコードの件数
+     * @throws IllegalArgumentException ログ順序番号が書き出し済みの範囲にないとき
+     * @throws IOException ログファイルを読み込めないとき
+     */
+    long read(long afterLsn, long toLsn, RecordVisitor visitor) throws IOException {
+        if (afterLsn < 0 || toLsn < afterLsn || this.durableLsn < toLsn) {
+            throw new IllegalArgumentException("ログ順序番号が記録されている範囲にない");
+        }
+        long end = this.scan(afterLsn, toLsn, visitor, null);
+        return end / RECORD_SIZE - afterLsn;
+    }
+
+    /**
+     * 書き出し済みのレコードから他のログとの振替を読み込む
+     *
+     * <p>
+     * 先頭から書き出し済みのレコードまでの、他のログへの振替出金と、他のログの振替出金の参照を渡します。
+     * 振替の回復に使用します({@link TransferEngine#recover})。
+     *
+     * @param visitor 振替を受け取る関数
+     * @throws IOException ログファイルを読み込めないとき
+     */
+    void readTransfers(TransferVisitor visitor) throws IOException {
+        this.scan(0L, this.durableLsn, null, visitor);
+    }
+
+    /**
+     * 最後に追記したレコードのログ順序番号を取得する
+     *
+     * @return ログ順序番号、レコードがないときは0
+     */
+    public long getLastLsn() {
+        this.lock.lock();
+        try {
+            return this.lastLsn;
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    /**
+     * 書き出し済みのログ順序番号を取得する
+     *
+     * @return ログ順序番号、レコードがないときは0
+     */
+    public long getDurableLsn() {
+        return this.durableLsn;
+    }
+
+    /**
+     * コミット(ディスクへの書き出し)の回数を取得する
+     *
+     * @return ログを開いてからのコミットの回数
+     */
+    public long getCommitCount() {
+        this.lock.lock();
+        try {
+            return this.commitCount;
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    /**
+     * ログを閉じる
+     *
+     * <p>
+     * 追記済みのレコードをすべて書き出してからログファイルを閉じます。
+     *
+     * @throws IOException ログファイルを閉じられないとき
+     */
+    @Override
+    public void close() throws IOException {
+        this.lock.lock();
+        try {
+            if (this.closed) {
+                return;
+            }
+            this.closed = true;
+            this.commitRequested.signal();
+        } finally {
+            this.lock.unlock();
+        }
+        boolean interrupted = false;
+        while (this.committer.isAlive()) {
+            try {
+                this.committer.join();
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        this.channel.close();
+    }
+
+    /* コミットスレッドの処理 */
+    private void runCommitter() {
+        while (true) {
+            long target;
+            List<MappedByteBuffer> filled;
+            MappedByteBuffer current;
+            int from;
+            int to;
+            this.lock.lock();
+            try {
+                while (!this.closed && this.lastLsn == this.durableLsn) {
+                    this.commitRequested.awaitUninterruptibly();
+                }
+                if (this.lastLsn == this.durableLsn) {
+                    return; // 閉じられ、書き出すレコードがない
+                }
+                // 件数が揃うか、間隔が経過するまで待つ
+                long deadline = System.nanoTime() + this.commitIntervalNanos;
+                while (!this.closed && this.lastLsn - this.durableLsn < this.batchSize) {
+                    long remaining = deadline - System.nanoTime();
+                    if (remaining <= 0) {
+                        break;
+                    }
+                    try {
+                        this.commitRequested.awaitNanos(remaining);
+                    } catch (InterruptedException e) {
+                        break;
+                    }
+                }
+                target = this.lastLsn;
+                filled = new ArrayList<>(this.filledRegions);
+                this.filledRegions.clear();
+                current = this.region;
+                from = this.committedPosition;
+                to = this.regionPosition;
+                this.committedPosition = to;
+            } finally {
+                this.lock.unlock();
+            }
+
+            // 書き出しの間も追記できるように、ロックを解放してから書き出す
+            UncheckedIOException error = null;
+            try {
+                for (MappedByteBuffer r : filled) {
+                    r.force();
+                }
+                if (from < to) {
+                    current.force(from, to - from);
+                }
+            } catch (UncheckedIOException e) {
+                error = e;
+            }
+
+            this.lock.lock();
+            try {
+                if (error != null) {
+                    this.failure = error;
+                } else {
+                    this.durableLsn = target;
+                    this.commitCount++;
+                }
+                this.committed.signalAll();
+                if (error != null) {
+                    return;
+                }
+            } finally {
+                this.lock.unlock();
+            }
+        }
+    }
+
+    /* 追記できる状態であるかを確認する */
+    private void ensureWritable() {
+        if (this.closed) {
+            throw new IllegalStateException("ログは閉じられています");
+        }
+        if (this.failure != null) {
+            throw this.failure;
+        }
+    }
+
+    /* 次の領域をマップする */
+    private void nextRegion() {
+        MappedByteBuffer next;
+        try {
+            next = this.map(this.regionStart + this.regionSize);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        this.filledRegions.add(this.region);
+        this.region = next;
+        this.regionStart += this.regionSize;
+        this.regionPosition = 0;
+        this.committedPosition = 0;
+    }
+
+    /* ファイルの指定位置から領域をマップする(ファイルは必要に応じて拡張される) */
+    private MappedByteBuffer map(long position) throws IOException {
+        return this.channel.map(FileChannel.MapMode.READ_WRITE, position, this.regionSize);
+    }
+
+    /**
+     * レコードを受け取る関数
+     */
+    @FunctionalInterface
+    interface RecordVisitor {
+        /**
+         * @param msb 口座識別子の上位64ビット
+         * @param lsb 口座識別子の下位64ビット
+         * @param accountKey 口座キー
+         * @param type 取引区分
+         * @param operationTime 操作日時(Unixエポック時刻のミリ秒)
+         * @param trxDate 取引日(エポック日)
+         * @param amount 取引金額
+         * @param currencyIndex 通貨インデックス
+         */
+        void visit(long msb, long lsb, long accountKey, TransactionType type, long operationTime, int trxDate,
+            long amount, int currencyIndex);
+    }
+
+    /**
+     * 他のログとの振替を受け取る関数
+     */
+    interface TransferVisitor {
+        /**
+         * 他のログへの振替出金を受け取る
+         *
+         * @param lsn ログ順序番号
+         * @param msb 振替元の口座識別子の上位64ビット
+         * @param lsb 振替元の口座識別子の下位64ビット
+         * @param accountKey 振替元の口座キー
+         * @param operationTime 操作日時(Unixエポック時刻のミリ秒)
+         * @param trxDate 取引日(エポック日)
+         * @param amount 振替金額
+         * @param currencyIndex 通貨インデックス
+         */
+        void prepared(long lsn, long msb, long lsb, long accountKey, long operationTime, int trxDate, long amount,
+            int currencyIndex);
+
+        /**
+         * 他のログの振替出金の参照を受け取る(対応する振替入金まで読み込めたものだけ)
+         *
+         * @param msb 振替元の口座識別子の上位64ビット
+         * @param lsb 振替元の口座識別子の下位64ビット
+         * @param prepareLsn 振替元のログの振替出金のログ順序番号
+         */
+        void referenced(long msb, long lsb, long prepareLsn);
+    }
+
+    /**
+     * ログファイルを検査する
+     *
+     * <p>
+     * 指定されたログ順序番号の次のレコードから、ログ順序番号が連続しCRCが一致するレコードを順に読み込みます。
+     * 振替出金のレコードは、次の振替入金のレコードまで読み込めたときに2つ続けて渡します。振替入金のレコードまで
+     * 読み込めなかった振替は有効なレコードに含めません。他のログの振替出金の参照のレコードも同じく振替入金のレコードと
+     * 組で扱いますが、口座残高に適用しないためレコードとしては渡しません。
+     *
+     * @param afterLsn 読み込みを開始するレコードの直前のログ順序番号
+     * @param limitLsn 読み込む最後のログ順序番号
+     * @param visitor レコードを受け取る関数(nullのときは渡さない)
+     * @param transfers 他のログとの振替を受け取る関数(nullのときは渡さない)
+     * @return 有効な最後のレコードの次の位置
+     * @throws IOException ログファイルを読み込めないとき
+     */
+    private long scan(long afterLsn, long limitLsn, RecordVisitor visitor, TransferVisitor transfers)
+            throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(SCAN_BUFFER_SIZE);
+        CRC32C crc = new CRC32C();
+        long position = afterLsn * RECORD_SIZE;
+        long expected = afterLsn + 1;
+        long size = this.channel.size();
+        // 振替入金のレコードをまだ読み込んでいない振替出金または参照のレコード(位置が負のときはない)
+        ByteBuffer transferOut = ByteBuffer.allocate(RECORD_SIZE);
+        long transferOutPosition = -1L;
+        while (position + RECORD_SIZE <= size && expected <= limitLsn) {
+            buffer.clear();
+            int length = (int)Math.min(SCAN_BUFFER_SIZE, (size - position) / RECORD_SIZE * RECORD_SIZE);
+            buffer.limit(length);
+            while (buffer.hasRemaining()) {
+                if (this.channel.read(buffer, position + buffer.position()) < 0) {
+                    break;
+                }
+            }
+            for (int p = 0; p + RECORD_SIZE <= buffer.position(); p += RECORD_SIZE) {
+                if (expected > limitLsn
+                    || buffer.getLong(p + LSN_OFFSET) != expected
+                    || buffer.getInt(p + CHECKSUM_OFFSET) != checksum(crc, buffer, p)) {
+                    return transferOutPosition < 0 ? position + p : transferOutPosition;
+                }
+                byte leg = buffer.get(p + TRANSFER_LEG_OFFSET);
+                if ((transferOutPosition < 0) == (leg == TRANSFER_IN)) {
+                    // 振替出金の次が振替入金でない、または振替出金のない振替入金
+                    return transferOutPosition < 0 ? position + p : transferOutPosition;
+                }
+                if (leg == TRANSFER_OUT || leg == TRANSFER_REFERENCE) {
+                    transferOut.put(0, buffer, p, RECORD_SIZE);
+                    transferOutPosition = position + p;
+                } else {
+                    if (leg == TRANSFER_IN) {
+                        if (transferOut.get(TRANSFER_LEG_OFFSET) == TRANSFER_OUT) {
+                            visit(visitor, transferOut, 0);
+                        } else if (transfers != null) {
+                            transfers.referenced(transferOut.getLong(ACCOUNT_MSB_OFFSET),
+                                transferOut.getLong(ACCOUNT_LSB_OFFSET), transferOut.getLong(AMOUNT_OFFSET));
+                        }
+                        transferOutPosition = -1L;
+                    } else if (leg == TRANSFER_PREPARE && transfers != null) {
+                        transfers.prepared(expected, buffer.getLong(p + ACCOUNT_MSB_OFFSET),
+                            buffer.getLong(p + ACCOUNT_LSB_OFFSET), buffer.getLong(p + ACCOUNT_KEY_OFFSET),
+                            buffer.getLong(p + OPERATION_TIME_OFFSET), buffer.getInt(p + TRX_DATE_OFFSET),
+                            buffer.getLong(p + AMOUNT_OFFSET), buffer.getShort(p + CURRENCY_INDEX_OFFSET));
+                    }
+                    visit(visitor, buffer, p);
+                }
+                expected++;
+            }
+            position += buffer.position();
+        }
+        return transferOutPosition < 0 ? position : transferOutPosition;
+    }
+
+    /* レコードを渡す */
+    private static void visit(RecordVisitor visitor, ByteBuffer buffer, int p) {
+        if (visitor != null) {
+            visitor.visit(buffer.getLong(p + ACCOUNT_MSB_OFFSET), buffer.getLong(p + ACCOUNT_LSB_OFFSET),
+                buffer.getLong(p + ACCOUNT_KEY_OFFSET), TransactionType.ofCode(buffer.get(p + TYPE_CODE_OFFSET)),
+                buffer.getLong(p + OPERATION_TIME_OFFSET), buffer.getInt(p + TRX_DATE_OFFSET),
+                buffer.getLong(p + AMOUNT_OFFSET), buffer.getShort(p + CURRENCY_INDEX_OFFSET));
+        }
+    }
+
+    /* 有効な最後のレコードより後ろに残っているレコードを消去する */
+    private void clearTail(long end) throws IOException {
+        ByteBuffer lsn = ByteBuffer.allocate(Long.BYTES);
+        ByteBuffer zero = ByteBuffer.allocate(RECORD_SIZE);
+        long size = this.channel.size();
+        for (long p = end; p + RECORD_SIZE <= size; p += RECORD_SIZE) {
+            lsn.clear();
+            this.channel.read(lsn, p + LSN_OFFSET);
+            if (lsn.getLong(0) == 0L) {
+                break;
+            }
+            zero.clear();
+            while (zero.hasRemaining()) {
+                this.channel.write(zero, p + zero.position());
+            }
+        }
+        this.channel.force(false);
+    }
+
+    /* レコードのCRC-32Cを求める(バッファーの位置とリミットは元に戻す) */
+    private static int checksum(CRC32C crc, ByteBuffer buffer, int offset) {
+        int position = buffer.position();
+        int limit = buffer.limit();
+        crc.reset();
+        buffer.limit(offset + CHECKSUM_OFFSET).position(offset);
+        crc.update(buffer);
+        buffer.limit(limit).position(position);
+        return (int)crc.getValue();
+    }
+}
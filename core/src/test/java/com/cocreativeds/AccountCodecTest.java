@@ -0,0 +1,233 @@
+package com.cocreativeds;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.BufferOverflowException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.jupiter.api.Test;
+
+public class AccountCodecTest {
+
+    /* 乱数で生成した口座で書き込みと読み込みを往復しても元に戻る */
+    @Test
+    void testAccountRoundTrip() {
+        Random random = new Random(20240401L);
+        ByteBuffer buffer = ByteBuffer.allocate(AccountCodec.MAX_ACCOUNT_SIZE * 1000);
+        Account[] accounts = new Account[1000];
+        for (int i = 0; i < accounts.length; i++) {
+            long key = PackedAccountKey.pack(random.nextInt(10_000), random.nextInt(1000), random.nextInt(10),
+                random.nextInt(10_000_000));
+            accounts[i] = new Account(PackedAccountKey.toBankCode(key), PackedAccountKey.toBranchOfficeNumber(key),
+                PackedAccountKey.toAccountTypeCode(key), PackedAccountKey.toAccountNumber(key),
+                new AccountId(new BinaryUlid(random.nextLong(), random.nextLong())));
+            accounts[i].credit(i % 3 == 0 ? random.nextLong() : random.nextInt(1_000_000));
+            accounts[i].accruedInterest(i % 5 == 0 ? random.nextLong() : random.nextInt(365_000_000));
+            if (i % 2 == 0) {
+                accounts[i].accruedThrough(i % 4 == 0 ? random.nextInt() : 19_000 + i);
+            }
+            AccountCodec.writeAccount(accounts[i], buffer);
+        }
+        buffer.flip();
+        for (Account expected : accounts) {
+            Account actual = AccountCodec.readAccount(buffer);
+            assertEquals(expected.getAccountId(), actual.getAccountId());
+            assertEquals(expected.accountKey(), actual.accountKey());
+            assertEquals(expected.getBalance(), actual.getBalance());
+            assertEquals(expected.accruedInterest(), actual.accruedInterest());
+            assertEquals(expected.accruedThrough(), actual.accruedThrough());
+            assertEquals(expected.toString(), actual.toString());
+        }
+        assertEquals(0, buffer.remaining());
+    }
+
+    /* 外貨の口座残高も往復しても元に戻る */
+    @Test
+    void testAccountRoundTripForeignBalances() {
+        Account a = new Account(BankCode.of("0001"), BranchOfficeNumber.of("123"), AccountTypeCode.of("1"),
+            new AccountNumber("1234567"), new AccountId("01ARZ3NDEKTSV4RRFFQ69G5FAV"));
+        a.credit(100);
+        a.credit(300, CurrencyTable.indexOf("USD"));
+        a.credit(Long.MAX_VALUE, CurrencyTable.size() - 1);
+        ByteBuffer buffer = ByteBuffer.allocate(AccountCodec.MAX_ACCOUNT_SIZE);
+        AccountCodec.writeAccount(a, buffer);
+        // 円の口座残高、件数、通貨インデックスと口座残高 × 2、未払いの利息、利息を計上済みの取引日(未計上)
+        assertEquals(16 + 9 + 2 + 1 + (1 + 2) + (1 + 10) + 1 + 5, buffer.position());
+        buffer.flip();
+        Account actual = AccountCodec.readAccount(buffer);
+        for (int i = 0; i < CurrencyTable.size(); i++) {
+            assertEquals(a.getBalance(i), actual.getBalance(i));
+        }
+        assertEquals(0, buffer.remaining());
+    }
+
+    /* 外貨の取引と並行して書き込んでも、件数と書き込んだ口座残高が食い違わない */
+    @Test
+    void testWriteAccountConcurrentForeignUpdate() throws InterruptedException {
+        Account a = new Account(BankCode.of("0001"), BranchOfficeNumber.of("123"), AccountTypeCode.of("1"),
+            new AccountNumber("1234567"), new AccountId("01ARZ3NDEKTSV4RRFFQ69G5FAV"));
+        int usd = CurrencyTable.indexOf("USD");
+        int eur = CurrencyTable.indexOf("EUR");
+        AtomicBoolean done = new AtomicBoolean();
+        Thread writer = new Thread(() -> {
+            while (!done.get()) {
+                a.credit(5, usd);
+                a.credit(7, eur);
+                a.debit(5, usd);
+                a.debit(7, eur);
+            }
+        });
+        writer.start();
+        try {
+            ByteBuffer buffer = ByteBuffer.allocate(AccountCodec.MAX_ACCOUNT_SIZE);
+            for (int i = 0; i < 200_000; i++) {
+                buffer.clear();
+                AccountCodec.writeAccount(a, buffer);
+                buffer.flip();
+                Account actual = AccountCodec.readAccount(buffer);
+                assertEquals(0, buffer.remaining());
+                assertTrue(actual.getBalance(usd) == 0L || actual.getBalance(usd) == 5L);
+                assertTrue(actual.getBalance(eur) == 0L || actual.getBalance(eur) == 7L);
+            }
+        } finally {
+            done.set(true);
+            writer.join();
+        }
+    }
+
+    /* すべての通貨の口座残高が最大のバイト数でも収まる */
+    @Test
+    void testMaxAccountSize() {
+        Account a = new Account(BankCode.of("9999"), BranchOfficeNumber.of("999"), AccountTypeCode.of("9"),
+            new AccountNumber("9999999"), new AccountId("01ARZ3NDEKTSV4RRFFQ69G5FAV"));
+        for (int i = 0; i < CurrencyTable.size(); i++) {
+            a.credit(Long.MAX_VALUE, i);
+        }
+        a.accruedInterest(Long.MIN_VALUE);
+        a.accruedThrough(Integer.MIN_VALUE);
+        ByteBuffer buffer = ByteBuffer.allocate(AccountCodec.MAX_ACCOUNT_SIZE);
+        AccountCodec.writeAccount(a, buffer);
+        assertEquals(0, buffer.remaining());
+    }
+
+    @Test
+    void testReadAccountCurrencyError() {
+        ByteBuffer buffer = ByteBuffer.allocate(AccountCodec.MAX_ACCOUNT_SIZE);
+        AccountCodec.writeAccountId(new AccountId("01ARZ3NDEKTSV4RRFFQ69G5FAV"), buffer);
+        AccountCodec.writeAccountKey(PackedAccountKey.pack(1, 123, 1, 1234567), buffer);
+        AccountCodec.writeVarLong(100, buffer);
+        buffer.put((byte)1).put((byte)CurrencyTable.size());
+        AccountCodec.writeVarLong(300, buffer);
+        buffer.flip();
+        IllegalArgumentException expected =
+            assertThrows(IllegalArgumentException.class, () -> AccountCodec.readAccount(buffer));
+        assertEquals("通貨インデックスが正しくない", expected.getMessage());
+    }
+
+    @Test
+    void testReadAccountAccruedThroughError() {
+        ByteBuffer buffer = ByteBuffer.allocate(AccountCodec.MAX_ACCOUNT_SIZE);
+        AccountCodec.writeAccountId(new AccountId("01ARZ3NDEKTSV4RRFFQ69G5FAV"), buffer);
+        AccountCodec.writeAccountKey(PackedAccountKey.pack(1, 123, 1, 1234567), buffer);
+        AccountCodec.writeVarLong(100, buffer);
+        buffer.put((byte)0);
+        AccountCodec.writeVarLong(0, buffer);
+        AccountCodec.writeVarLong(Integer.MAX_VALUE + 1L, buffer);
+        buffer.flip();
+        IllegalArgumentException expected =
+            assertThrows(IllegalArgumentException.class, () -> AccountCodec.readAccount(buffer));
+        assertEquals("利息を計上済みの取引日が正しくない", expected.getMessage());
+    }
+
+    @Test
+    void testAccountSize() {
+        Account a = new Account(BankCode.of("0001"), BranchOfficeNumber.of("123"), AccountTypeCode.of("1"),
+            new AccountNumber("1234567"), new AccountId("01ARZ3NDEKTSV4RRFFQ69G5FAV"));
+        a.credit(100);
+        ByteBuffer buffer = ByteBuffer.allocate(AccountCodec.MAX_ACCOUNT_SIZE);
+        AccountCodec.writeAccount(a, buffer);
+        assertEquals(16 + 9 + 2 + 1 + 1 + 5, buffer.position());
+        // パック10進数
+        assertEquals(0x00, buffer.get(16));
+        assertEquals(0x01, buffer.get(17));
+        assertEquals(0x01, buffer.get(18));
+        assertEquals(0x23, buffer.get(19));
+        assertEquals(0x01, buffer.get(20));
+        assertEquals(0x01234567, buffer.getInt(21));
+    }
+
+    @Test
+    void testValueObjects() {
+        ByteBuffer buffer = ByteBuffer.allocate(64);
+        AccountId id = new AccountId();
+        AccountCodec.writeAccountId(id, buffer);
+        AccountCodec.writeBankCode(BankCode.of("9876"), buffer);
+        AccountCodec.writeBranchOfficeNumber(BranchOfficeNumber.of("054"), buffer);
+        AccountCodec.writeAccountTypeCode(AccountTypeCode.of("9"), buffer);
+        AccountCodec.writeAccountNumber(new AccountNumber("0000001"), buffer);
+        assertEquals(16 + 2 + 2 + 1 + 4, buffer.position());
+        buffer.flip();
+        assertEquals(id, AccountCodec.readAccountId(buffer));
+        assertSame(BankCode.of("9876"), AccountCodec.readBankCode(buffer));
+        assertSame(BranchOfficeNumber.of("054"), AccountCodec.readBranchOfficeNumber(buffer));
+        assertSame(AccountTypeCode.of("9"), AccountCodec.readAccountTypeCode(buffer));
+        assertEquals("0000001", AccountCodec.readAccountNumber(buffer).getAccountNumber());
+    }
+
+    @Test
+    void testVarLongRoundTrip() {
+        Random random = new Random(1L);
+        ByteBuffer buffer = ByteBuffer.allocate(AccountCodec.MAX_VARLONG_SIZE);
+        long[] fixed = {0L, 1L, -1L, 63L, -64L, 64L, -65L, Long.MAX_VALUE, Long.MIN_VALUE, 1L << 56};
+        for (int i = 0; i < 100_000; i++) {
+            long v = i < fixed.length ? fixed[i] : random.nextLong() >> random.nextInt(64);
+            buffer.clear();
+            AccountCodec.writeVarLong(v, buffer);
+            assertEquals(AccountCodec.varLongSize(v), buffer.position());
+            buffer.flip();
+            assertEquals(v, AccountCodec.readVarLong(buffer));
+        }
+        // 絶対値が64未満の値は1バイト
+        assertEquals(1, AccountCodec.varLongSize(63L));
+        assertEquals(1, AccountCodec.varLongSize(-64L));
+        assertEquals(2, AccountCodec.varLongSize(64L));
+        assertEquals(AccountCodec.MAX_VARLONG_SIZE, AccountCodec.varLongSize(Long.MIN_VALUE));
+    }
+
+    @Test
+    void testError() {
+        // 数字以外の値を含むパック10進数
+        ByteBuffer bad = ByteBuffer.wrap(new byte[] {0x00, 0x0a});
+        IllegalArgumentException expected =
+            assertThrows(IllegalArgumentException.class, () -> AccountCodec.readBankCode(bad));
+        assertEquals("パック10進数に数字以外の値が含まれています", expected.getMessage());
+        assertThrows(IllegalArgumentException.class,
+            () -> AccountCodec.readBranchOfficeNumber(ByteBuffer.wrap(new byte[] {0x10, 0x00})));
+        assertThrows(IllegalArgumentException.class,
+            () -> AccountCodec.readAccountNumber(ByteBuffer.wrap(new byte[] {0x10, 0x00, 0x00, 0x00})));
+
+        byte[] tooLong = new byte[11];
+        Arrays.fill(tooLong, (byte)0x80);
+        IllegalArgumentException varLong =
+            assertThrows(IllegalArgumentException.class, () -> AccountCodec.readVarLong(ByteBuffer.wrap(tooLong)));
+        assertEquals("可変長整数が長すぎます", varLong.getMessage());
+
+        // バッファーの残りが不足しているときは書き込まない
+        ByteBuffer small = ByteBuffer.allocate(15);
+        assertThrows(BufferOverflowException.class, () -> AccountCodec.writeAccountId(new AccountId(), small));
+        assertEquals(0, small.position());
+        assertThrows(BufferOverflowException.class, () -> AccountCodec.writeAccountKey(0L, ByteBuffer.allocate(8)));
+        assertThrows(IllegalArgumentException.class, () -> AccountCodec.writeAccountKey(-1L, small));
+        assertThrows(BufferUnderflowException.class, () -> AccountCodec.readAccountId(small));
+        assertThrows(BufferUnderflowException.class, () -> AccountCodec.readAccountKey(ByteBuffer.allocate(8)));
+        assertThrows(BufferUnderflowException.class,
+            () -> AccountCodec.readVarLong(ByteBuffer.wrap(new byte[] {(byte)0x80})));
+    }
+}
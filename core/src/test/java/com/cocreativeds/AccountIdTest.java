@@ -2,7 +2,6 @@ package com.cocreativeds;
 
 import static org.junit.jupiter.api.Assertions.*;
 
-import java.util.Objects;
 
 import org.junit.jupiter.api.Test;
 
@@ -60,8 +59,9 @@ public class AccountIdTest {
     @Test
     void testHashCode() {
         AccountId a = new AccountId();
-        int hc = Objects.hash("00000000000000000000000000");
-        assertEquals(hc,a.hashCode());
+        AccountId b = new AccountId("00000000000000000000000000");
+        assertEquals(a.hashCode(), b.hashCode());
+        assertEquals(a.getUlid().hashCode(), a.hashCode());
     }
 
     @Test
@@ -77,6 +77,27 @@ public class AccountIdTest {
         assertEquals("口座識別子: 00000000000000000000000000", a.toString());
     }
 
+    @Test
+    void testBinaryUlid() {
+        BinaryUlid u = BinaryUlid.parse("0123456789ABCDEFGHJKMNPQRS");
+        AccountId a = new AccountId(u);
+        assertEquals("0123456789ABCDEFGHJKMNPQRS", a.getAccountId());
+        assertEquals(u, a.getUlid());
+        assertEquals(new AccountId("0123456789ABCDEFGHJKMNPQRS"), a);
+        assertEquals(new AccountId("0123456789ABCDEFGHJKMNPQRS").hashCode(), a.hashCode());
+    }
+
+    @Test
+    void testCompareToSameAsString() {
+        for (int i = 0; i < 1000; i++) {
+            AccountId a1 = new AccountId();
+            a1.generateAccountId();
+            AccountId a2 = new AccountId(new BinaryUlid(a1.getUlid().getMostSignificantBits() ^ (i * 0x10001L), i * -7L));
+            assertEquals(Integer.signum(a1.getAccountId().compareTo(a2.getAccountId())), Integer.signum(a1.compareTo(a2)));
+            assertEquals(new AccountId(a2.getAccountId()).hashCode(), a2.hashCode());
+        }
+    }
+
     /* エラーケース */
     @Test
     void testSetAccountIdError01() {
@@ -133,4 +154,30 @@ public class AccountIdTest {
         assertThrows(IllegalArgumentException.class, () -> a.setAccountId("0123456789UBCDEFGHJKMNPQRS")); //使用できない文字が含まれている
     assertEquals("口座識別子は26桁の文字列でなくてはならない", expected.getMessage());
     }
+
+    @Test
+    void testSetAccountIdError08() {
+        AccountId a = new AccountId();
+        IllegalArgumentException expected = 
+        assertThrows(IllegalArgumentException.class, () -> a.setAccountId("80000000000000000000000000")); //128ビットを超える
+    assertEquals("口座識別子は26桁の文字列でなくてはならない", expected.getMessage());
+    }
+
+    @Test
+    void testSetUlidError() {
+        AccountId a = new AccountId();
+        IllegalArgumentException expected = 
+        assertThrows(IllegalArgumentException.class, () -> a.setUlid(null)); //null
+    assertEquals("口座識別子は26桁の文字列でなくてはならない", expected.getMessage());
+    }
+
+    @Test
+    void testGetTimestamp() {
+        long before = System.currentTimeMillis();
+        AccountId a = new AccountId();
+        a.generateAccountId();
+        long after = System.currentTimeMillis();
+        assertTrue(before <= a.getTimestamp() && a.getTimestamp() <= after);
+        assertEquals(ULID.timestamp(a.getAccountId()), a.getTimestamp());
+    }
 }
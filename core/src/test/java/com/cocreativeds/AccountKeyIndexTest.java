@@ -0,0 +1,322 @@
+package com.cocreativeds;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class AccountKeyIndexTest {
+
+    private static final BankCode BANK = BankCode.of("0001");
+    private static final BranchOfficeNumber BRANCH_A = BranchOfficeNumber.of("123");
+    private static final BranchOfficeNumber BRANCH_B = BranchOfficeNumber.of("456");
+    private static final AccountTypeCode TYPE = AccountTypeCode.of("1");
+
+    @TempDir
+    Path dir;
+
+    /* 店舗に口座を開設して登録簿と索引に登録する */
+    private static Account open(WriteAheadLog log, AccountRegistry registry, AccountKeyIndex index) {
+        Account a = new Account();
+        a.openAccount(BANK, BRANCH_A, TYPE);
+        a.setWriteAheadLog(log);
+        registry.put(a);
+        index.put(a);
+        return a;
+    }
+
+    /* 索引に登録されている口座キーの店番を変更した口座キー */
+    private static long moved(long key, BranchOfficeNumber to) {
+        return PackedAccountKey.pack(BANK, to, TYPE, PackedAccountKey.toAccountNumber(key));
+    }
+
+    private static long key(BranchOfficeNumber branch, int number) {
+        return PackedAccountKey.pack(1, CodeValidator.digitsValue(branch.getBranchOfficeNumber()), 1, number);
+    }
+
+    @Test
+    void testPutGetRemove() {
+        AccountKeyIndex index = new AccountKeyIndex();
+        AccountId id = new AccountId();
+        long key = key(BRANCH_A, 1234567);
+        assertNull(index.put(key, id));
+        assertSame(id, index.get(key));
+        assertSame(id, index.get(BANK, BRANCH_A, TYPE, new AccountNumber("1234567")));
+        assertNull(index.get(key(BRANCH_B, 1234567)));
+        assertNull(index.get(-1L));
+        assertEquals(1, index.size());
+        assertEquals(1, index.size(BANK, BRANCH_A));
+        assertSame(id, index.remove(key));
+        assertNull(index.remove(key));
+        assertNull(index.remove(key(BRANCH_B, 1)));
+        assertEquals(0, index.size());
+    }
+
+    @Test
+    void testPutAccount() {
+        AccountKeyIndex index = new AccountKeyIndex();
+        Account a = new Account(BANK, BRANCH_A, TYPE, new AccountNumber("0000001"), new AccountId());
+        index.put(a);
+        assertEquals(a.getAccountId(), index.get(key(BRANCH_A, 1)));
+        IllegalArgumentException expected = assertThrows(IllegalArgumentException.class, () -> index.put(null));
+        assertEquals("口座を指定しなくてはならない", expected.getMessage());
+        assertThrows(IllegalArgumentException.class, () -> index.put(-1L, new AccountId()));
+        assertThrows(IllegalArgumentException.class, () -> index.put(key(BRANCH_A, 2), null));
+    }
+
+    @Test
+    void testRekey() {
+        AccountKeyIndex index = new AccountKeyIndex();
+        AccountId id = new AccountId();
+        AccountId other = new AccountId();
+        long from = key(BRANCH_A, 1);
+        long to = key(BRANCH_B, 7);
+        index.put(from, id);
+        index.put(key(BRANCH_B, 8), other);
+        assertSame(id, index.rekey(from, to));
+        assertNull(index.get(from));
+        assertSame(id, index.get(to));
+        assertSame(id, index.rekey(to, to));
+
+        IllegalStateException missing = assertThrows(IllegalStateException.class, () -> index.rekey(from, to));
+        assertEquals("変更前の口座キーが登録されていない: 0001-123-1-0000001", missing.getMessage());
+        IllegalStateException used =
+            assertThrows(IllegalStateException.class, () -> index.rekey(to, key(BRANCH_B, 8)));
+        assertEquals("変更後の口座キーは使用されています: 0001-456-1-0000008", used.getMessage());
+        assertSame(id, index.get(to));
+        assertSame(other, index.get(key(BRANCH_B, 8)));
+    }
+
+    @Test
+    void testMoveBranch() {
+        AccountKeyIndex index = new AccountKeyIndex();
+        AccountId[] ids = new AccountId[100];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = new AccountId();
+            index.put(key(BRANCH_A, i + 1), ids[i]);
+        }
+        AccountId existing = new AccountId();
+        index.put(key(BRANCH_B, 1000), existing);
+
+        assertEquals(100, index.moveBranch(BANK, BRANCH_A, BRANCH_B));
+        assertEquals(0, index.size(BANK, BRANCH_A));
+        assertEquals(101, index.size(BANK, BRANCH_B));
+        for (int i = 0; i < ids.length; i++) {
+            assertNull(index.get(key(BRANCH_A, i + 1)));
+            assertSame(ids[i], index.get(key(BRANCH_B, i + 1)));
+        }
+        assertSame(existing, index.get(key(BRANCH_B, 1000)));
+        assertEquals(0, index.moveBranch(BANK, BRANCH_A, BRANCH_B));
+
+        // 移した後も1口座の登録・変更ができる
+        index.put(key(BRANCH_A, 1), new AccountId());
+        index.rekey(key(BRANCH_B, 1), key(BRANCH_B, 2000));
+        assertSame(ids[0], index.get(key(BRANCH_B, 2000)));
+    }
+
+    /* 変更後の口座キーが使用されているときは何も変更しない */
+    @Test
+    void testMoveBranchConflict() {
+        AccountKeyIndex index = new AccountKeyIndex();
+        for (int i = 1; i <= 10; i++) {
+            index.put(key(BRANCH_A, i), new AccountId());
+        }
+        AccountId existing = new AccountId();
+        index.put(key(BRANCH_B, 5), existing);
+        IllegalStateException expected =
+            assertThrows(IllegalStateException.class, () -> index.moveBranch(BANK, BRANCH_A, BRANCH_B));
+        assertEquals("変更後の口座キーは使用されています: 0001-456-1-0000005", expected.getMessage());
+        assertEquals(10, index.size(BANK, BRANCH_A));
+        assertEquals(1, index.size(BANK, BRANCH_B));
+        assertSame(existing, index.get(key(BRANCH_B, 5)));
+
+        // 重複する口座番号を採番し直して移す
+        assertEquals(10, index.rekeyBranch(BANK, BRANCH_A,
+            k -> PackedAccountKey.pack(1, 456, 1, PackedAccountKey.accountNumber(k) + 100)));
+        assertEquals(11, index.size(BANK, BRANCH_B));
+        assertThrows(IllegalArgumentException.class, () -> index.rekeyBranch(BANK, BRANCH_B, k -> -1L));
+        assertThrows(IllegalArgumentException.class, () -> index.rekeyBranch(BANK, BRANCH_B, null));
+        assertEquals(11, index.size(BANK, BRANCH_B));
+    }
+
+    /* 同じ店舗の中で口座番号を付け替える */
+    @Test
+    void testRekeyBranchSwap() {
+        AccountKeyIndex index = new AccountKeyIndex();
+        AccountId a = new AccountId();
+        AccountId b = new AccountId();
+        index.put(key(BRANCH_A, 1), a);
+        index.put(key(BRANCH_A, 2), b);
+        index.rekeyBranch(BANK, BRANCH_A, k -> k == key(BRANCH_A, 1) ? key(BRANCH_A, 2) : key(BRANCH_A, 1));
+        assertSame(b, index.get(key(BRANCH_A, 1)));
+        assertSame(a, index.get(key(BRANCH_A, 2)));
+    }
+
+    /* 一括変更の途中でも、一部の口座だけが移された店舗は見えない */
+    @Test
+    void testMoveBranchAtomic() throws InterruptedException {
+        AccountKeyIndex index = new AccountKeyIndex();
+        int count = 2000;
+        for (int i = 1; i <= count; i++) {
+            index.put(key(BRANCH_A, i), new AccountId());
+        }
+        AtomicBoolean done = new AtomicBoolean();
+        AtomicReference<String> failure = new AtomicReference<>();
+        Thread reader = new Thread(() -> {
+            while (!done.get()) {
+                // 最初の口座と最後の口座が同じ店舗に見えなくてはならない
+                AccountKeyIndex.View view = index.view();
+                boolean firstInA = view.get(key(BRANCH_A, 1)) != null;
+                boolean lastInA = view.get(key(BRANCH_A, count)) != null;
+                boolean lastInB = view.get(key(BRANCH_B, count)) != null;
+                if (!lastInA && !lastInB) {
+                    failure.set("口座が見つからない");
+                } else if (firstInA != lastInA) {
+                    failure.set("一部の口座だけが移されている");
+                }
+            }
+        });
+        reader.start();
+        for (int i = 0; i < 50; i++) {
+            index.moveBranch(BANK, BRANCH_A, BRANCH_B);
+            index.moveBranch(BANK, BRANCH_B, BRANCH_A);
+        }
+        done.set(true);
+        reader.join();
+        assertNull(failure.get());
+        assertEquals(count, index.size(BANK, BRANCH_A));
+        assertTrue(index.get(key(BRANCH_A, count)) != null);
+    }
+
+    /* 同じ区画で登録・削除(拡張と後方移動)を繰り返している間も、登録済みの口座は検索できる */
+    @Test
+    void testConcurrentGetDuringUpdate() throws InterruptedException {
+        AccountKeyIndex index = new AccountKeyIndex();
+        int stable = 1000;
+        AccountId[] ids = new AccountId[stable];
+        for (int i = 0; i < stable; i++) {
+            ids[i] = new AccountId();
+            index.put(key(BRANCH_A, i * 2), ids[i]);
+        }
+        AtomicBoolean done = new AtomicBoolean();
+        AtomicReference<String> failure = new AtomicReference<>();
+        Thread reader = new Thread(() -> {
+            while (!done.get()) {
+                for (int i = 0; i < stable; i++) {
+                    if (index.get(key(BRANCH_A, i * 2)) != ids[i]) {
+                        failure.set("登録済みの口座が見つからない: " + i);
+                    }
+                }
+            }
+        });
+        reader.start();
+        for (int round = 0; round < 20; round++) {
+            for (int i = 0; i < 5000; i++) {
+                index.put(key(BRANCH_A, i * 2 + 1), new AccountId());
+            }
+            for (int i = 0; i < 5000; i++) {
+                index.remove(key(BRANCH_A, i * 2 + 1));
+            }
+        }
+        done.set(true);
+        reader.join();
+        assertNull(failure.get());
+        assertEquals(stable, index.size(BANK, BRANCH_A));
+    }
+
+    /* 登録簿を指定した索引では、口座の表記の変更が口座とログに反映され、回復した口座も変更後の口座キーになる */
+    @Test
+    void testMoveBranchCheckpointRestore() throws IOException {
+        Path walPath = this.dir.resolve("wal");
+        AccountRegistry registry = new AccountRegistry();
+        AccountKeyIndex index = new AccountKeyIndex(registry);
+        long[] before = new long[3];
+        AccountSnapshot first;
+        try (WriteAheadLog log = new WriteAheadLog(walPath)) {
+            for (int i = 0; i < before.length; i++) {
+                Account a = open(log, registry, index);
+                a.deposit(1000 + i, "JPY", LocalDate.of(2024, 4, 1), "振込");
+                before[i] = a.accountKey();
+            }
+            first = AccountSnapshot.checkpoint(AccountSnapshot.empty(), log, registry);
+            assertEquals(3, index.moveBranch(BANK, BRANCH_A, BRANCH_B));
+            for (Account a : registry) {
+                assertEquals(a.getAccountId(), index.get(a.accountKey()));
+                assertEquals(BRANCH_B.getBranchOfficeNumber(),
+                    PackedAccountKey.toBranchOfficeNumber(a.accountKey()).getBranchOfficeNumber());
+            }
+            first.write(AccountSnapshot.pathOf(this.dir, first.getLsn()));
+            AccountSnapshot second = AccountSnapshot.checkpoint(first, log, registry);
+            second.write(AccountSnapshot.pathOf(this.dir, second.getLsn()));
+        }
+
+        // 最新のスナップショットから復元する
+        try (WriteAheadLog log = new WriteAheadLog(walPath)) {
+            AccountKeyIndex restored = new AccountKeyIndex();
+            List<Account> accounts = AccountSnapshot.loadLatest(this.dir).restore(log);
+            accounts.forEach(restored::put);
+            for (int i = 0; i < before.length; i++) {
+                AccountId id = index.get(moved(before[i], BRANCH_B));
+                assertEquals(id, restored.get(moved(before[i], BRANCH_B)));
+                assertNull(restored.get(before[i]));
+                assertEquals(1000L + i, restoredBalance(accounts, id));
+            }
+        }
+
+        // 変更前のスナップショットから復元する(口座表記変更はログから適用する)
+        try (WriteAheadLog log = new WriteAheadLog(walPath)) {
+            AccountKeyIndex restored = new AccountKeyIndex();
+            first.restore(log).forEach(restored::put);
+            for (int i = 0; i < before.length; i++) {
+                assertEquals(index.get(moved(before[i], BRANCH_B)), restored.get(moved(before[i], BRANCH_B)));
+                assertNull(restored.get(before[i]));
+            }
+        }
+    }
+
+    /* 口座の口座残高 */
+    private static long restoredBalance(List<Account> accounts, AccountId id) {
+        for (Account a : accounts) {
+            if (a.getAccountId().equals(id)) {
+                return a.getBalance();
+            }
+        }
+        throw new AssertionError("口座が見つからない: " + id);
+    }
+
+    /* 登録簿を指定した索引の1口座の変更は口座の口座キーも変更し、登録簿にない口座は変更しない */
+    @Test
+    void testRekeyAccount() throws IOException {
+        AccountRegistry registry = new AccountRegistry();
+        AccountKeyIndex index = new AccountKeyIndex(registry);
+        try (WriteAheadLog log = new WriteAheadLog(this.dir.resolve("wal"))) {
+            Account a = open(log, registry, index);
+            long from = a.accountKey();
+            long to = key(BRANCH_B, 1);
+            assertEquals(a.getAccountId(), index.rekey(from, to));
+            assertEquals(to, a.accountKey());
+            assertEquals(1L, log.getDurableLsn());
+
+            AccountId unregistered = new AccountId();
+            index.put(key(BRANCH_A, 2), unregistered);
+            IllegalStateException expected =
+                assertThrows(IllegalStateException.class, () -> index.rekey(key(BRANCH_A, 2), key(BRANCH_B, 2)));
+            assertEquals("口座が登録簿に登録されていない: " + unregistered, expected.getMessage());
+            assertSame(unregistered, index.get(key(BRANCH_A, 2)));
+            assertNull(index.get(key(BRANCH_B, 2)));
+            assertThrows(IllegalStateException.class, () -> index.moveBranch(BANK, BRANCH_A, BRANCH_B));
+            assertEquals(1, index.size(BANK, BRANCH_A));
+        }
+    }
+}
@@ -0,0 +1,90 @@
+package com.cocreativeds;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import org.junit.jupiter.api.Test;
+
+public class AccountNumberAllocatorTest {
+
+    private static final BankCode BANK = BankCode.of("0001");
+    private static final BranchOfficeNumber BRANCH = BranchOfficeNumber.of("123");
+    private static final AccountTypeCode TYPE = AccountTypeCode.of("1");
+
+    @Test
+    void testAllocate() {
+        AccountNumberAllocator allocator = new AccountNumberAllocator();
+        Set<AccountNumber> numbers = new HashSet<>();
+        for (AccountNumber n : allocator.allocate(BANK, BRANCH, TYPE, 1000)) {
+            assertTrue(numbers.add(n));
+            assertNotEquals("0000000", n.getAccountNumber());
+        }
+        assertTrue(numbers.add(allocator.allocate(BANK, BRANCH, TYPE)));
+        assertEquals(9_999_999 - 1001, allocator.available(BANK, BRANCH, TYPE));
+    }
+
+    /* 金融機関コード、店番、預金種目ごとに採番する */
+    @Test
+    void testAllocatePerBranch() {
+        AccountNumberAllocator allocator = new AccountNumberAllocator();
+        allocator.allocate(BANK, BRANCH, TYPE, 10);
+        assertEquals(9_999_999, allocator.available(BANK, BranchOfficeNumber.of("124"), TYPE));
+        assertEquals(9_999_999, allocator.available(BANK, BRANCH, AccountTypeCode.of("2")));
+        assertEquals(9_999_999, allocator.available(BankCode.of("0002"), BRANCH, TYPE));
+    }
+
+    @Test
+    void testReserveRelease() {
+        AccountNumberAllocator allocator = new AccountNumberAllocator();
+        AccountNumber n = new AccountNumber("1234567");
+        assertTrue(allocator.reserve(BANK, BRANCH, TYPE, n));
+        assertFalse(allocator.reserve(BANK, BRANCH, TYPE, n));
+        assertEquals(9_999_998, allocator.available(BANK, BRANCH, TYPE));
+        assertTrue(allocator.release(BANK, BRANCH, TYPE, n));
+        assertFalse(allocator.release(BANK, BRANCH, TYPE, n));
+        assertFalse(allocator.release(BANK, BRANCH, TYPE, new AccountNumber("0000000")));
+        assertEquals(9_999_999, allocator.available(BANK, BRANCH, TYPE));
+    }
+
+    /* すべての口座番号を採番すると空きがなくなる */
+    @Test
+    void testExhausted() {
+        AccountNumberAllocator allocator = new AccountNumberAllocator();
+        int[] numbers = new int[1_000_000];
+        boolean[] seen = new boolean[10_000_000];
+        int total = 9_999_999;
+        while (total > 0) {
+            int count = Math.min(total, numbers.length);
+            allocator.allocate(BANK, BRANCH, TYPE, numbers, 0, count);
+            for (int i = 0; i < count; i++) {
+                assertFalse(seen[numbers[i]]);
+                seen[numbers[i]] = true;
+            }
+            total -= count;
+        }
+        assertFalse(seen[0]);
+        assertEquals(0, allocator.available(BANK, BRANCH, TYPE));
+        IllegalStateException expected =
+            assertThrows(IllegalStateException.class, () -> allocator.allocate(BANK, BRANCH, TYPE));
+        assertEquals("口座番号の空きがない", expected.getMessage());
+
+        // 未使用に戻した口座番号は再び採番できる
+        allocator.release(BANK, BRANCH, TYPE, new AccountNumber("0004321"));
+        assertEquals("0004321", allocator.allocate(BANK, BRANCH, TYPE).getAccountNumber());
+    }
+
+    @Test
+    void testAllocateError() {
+        AccountNumberAllocator allocator = new AccountNumberAllocator();
+        IllegalArgumentException expected =
+            assertThrows(IllegalArgumentException.class, () -> allocator.allocate(BANK, BRANCH, TYPE, -1));
+        assertEquals("採番する件数は0以上でなくてはならない", expected.getMessage());
+        assertThrows(IllegalArgumentException.class, () -> allocator.allocate(BANK, BRANCH, TYPE, new int[2], 1, 2));
+    }
+}
@@ -7,6 +7,7 @@ import static org.junit.jupiter.api.Assertions.assertTrue;
 import org.junit.jupiter.api.Test;
 
 import java.util.Objects;
+import java.util.TreeMap;
 
 public class AccountNumberTest {
 
@@ -104,6 +105,15 @@ public class AccountNumberTest {
         assertTrue(an2.compareTo(an1) > 0);
     }
 
+    @Test
+    void testSortedMap() {
+        TreeMap<AccountNumber, String> m = new TreeMap<>();
+        m.put(new AccountNumber("1234568"), "b");
+        m.put(new AccountNumber("1234567"), "a");
+        assertEquals("a", m.get(new AccountNumber("1234567")));
+        assertEquals(new AccountNumber("1234567"), m.firstKey());
+    }
+
     @Test
     void testClone() {
         AccountNumber an1 = new AccountNumber("1234567");
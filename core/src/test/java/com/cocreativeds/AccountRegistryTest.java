@@ -0,0 +1,166 @@
+package com.cocreativeds;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+public class AccountRegistryTest {
+
+    private static final BankCode BANK = BankCode.of("0001");
+    private static final BranchOfficeNumber BRANCH = BranchOfficeNumber.of("123");
+    private static final AccountTypeCode TYPE = AccountTypeCode.of("1");
+
+    /* 指定された時刻に開設した口座を作成する */
+    private static Account accountAt(long epochMilli, long random) {
+        AccountId id = new AccountId(new BinaryUlid(epochMilli << 16, random));
+        return new Account(BANK, BRANCH, TYPE, new AccountNumber("0000001"), id);
+    }
+
+    @Test
+    void testPutGetRemove() {
+        AccountRegistry registry = new AccountRegistry();
+        assertTrue(registry.isEmpty());
+        Account a = accountAt(1000L, 1L);
+        Account b = accountAt(1000L, 1L);
+        assertNull(registry.put(a));
+        assertSame(a, registry.get(a.getAccountId()));
+        assertSame(a, registry.get(a.getAccountId().clone()));
+        assertSame(a, registry.put(b));
+        assertSame(b, registry.get(a.getAccountId()));
+        assertEquals(1, registry.size());
+        assertSame(b, registry.remove(a.getAccountId()));
+        assertNull(registry.remove(a.getAccountId()));
+        assertNull(registry.get(a.getAccountId()));
+        assertNull(registry.get(null));
+        assertTrue(registry.isEmpty());
+        assertTrue(registry.range(a.getAccountId(), new AccountId(new BinaryUlid(-1L, -1L))).isEmpty());
+    }
+
+    @Test
+    void testPutIfAbsent() {
+        AccountRegistry registry = new AccountRegistry(16);
+        Account a = accountAt(1000L, 1L);
+        Account b = accountAt(1000L, 1L);
+        assertNull(registry.putIfAbsent(a));
+        assertSame(a, registry.putIfAbsent(b));
+        assertSame(a, registry.get(b.getAccountId()));
+        assertSame(a, registry.iterator().next());
+    }
+
+    /* 登録した後で口座識別子を変更しても登録簿のキーは変わらない */
+    @Test
+    void testKeyIsCopied() {
+        AccountRegistry registry = new AccountRegistry();
+        Account a = accountAt(1000L, 1L);
+        AccountId original = a.getAccountId().clone();
+        registry.put(a);
+        a.getAccountId().setUlid(new BinaryUlid(2000L << 16, 2L));
+        assertSame(a, registry.get(original));
+        assertNull(registry.get(a.getAccountId()));
+    }
+
+    @Test
+    void testRange() {
+        AccountRegistry registry = new AccountRegistry();
+        List<Account> accounts = new ArrayList<>();
+        for (int i = 9; i >= 0; i--) {
+            Account a = accountAt(1000L + i, i);
+            accounts.add(0, a);
+            registry.put(a);
+        }
+        // 口座識別子の昇順に走査する
+        int i = 0;
+        for (Account a : registry) {
+            assertSame(accounts.get(i++), a);
+        }
+        Collection<Account> range = registry.range(accounts.get(2).getAccountId(), accounts.get(5).getAccountId());
+        assertEquals(List.of(accounts.get(2), accounts.get(3), accounts.get(4)), new ArrayList<>(range));
+        assertTrue(registry.range(accounts.get(5).getAccountId(), accounts.get(5).getAccountId()).isEmpty());
+    }
+
+    @Test
+    void testOpenedBetween() {
+        AccountRegistry registry = new AccountRegistry();
+        Account a = accountAt(1000L, -1L);
+        Account b = accountAt(2000L, 0L);
+        Account c = accountAt(2999L, -1L);
+        Account d = accountAt(3000L, 0L);
+        for (Account x : new Account[] {d, c, b, a}) {
+            registry.put(x);
+        }
+        Collection<Account> opened = registry.openedBetween(Instant.ofEpochMilli(2000L), Instant.ofEpochMilli(3000L));
+        assertEquals(List.of(b, c), new ArrayList<>(opened));
+        assertEquals(4, registry.openedBetween(Instant.EPOCH, Instant.ofEpochMilli(0x0000ffffffffffffL)).size());
+
+        // ビューのため、後から登録した口座も反映される
+        Account e = accountAt(2500L, 5L);
+        registry.put(e);
+        assertEquals(List.of(b, e, c), new ArrayList<>(opened));
+    }
+
+    @Test
+    void testRangeError() {
+        AccountRegistry registry = new AccountRegistry();
+        AccountId low = new AccountId(new BinaryUlid(1L, 0L));
+        AccountId high = new AccountId(new BinaryUlid(2L, 0L));
+        IllegalArgumentException expected =
+            assertThrows(IllegalArgumentException.class, () -> registry.range(high, low));
+        assertEquals("口座識別子の範囲が正しくない", expected.getMessage());
+        assertThrows(IllegalArgumentException.class, () -> registry.range(null, high));
+        assertThrows(IllegalArgumentException.class,
+            () -> registry.openedBetween(Instant.ofEpochMilli(-1L), Instant.EPOCH));
+        assertThrows(IllegalArgumentException.class,
+            () -> registry.openedBetween(Instant.EPOCH, Instant.ofEpochMilli(1L << 48)));
+        assertThrows(IllegalArgumentException.class,
+            () -> registry.openedBetween(Instant.ofEpochMilli(2L), Instant.ofEpochMilli(1L)));
+        IllegalArgumentException nullAccount = assertThrows(IllegalArgumentException.class, () -> registry.put(null));
+        assertEquals("口座を指定しなくてはならない", nullAccount.getMessage());
+        IllegalArgumentException size = assertThrows(IllegalArgumentException.class, () -> new AccountRegistry(-1));
+        assertEquals("登録を予定する件数は0以上でなくてはならない", size.getMessage());
+    }
+
+    /* 複数のスレッドから登録・削除しても、検索と範囲の検索の結果が一致する */
+    @Test
+    void testConcurrent() throws InterruptedException {
+        AccountRegistry registry = new AccountRegistry();
+        int threads = 4;
+        int perThread = 2000;
+        List<Thread> list = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            int base = t * perThread;
+            Thread thread = new Thread(() -> {
+                for (int i = 0; i < perThread; i++) {
+                    Account a = accountAt(base + i, i);
+                    registry.put(a);
+                    if (i % 2 == 1) {
+                        registry.remove(a.getAccountId());
+                    }
+                }
+            });
+            thread.start();
+            list.add(thread);
+        }
+        for (Thread thread : list) {
+            thread.join();
+        }
+        assertEquals(threads * perThread / 2, registry.size());
+        int count = 0;
+        AccountId previous = null;
+        for (Account a : registry) {
+            assertSame(a, registry.get(a.getAccountId()));
+            assertTrue(previous == null || previous.compareTo(a.getAccountId()) < 0);
+            previous = a.getAccountId();
+            count++;
+        }
+        assertEquals(registry.size(), count);
+    }
+}
@@ -0,0 +1,141 @@
+package com.cocreativeds;
+
+import static com.cocreativeds.TestAccounts.newAccount;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class AccountServiceTest {
+
+    private static final LocalDate TRX_DATE = LocalDate.of(2024, 4, 1);
+
+    @TempDir
+    Path dir;
+
+    /* 完了の例外の原因を取得する */
+    private static Throwable causeOf(CompletableFuture<?> f) {
+        return assertThrows(CompletionException.class, f::join).getCause();
+    }
+
+    @Test
+    void testPosting() {
+        AccountRegistry registry = new AccountRegistry();
+        Account a = newAccount(registry);
+        try (AccountService service = new AccountService(registry, 100)) {
+            service.deposit(a.getAccountId(), 1000, "JPY", TRX_DATE, "振込").join();
+            service.deposit(a.getAccountId(), 300, "USD", TRX_DATE, "振込").join();
+            service.withdrawal(a.getAccountId(), 400, "JPY", TRX_DATE, "ATM").join();
+            assertEquals(600L, service.getBalance(a.getAccountId(), "JPY").join());
+            assertEquals(300L, service.getBalance(a.getAccountId(), "USD").join());
+            TransactionHistoryPage page = service.getTransactionHistories(a.getAccountId(), null, null, 2).join();
+            assertEquals(2, page.size());
+            page = service.getTransactionHistories(a.getAccountId(), page.getNextCursor(), 2).join();
+            assertEquals(1, page.size());
+            assertFalse(page.hasNextPage());
+        }
+    }
+
+    /* 先行書き込みログを設定した口座に多数の要求を同時に記帳する */
+    @Test
+    void testConcurrentPostingWriteAheadLog() throws IOException {
+        AccountRegistry registry = new AccountRegistry();
+        int accounts = 10;
+        int requests = 10_000;
+        try (WriteAheadLog log = new WriteAheadLog(this.dir.resolve("wal"));
+                AccountService service = new AccountService(registry, requests)) {
+            List<Account> list = new ArrayList<>();
+            for (int i = 0; i < accounts; i++) {
+                Account a = newAccount(registry);
+                a.setWriteAheadLog(log);
+                list.add(a);
+            }
+            CompletableFuture<?>[] futures = new CompletableFuture<?>[requests];
+            for (int i = 0; i < requests; i++) {
+                futures[i] = service.deposit(list.get(i % accounts).getAccountId(), 1, "JPY", TRX_DATE, "振込");
+            }
+            CompletableFuture.allOf(futures).join();
+            for (Account a : list) {
+                assertEquals(requests / accounts, a.getBalance());
+            }
+            assertEquals(requests, log.getDurableLsn());
+        }
+    }
+
+    /* 処理中の要求の数が上限に達しているときは受け付けない */
+    @Test
+    void testRejected() {
+        AccountRegistry registry = new AccountRegistry();
+        Account a = newAccount(registry);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        CountDownLatch blocked = new CountDownLatch(1);
+        executor.execute(() -> {
+            try {
+                blocked.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        try (AccountService service = new AccountService(registry, executor, 1)) {
+            CompletableFuture<Void> first = service.deposit(a.getAccountId(), 100, "JPY", TRX_DATE, "振込");
+            assertEquals(1, service.getActiveRequests());
+            Throwable cause = causeOf(service.deposit(a.getAccountId(), 100, "JPY", TRX_DATE, "振込"));
+            assertInstanceOf(RejectedExecutionException.class, cause);
+            assertEquals("同時に処理できる要求の数を超えている", cause.getMessage());
+            blocked.countDown();
+            first.join();
+            assertEquals(100, a.getBalance());
+        }
+    }
+
+    /* 処理の例外で完了する */
+    @Test
+    void testError() {
+        AccountRegistry registry = new AccountRegistry();
+        Account a = newAccount(registry);
+        try (AccountService service = new AccountService(registry, 10)) {
+            Throwable cause = causeOf(service.getBalance(new AccountId("01ARZ3NDEKTSV4RRFFQ69G5FAV"), "JPY"));
+            assertInstanceOf(IllegalArgumentException.class, cause);
+            assertEquals("口座が見つからない", cause.getMessage());
+            cause = causeOf(service.withdrawal(a.getAccountId(), 1, "JPY", TRX_DATE, "ATM"));
+            assertInstanceOf(IllegalStateException.class, cause);
+            assertEquals("口座残高が不足しているため払い戻しできない", cause.getMessage());
+        }
+    }
+
+    /* 受け付けを終了した後の要求は受け付けない */
+    @Test
+    void testClosed() {
+        AccountRegistry registry = new AccountRegistry();
+        Account a = newAccount(registry);
+        AccountService service = new AccountService(registry, 10);
+        service.close();
+        assertInstanceOf(RejectedExecutionException.class, causeOf(service.getBalance(a.getAccountId(), "JPY")));
+        assertEquals(0, service.getActiveRequests());
+    }
+
+    @Test
+    void testConstructorError() {
+        AccountRegistry registry = new AccountRegistry();
+        IllegalArgumentException expected =
+            assertThrows(IllegalArgumentException.class, () -> new AccountService(registry, 0));
+        assertEquals("同時に処理する要求の数の上限は1以上でなくてはならない", expected.getMessage());
+        expected = assertThrows(IllegalArgumentException.class, () -> new AccountService(null, 1));
+        assertEquals("口座の登録簿と要求を処理するスレッドを指定しなくてはならない", expected.getMessage());
+    }
+}
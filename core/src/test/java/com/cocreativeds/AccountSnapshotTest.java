@@ -0,0 +1,235 @@
+package com.cocreativeds;
+
+import static com.cocreativeds.TestAccounts.newAccount;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32C;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class AccountSnapshotTest {
+
+    private static final LocalDate TRX_DATE = LocalDate.of(2024, 4, 1);
+
+    @TempDir
+    Path dir;
+
+    /* 口座識別子をキーとする口座残高 */
+    private static Map<AccountId, Long> balances(List<Account> accounts) {
+        Map<AccountId, Long> map = new HashMap<>();
+        for (Account a : accounts) {
+            map.put(a.getAccountId(), a.getBalance());
+        }
+        return map;
+    }
+
+    /* 口座識別子をキーとする口座 */
+    private static Map<AccountId, Account> byId(List<Account> accounts) {
+        Map<AccountId, Account> map = new HashMap<>();
+        for (Account a : accounts) {
+            map.put(a.getAccountId(), a);
+        }
+        return map;
+    }
+
+    @Test
+    void testWriteLoad() throws IOException {
+        List<Account> accounts = new ArrayList<>();
+        try (WriteAheadLog log = new WriteAheadLog(this.dir.resolve("wal"))) {
+            for (int i = 0; i < 100; i++) {
+                Account a = newAccount(log);
+                a.deposit(1000 + i, "JPY", TRX_DATE, "振込");
+                accounts.add(a);
+            }
+            newAccount(log); // 取引のない口座は口座の一覧になければ含まれない
+            AccountSnapshot snapshot = AccountSnapshot.checkpoint(AccountSnapshot.empty(), log, accounts);
+            assertEquals(100L, snapshot.getLsn());
+            assertEquals(100, snapshot.size());
+
+            Path path = AccountSnapshot.pathOf(this.dir, snapshot.getLsn());
+            snapshot.write(path);
+            assertEquals(20 + 100 * AccountSnapshot.ENTRY_SIZE + 4, Files.size(path));
+            AccountSnapshot loaded = AccountSnapshot.load(path);
+            assertEquals(100L, loaded.getLsn());
+            assertEquals(100, loaded.size());
+        }
+    }
+
+    /* 前回のスナップショットとログの続きから作成したスナップショットで口座が復元できる */
+    @Test
+    void testCheckpointRestore() throws IOException {
+        Path walPath = this.dir.resolve("wal");
+        List<Account> accounts = new ArrayList<>();
+        Account late;
+        try (WriteAheadLog log = new WriteAheadLog(walPath)) {
+            for (int i = 0; i < 10; i++) {
+                Account a = newAccount(log);
+                a.deposit(1000, "JPY", TRX_DATE, "振込");
+                accounts.add(a);
+            }
+            AccountSnapshot first = AccountSnapshot.checkpoint(AccountSnapshot.empty(), log, accounts);
+            accounts.get(0).withdrawal(300, "JPY", TRX_DATE, "ATM");
+            accounts.add(newAccount(log)); // 取引のない口座
+            AccountSnapshot second = AccountSnapshot.checkpoint(first, log, accounts);
+            assertEquals(11L, second.getLsn());
+            assertEquals(11, second.size());
+            second.write(AccountSnapshot.pathOf(this.dir, second.getLsn()));
+
+            // スナップショットの後の取引と、スナップショットの後に開設された口座
+            accounts.get(1).deposit(5, "JPY", TRX_DATE, "振込");
+            late = newAccount(log);
+            late.deposit(777, "JPY", TRX_DATE, "振込");
+        }
+
+        try (WriteAheadLog log = new WriteAheadLog(walPath)) {
+            AccountSnapshot latest = AccountSnapshot.loadLatest(this.dir);
+            assertEquals(11L, latest.getLsn());
+            List<Account> restored = latest.restore(log);
+            assertEquals(12, restored.size());
+            Map<AccountId, Long> expected = balances(accounts);
+            expected.put(late.getAccountId(), 777L);
+            assertEquals(expected, balances(restored));
+            assertEquals(late.toString(), byId(restored).get(late.getAccountId()).toString());
+        }
+    }
+
+    /* 外貨の口座残高もスナップショットとログの続きから復元できる */
+    @Test
+    void testCheckpointRestoreForeignBalances() throws IOException {
+        Path walPath = this.dir.resolve("wal");
+        List<Account> accounts = new ArrayList<>();
+        try (WriteAheadLog log = new WriteAheadLog(walPath)) {
+            for (int i = 0; i < 10; i++) {
+                Account a = newAccount(log);
+                a.deposit(1000, "JPY", TRX_DATE, "振込");
+                if (i % 2 == 0) {
+                    a.deposit(100 + i, "USD", TRX_DATE, "振込");
+                    a.deposit(50, "EUR", TRX_DATE, "振込");
+                }
+                accounts.add(a);
+            }
+            accounts.get(0).withdrawal(50, "EUR", TRX_DATE, "送金"); // 0になった外貨は書き込まない
+            AccountSnapshot snapshot = AccountSnapshot.checkpoint(AccountSnapshot.empty(), log, accounts);
+            Path path = AccountSnapshot.pathOf(this.dir, snapshot.getLsn());
+            snapshot.write(path);
+            assertEquals(20 + 10 * AccountSnapshot.ENTRY_SIZE + 4 + 9 * 16 + 4, Files.size(path));
+            accounts.get(1).deposit(7, "GBP", TRX_DATE, "振込");
+        }
+
+        try (WriteAheadLog log = new WriteAheadLog(walPath)) {
+            Map<AccountId, Account> restored = byId(AccountSnapshot.loadLatest(this.dir).restore(log));
+            for (Account a : accounts) {
+                Account r = restored.get(a.getAccountId());
+                for (int c = 0; c < CurrencyTable.size(); c++) {
+                    assertEquals(a.getBalance(c), r.getBalance(c));
+                }
+            }
+            assertEquals(7, restored.get(accounts.get(1).getAccountId()).getBalance("GBP"));
+        }
+    }
+
+    /* 復元した口座の通帳記帳は、スナップショットの時点の口座残高から、ログから回復した明細を記帳する */
+    @Test
+    void testRestorePassbook() throws IOException {
+        Path walPath = this.dir.resolve("wal");
+        AccountSnapshot snapshot;
+        try (WriteAheadLog log = new WriteAheadLog(walPath)) {
+            Account a = newAccount(log);
+            a.deposit(10_000, "JPY", TRX_DATE, "給与");
+            snapshot = AccountSnapshot.checkpoint(AccountSnapshot.empty(), log, List.of(a));
+            a.withdrawal(2_500, "JPY", TRX_DATE.plusDays(1), "ATM");
+            a.deposit(100, "JPY", TRX_DATE.plusDays(2), "振込");
+        }
+        try (WriteAheadLog log = new WriteAheadLog(walPath)) {
+            Account restored = snapshot.restore(log).get(0);
+            char[] buffer = new char[PassbookFormatter.LINE_WIDTH * 4];
+            assertEquals(2, restored.updatePassbook(TRX_DATE.plusDays(2), buffer, 0, 4));
+            // 摘要はログに記録しないため空白、差引残高はスナップショットの口座残高から求める
+            assertEquals(String.format("%-10s %-10s%14s%14s%15s", "2024-04-02", "", "2,500", "", "7,500"),
+                new String(buffer, 0, PassbookFormatter.LINE_WIDTH));
+            assertEquals(String.format("%-10s %-10s%14s%14s%15s", "2024-04-03", "", "", "100", "7,600"),
+                new String(buffer, PassbookFormatter.LINE_WIDTH, PassbookFormatter.LINE_WIDTH));
+            assertEquals(0, restored.updatePassbook(TRX_DATE.plusDays(2), buffer, 0, 4));
+        }
+    }
+
+    @Test
+    void testLoadLatestFallback() throws IOException {
+        List<Account> accounts = new ArrayList<>();
+        try (WriteAheadLog log = new WriteAheadLog(this.dir.resolve("wal"))) {
+            Account a = newAccount(log);
+            accounts.add(a);
+            a.deposit(100, "JPY", TRX_DATE, "振込");
+            AccountSnapshot first = AccountSnapshot.checkpoint(AccountSnapshot.empty(), log, accounts);
+            first.write(AccountSnapshot.pathOf(this.dir, first.getLsn()));
+            a.deposit(100, "JPY", TRX_DATE, "振込");
+            AccountSnapshot second = AccountSnapshot.checkpoint(first, log, accounts);
+            Path path = AccountSnapshot.pathOf(this.dir, second.getLsn());
+            second.write(path);
+            assertEquals(2L, AccountSnapshot.loadLatest(this.dir).getLsn());
+
+            // 最新のスナップショットの口座残高を壊す
+            try (FileChannel ch = FileChannel.open(path, StandardOpenOption.WRITE)) {
+                ch.write(ByteBuffer.wrap(new byte[] {0x7f}), 20 + 24);
+            }
+            assertThrows(IOException.class, () -> AccountSnapshot.load(path));
+            assertEquals(1L, AccountSnapshot.loadLatest(this.dir).getLsn());
+        }
+    }
+
+    /* 利息を計上済みの取引日を含まない版数3のスナップショットも読み込める */
+    @Test
+    void testLoadAccruedVersion3() throws IOException {
+        ByteBuffer b = ByteBuffer.allocate(20 + 32 + 4 + 4 + 12);
+        b.putInt(0x54434253).putInt(3).putLong(0L).putInt(1);
+        b.putLong(1L).putLong(2L).putLong(PackedAccountKey.pack(1, 1, 1, 1234567)).putLong(500L);
+        b.putInt(0); // 外貨
+        b.putInt(1).putInt(0).putLong(123L); // 利息
+        CRC32C crc = new CRC32C();
+        crc.update(b.array());
+        Path path = this.dir.resolve("v3.bin");
+        Files.write(path, ByteBuffer.allocate(b.capacity() + 4).put(b.array()).putInt((int)crc.getValue()).array());
+
+        AccountSnapshot snapshot = AccountSnapshot.load(path);
+        try (WriteAheadLog log = new WriteAheadLog(this.dir.resolve("wal"))) {
+            Account a = snapshot.restore(log).get(0);
+            assertEquals(500L, a.getBalance());
+            assertEquals(123L, a.accruedInterest());
+            assertEquals(Integer.MIN_VALUE, a.accruedThrough());
+        }
+    }
+
+    @Test
+    void testLoadLatestEmpty() throws IOException {
+        assertEquals(0L, AccountSnapshot.loadLatest(this.dir).getLsn());
+        assertEquals(0L, AccountSnapshot.loadLatest(this.dir.resolve("none")).size());
+    }
+
+    @Test
+    void testPathOf() {
+        assertEquals("snapshot-00000000000000000042.bin",
+            AccountSnapshot.pathOf(this.dir, 42L).getFileName().toString());
+    }
+
+    @Test
+    void testCheckpointError() throws IOException {
+        try (WriteAheadLog log = new WriteAheadLog(this.dir.resolve("wal"))) {
+            IllegalArgumentException expected = assertThrows(IllegalArgumentException.class,
+                () -> AccountSnapshot.checkpoint(null, log, new ArrayList<>()));
+            assertEquals("前回のスナップショット、ログ、口座を指定しなくてはならない", expected.getMessage());
+        }
+    }
+}
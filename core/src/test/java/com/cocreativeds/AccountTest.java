@@ -1,9 +1,26 @@
 package com.cocreativeds;
 
 
+import static com.cocreativeds.TestAccounts.newAccount;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
 
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 public class AccountTest {
 
     @Test
@@ -22,4 +39,567 @@ public class AccountTest {
         new AccountId("0123456789ABCDEFGHJKMNPQRS"));
         assertEquals("口座: 1234-123-1-1234567-0123456789ABCDEFGHJKMNPQRS", ac.toString());;
     }
+
+    /* 複数のスレッドで処理を同時に開始し、すべてのスレッドの終了を待つ */
+    private static void runConcurrently(int threads, Runnable task) throws InterruptedException {
+        CountDownLatch start = new CountDownLatch(1);
+        List<Thread> list = new ArrayList<>();
+        for (int i = 0; i < threads; i++) {
+            Thread t = new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+                task.run();
+            });
+            t.start();
+            list.add(t);
+        }
+        start.countDown();
+        for (Thread t : list) {
+            t.join();
+        }
+    }
+
+    @Test
+    void testDeposit() {
+        Account a = newAccount();
+        a.deposit(1000, "JPY", LocalDate.of(2024, 4, 1), "振込");
+        a.deposit(500, "JPY", LocalDate.of(2024, 4, 1), "ATM");
+        assertEquals(1500, a.getBalance());
+    }
+
+    @Test
+    void testWithdrawal() {
+        Account a = newAccount();
+        a.deposit(1000, "JPY", LocalDate.of(2024, 4, 1), "振込");
+        a.withdrawal(1000, "JPY", LocalDate.of(2024, 4, 1), "ATM");
+        assertEquals(0, a.getBalance());
+    }
+
+    @Test
+    void testWithdrawalOverdraft() {
+        Account a = newAccount();
+        a.deposit(1000, "JPY", LocalDate.of(2024, 4, 1), "振込");
+        IllegalStateException expected =
+            assertThrows(IllegalStateException.class, () -> a.withdrawal(1001, "JPY", LocalDate.of(2024, 4, 1), "ATM"));
+        assertEquals("口座残高が不足しているため払い戻しできない", expected.getMessage());
+        assertEquals(1000, a.getBalance());
+    }
+
+    @Test
+    void testDepositError() {
+        Account a = newAccount();
+        IllegalArgumentException expected =
+            assertThrows(IllegalArgumentException.class, () -> a.deposit(0, "JPY", LocalDate.of(2024, 4, 1), "振込"));
+        assertEquals("取引金額は1以上でなくてはならない", expected.getMessage());
+    }
+
+    @Test
+    void testWithdrawalError() {
+        Account a = newAccount();
+        IllegalArgumentException expected =
+            assertThrows(IllegalArgumentException.class, () -> a.withdrawal(-1, "JPY", LocalDate.of(2024, 4, 1), "ATM"));
+        assertEquals("取引金額は1以上でなくてはならない", expected.getMessage());
+    }
+
+    /* 1つの口座に対して複数のスレッドから同時に預け入れ・払い戻しを行う */
+    @Test
+    void testConcurrentPostingHotAccount() throws InterruptedException {
+        Account a = newAccount();
+        LocalDate trxDate = LocalDate.of(2024, 4, 1);
+        AtomicLong deposited = new AtomicLong();
+        AtomicLong withdrawn = new AtomicLong();
+        AtomicLong negative = new AtomicLong();
+        runConcurrently(8, () -> {
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            for (int i = 0; i < 50000; i++) {
+                long amount = 1 + random.nextInt(1000);
+                if (random.nextBoolean()) {
+                    a.deposit(amount, "JPY", trxDate, "振込");
+                    deposited.addAndGet(amount);
+                } else {
+                    try {
+                        a.withdrawal(amount, "JPY", trxDate, "ATM");
+                        withdrawn.addAndGet(amount);
+                    } catch (IllegalStateException e) {
+                        // 残高不足は想定どおり
+                    }
+                }
+                if (a.getBalance() < 0) {
+                    negative.incrementAndGet();
+                }
+            }
+        });
+        assertEquals(0, negative.get());
+        assertEquals(deposited.get() - withdrawn.get(), a.getBalance());
+    }
+
+    /* 高負荷口座に指定した口座に対して複数のスレッドから同時に預け入れ・払い戻しを行う */
+    @Test
+    void testConcurrentPostingShardedBalance() throws InterruptedException {
+        Account a = newAccount();
+        LocalDate trxDate = LocalDate.of(2024, 4, 1);
+        a.deposit(500, "JPY", trxDate, "振込");
+        a.enableShardedBalance();
+        a.enableShardedBalance();
+        assertTrue(a.isShardedBalance());
+        assertEquals(500, a.getBalance());
+        AtomicLong deposited = new AtomicLong(500);
+        AtomicLong withdrawn = new AtomicLong();
+        AtomicLong negative = new AtomicLong();
+        runConcurrently(8, () -> {
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            for (int i = 0; i < 50000; i++) {
+                long amount = 1 + random.nextInt(1000);
+                if (random.nextBoolean()) {
+                    a.deposit(amount, "JPY", trxDate, "振込");
+                    deposited.addAndGet(amount);
+                } else {
+                    try {
+                        a.withdrawal(amount, "JPY", trxDate, "ATM");
+                        withdrawn.addAndGet(amount);
+                    } catch (IllegalStateException e) {
+                        // 残高不足は想定どおり
+                    }
+                }
+                if (a.getBalance() < 0) {
+                    negative.incrementAndGet();
+                }
+            }
+        });
+        assertEquals(0, negative.get());
+        assertEquals(deposited.get() - withdrawn.get(), a.getBalance());
+    }
+
+    @Test
+    void testWithdrawalOverdraftShardedBalance() {
+        Account a = newAccount();
+        LocalDate trxDate = LocalDate.of(2024, 4, 1);
+        a.enableShardedBalance();
+        assertFalse(newAccount().isShardedBalance());
+        a.deposit(100, "JPY", trxDate, "振込");
+        a.deposit(50, "JPY", trxDate, "振込");
+        a.withdrawal(120, "JPY", trxDate, "ATM");
+        assertThrows(IllegalStateException.class, () -> a.withdrawal(31, "JPY", trxDate, "ATM"));
+        assertEquals(30, a.getBalance());
+        assertEquals(3, a.getTransactionHistories(trxDate, trxDate).length);
+    }
+
+    /* 残高を超える払い戻しが同時に行われても、払い戻されるのは残高までである */
+    @Test
+    void testConcurrentWithdrawalNoOverdraft() throws InterruptedException {
+        Account a = newAccount();
+        LocalDate trxDate = LocalDate.of(2024, 4, 1);
+        a.deposit(100000, "JPY", trxDate, "振込");
+        AtomicLong withdrawn = new AtomicLong();
+        runConcurrently(8, () -> {
+            for (int i = 0; i < 10000; i++) {
+                try {
+                    a.withdrawal(7, "JPY", trxDate, "ATM");
+                    withdrawn.addAndGet(7);
+                } catch (IllegalStateException e) {
+                    // 残高不足は想定どおり
+                }
+            }
+        });
+        assertEquals(100000 / 7 * 7, withdrawn.get());
+        assertEquals(100000 % 7, a.getBalance());
+    }
+
+    /* 複数の口座に対して同時に預け入れを行う */
+    @Test
+    void testConcurrentPostingManyAccounts() throws InterruptedException {
+        Account[] accounts = new Account[16];
+        for (int i = 0; i < accounts.length; i++) {
+            accounts[i] = newAccount();
+        }
+        LocalDate trxDate = LocalDate.of(2024, 4, 1);
+        runConcurrently(8, () -> {
+            for (int i = 0; i < 20000; i++) {
+                accounts[i % accounts.length].deposit(1, "JPY", trxDate, "振込");
+            }
+        });
+        long total = 0;
+        for (Account a : accounts) {
+            total += a.getBalance();
+        }
+        assertEquals(8 * 20000, total);
+        assertTrue(accounts[0].getBalance() > 0);
+    }
+
+    @Test
+    void testGetTransactionHistories() {
+        Account a = newAccount();
+        a.deposit(1000, "JPY", LocalDate.of(2024, 4, 1), "振込");
+        a.withdrawal(300, "JPY", LocalDate.of(2024, 4, 2), "ATM");
+        a.deposit(50, "USD", LocalDate.of(2024, 4, 3), null);
+
+        String[] all = a.getTransactionHistories(null, null);
+        assertEquals(3, all.length);
+        assertTrue(all[0].startsWith("預け入れ,"));
+        assertTrue(all[0].endsWith(",2024-04-01,1000,JPY,振込"));
+        assertTrue(all[1].startsWith("払い戻し,"));
+        assertTrue(all[1].endsWith(",2024-04-02,300,JPY,ATM"));
+        assertTrue(all[2].endsWith(",2024-04-03,50,USD,"));
+
+        String[] range = a.getTransactionHistories(LocalDate.of(2024, 4, 2), LocalDate.of(2024, 4, 2));
+        assertEquals(1, range.length);
+        assertEquals(all[1], range[0]);
+        assertEquals(2, a.getTransactionHistories(LocalDate.of(2024, 4, 2), null).length);
+        assertEquals(0, a.getTransactionHistories(LocalDate.of(2024, 5, 1), null).length);
+        assertEquals(0, a.getTransactionHistories(LocalDate.of(2024, 4, 3), LocalDate.of(2024, 4, 1)).length);
+    }
+
+    @Test
+    void testGetTransactionHistoriesEmpty() {
+        Account a = newAccount();
+        assertEquals(0, a.getTransactionHistories(null, null).length);
+    }
+
+    /* 取引日が前後した明細があっても範囲で絞り込める */
+    @Test
+    void testGetTransactionHistoriesUnsorted() {
+        Account a = newAccount();
+        a.deposit(1, "JPY", LocalDate.of(2024, 4, 2), null);
+        a.deposit(2, "JPY", LocalDate.of(2024, 4, 1), null);
+        a.deposit(3, "JPY", LocalDate.of(2024, 4, 3), null);
+        String[] range = a.getTransactionHistories(LocalDate.of(2024, 4, 1), LocalDate.of(2024, 4, 2));
+        assertEquals(2, range.length);
+        assertTrue(range[0].endsWith(",2024-04-02,1,JPY,"));
+        assertTrue(range[1].endsWith(",2024-04-01,2,JPY,"));
+    }
+
+    @Test
+    void testWithdrawalOverdraftNoHistory() {
+        Account a = newAccount();
+        assertThrows(IllegalStateException.class, () -> a.withdrawal(1, "JPY", LocalDate.of(2024, 4, 1), "ATM"));
+        assertEquals(0, a.getTransactionHistories(null, null).length);
+    }
+
+    /* 同じ冪等キーで再送された預け入れ・払い戻しは記帳しない */
+    @Test
+    void testIdempotentPosting() {
+        Account a = newAccount();
+        a.setIdempotencyCache(new IdempotencyCache(16, 60_000L));
+        BinaryUlid deposit = BinaryUlid.parse(ULID.generate());
+        BinaryUlid withdrawal = BinaryUlid.parse(ULID.generate());
+        assertTrue(a.deposit(deposit, 1000, CurrencyTable.JPY, LocalDate.of(2024, 4, 1), "ATM"));
+        assertFalse(a.deposit(deposit, 1000, CurrencyTable.JPY, LocalDate.of(2024, 4, 1), "ATM"));
+        assertTrue(a.withdrawal(withdrawal, 300, CurrencyTable.JPY, LocalDate.of(2024, 4, 1), "ATM"));
+        assertFalse(a.withdrawal(withdrawal, 300, CurrencyTable.JPY, LocalDate.of(2024, 4, 1), "ATM"));
+        assertEquals(700, a.getBalance());
+        assertEquals(2, a.getTransactionHistories(null, null).length);
+    }
+
+    /* 払い戻しできなかった冪等キーは、残高を補ってから同じ冪等キーで再送できる */
+    @Test
+    void testIdempotentWithdrawalOverdraft() {
+        Account a = newAccount();
+        a.setIdempotencyCache(new IdempotencyCache(16, 60_000L));
+        BinaryUlid key = BinaryUlid.parse(ULID.generate());
+        assertThrows(IllegalStateException.class,
+            () -> a.withdrawal(key, 100, CurrencyTable.JPY, LocalDate.of(2024, 4, 1), "ATM"));
+        a.deposit(100, "JPY", LocalDate.of(2024, 4, 1), "振込");
+        assertTrue(a.withdrawal(key, 100, CurrencyTable.JPY, LocalDate.of(2024, 4, 1), "ATM"));
+        assertEquals(0, a.getBalance());
+    }
+
+    /* 同じ冪等キーを複数のスレッドから同時に再送しても、記帳は1回だけ */
+    @Test
+    void testConcurrentIdempotentDeposit() throws InterruptedException {
+        Account a = newAccount();
+        a.setIdempotencyCache(new IdempotencyCache(1024, 60_000L));
+        List<BinaryUlid> keys = new ArrayList<>();
+        for (int i = 0; i < 500; i++) {
+            keys.add(BinaryUlid.parse(ULID.generate()));
+        }
+        AtomicLong posted = new AtomicLong();
+        runConcurrently(4, () -> {
+            for (BinaryUlid key : keys) {
+                if (a.deposit(key, 1, CurrencyTable.JPY, LocalDate.of(2024, 4, 1), "ATM")) {
+                    posted.incrementAndGet();
+                }
+            }
+        });
+        assertEquals(500, posted.get());
+        assertEquals(500, a.getBalance());
+        assertEquals(500, a.getTransactionHistories(null, null).length);
+    }
+
+    /* 記帳中に再送された要求は最初の要求の結果を待ち、最初の要求が失敗したときは再送された要求を記帳する */
+    @Test
+    void testIdempotentRetryDuringFailingOriginal() throws InterruptedException {
+        Account a = newAccount();
+        BinaryUlid key = BinaryUlid.parse(ULID.generate());
+        AtomicReference<Boolean> retried = new AtomicReference<>();
+        Thread[] retry = new Thread[1];
+        a.setIdempotencyCache(new IdempotencyCache(16, 60_000L) {
+            @Override
+            public boolean remove(long msb, long lsb) {
+                // 最初の要求が残高不足で失敗し、登録を削除する直前に、残高が補われて同じ冪等キーで再送される
+                a.deposit(100, "JPY", LocalDate.of(2024, 4, 1), "振込");
+                retry[0] = new Thread(() -> retried.set(a.withdrawal(key, 100, CurrencyTable.JPY,
+                    LocalDate.of(2024, 4, 1), "ATM")));
+                retry[0].start();
+                while (retry[0].getState() != Thread.State.WAITING) {
+                    Thread.onSpinWait();
+                }
+                return super.remove(msb, lsb);
+            }
+        });
+        assertThrows(IllegalStateException.class,
+            () -> a.withdrawal(key, 100, CurrencyTable.JPY, LocalDate.of(2024, 4, 1), "ATM"));
+        retry[0].join();
+        // 再送された要求は受け付け済みとして扱われずに、払い戻される
+        assertEquals(Boolean.TRUE, retried.get());
+        assertEquals(0, a.getBalance());
+        assertEquals(2, a.getTransactionHistories(null, null).length);
+        assertFalse(a.withdrawal(key, 100, CurrencyTable.JPY, LocalDate.of(2024, 4, 1), "ATM"));
+    }
+
+    /* 先行書き込みログに記録できなかった冪等キーは記帳済みにしない */
+    @Test
+    void testIdempotentPostingLogFailure(@TempDir Path dir) throws IOException {
+        Account a = newAccount();
+        IdempotencyCache cache = new IdempotencyCache(16, 60_000L);
+        a.setIdempotencyCache(cache);
+        WriteAheadLog closed = new WriteAheadLog(dir.resolve("closed"));
+        closed.close();
+        a.setWriteAheadLog(closed);
+        BinaryUlid key = BinaryUlid.parse(ULID.generate());
+        assertThrows(IllegalStateException.class,
+            () -> a.deposit(key, 100, CurrencyTable.JPY, LocalDate.of(2024, 4, 1), "ATM"));
+        assertFalse(cache.contains(key));
+        a.setWriteAheadLog(null);
+        assertTrue(a.deposit(key, 100, CurrencyTable.JPY, LocalDate.of(2024, 4, 1), "ATM"));
+        assertEquals(100, a.getBalance());
+    }
+
+    @Test
+    void testIdempotentPostingError() {
+        Account a = newAccount();
+        BinaryUlid key = BinaryUlid.parse(ULID.generate());
+        IllegalStateException state = assertThrows(IllegalStateException.class,
+            () -> a.deposit(key, 1, CurrencyTable.JPY, LocalDate.of(2024, 4, 1), "ATM"));
+        assertEquals("冪等キーの重複確認が設定されていない", state.getMessage());
+        a.setIdempotencyCache(new IdempotencyCache(16, 60_000L));
+        IllegalArgumentException expected = assertThrows(IllegalArgumentException.class,
+            () -> a.withdrawal(null, 1, CurrencyTable.JPY, LocalDate.of(2024, 4, 1), "ATM"));
+        assertEquals("冪等キーを指定しなくてはならない", expected.getMessage());
+        // パラメーターが正しくない要求では冪等キーを登録しない
+        assertThrows(IllegalArgumentException.class,
+            () -> a.deposit(key, 0, CurrencyTable.JPY, LocalDate.of(2024, 4, 1), "ATM"));
+        assertTrue(a.deposit(key, 1, CurrencyTable.JPY, LocalDate.of(2024, 4, 1), "ATM"));
+    }
+
+    @Test
+    void testDepositCurrencyError() {
+        Account a = newAccount();
+        IllegalArgumentException expected =
+            assertThrows(IllegalArgumentException.class, () -> a.deposit(1, "XXX", LocalDate.of(2024, 4, 1), "振込"));
+        assertEquals("通貨コードは取り扱い通貨のISO 4217通貨コードでなくてはならない", expected.getMessage());
+    }
+
+    /* 口座残高は通貨ごとに保持する */
+    @Test
+    void testMultiCurrency() {
+        Account a = newAccount();
+        int usd = CurrencyTable.indexOf("USD");
+        assertEquals(0, a.getBalance(usd));
+        a.deposit(1000, "JPY", LocalDate.of(2024, 4, 1), "振込");
+        a.deposit(300, "USD", LocalDate.of(2024, 4, 1), "振込");
+        a.deposit(200, usd, LocalDate.of(2024, 4, 1), "振込");
+        a.withdrawal(100, "USD", LocalDate.of(2024, 4, 2), "送金");
+        assertEquals(1000, a.getBalance());
+        assertEquals(1000, a.getBalance(CurrencyTable.JPY));
+        assertEquals(400, a.getBalance("USD"));
+        assertEquals(400, a.getBalance(usd));
+        assertEquals(0, a.getBalance("EUR"));
+        assertTrue(a.getTransactionHistories(null, null)[3].endsWith(",100,USD,送金"));
+    }
+
+    /* 払い戻しは同じ通貨の口座残高だけで判定する */
+    @Test
+    void testWithdrawalOverdraftForeignCurrency() {
+        Account a = newAccount();
+        a.deposit(1000, "JPY", LocalDate.of(2024, 4, 1), "振込");
+        a.deposit(10, "USD", LocalDate.of(2024, 4, 1), "振込");
+        IllegalStateException expected =
+            assertThrows(IllegalStateException.class, () -> a.withdrawal(11, "USD", LocalDate.of(2024, 4, 1), "送金"));
+        assertEquals("口座残高が不足しているため払い戻しできない", expected.getMessage());
+        assertEquals(1000, a.getBalance());
+        assertEquals(10, a.getBalance("USD"));
+        assertThrows(IllegalStateException.class, () -> a.withdrawal(1, "EUR", LocalDate.of(2024, 4, 1), "送金"));
+    }
+
+    /* 高負荷口座でも外貨の口座残高は別に保持する */
+    @Test
+    void testMultiCurrencyShardedBalance() {
+        Account a = newAccount();
+        a.enableShardedBalance();
+        a.deposit(1000, "JPY", LocalDate.of(2024, 4, 1), "振込");
+        a.deposit(300, "EUR", LocalDate.of(2024, 4, 1), "振込");
+        a.withdrawal(300, "EUR", LocalDate.of(2024, 4, 1), "送金");
+        assertEquals(1000, a.getBalance());
+        assertEquals(0, a.getBalance("EUR"));
+    }
+
+    @Test
+    void testGetBalanceCurrencyError() {
+        Account a = newAccount();
+        IllegalArgumentException expected =
+            assertThrows(IllegalArgumentException.class, () -> a.getBalance(CurrencyTable.size()));
+        assertEquals("通貨インデックスが正しくない", expected.getMessage());
+        expected = assertThrows(IllegalArgumentException.class, () -> a.getBalance(-1));
+        assertEquals("通貨インデックスが正しくない", expected.getMessage());
+        expected = assertThrows(IllegalArgumentException.class, () -> a.getBalance("XXX"));
+        assertEquals("通貨コードは取り扱い通貨のISO 4217通貨コードでなくてはならない", expected.getMessage());
+        expected = assertThrows(IllegalArgumentException.class,
+            () -> a.deposit(1, CurrencyTable.size(), LocalDate.of(2024, 4, 1), "振込"));
+        assertEquals("通貨コードは取り扱い通貨のISO 4217通貨コードでなくてはならない", expected.getMessage());
+    }
+
+    @Test
+    void testDepositTrxDateError() {
+        Account a = newAccount();
+        IllegalArgumentException expected =
+            assertThrows(IllegalArgumentException.class, () -> a.deposit(1, "JPY", null, "振込"));
+        assertEquals("取引日を指定しなくてはならない", expected.getMessage());
+    }
+
+    /* 同時に預け入れを行っても、すべての明細が記録される */
+    @Test
+    void testConcurrentPostingJournal() throws InterruptedException {
+        Account a = newAccount();
+        LocalDate trxDate = LocalDate.of(2024, 4, 1);
+        runConcurrently(8, () -> {
+            for (int i = 0; i < 5000; i++) {
+                a.deposit(1, "JPY", trxDate, "振込");
+            }
+        });
+        assertEquals(40000, a.getTransactionHistories(trxDate, trxDate).length);
+        assertEquals(40000, a.getBalance());
+    }
+
+    @Test
+    void testOpenAccountWithAllocator() {
+        AccountNumberAllocator allocator = new AccountNumberAllocator();
+        Account a = new Account();
+        a.openAccount(new BankCode("1234"), new BranchOfficeNumber("001"), new AccountTypeCode("1"), allocator);
+        assertEquals(9_999_998, allocator.available(new BankCode("1234"), new BranchOfficeNumber("001"),
+            new AccountTypeCode("1")));
+        assertFalse(a.getAccountId().equals(new AccountId()));
+    }
+
+    @Test
+    void testOpenAccounts() {
+        AccountNumberAllocator allocator = new AccountNumberAllocator();
+        BankCode bankCode = BankCode.of("1234");
+        BranchOfficeNumber boNumber = BranchOfficeNumber.of("001");
+        AccountTypeCode accountTypeCode = AccountTypeCode.of("1");
+        Account[] accounts = Account.openAccounts(bankCode, boNumber, accountTypeCode, 10000, allocator);
+        assertEquals(10000, accounts.length);
+        Set<Long> keys = new HashSet<>();
+        for (int i = 0; i < accounts.length; i++) {
+            assertTrue(keys.add(accounts[i].accountKey()));
+            assertEquals(0, accounts[i].getBalance());
+            if (i > 0) {
+                // 口座識別子は開設した順に昇順
+                assertTrue(accounts[i - 1].getAccountId().compareTo(accounts[i].getAccountId()) < 0);
+            }
+        }
+        assertEquals(9_999_999 - 10000, allocator.available(bankCode, boNumber, accountTypeCode));
+    }
+
+    @Test
+    void testOpenAccountsError() {
+        IllegalArgumentException expected = assertThrows(IllegalArgumentException.class,
+            () -> Account.openAccounts(BankCode.of("1234"), BranchOfficeNumber.of("001"), AccountTypeCode.of("1"),
+                -1, new AccountNumberAllocator()));
+        assertEquals("開設する口座の数は0以上でなくてはならない", expected.getMessage());
+    }
+
+    /* 通帳の明細行(取引日、摘要、お支払金額、お預り金額、差引残高) */
+    private static String passbookLine(String date, String description, String withdrawal, String deposit,
+            String balance) {
+        return String.format("%-10s %-10s%14s%14s%15s", date, description, withdrawal, deposit, balance);
+    }
+
+    /* 未記帳の入出金だけを記帳し、差引残高を引き継ぐ */
+    @Test
+    void testUpdatePassbook() {
+        Account a = newAccount();
+        LocalDate day = LocalDate.of(2024, 4, 1);
+        a.deposit(10000, "JPY", day, "給与");
+        a.withdrawal(2500, "JPY", day.plusDays(1), "ATM");
+        char[] buffer = new char[PassbookFormatter.LINE_WIDTH * 4];
+        assertEquals(2, a.updatePassbook(day.plusDays(1), buffer, 0, 4));
+        String line1 = new String(buffer, 0, PassbookFormatter.LINE_WIDTH);
+        String line2 = new String(buffer, PassbookFormatter.LINE_WIDTH, PassbookFormatter.LINE_WIDTH);
+        assertEquals(passbookLine("2024-04-01", "給与", "", "10,000", "10,000"), line1);
+        assertEquals(passbookLine("2024-04-02", "ATM", "2,500", "", "7,500"), line2);
+
+        // 通帳記帳の後の取引だけを記帳する
+        assertEquals(0, a.updatePassbook(day.plusDays(1), buffer, 0, 4));
+        for (int i = 0; i < 5; i++) {
+            a.deposit(100, "JPY", day.plusDays(2), null);
+        }
+        assertEquals(4, a.updatePassbook(day.plusDays(2), buffer, 0, 4));
+        assertEquals(passbookLine("2024-04-03", "", "", "100", "7,900"),
+            new String(buffer, PassbookFormatter.LINE_WIDTH * 3, PassbookFormatter.LINE_WIDTH));
+        // 書き切れなかった明細は次の通帳記帳で記帳する
+        assertEquals(1, a.updatePassbook(day.plusDays(2), buffer, PassbookFormatter.LINE_WIDTH, 1));
+        assertTrue(new String(buffer, PassbookFormatter.LINE_WIDTH, PassbookFormatter.LINE_WIDTH).endsWith("8,000"));
+
+        // 1行以上記帳した通帳記帳の取引だけを記録する
+        long updates = 0;
+        for (String h : a.getTransactionHistories(null, null)) {
+            if (h.startsWith("通帳記帳,")) {
+                updates++;
+            }
+        }
+        assertEquals(3, updates);
+    }
+
+    /* 外貨の入出金は円の通帳に記帳せず、差引残高にも含めない */
+    @Test
+    void testUpdatePassbookMixedCurrency() {
+        Account a = newAccount();
+        LocalDate day = LocalDate.of(2024, 4, 1);
+        a.deposit(10000, "JPY", day, "給与");
+        a.deposit(300, "USD", day, "振込");
+        a.withdrawal(2500, "JPY", day, "ATM");
+        a.withdrawal(100, "USD", day, "送金");
+        char[] buffer = new char[PassbookFormatter.LINE_WIDTH * 4];
+        assertEquals(2, a.updatePassbook(day, buffer, 0, 4));
+        assertEquals(passbookLine("2024-04-01", "給与", "", "10,000", "10,000"),
+            new String(buffer, 0, PassbookFormatter.LINE_WIDTH));
+        assertEquals(passbookLine("2024-04-01", "ATM", "2,500", "", "7,500"),
+            new String(buffer, PassbookFormatter.LINE_WIDTH, PassbookFormatter.LINE_WIDTH));
+
+        // 外貨の明細だけが追記されたときは記帳する明細がない
+        a.deposit(50, "USD", day.plusDays(1), null);
+        assertEquals(0, a.updatePassbook(day.plusDays(1), buffer, 0, 4));
+        a.deposit(500, "JPY", day.plusDays(1), null);
+        assertEquals(1, a.updatePassbook(day.plusDays(1), buffer, 0, 4));
+        assertEquals(passbookLine("2024-04-02", "", "", "500", "8,000"),
+            new String(buffer, 0, PassbookFormatter.LINE_WIDTH));
+        assertEquals(8000, a.getBalance());
+    }
+
+    @Test
+    void testUpdatePassbookError() {
+        Account a = newAccount();
+        char[] buffer = new char[PassbookFormatter.LINE_WIDTH * 2];
+        IllegalArgumentException lines =
+            assertThrows(IllegalArgumentException.class, () -> a.updatePassbook(LocalDate.now(), buffer, 0, 0));
+        assertEquals("記帳する行数は1以上でなくてはならない", lines.getMessage());
+        IllegalArgumentException length =
+            assertThrows(IllegalArgumentException.class, () -> a.updatePassbook(LocalDate.now(), buffer, 1, 2));
+        assertEquals("通帳の明細行を書き込む配列の長さが不足しています", length.getMessage());
+        assertThrows(IllegalArgumentException.class, () -> a.updatePassbook(null, buffer, 0, 1));
+    }
 }
@@ -2,6 +2,8 @@ package com.cocreativeds;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import org.junit.jupiter.api.Test;
@@ -109,4 +111,49 @@ public class AccountTypeCodeTest {
         AccountTypeCode ac2 = ac1.clone();
         assertEquals(ac1, ac2);
     }
+
+    @Test
+    void testOf() {
+        AccountTypeCode c1 = AccountTypeCode.of("1");
+        AccountTypeCode c2 = AccountTypeCode.of(new String("1"));
+        assertSame(c1, c2);
+        assertEquals("1", c1.getAccountTypeCode());
+        assertEquals(new AccountTypeCode("1"), c1);
+        assertEquals(c1, new AccountTypeCode("1"));
+        assertEquals(new AccountTypeCode("1").hashCode(), c1.hashCode());
+        assertNotSame(c1, AccountTypeCode.of("9"));
+    }
+
+    @Test
+    void testOfClone() {
+        AccountTypeCode c1 = AccountTypeCode.of("1");
+        AccountTypeCode c2 = c1.clone();
+        assertEquals(c1, c2);
+        c2.setAccountTypeCode("9"); //コピーは変更できる
+        assertEquals("9", c2.getAccountTypeCode());
+        assertEquals("1", c1.getAccountTypeCode());
+    }
+
+    @Test
+    void testOfImmutable() {
+        AccountTypeCode c = AccountTypeCode.of("1");
+        UnsupportedOperationException expected =
+            assertThrows(UnsupportedOperationException.class, () -> c.setAccountTypeCode("9"));
+        assertEquals("正規化された預金種目コードは変更できない", expected.getMessage());
+        assertEquals("1", c.getAccountTypeCode());
+    }
+
+    @Test
+    void testOfException01() {
+        IllegalArgumentException expected =
+            assertThrows(IllegalArgumentException.class, () -> AccountTypeCode.of("a"));
+        assertEquals("預金種目コードは1桁の数字でなくてはならない", expected.getMessage());
+    }
+
+    @Test
+    void testOfException02() {
+        IllegalArgumentException expected =
+            assertThrows(IllegalArgumentException.class, () -> AccountTypeCode.of(null));
+        assertEquals("預金種目コードは1桁の数字でなくてはならない", expected.getMessage());
+    }
 }
@@ -2,6 +2,8 @@ package com.cocreativeds;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 
 import org.junit.jupiter.api.Test;
@@ -109,4 +111,49 @@ public class BankCodeTest {
         BankCode bc2 = bc1.clone();
         assertEquals(bc1, bc2);
     }
+
+    @Test
+    void testOf() {
+        BankCode c1 = BankCode.of("1234");
+        BankCode c2 = BankCode.of(new String("1234"));
+        assertSame(c1, c2);
+        assertEquals("1234", c1.getBankCode());
+        assertEquals(new BankCode("1234"), c1);
+        assertEquals(c1, new BankCode("1234"));
+        assertEquals(new BankCode("1234").hashCode(), c1.hashCode());
+        assertNotSame(c1, BankCode.of("9999"));
+    }
+
+    @Test
+    void testOfClone() {
+        BankCode c1 = BankCode.of("1234");
+        BankCode c2 = c1.clone();
+        assertEquals(c1, c2);
+        c2.setBankCode("9999"); //コピーは変更できる
+        assertEquals("9999", c2.getBankCode());
+        assertEquals("1234", c1.getBankCode());
+    }
+
+    @Test
+    void testOfImmutable() {
+        BankCode c = BankCode.of("1234");
+        UnsupportedOperationException expected =
+            assertThrows(UnsupportedOperationException.class, () -> c.setBankCode("9999"));
+        assertEquals("正規化された金融機関コードは変更できない", expected.getMessage());
+        assertEquals("1234", c.getBankCode());
+    }
+
+    @Test
+    void testOfException01() {
+        IllegalArgumentException expected =
+            assertThrows(IllegalArgumentException.class, () -> BankCode.of("12a4"));
+        assertEquals("金融機関コードは4桁の数字でなくてはならない", expected.getMessage());
+    }
+
+    @Test
+    void testOfException02() {
+        IllegalArgumentException expected =
+            assertThrows(IllegalArgumentException.class, () -> BankCode.of(null));
+        assertEquals("金融機関コードは4桁の数字でなくてはならない", expected.getMessage());
+    }
 }
@@ -0,0 +1,183 @@
+package com.cocreativeds;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+public class BinaryUlidTest {
+
+    @Test
+    void testParse() {
+        BinaryUlid u = BinaryUlid.parse("0123456789ABCDEFGHJKMNPQRS");
+        assertEquals("0123456789ABCDEFGHJKMNPQRS", u.toString());
+    }
+
+    @Test
+    void testParseMax() {
+        BinaryUlid u = BinaryUlid.parse("7ZZZZZZZZZZZZZZZZZZZZZZZZZ");
+        assertEquals(-1L, u.getMostSignificantBits());
+        assertEquals(-1L, u.getLeastSignificantBits());
+    }
+
+    @Test
+    void testZero() {
+        assertEquals("00000000000000000000000000", BinaryUlid.ZERO.toString());
+        assertEquals(BinaryUlid.ZERO, BinaryUlid.parse("00000000000000000000000000"));
+    }
+
+    @Test
+    void testRoundTrip() {
+        Random random = new Random(42L);
+        for (int i = 0; i < 1000; i++) {
+            BinaryUlid u = new BinaryUlid(random.nextLong(), random.nextLong());
+            assertEquals(u, BinaryUlid.parse(u.toString()));
+
+            byte[] bytes = new byte[20];
+            u.toBytes(bytes, 4);
+            assertEquals(u, BinaryUlid.fromBytes(bytes, 4));
+        }
+    }
+
+    @Test
+    void testToChars() {
+        char[] chars = new char[28];
+        BinaryUlid.parse("0123456789ABCDEFGHJKMNPQRS").toChars(chars, 1);
+        assertEquals("0123456789ABCDEFGHJKMNPQRS", new String(chars, 1, 26));
+    }
+
+    @Test
+    void testToBytes() {
+        BinaryUlid u = new BinaryUlid(0x0102030405060708L, 0x090a0b0c0d0e0f10L);
+        byte[] bytes = new byte[16];
+        u.toBytes(bytes, 0);
+        assertArrayEquals(new byte[] {1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13, 14, 15, 16}, bytes);
+    }
+
+    @Test
+    void testSameAsGenerator() {
+        UlidGenerator g = new UlidGenerator(new Random(7L), () -> 0x0123456789abL, false);
+        byte[] bytes = new byte[16];
+        g.generate(bytes, 0);
+        BinaryUlid u = BinaryUlid.fromBytes(bytes, 0);
+        UlidGenerator g2 = new UlidGenerator(new Random(7L), () -> 0x0123456789abL, false);
+        assertEquals(g2.generate(), u.toString());
+    }
+
+    @Test
+    void testCompareTo() {
+        Random random = new Random(1L);
+        for (int i = 0; i < 1000; i++) {
+            BinaryUlid u1 = new BinaryUlid(random.nextLong(), random.nextLong());
+            BinaryUlid u2 = new BinaryUlid(random.nextLong(), i % 2 == 0 ? u1.getLeastSignificantBits() : random.nextLong());
+            assertEquals(Integer.signum(u1.toString().compareTo(u2.toString())), Integer.signum(u1.compareTo(u2)));
+        }
+        BinaryUlid u = new BinaryUlid(1L, 1L);
+        assertEquals(0, u.compareTo(new BinaryUlid(1L, 1L)));
+        assertTrue(u.compareTo(new BinaryUlid(1L, -1L)) < 0); //下位64ビットは符号なしで比較する
+    }
+
+    @Test
+    void testEquals() {
+        BinaryUlid u1 = new BinaryUlid(1L, 2L);
+        assertEquals(u1, u1);
+        assertEquals(u1, new BinaryUlid(1L, 2L));
+        assertNotEquals(u1, new BinaryUlid(2L, 1L));
+        assertNotEquals(u1, "0000000000000000000000001G");
+    }
+
+    @Test
+    void testHashCode() {
+        assertEquals(new BinaryUlid(1L, 2L).hashCode(), new BinaryUlid(1L, 2L).hashCode());
+    }
+
+    /* エラーケース */
+    @Test
+    void testParseError01() {
+        IllegalArgumentException expected =
+            assertThrows(IllegalArgumentException.class, () -> BinaryUlid.parse(null)); //null
+        assertEquals("ULIDは26桁のCrockford Base32文字列でなくてはならない", expected.getMessage());
+    }
+
+    @Test
+    void testParseError02() {
+        IllegalArgumentException expected =
+            assertThrows(IllegalArgumentException.class, () -> BinaryUlid.parse("0123456789ABCDEFGHJKMNPQR")); //1文字短い
+        assertEquals("ULIDは26桁のCrockford Base32文字列でなくてはならない", expected.getMessage());
+    }
+
+    @Test
+    void testParseError03() {
+        IllegalArgumentException expected =
+            assertThrows(IllegalArgumentException.class, () -> BinaryUlid.parse("8ZZZZZZZZZZZZZZZZZZZZZZZZZ")); //128ビットを超える
+        assertEquals("ULIDは26桁のCrockford Base32文字列でなくてはならない", expected.getMessage());
+    }
+
+    @Test
+    void testParseError04() {
+        IllegalArgumentException expected =
+            assertThrows(IllegalArgumentException.class, () -> BinaryUlid.parse("0123456789aBCDEFGHJKMNPQRS")); //小文字
+        assertEquals("ULIDは26桁のCrockford Base32文字列でなくてはならない", expected.getMessage());
+    }
+
+    @Test
+    void testParseError05() {
+        IllegalArgumentException expected =
+            assertThrows(IllegalArgumentException.class, () -> BinaryUlid.parse("0123456789UBCDEFGHJKMNPQRS")); //使用できない文字
+        assertEquals("ULIDは26桁のCrockford Base32文字列でなくてはならない", expected.getMessage());
+    }
+
+    @Test
+    void testFromBytesError() {
+        IllegalArgumentException expected =
+            assertThrows(IllegalArgumentException.class, () -> BinaryUlid.fromBytes(new byte[16], 1)); //1バイト不足
+        assertEquals("ULIDを含むbyte型配列の長さが不足しています", expected.getMessage());
+    }
+
+    @Test
+    void testGetTimestamp() {
+        BinaryUlid u = new BinaryUlid(0x0123_4567_89ab_cdefL, -1L);
+        assertEquals(0x0123_4567_89abL, u.getTimestamp());
+    }
+
+    @Test
+    void testGetRandomness() {
+        BinaryUlid u = new BinaryUlid(0x0123_4567_89ab_cdefL, 0x0011_2233_4455_6677L);
+        byte[] bytes = new byte[12];
+        u.getRandomness(bytes, 2);
+        assertArrayEquals(new byte[] {0, 0, (byte)0xcd, (byte)0xef, 0x00, 0x11, 0x22, 0x33, 0x44, 0x55, 0x66, 0x77},
+            bytes);
+        assertEquals(u.toString(), ULID.genULIDString(u.getTimestamp(), Arrays.copyOfRange(bytes, 2, 12)));
+        assertThrows(IllegalArgumentException.class, () -> u.getRandomness(new byte[10], 1));
+    }
+
+    @Test
+    void testMinOfMaxOf() {
+        long ts = 1_700_000_000_000L;
+        BinaryUlid min = BinaryUlid.minOf(ts);
+        BinaryUlid max = BinaryUlid.maxOf(ts);
+        assertEquals(ts, min.getTimestamp());
+        assertEquals(ts, max.getTimestamp());
+        assertTrue(BinaryUlid.maxOf(ts - 1).compareTo(min) < 0);
+        assertTrue(max.compareTo(BinaryUlid.minOf(ts + 1)) < 0);
+        assertEquals("00000000000000000000000000", BinaryUlid.minOf(0L).toString());
+        assertEquals("7ZZZZZZZZZZZZZZZZZZZZZZZZZ", BinaryUlid.maxOf(0x0000_ffff_ffff_ffffL).toString());
+        for (int i = 0; i < 100; i++) {
+            BinaryUlid u = UlidGenerator.current().generateBinary();
+            long t = u.getTimestamp();
+            assertTrue(BinaryUlid.minOf(t).compareTo(u) <= 0 && u.compareTo(BinaryUlid.maxOf(t)) <= 0);
+        }
+    }
+
+    @Test
+    void testMinOfMaxOfError() {
+        assertThrows(IllegalArgumentException.class, () -> BinaryUlid.minOf(-1L));
+        assertThrows(IllegalArgumentException.class, () -> BinaryUlid.maxOf(0x0001_0000_0000_0000L));
+    }
+}
@@ -2,6 +2,8 @@ package com.cocreativeds;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 
 import org.junit.jupiter.api.Test;
@@ -109,4 +111,49 @@ public class BranchOfficeNumberTest {
         BranchOfficeNumber bc2 = bc1.clone();
         assertEquals(bc1, bc2);
     }
+
+    @Test
+    void testOf() {
+        BranchOfficeNumber c1 = BranchOfficeNumber.of("123");
+        BranchOfficeNumber c2 = BranchOfficeNumber.of(new String("123"));
+        assertSame(c1, c2);
+        assertEquals("123", c1.getBranchOfficeNumber());
+        assertEquals(new BranchOfficeNumber("123"), c1);
+        assertEquals(c1, new BranchOfficeNumber("123"));
+        assertEquals(new BranchOfficeNumber("123").hashCode(), c1.hashCode());
+        assertNotSame(c1, BranchOfficeNumber.of("999"));
+    }
+
+    @Test
+    void testOfClone() {
+        BranchOfficeNumber c1 = BranchOfficeNumber.of("123");
+        BranchOfficeNumber c2 = c1.clone();
+        assertEquals(c1, c2);
+        c2.setBranchOfficeNumber("999"); //コピーは変更できる
+        assertEquals("999", c2.getBranchOfficeNumber());
+        assertEquals("123", c1.getBranchOfficeNumber());
+    }
+
+    @Test
+    void testOfImmutable() {
+        BranchOfficeNumber c = BranchOfficeNumber.of("123");
+        UnsupportedOperationException expected =
+            assertThrows(UnsupportedOperationException.class, () -> c.setBranchOfficeNumber("999"));
+        assertEquals("正規化された店番は変更できない", expected.getMessage());
+        assertEquals("123", c.getBranchOfficeNumber());
+    }
+
+    @Test
+    void testOfException01() {
+        IllegalArgumentException expected =
+            assertThrows(IllegalArgumentException.class, () -> BranchOfficeNumber.of("1234"));
+        assertEquals("店番は3桁の数字でなくてはならない", expected.getMessage());
+    }
+
+    @Test
+    void testOfException02() {
+        IllegalArgumentException expected =
+            assertThrows(IllegalArgumentException.class, () -> BranchOfficeNumber.of(null));
+        assertEquals("店番は3桁の数字でなくてはならない", expected.getMessage());
+    }
 }
@@ -0,0 +1,187 @@
+package com.cocreativeds;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class BulkPostingTest {
+
+    private static final LocalDate TRX_DATE = LocalDate.of(2024, 4, 1);
+
+    @TempDir
+    Path dir;
+
+    private final AccountKeyIndex index = new AccountKeyIndex();
+    private final AccountRegistry registry = new AccountRegistry();
+
+    /* 口座を開設して索引と登録簿に登録する */
+    private Account[] openAccounts(int count) {
+        Account[] accounts = Account.openAccounts(BankCode.of("0001"), BranchOfficeNumber.of("001"),
+            AccountTypeCode.of("1"), count, new AccountNumberAllocator());
+        for (Account a : accounts) {
+            this.index.put(a);
+            this.registry.put(a);
+        }
+        return accounts;
+    }
+
+    @Test
+    void testPost() {
+        Account[] a = this.openAccounts(2);
+        long k0 = a[0].accountKey();
+        long k1 = a[1].accountKey();
+        BulkPosting posting = new BulkPosting(this.index, this.registry);
+        byte[] results = posting.post(new long[] {k0, k1, k0, k0, k1}, new long[] {100L, 200L, -150L, -80L, 50L},
+            "JPY", TRX_DATE, "振込");
+        // 口座0: 100入金、150出金は残高不足、80出金
+        assertArrayEquals(new byte[] {BulkPosting.POSTED, BulkPosting.POSTED, BulkPosting.INSUFFICIENT_BALANCE,
+            BulkPosting.POSTED, BulkPosting.POSTED}, results);
+        assertEquals(20L, a[0].getBalance());
+        assertEquals(250L, a[1].getBalance());
+        String[] h = a[0].getTransactionHistories(TRX_DATE, TRX_DATE);
+        assertEquals(2, h.length);
+        assertEquals(TransactionType.DEPOSIT, a[0].getTransactionHistories(TRX_DATE, TRX_DATE, 10).type(0));
+        assertEquals(TransactionType.WITHDRAWAL, a[0].getTransactionHistories(TRX_DATE, TRX_DATE, 10).type(1));
+        assertEquals(80L, a[0].getTransactionHistories(TRX_DATE, TRX_DATE, 10).amount(1));
+    }
+
+    /* 払い戻しは、それより前の明細を適用した時点の残高で判定する */
+    @Test
+    void testPostInOrder() {
+        Account[] a = this.openAccounts(1);
+        long k = a[0].accountKey();
+        BulkPosting posting = new BulkPosting(this.index, this.registry);
+        byte[] results = posting.post(new long[] {k, k, k}, new long[] {-10L, 10L, -10L}, "JPY", TRX_DATE, null);
+        assertArrayEquals(new byte[] {BulkPosting.INSUFFICIENT_BALANCE, BulkPosting.POSTED, BulkPosting.POSTED},
+            results);
+        assertEquals(0L, a[0].getBalance());
+    }
+
+    @Test
+    void testPostNoAccountInvalidAmount() {
+        Account[] a = this.openAccounts(1);
+        long k = a[0].accountKey();
+        BulkPosting posting = new BulkPosting(this.index, this.registry);
+        long unknown = PackedAccountKey.pack(9999, 999, 9, 9999999);
+        byte[] results = posting.post(new long[] {unknown, k, k, -1L, k}, new long[] {10L, 0L, Long.MIN_VALUE, 5L, 7L},
+            "JPY", TRX_DATE, null);
+        assertArrayEquals(new byte[] {BulkPosting.NO_ACCOUNT, BulkPosting.INVALID_AMOUNT, BulkPosting.INVALID_AMOUNT,
+            BulkPosting.NO_ACCOUNT, BulkPosting.POSTED}, results);
+        assertEquals(7L, a[0].getBalance());
+        assertEquals(0, posting.post(new long[0], new long[0], "JPY", TRX_DATE, null).length);
+    }
+
+    /* 明細が多いときは口座ごとに分割して並列に記帳する */
+    @Test
+    void testPostParallel() {
+        Account[] a = this.openAccounts(1000);
+        int n = 100_000;
+        long[] keys = new long[n];
+        long[] amounts = new long[n];
+        for (int i = 0; i < n; i++) {
+            keys[i] = a[i % a.length].accountKey();
+            amounts[i] = i < n / 2 ? 3L : -2L;
+        }
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            byte[] results = new BulkPosting(this.index, this.registry, pool).post(keys, amounts, "JPY", TRX_DATE,
+                "給与");
+            for (byte r : results) {
+                assertEquals(BulkPosting.POSTED, r);
+            }
+        } finally {
+            pool.shutdown();
+        }
+        for (Account account : a) {
+            assertEquals(50 * 3L - 50 * 2L, account.getBalance());
+            assertEquals(100, account.getTransactionHistories(TRX_DATE, TRX_DATE).length);
+        }
+    }
+
+    @Test
+    void testPostShardedBalance() {
+        Account[] a = this.openAccounts(1);
+        a[0].enableShardedBalance();
+        a[0].deposit(100, "JPY", TRX_DATE, "振込");
+        long k = a[0].accountKey();
+        byte[] results = new BulkPosting(this.index, this.registry).post(new long[] {k, k, k, k},
+            new long[] {-150L, 60L, -150L, -20L}, "JPY", TRX_DATE, null);
+        assertArrayEquals(new byte[] {BulkPosting.INSUFFICIENT_BALANCE, BulkPosting.POSTED, BulkPosting.POSTED,
+            BulkPosting.INSUFFICIENT_BALANCE}, results);
+        assertEquals(10L, a[0].getBalance());
+    }
+
+    /* 記帳した明細は先行書き込みログから回復できる */
+    @Test
+    void testPostWriteAheadLog() throws IOException {
+        Path walPath = this.dir.resolve("wal");
+        Account[] a = this.openAccounts(3);
+        try (WriteAheadLog log = new WriteAheadLog(walPath)) {
+            for (Account account : a) {
+                account.setWriteAheadLog(log);
+            }
+            byte[] results = new BulkPosting(this.index, this.registry).post(
+                new long[] {a[0].accountKey(), a[1].accountKey(), a[0].accountKey(), a[2].accountKey()},
+                new long[] {500L, 300L, -200L, -1L}, "JPY", TRX_DATE, null);
+            assertEquals(BulkPosting.INSUFFICIENT_BALANCE, results[3]);
+            assertEquals(3L, log.getDurableLsn());
+        }
+        AccountRegistry recovered = new AccountRegistry();
+        for (Account account : a) {
+            recovered.put(new Account(BankCode.of("0001"), BranchOfficeNumber.of("001"), AccountTypeCode.of("1"),
+                new AccountNumber(), account.getAccountId().clone()));
+        }
+        try (WriteAheadLog log = new WriteAheadLog(walPath)) {
+            assertEquals(3L, log.recover(recovered::get));
+        }
+        assertEquals(300L, recovered.get(a[0].getAccountId()).getBalance());
+        assertEquals(300L, recovered.get(a[1].getAccountId()).getBalance());
+        assertEquals(0L, recovered.get(a[2].getAccountId()).getBalance());
+    }
+
+    /* 先行書き込みログに記録できなかった口座の明細は失敗とし、口座残高は変えずに他の口座の記帳を続ける */
+    @Test
+    void testPostLogFailure() throws IOException {
+        Account[] a = this.openAccounts(2);
+        try (WriteAheadLog log = new WriteAheadLog(this.dir.resolve("wal"))) {
+            WriteAheadLog closed = new WriteAheadLog(this.dir.resolve("closed"));
+            closed.close();
+            a[0].setWriteAheadLog(log);
+            a[1].credit(100L);
+            a[1].setWriteAheadLog(closed);
+            BulkPosting posting = new BulkPosting(this.index, this.registry);
+            byte[] results = posting.post(
+                new long[] {a[0].accountKey(), a[1].accountKey(), a[1].accountKey(), a[0].accountKey()},
+                new long[] {500L, 300L, -350L, -200L}, "JPY", TRX_DATE, null);
+            assertArrayEquals(new byte[] {BulkPosting.POSTED, BulkPosting.FAILED, BulkPosting.FAILED,
+                BulkPosting.POSTED}, results);
+            assertEquals(300L, a[0].getBalance());
+            // 記録できなかった預け入れは口座残高に反映しない
+            assertEquals(100L, a[1].getBalance());
+            assertEquals(0, a[1].getTransactionHistories(null, null).length);
+            assertEquals(IllegalStateException.class, posting.getLastFailure().getClass());
+            assertEquals(2L, log.getDurableLsn());
+        }
+    }
+
+    @Test
+    void testPostError() {
+        BulkPosting posting = new BulkPosting(this.index, this.registry);
+        assertThrows(IllegalArgumentException.class,
+            () -> posting.post(new long[1], new long[2], "JPY", TRX_DATE, null));
+        assertThrows(IllegalArgumentException.class, () -> posting.post(null, new long[0], "JPY", TRX_DATE, null));
+        assertThrows(IllegalArgumentException.class,
+            () -> posting.post(new long[0], new long[0], "XXX", TRX_DATE, null));
+        assertThrows(IllegalArgumentException.class, () -> posting.post(new long[0], new long[0], "JPY", null, null));
+        assertThrows(IllegalArgumentException.class, () -> new BulkPosting(null, this.registry));
+        assertThrows(IllegalArgumentException.class, () -> new BulkPosting(this.index, this.registry, null));
+    }
+}
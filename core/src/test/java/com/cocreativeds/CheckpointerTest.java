@@ -0,0 +1,102 @@
+package com.cocreativeds;
+
+import static com.cocreativeds.TestAccounts.newAccount;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class CheckpointerTest {
+
+    private static final LocalDate TRX_DATE = LocalDate.of(2024, 4, 1);
+
+    @TempDir
+    Path dir;
+
+    /* 最新と1つ前のスナップショットだけが残る */
+    @Test
+    void testCheckpoint() throws IOException {
+        Path snapshots = this.dir.resolve("snapshots");
+        List<Account> accounts = new CopyOnWriteArrayList<>();
+        try (WriteAheadLog log = new WriteAheadLog(this.dir.resolve("wal"));
+                Checkpointer checkpointer = Checkpointer.start(snapshots, log, () -> accounts, Duration.ZERO)) {
+            Account a = newAccount(log);
+            accounts.add(a);
+            for (int i = 1; i <= 3; i++) {
+                a.deposit(100, "JPY", TRX_DATE, "振込");
+                assertEquals(i, checkpointer.checkpoint().getLsn());
+            }
+            assertArrayEquals(new long[] {2L, 3L}, AccountSnapshot.list(snapshots));
+            assertEquals(3L, checkpointer.getLatest().getLsn());
+        }
+    }
+
+    /* 定期作成では取引を処理するスレッドとは別のスレッドでスナップショットを作成する */
+    @Test
+    void testPeriodicCheckpoint() throws IOException, InterruptedException {
+        Path snapshots = this.dir.resolve("snapshots");
+        List<Account> accounts = new CopyOnWriteArrayList<>();
+        try (WriteAheadLog log = new WriteAheadLog(this.dir.resolve("wal"));
+                Checkpointer checkpointer = Checkpointer.start(snapshots, log, () -> accounts, Duration.ofMillis(10))) {
+            Account a = newAccount(log);
+            accounts.add(a);
+            a.deposit(100, "JPY", TRX_DATE, "振込");
+            long deadline = System.currentTimeMillis() + 10_000;
+            while (checkpointer.getLatest().getLsn() < 1L && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            assertEquals(1L, checkpointer.getLatest().getLsn());
+            assertNull(checkpointer.getLastFailure());
+        }
+        assertTrue(AccountSnapshot.list(snapshots).length >= 1);
+        assertEquals(1L, AccountSnapshot.loadLatest(snapshots).getLsn());
+    }
+
+    /* 既存のスナップショットを前回のスナップショットとして引き継ぐ */
+    @Test
+    void testResume() throws IOException {
+        Path snapshots = this.dir.resolve("snapshots");
+        Path wal = this.dir.resolve("wal");
+        List<Account> accounts = new CopyOnWriteArrayList<>();
+        try (WriteAheadLog log = new WriteAheadLog(wal);
+                Checkpointer checkpointer = Checkpointer.start(snapshots, log, () -> accounts, Duration.ZERO)) {
+            Account a = newAccount(log);
+            accounts.add(a);
+            a.deposit(100, "JPY", TRX_DATE, "振込");
+            checkpointer.checkpoint();
+        }
+        try (WriteAheadLog log = new WriteAheadLog(wal)) {
+            List<Account> restored = AccountSnapshot.loadLatest(snapshots).restore(log);
+            try (Checkpointer checkpointer = Checkpointer.start(snapshots, log, () -> restored, Duration.ZERO)) {
+                assertEquals(1L, checkpointer.getLatest().getLsn());
+                restored.get(0).setWriteAheadLog(log);
+                restored.get(0).deposit(50, "JPY", TRX_DATE, "振込");
+                AccountSnapshot next = checkpointer.checkpoint();
+                assertEquals(2L, next.getLsn());
+            }
+        }
+        try (WriteAheadLog log = new WriteAheadLog(wal)) {
+            assertEquals(150L, AccountSnapshot.loadLatest(snapshots).restore(log).get(0).getBalance());
+        }
+    }
+
+    @Test
+    void testStartError() throws IOException {
+        try (WriteAheadLog log = new WriteAheadLog(this.dir.resolve("wal"))) {
+            IllegalArgumentException expected = assertThrows(IllegalArgumentException.class,
+                () -> Checkpointer.start(this.dir, log, () -> List.of(), Duration.ofMillis(-1)));
+            assertEquals("スナップショットを作成する間隔は0以上でなくてはならない", expected.getMessage());
+        }
+    }
+}
@@ -0,0 +1,46 @@
+package com.cocreativeds;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+public class CodeValidatorTest {
+
+    /* 判定に使用する文字(数字、Crockford Base32で使用しない英字、小文字、全角数字、記号を含む) */
+    private static final char[] CHARS = "0123456789ABCDEFGHIJKLMNOPQRSTUVWXYZabcz０９ /:@[`{٠".toCharArray();
+
+    private static String randomString(Random random, int length) {
+        char[] chars = new char[length];
+        for (int i = 0; i < length; i++) {
+            chars[i] = CHARS[random.nextInt(i % 3 == 0 ? CHARS.length : 36)];
+        }
+        return new String(chars);
+    }
+
+    @Test
+    void testIsDigits() {
+        assertTrue(CodeValidator.isDigits("0123", 4));
+        assertTrue(CodeValidator.isDigits("9", 1));
+        assertFalse(CodeValidator.isDigits("0a23", 4));
+        assertFalse(CodeValidator.isDigits("12345", 4));
+        assertFalse(CodeValidator.isDigits("", 4));
+        assertFalse(CodeValidator.isDigits(null, 4));
+        assertFalse(CodeValidator.isDigits("１２３", 3)); //全角数字
+    }
+
+    @Test
+    void testSameAsRegex() {
+        Random random = new Random(2024L);
+        for (int i = 0; i < 20000; i++) {
+            int length = 1 + random.nextInt(8);
+            String s = randomString(random, length);
+            for (int digits = 1; digits <= 7; digits++) {
+                assertEquals(s.matches("[0-9]{" + digits + "}"), CodeValidator.isDigits(s, digits), s);
+            }
+        }
+    }
+}
@@ -0,0 +1,46 @@
+package com.cocreativeds;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+public class CurrencyTableTest {
+
+    @Test
+    void testIndexOf() {
+        assertEquals(CurrencyTable.JPY, CurrencyTable.indexOf("JPY"));
+        assertEquals(1, CurrencyTable.indexOf("USD"));
+        assertEquals(2, CurrencyTable.indexOf("EUR"));
+    }
+
+    @Test
+    void testIndexOfUnknown() {
+        assertEquals(-1, CurrencyTable.indexOf("XXX"));
+        assertEquals(-1, CurrencyTable.indexOf("jpy"));
+        assertEquals(-1, CurrencyTable.indexOf("JP"));
+        assertEquals(-1, CurrencyTable.indexOf(null));
+    }
+
+    @Test
+    void testCode() {
+        for (int i = 0; i < CurrencyTable.size(); i++) {
+            assertEquals(i, CurrencyTable.indexOf(CurrencyTable.code(i)));
+        }
+    }
+
+    /* 通貨インデックスは1バイトで記録する */
+    @Test
+    void testSize() {
+        assertTrue(CurrencyTable.size() <= CurrencyTable.MAX_CURRENCIES);
+        assertTrue(CurrencyTable.MAX_CURRENCIES <= Byte.MAX_VALUE);
+    }
+
+    @Test
+    void testCodeError() {
+        IllegalArgumentException expected =
+            assertThrows(IllegalArgumentException.class, () -> CurrencyTable.code(CurrencyTable.size()));
+        assertEquals("通貨インデックスが正しくない", expected.getMessage());
+    }
+}
@@ -0,0 +1,32 @@
+package com.cocreativeds;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import org.junit.jupiter.api.Test;
+
+public class DescriptionTableTest {
+
+    @Test
+    void testReferenceOf() {
+        int ref = DescriptionTable.referenceOf("DescriptionTableTest");
+        assertEquals(ref, DescriptionTable.referenceOf(new String("DescriptionTableTest")));
+        assertEquals("DescriptionTableTest", DescriptionTable.description(ref));
+        assertNotEquals(ref, DescriptionTable.referenceOf("DescriptionTableTest2"));
+    }
+
+    @Test
+    void testNull() {
+        assertEquals(DescriptionTable.NONE, DescriptionTable.referenceOf(null));
+        assertNull(DescriptionTable.description(DescriptionTable.NONE));
+    }
+
+    @Test
+    void testGrow() {
+        for (int i = 0; i < 1000; i++) {
+            int ref = DescriptionTable.referenceOf("grow" + i);
+            assertEquals("grow" + i, DescriptionTable.description(ref));
+        }
+    }
+}
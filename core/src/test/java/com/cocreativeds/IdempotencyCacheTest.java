@@ -0,0 +1,207 @@
+package com.cocreativeds;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.jupiter.api.Test;
+
+public class IdempotencyCacheTest {
+
+    /* 試験で使用する時刻 */
+    private static final long NOW = 1_700_000_000_000L;
+
+    private final AtomicLong clock = new AtomicLong(NOW);
+
+    private final UlidGenerator generator = new UlidGenerator(new Random(1L), this.clock::get, true);
+
+    private BinaryUlid nextKey() {
+        return BinaryUlid.parse(this.generator.generate());
+    }
+
+    @Test
+    void testRegister() {
+        IdempotencyCache cache = new IdempotencyCache(16, 60_000L, this.clock::get);
+        BinaryUlid a = this.nextKey();
+        BinaryUlid b = this.nextKey();
+        assertTrue(cache.register(a));
+        assertTrue(cache.commit(a.getMostSignificantBits(), a.getLeastSignificantBits()));
+        assertFalse(cache.register(a));
+        assertFalse(cache.register(a.getMostSignificantBits(), a.getLeastSignificantBits()));
+        assertTrue(cache.register(b));
+        assertTrue(cache.contains(a));
+        assertTrue(cache.contains(b));
+        assertEquals(2, cache.size());
+    }
+
+    @Test
+    void testRemove() {
+        IdempotencyCache cache = new IdempotencyCache(1024, 60_000L, this.clock::get);
+        List<BinaryUlid> keys = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            BinaryUlid key = this.nextKey();
+            assertTrue(cache.register(key));
+            keys.add(key);
+        }
+        // 偶数番目の冪等キーを削除しても、奇数番目の冪等キーは探索できる
+        for (int i = 0; i < keys.size(); i += 2) {
+            BinaryUlid key = keys.get(i);
+            assertTrue(cache.remove(key.getMostSignificantBits(), key.getLeastSignificantBits()));
+            assertFalse(cache.remove(key.getMostSignificantBits(), key.getLeastSignificantBits()));
+        }
+        assertEquals(500, cache.size());
+        for (int i = 0; i < keys.size(); i++) {
+            assertEquals(i % 2 == 1, cache.contains(keys.get(i)));
+        }
+        assertTrue(cache.register(keys.get(0)));
+    }
+
+    /* 記帳中の冪等キーで再送された要求は、記帳済みになると重複、登録が削除されると初めての要求として戻る */
+    @Test
+    void testRegisterWaitsForInFlight() throws InterruptedException {
+        IdempotencyCache cache = new IdempotencyCache(16, 60_000L, this.clock::get);
+        BinaryUlid committed = this.nextKey();
+        BinaryUlid failed = this.nextKey();
+        assertTrue(cache.register(committed));
+        assertTrue(cache.register(failed));
+        AtomicReference<Boolean> first = new AtomicReference<>();
+        AtomicReference<Boolean> second = new AtomicReference<>();
+        Thread t1 = new Thread(() -> first.set(cache.register(committed)));
+        Thread t2 = new Thread(() -> second.set(cache.register(failed)));
+        t1.start();
+        t2.start();
+        while (t1.getState() != Thread.State.WAITING || t2.getState() != Thread.State.WAITING) {
+            Thread.onSpinWait();
+        }
+        assertTrue(cache.commit(committed.getMostSignificantBits(), committed.getLeastSignificantBits()));
+        assertTrue(cache.remove(failed.getMostSignificantBits(), failed.getLeastSignificantBits()));
+        t1.join();
+        t2.join();
+        assertEquals(Boolean.FALSE, first.get());
+        // 再送された要求が記帳中として登録し直している
+        assertEquals(Boolean.TRUE, second.get());
+        assertTrue(cache.contains(failed));
+        BinaryUlid other = this.nextKey();
+        assertFalse(cache.commit(other.getMostSignificantBits(), other.getLeastSignificantBits()));
+    }
+
+    /* 記帳中の冪等キーを待っている間も、ほかの冪等キーは登録・記帳済みにでき、割り込まれても待ち続ける */
+    @Test
+    void testRegisterWaitDoesNotBlockOthers() throws InterruptedException {
+        IdempotencyCache cache = new IdempotencyCache(1 << 16, 60_000L, this.clock::get);
+        BinaryUlid inFlight = this.nextKey();
+        assertTrue(cache.register(inFlight));
+        AtomicReference<Boolean> result = new AtomicReference<>();
+        AtomicReference<Boolean> interrupted = new AtomicReference<>();
+        Thread waiter = new Thread(() -> {
+            result.set(cache.register(inFlight));
+            interrupted.set(Thread.currentThread().isInterrupted());
+        });
+        waiter.start();
+        while (waiter.getState() != Thread.State.WAITING) {
+            Thread.onSpinWait();
+        }
+        // 同じストライプを含むほかの冪等キーは待たずに登録できる
+        List<BinaryUlid> keys = new ArrayList<>();
+        for (int i = 0; i < 10_000; i++) {
+            BinaryUlid key = this.nextKey();
+            assertTrue(cache.register(key));
+            assertTrue(cache.commit(key.getMostSignificantBits(), key.getLeastSignificantBits()));
+            keys.add(key);
+        }
+        waiter.interrupt();
+        assertTrue(cache.commit(inFlight.getMostSignificantBits(), inFlight.getLeastSignificantBits()));
+        waiter.join();
+        assertEquals(Boolean.FALSE, result.get());
+        assertEquals(Boolean.TRUE, interrupted.get());
+        for (BinaryUlid key : keys) {
+            assertTrue(cache.contains(key));
+            assertFalse(cache.register(key));
+        }
+        assertEquals(10_001, cache.size());
+        assertFalse(cache.contains(this.nextKey()));
+    }
+
+    /* 有効期間が経過すると世代を交代し、2世代前の冪等キーは忘れる */
+    @Test
+    void testRotateByTime() {
+        IdempotencyCache cache = new IdempotencyCache(16, 1_000L, this.clock::get);
+        BinaryUlid a = this.nextKey();
+        assertTrue(cache.register(a));
+
+        this.clock.addAndGet(1_000L);
+        BinaryUlid b = this.nextKey();
+        assertTrue(cache.register(b));
+        // 1つ前の世代の冪等キーは重複として判定できる
+        assertTrue(cache.contains(a));
+
+        this.clock.addAndGet(1_000L);
+        BinaryUlid c = this.nextKey();
+        assertTrue(cache.register(c));
+        assertFalse(cache.contains(a));
+        assertTrue(cache.contains(b));
+        // 忘れた冪等キーは有効期間を過ぎているため受け付けない
+        IllegalArgumentException expected = assertThrows(IllegalArgumentException.class, () -> cache.register(a));
+        assertEquals("冪等キーの有効期間を過ぎている", expected.getMessage());
+    }
+
+    /* 登録できる件数に達すると世代を交代し、破棄した冪等キー以前の冪等キーは受け付けない */
+    @Test
+    void testRotateBySize() {
+        IdempotencyCache cache = new IdempotencyCache(4, 60_000L, this.clock::get);
+        List<BinaryUlid> keys = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            BinaryUlid key = this.nextKey();
+            assertTrue(cache.register(key));
+            cache.commit(key.getMostSignificantBits(), key.getLeastSignificantBits());
+            keys.add(key);
+        }
+        assertEquals(8, cache.size());
+        this.clock.incrementAndGet();
+        BinaryUlid next = this.nextKey();
+        assertTrue(cache.register(next));
+        assertEquals(5, cache.size());
+        for (int i = 0; i < 4; i++) {
+            BinaryUlid key = keys.get(i);
+            assertFalse(cache.contains(key));
+            assertThrows(IllegalArgumentException.class, () -> cache.register(key));
+        }
+        for (int i = 4; i < 8; i++) {
+            assertFalse(cache.register(keys.get(i)));
+        }
+    }
+
+    @Test
+    void testRegisterError() {
+        IdempotencyCache cache = new IdempotencyCache(16, 1_000L, this.clock::get);
+        IllegalArgumentException expected =
+            assertThrows(IllegalArgumentException.class, () -> cache.register(null));
+        assertEquals("冪等キーを指定しなくてはならない", expected.getMessage());
+        expected = assertThrows(IllegalArgumentException.class, () -> cache.register(BinaryUlid.ZERO));
+        assertEquals("冪等キーが正しくない", expected.getMessage());
+        expected = assertThrows(IllegalArgumentException.class, () -> cache.register(BinaryUlid.minOf(NOW - 1_000L)));
+        assertEquals("冪等キーの有効期間を過ぎている", expected.getMessage());
+        expected = assertThrows(IllegalArgumentException.class, () -> cache.register(BinaryUlid.maxOf(NOW + 1_000L)));
+        assertEquals("冪等キーのタイムスタンプが現在時刻より新しい", expected.getMessage());
+        assertTrue(cache.register(BinaryUlid.minOf(NOW - 999L)));
+        assertTrue(cache.register(BinaryUlid.maxOf(NOW + 999L)));
+    }
+
+    @Test
+    void testConstructorError() {
+        IllegalArgumentException expected =
+            assertThrows(IllegalArgumentException.class, () -> new IdempotencyCache(0, 1_000L));
+        assertEquals("登録できる件数は1以上268435456以下でなくてはならない", expected.getMessage());
+        expected = assertThrows(IllegalArgumentException.class, () -> new IdempotencyCache(16, 0L));
+        assertEquals("有効期間は1ミリ秒以上でなくてはならない", expected.getMessage());
+        expected = assertThrows(IllegalArgumentException.class, () -> new IdempotencyCache(16, 1_000L, null));
+        assertEquals("時計を指定しなくてはならない", expected.getMessage());
+    }
+}
@@ -0,0 +1,296 @@
+package com.cocreativeds;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class InterestAccrualTest {
+
+    private static final LocalDate TRX_DATE = LocalDate.of(2024, 4, 1);
+
+    /* 年1% */
+    private static final long RATE_ONE_PERCENT = 10_000L;
+
+    @TempDir
+    Path dir;
+
+    private static Account[] openAccounts(int count, long balance) {
+        Account[] accounts = Account.openAccounts(BankCode.of("0001"), BranchOfficeNumber.of("001"),
+            AccountTypeCode.of("1"), count, new AccountNumberAllocator());
+        if (balance > 0) {
+            for (Account a : accounts) {
+                a.deposit(balance, "JPY", TRX_DATE, "入金");
+            }
+        }
+        return accounts;
+    }
+
+    /* 1年分の日次の利息が年利率どおりになる */
+    @Test
+    void testAccrueOneYear() {
+        Account[] accounts = openAccounts(3, 0L);
+        accounts[0].deposit(1_000_000L, "JPY", TRX_DATE, "入金");
+        accounts[1].deposit(999L, "JPY", TRX_DATE, "入金");
+        InterestAccrual accrual = new InterestAccrual(2_000L); // 年0.2%
+        for (int day = 0; day < 365; day++) {
+            assertEquals(2L, accrual.accrue(accounts, TRX_DATE.plusDays(day)));
+        }
+        assertEquals(2_000L, InterestAccrual.accruedInterest(accounts[0]));
+        assertEquals(1L, InterestAccrual.accruedInterest(accounts[1])); // 1.998円
+        assertEquals(0L, InterestAccrual.accruedInterest(accounts[2]));
+
+        assertEquals(2_001L, accrual.post(accounts, TRX_DATE.plusYears(1)));
+        assertEquals(1_002_000L, accounts[0].getBalance());
+        assertEquals(1_000L, accounts[1].getBalance());
+        assertEquals(0L, accounts[2].getBalance());
+        // 端数(0.998円)は繰り越す
+        assertEquals(0L, InterestAccrual.accruedInterest(accounts[1]));
+        assertEquals(998L * InterestAccrual.UNITS_PER_YEN / 1000, accounts[1].accruedInterest());
+        String[] histories = accounts[0].getTransactionHistories(TRX_DATE.plusYears(1), null);
+        assertEquals(1, histories.length);
+        assertTrue(histories[0].startsWith("利息元加,"));
+        assertTrue(histories[0].endsWith(",2025-04-01,2000,JPY,利息"));
+
+        // 入金した後は未払いの利息がないため入金しない
+        assertEquals(0L, accrual.post(accounts, TRX_DATE.plusYears(1)));
+    }
+
+    /* 計上済みの取引日以前の利息は計上しない */
+    @Test
+    void testAccrueSameDayOnce() {
+        Account[] accounts = openAccounts(2, 3_650_000L);
+        InterestAccrual accrual = new InterestAccrual(RATE_ONE_PERCENT);
+        assertEquals(2L, accrual.accrue(accounts, TRX_DATE));
+        assertEquals(0L, accrual.accrue(accounts, TRX_DATE));
+        assertEquals(0L, accrual.accrue(accounts, TRX_DATE.minusDays(1)));
+        assertEquals(100L, InterestAccrual.accruedInterest(accounts[0]));
+        assertEquals(TRX_DATE.toEpochDay(), accounts[0].accruedThrough());
+
+        // 一部の口座だけ計上済みのときは、残りの口座だけを計上する
+        accounts[1].accruedThrough((int)TRX_DATE.plusDays(1).toEpochDay());
+        assertEquals(1L, accrual.accrue(accounts, TRX_DATE.plusDays(1)));
+        assertEquals(200L, InterestAccrual.accruedInterest(accounts[0]));
+        assertEquals(100L, InterestAccrual.accruedInterest(accounts[1]));
+    }
+
+    /* 日次処理の後に再起動して同じ日の日次処理をやり直しても、利息を二重に計上しない */
+    @Test
+    void testAccrueRestartSameDay() throws IOException {
+        Path path = this.dir.resolve("wal");
+        Account[] accounts = openAccounts(2, 0L);
+        InterestAccrual accrual = new InterestAccrual(RATE_ONE_PERCENT);
+        try (WriteAheadLog log = new WriteAheadLog(path)) {
+            for (Account a : accounts) {
+                a.setWriteAheadLog(log);
+                a.deposit(3_650_000L, "JPY", TRX_DATE, "入金");
+            }
+            accrual.accrue(accounts, TRX_DATE);
+        }
+        // 計上済みの取引日は利息計上のレコードから回復する
+        AccountSnapshot snapshot;
+        try (WriteAheadLog log = new WriteAheadLog(path)) {
+            Account[] restored = AccountSnapshot.empty().restore(log).toArray(new Account[0]);
+            for (Account a : restored) {
+                a.setWriteAheadLog(log);
+            }
+            assertEquals(0L, accrual.accrue(restored, TRX_DATE));
+            assertEquals(2L, accrual.accrue(restored, TRX_DATE.plusDays(1)));
+            snapshot = AccountSnapshot.checkpoint(AccountSnapshot.empty(), log, List.of(restored));
+            Path file = this.dir.resolve("snapshot.bin");
+            snapshot.write(file);
+            snapshot = AccountSnapshot.load(file);
+        }
+        // スナップショットの後にレコードがなくても、計上済みの取引日はスナップショットから復元する
+        try (WriteAheadLog log = new WriteAheadLog(path)) {
+            Account[] restored = snapshot.restore(log).toArray(new Account[0]);
+            assertEquals(TRX_DATE.plusDays(1).toEpochDay(), restored[1].accruedThrough());
+            assertEquals(0L, accrual.accrue(restored, TRX_DATE.plusDays(1)));
+            assertEquals(200L, InterestAccrual.accruedInterest(restored[1]));
+        }
+    }
+
+    /* 1円未満の利息は切り捨てずに日々積み上げる */
+    @Test
+    void testAccrueFraction() {
+        Account[] accounts = openAccounts(1, 100L);
+        InterestAccrual accrual = new InterestAccrual(10L); // 年0.001%
+        for (int day = 0; day < 365; day++) {
+            accrual.accrue(accounts, TRX_DATE.plusDays(day));
+        }
+        // 100円 × 0.001% = 0.001円
+        assertEquals(100L * 10L * 365L, accounts[0].accruedInterest());
+        assertEquals(0L, accrual.post(accounts, TRX_DATE));
+        assertEquals(100L, accounts[0].getBalance());
+    }
+
+    /* 複数のタスクに分割しても結果は同じ */
+    @Test
+    void testParallel() {
+        int count = 50_000;
+        Account[] accounts = openAccounts(count, 0L);
+        for (int i = 0; i < count; i++) {
+            accounts[i].deposit(365_000L + i, "JPY", TRX_DATE, "入金");
+        }
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            InterestAccrual accrual = new InterestAccrual(RATE_ONE_PERCENT, pool);
+            assertEquals(count, accrual.accrue(accounts, TRX_DATE));
+            long expected = 0L;
+            for (int i = 0; i < count; i++) {
+                long units = (365_000L + i) * RATE_ONE_PERCENT;
+                assertEquals(units, accounts[i].accruedInterest());
+                expected += units / InterestAccrual.UNITS_PER_YEN;
+            }
+            assertEquals(expected, accrual.post(accounts, TRX_DATE));
+            assertEquals(365_010L, accounts[0].getBalance());
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /* 利息元加の取引は先行書き込みログに記録し、回復できる */
+    @Test
+    void testPostWithLog() throws IOException {
+        Path path = this.dir.resolve("wal");
+        Account[] accounts = openAccounts(10_000, 0L);
+        try (WriteAheadLog log = new WriteAheadLog(path)) {
+            for (Account a : accounts) {
+                a.setWriteAheadLog(log);
+                a.deposit(3_650_000L, "JPY", TRX_DATE, "入金");
+            }
+            InterestAccrual accrual = new InterestAccrual(RATE_ONE_PERCENT);
+            accrual.accrue(accounts, TRX_DATE);
+            assertEquals(100L * accounts.length, accrual.post(accounts, TRX_DATE));
+            // 預け入れ、利息計上、利息元加
+            assertEquals(3L * accounts.length, log.getDurableLsn());
+        }
+        try (WriteAheadLog log = new WriteAheadLog(path)) {
+            List<Account> restored = AccountSnapshot.empty().restore(log);
+            assertEquals(accounts.length, restored.size());
+            for (Account a : restored) {
+                assertEquals(3_650_100L, a.getBalance());
+                assertEquals(0L, a.accruedInterest());
+            }
+        }
+    }
+
+    /* 日次処理と利払日の間に再起動しても、未払いの利息は先行書き込みログから回復する */
+    @Test
+    void testAccrueRestartPost() throws IOException {
+        Path path = this.dir.resolve("wal");
+        Account[] accounts = openAccounts(3, 0L);
+        InterestAccrual accrual = new InterestAccrual(2_000L); // 年0.2%
+        try (WriteAheadLog log = new WriteAheadLog(path)) {
+            for (Account a : accounts) {
+                a.setWriteAheadLog(log);
+            }
+            accounts[0].deposit(1_000_000L, "JPY", TRX_DATE, "入金");
+            accounts[1].deposit(999L, "JPY", TRX_DATE, "入金");
+            for (int day = 0; day < 365; day++) {
+                accrual.accrue(accounts, TRX_DATE.plusDays(day));
+            }
+            // 利息計上のレコードは入出金明細には含めない
+            assertEquals(1, accounts[0].getTransactionHistories(null, null).length);
+        }
+
+        Account[] restarted;
+        try (WriteAheadLog log = new WriteAheadLog(path)) {
+            restarted = AccountSnapshot.empty().restore(log).toArray(new Account[0]);
+            for (int i = 0; i < restarted.length; i++) {
+                assertEquals(accounts[i].accruedInterest(), restarted[i].accruedInterest());
+                assertEquals(1, restarted[i].getTransactionHistories(null, null).length);
+                restarted[i].setWriteAheadLog(log);
+            }
+            assertEquals(2_001L, accrual.post(restarted, TRX_DATE.plusYears(1)));
+        }
+        assertEquals(1_002_000L, restarted[0].getBalance());
+        assertEquals(1_000L, restarted[1].getBalance());
+        assertEquals(998L * InterestAccrual.UNITS_PER_YEN / 1000, restarted[1].accruedInterest());
+
+        // 利息元加の後に再起動しても、入金済みの利息を二重に入金しない
+        try (WriteAheadLog log = new WriteAheadLog(path)) {
+            Account[] again = AccountSnapshot.empty().restore(log).toArray(new Account[0]);
+            assertEquals(0L, again[0].accruedInterest());
+            assertEquals(998L * InterestAccrual.UNITS_PER_YEN / 1000, again[1].accruedInterest());
+            assertEquals(0L, accrual.post(again, TRX_DATE.plusYears(1)));
+        }
+    }
+
+    /* 未払いの利息はスナップショットに保存し、スナップショットから復元する */
+    @Test
+    void testAccrueCheckpointRestore() throws IOException {
+        Path path = this.dir.resolve("wal");
+        Account[] accounts = openAccounts(2, 0L);
+        InterestAccrual accrual = new InterestAccrual(RATE_ONE_PERCENT);
+        AccountSnapshot snapshot;
+        try (WriteAheadLog log = new WriteAheadLog(path)) {
+            for (Account a : accounts) {
+                a.setWriteAheadLog(log);
+            }
+            accounts[0].deposit(3_650_000L, "JPY", TRX_DATE, "入金");
+            accrual.accrue(accounts, TRX_DATE);
+            snapshot = AccountSnapshot.checkpoint(AccountSnapshot.empty(), log, List.of(accounts));
+            Path file = this.dir.resolve("snapshot.bin");
+            snapshot.write(file);
+            snapshot = AccountSnapshot.load(file);
+            // スナップショットの後の利息計上はログから適用する
+            accrual.accrue(accounts, TRX_DATE.plusDays(1));
+        }
+        try (WriteAheadLog log = new WriteAheadLog(path)) {
+            List<Account> restored = snapshot.restore(log);
+            assertEquals(2L * 3_650_000L * RATE_ONE_PERCENT, restored.get(0).accruedInterest());
+            assertEquals(0L, restored.get(1).accruedInterest());
+            assertEquals(TRX_DATE.plusDays(1).toEpochDay(), restored.get(0).accruedThrough());
+            for (Account a : restored) {
+                a.setWriteAheadLog(log);
+            }
+            assertEquals(200L, accrual.post(restored.toArray(new Account[0]), TRX_DATE));
+            assertEquals(3_650_200L, restored.get(0).getBalance());
+        }
+    }
+
+    @Test
+    void testPayInterest() {
+        Account a = openAccounts(1, 0L)[0];
+        a.payInterest(5L, "JPY", TRX_DATE);
+        assertEquals(5L, a.getBalance());
+        assertEquals(0L, a.accruedInterest());
+        assertTrue(a.getTransactionHistories(null, null)[0].startsWith("利息元加,"));
+        IllegalArgumentException expected =
+            assertThrows(IllegalArgumentException.class, () -> a.payInterest(0L, "JPY", TRX_DATE));
+        assertEquals("取引金額は1以上でなくてはならない", expected.getMessage());
+    }
+
+    @Test
+    void testError() {
+        IllegalArgumentException rate = assertThrows(IllegalArgumentException.class, () -> new InterestAccrual(-1L));
+        assertEquals("年利率は0以上でなくてはならない", rate.getMessage());
+        assertThrows(IllegalArgumentException.class, () -> new InterestAccrual(1L, null));
+        InterestAccrual accrual = new InterestAccrual(1L);
+        assertThrows(IllegalArgumentException.class, () -> accrual.accrue(null, TRX_DATE));
+        assertThrows(IllegalArgumentException.class, () -> accrual.accrue(new Account[0], null));
+        assertThrows(IllegalArgumentException.class, () -> accrual.post(new Account[0], null));
+
+        // 桁あふれしたときは未払いの利息を変更しない
+        Account[] accounts = openAccounts(1, Long.MAX_VALUE / 2);
+        InterestAccrual overflow = new InterestAccrual(RATE_ONE_PERCENT);
+        assertThrows(ArithmeticException.class, () -> overflow.accrue(accounts, TRX_DATE));
+        assertEquals(0L, accounts[0].accruedInterest());
+        // 加算の桁あふれでは計上済みの取引日も戻す
+        Account[] large = openAccounts(1, Long.MAX_VALUE / RATE_ONE_PERCENT);
+        overflow.accrue(large, TRX_DATE);
+        long accrued = large[0].accruedInterest();
+        assertThrows(ArithmeticException.class, () -> overflow.accrue(large, TRX_DATE.plusDays(1)));
+        assertEquals(accrued, large[0].accruedInterest());
+        assertEquals(TRX_DATE.toEpochDay(), large[0].accruedThrough());
+    }
+}
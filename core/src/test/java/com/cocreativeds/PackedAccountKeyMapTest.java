@@ -0,0 +1,107 @@
+package com.cocreativeds;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+public class PackedAccountKeyMapTest {
+
+    @Test
+    void testPutGet() {
+        PackedAccountKeyMap map = new PackedAccountKeyMap();
+        AccountId id = new AccountId("0123456789ABCDEFGHJKMNPQRS");
+        assertNull(map.put(PackedAccountKey.parse("0001-123-1-1234567"), id));
+        assertSame(id, map.get(PackedAccountKey.parse("0001-123-1-1234567")));
+        assertNull(map.get(PackedAccountKey.parse("0001-123-1-1234568")));
+        assertEquals(1, map.size());
+        assertTrue(map.containsKey(PackedAccountKey.parse("0001-123-1-1234567")));
+    }
+
+    @Test
+    void testPutReplace() {
+        PackedAccountKeyMap map = new PackedAccountKeyMap();
+        AccountId id1 = new AccountId();
+        AccountId id2 = new AccountId("0123456789ABCDEFGHJKMNPQRS");
+        map.put(0L, id1);
+        assertSame(id1, map.put(0L, id2));
+        assertSame(id2, map.get(0L));
+        assertEquals(1, map.size());
+    }
+
+    @Test
+    void testRemove() {
+        PackedAccountKeyMap map = new PackedAccountKeyMap();
+        AccountId id = new AccountId();
+        map.put(1L, id);
+        assertSame(id, map.remove(1L));
+        assertNull(map.remove(1L));
+        assertNull(map.get(1L));
+        assertTrue(map.isEmpty());
+    }
+
+    @Test
+    void testSameAsHashMap() {
+        Random random = new Random(11L);
+        PackedAccountKeyMap map = new PackedAccountKeyMap(4);
+        Map<Long, AccountId> expected = new HashMap<>();
+        AccountId[] ids = new AccountId[16];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = new AccountId();
+            ids[i].generateAccountId();
+        }
+        for (int i = 0; i < 200000; i++) {
+            // 同じ探索列に集まるように狭い範囲のキーを使用する
+            long key = PackedAccountKey.pack(1, random.nextInt(4), 1, random.nextInt(5000));
+            int op = random.nextInt(3);
+            if (op == 0) {
+                AccountId id = ids[random.nextInt(ids.length)];
+                assertSame(expected.put(key, id), map.put(key, id));
+            } else if (op == 1) {
+                assertSame(expected.remove(key), map.remove(key));
+            } else {
+                assertSame(expected.get(key), map.get(key));
+            }
+            assertEquals(expected.size(), map.size());
+        }
+        for (Map.Entry<Long, AccountId> e : expected.entrySet()) {
+            assertSame(e.getValue(), map.get(e.getKey()));
+        }
+    }
+
+    @Test
+    void testClear() {
+        PackedAccountKeyMap map = new PackedAccountKeyMap();
+        for (long k = 0; k < 100; k++) {
+            map.put(k, new AccountId());
+        }
+        map.clear();
+        assertEquals(0, map.size());
+        assertFalse(map.containsKey(5L));
+    }
+
+    /* エラーケース */
+    @Test
+    void testPutError01() {
+        PackedAccountKeyMap map = new PackedAccountKeyMap();
+        IllegalArgumentException expected =
+            assertThrows(IllegalArgumentException.class, () -> map.put(-1L, new AccountId())); //口座キーが負
+        assertEquals("口座キーに変換できない値が含まれています", expected.getMessage());
+    }
+
+    @Test
+    void testPutError02() {
+        PackedAccountKeyMap map = new PackedAccountKeyMap();
+        IllegalArgumentException expected =
+            assertThrows(IllegalArgumentException.class, () -> map.put(0L, null)); //null
+        assertEquals("口座識別子を指定しなくてはならない", expected.getMessage());
+    }
+}
@@ -0,0 +1,106 @@
+package com.cocreativeds;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+public class PackedAccountKeyTest {
+
+    @Test
+    void testPack() {
+        long key = PackedAccountKey.pack(new BankCode("0001"), new BranchOfficeNumber("123"),
+            new AccountTypeCode("1"), new AccountNumber("1234567"));
+        assertEquals(1_123_1_1234567L, key);
+        assertEquals(key, PackedAccountKey.pack(1, 123, 1, 1234567));
+    }
+
+    @Test
+    void testParse() {
+        assertEquals(1_123_1_1234567L, PackedAccountKey.parse("0001-123-1-1234567"));
+        assertEquals(0L, PackedAccountKey.parse("0000-000-0-0000000"));
+        assertEquals(PackedAccountKey.MAX_KEY, PackedAccountKey.parse("9999-999-9-9999999"));
+    }
+
+    @Test
+    void testUnpack() {
+        long key = PackedAccountKey.parse("9876-543-2-1098765");
+        assertEquals(9876, PackedAccountKey.bankCode(key));
+        assertEquals(543, PackedAccountKey.branchOfficeNumber(key));
+        assertEquals(2, PackedAccountKey.accountTypeCode(key));
+        assertEquals(1098765, PackedAccountKey.accountNumber(key));
+        assertSame(BankCode.of("9876"), PackedAccountKey.toBankCode(key));
+        assertSame(BranchOfficeNumber.of("543"), PackedAccountKey.toBranchOfficeNumber(key));
+        assertSame(AccountTypeCode.of("2"), PackedAccountKey.toAccountTypeCode(key));
+        assertEquals(new AccountNumber("1098765"), PackedAccountKey.toAccountNumber(key));
+    }
+
+    @Test
+    void testRoundTrip() {
+        Random random = new Random(5L);
+        char[] chars = new char[PackedAccountKey.FORMATTED_LENGTH];
+        for (int i = 0; i < 10000; i++) {
+            long key = PackedAccountKey.pack(random.nextInt(10000), random.nextInt(1000), random.nextInt(10), random.nextInt(10_000_000));
+            String s = PackedAccountKey.toString(key);
+            assertEquals(key, PackedAccountKey.parse(s));
+            PackedAccountKey.format(key, chars, 0);
+            assertEquals(s, new String(chars));
+        }
+    }
+
+    @Test
+    void testOrder() {
+        long k1 = PackedAccountKey.parse("0001-999-9-9999999");
+        long k2 = PackedAccountKey.parse("0002-000-0-0000000");
+        assertTrue(k1 < k2);
+    }
+
+    @Test
+    void testIsValid() {
+        assertTrue(PackedAccountKey.isValid(0L));
+        assertTrue(PackedAccountKey.isValid(PackedAccountKey.MAX_KEY));
+        assertFalse(PackedAccountKey.isValid(-1L));
+        assertFalse(PackedAccountKey.isValid(PackedAccountKey.MAX_KEY + 1));
+    }
+
+    /* エラーケース */
+    @Test
+    void testPackError() {
+        IllegalArgumentException expected =
+            assertThrows(IllegalArgumentException.class, () -> PackedAccountKey.pack(10000, 0, 0, 0)); //金融機関コードが5桁
+        assertEquals("口座キーに変換できない値が含まれています", expected.getMessage());
+    }
+
+    @Test
+    void testParseError01() {
+        IllegalArgumentException expected =
+            assertThrows(IllegalArgumentException.class, () -> PackedAccountKey.parse("0001-123-1-123456")); //1文字短い
+        assertEquals("口座の表記は「金融機関コード-店番-預金種目-口座番号」でなくてはならない", expected.getMessage());
+    }
+
+    @Test
+    void testParseError02() {
+        IllegalArgumentException expected =
+            assertThrows(IllegalArgumentException.class, () -> PackedAccountKey.parse("0001-12a-1-1234567")); //数字以外
+        assertEquals("口座の表記は「金融機関コード-店番-預金種目-口座番号」でなくてはならない", expected.getMessage());
+    }
+
+    @Test
+    void testParseError03() {
+        IllegalArgumentException expected =
+            assertThrows(IllegalArgumentException.class, () -> PackedAccountKey.parse("0001/123-1-1234567")); //区切り文字
+        assertEquals("口座の表記は「金融機関コード-店番-預金種目-口座番号」でなくてはならない", expected.getMessage());
+    }
+
+    @Test
+    void testParseError04() {
+        IllegalArgumentException expected =
+            assertThrows(IllegalArgumentException.class, () -> PackedAccountKey.parse(null)); //null
+        assertEquals("口座の表記は「金融機関コード-店番-預金種目-口座番号」でなくてはならない", expected.getMessage());
+    }
+}
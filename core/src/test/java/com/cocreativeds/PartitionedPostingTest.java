@@ -0,0 +1,191 @@
+package com.cocreativeds;
+
+import static com.cocreativeds.TestAccounts.newAccount;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class PartitionedPostingTest {
+
+    private static final LocalDate TRX_DATE = LocalDate.of(2024, 4, 1);
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void testPost() {
+        AccountRegistry registry = new AccountRegistry();
+        Account a = newAccount(registry);
+        ConcurrentHashMap<Long, Byte> results = new ConcurrentHashMap<>();
+        try (PartitionedPosting posting = new PartitionedPosting(registry, 2, 16, results::put)) {
+            posting.post(a.getAccountId(), 1000, CurrencyTable.JPY, TRX_DATE, "振込", 1L);
+            posting.post(a.getAccountId(), -300, CurrencyTable.JPY, TRX_DATE, "ATM", 2L);
+            posting.post(a.getAccountId(), -800, CurrencyTable.JPY, TRX_DATE, "ATM", 3L);
+            posting.post(a.getAccountId(), 50, CurrencyTable.indexOf("USD"), TRX_DATE, "振込", 4L);
+            posting.post(a.getAccountId(), 0, CurrencyTable.JPY, TRX_DATE, "振込", 5L);
+            posting.post(new AccountId("01ARZ3NDEKTSV4RRFFQ69G5FAV"), 1, CurrencyTable.JPY, TRX_DATE, "振込", 6L);
+            posting.flush();
+            assertEquals(BulkPosting.POSTED, results.get(1L));
+            assertEquals(BulkPosting.POSTED, results.get(2L));
+            assertEquals(BulkPosting.INSUFFICIENT_BALANCE, results.get(3L));
+            assertEquals(BulkPosting.POSTED, results.get(4L));
+            assertEquals(BulkPosting.INVALID_AMOUNT, results.get(5L));
+            assertEquals(BulkPosting.NO_ACCOUNT, results.get(6L));
+            assertEquals(700, a.getBalance());
+            assertEquals(50, a.getBalance("USD"));
+            String[] histories = a.getTransactionHistories(null, null);
+            assertEquals(3, histories.length);
+            assertTrue(histories[1].startsWith("払い戻し,"));
+            assertTrue(histories[1].endsWith(",300,JPY,ATM"));
+            assertNull(posting.getLastFailure());
+        }
+    }
+
+    /* 口座は常に同じシャードのスレッドが記帳する */
+    @Test
+    void testShardOwnership() {
+        AccountRegistry registry = new AccountRegistry();
+        List<Account> accounts = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            accounts.add(newAccount(registry));
+        }
+        int shards = 4;
+        ConcurrentHashMap<Long, String> threads = new ConcurrentHashMap<>();
+        try (PartitionedPosting posting = new PartitionedPosting(registry, shards, 8,
+                (tag, result) -> threads.merge(tag, Thread.currentThread().getName(),
+                    (x, y) -> x.equals(y) ? x : "mixed"))) {
+            assertEquals(shards, posting.shards());
+            for (int n = 0; n < 100; n++) {
+                for (int i = 0; i < accounts.size(); i++) {
+                    posting.post(accounts.get(i).getAccountId(), 1, CurrencyTable.JPY, TRX_DATE, null, i);
+                }
+            }
+            posting.flush();
+        }
+        for (int i = 0; i < accounts.size(); i++) {
+            int shard = PartitionedPosting.shardOf(accounts.get(i).getAccountId(), shards);
+            assertEquals("posting-shard-" + shard, threads.get((long)i));
+            assertEquals(100, accounts.get(i).getBalance());
+        }
+    }
+
+    /* 複数のスレッドから要求しても、すべての記帳の結果が通知される */
+    @Test
+    void testConcurrentPostWriteAheadLog() throws IOException, InterruptedException {
+        AccountRegistry registry = new AccountRegistry();
+        int threads = 4;
+        int perThread = 5000;
+        AtomicLong posted = new AtomicLong();
+        try (WriteAheadLog log = new WriteAheadLog(this.dir.resolve("wal"));
+                PartitionedPosting posting = new PartitionedPosting(registry, 3, 64,
+                    (tag, result) -> posted.addAndGet(result == BulkPosting.POSTED ? 1 : 1_000_000))) {
+            List<Account> accounts = new ArrayList<>();
+            for (int i = 0; i < 10; i++) {
+                Account a = newAccount(registry);
+                a.setWriteAheadLog(log);
+                accounts.add(a);
+            }
+            CountDownLatch start = new CountDownLatch(1);
+            List<Thread> list = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                Thread thread = new Thread(() -> {
+                    try {
+                        start.await();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    for (int i = 0; i < perThread; i++) {
+                        posting.post(accounts.get(i % accounts.size()).getAccountId(), 1, CurrencyTable.JPY, TRX_DATE,
+                            "振込", i);
+                    }
+                });
+                list.add(thread);
+                thread.start();
+            }
+            start.countDown();
+            for (Thread t : list) {
+                t.join();
+            }
+            posting.flush();
+            assertEquals(threads * perThread, posted.get());
+            assertEquals(threads * perThread, log.getDurableLsn());
+            for (Account a : accounts) {
+                assertEquals(threads * perThread / accounts.size(), a.getBalance());
+            }
+        }
+    }
+
+    /* 待ち行列が一杯のときは受け付けない */
+    @Test
+    void testTryPostFull() throws InterruptedException {
+        AccountRegistry registry = new AccountRegistry();
+        Account a = newAccount(registry);
+        CountDownLatch blocked = new CountDownLatch(1);
+        AtomicLong notified = new AtomicLong();
+        try (PartitionedPosting posting = new PartitionedPosting(registry, 1, 2, (tag, result) -> {
+            try {
+                blocked.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            notified.incrementAndGet();
+        })) {
+            // 最初の記帳の通知でシャードのスレッドが止まるので、待ち行列はいずれ一杯になる
+            assertTrue(posting.tryPost(a.getAccountId(), 1, CurrencyTable.JPY, TRX_DATE, null, 0L));
+            while (posting.tryPost(a.getAccountId(), 1, CurrencyTable.JPY, TRX_DATE, null, 1L)) {
+                Thread.sleep(1);
+            }
+            assertFalse(posting.tryPost(a.getAccountId(), 1, CurrencyTable.JPY, TRX_DATE, null, 2L));
+            blocked.countDown();
+            posting.flush();
+        }
+        assertEquals(notified.get(), a.getBalance());
+    }
+
+    @Test
+    void testPostError() {
+        AccountRegistry registry = new AccountRegistry();
+        Account a = newAccount(registry);
+        PartitionedPosting posting = new PartitionedPosting(registry, 1, 4, (tag, result) -> { });
+        IllegalArgumentException expected = assertThrows(IllegalArgumentException.class,
+            () -> posting.post(a.getAccountId(), 1, CurrencyTable.size(), TRX_DATE, null, 0L));
+        assertEquals("通貨コードは取り扱い通貨のISO 4217通貨コードでなくてはならない", expected.getMessage());
+        expected = assertThrows(IllegalArgumentException.class,
+            () -> posting.post(a.getAccountId(), 1, CurrencyTable.JPY, null, null, 0L));
+        assertEquals("取引日を指定しなくてはならない", expected.getMessage());
+        expected = assertThrows(IllegalArgumentException.class,
+            () -> posting.post(null, 1, CurrencyTable.JPY, TRX_DATE, null, 0L));
+        assertEquals("口座識別子を指定しなくてはならない", expected.getMessage());
+        posting.close();
+        IllegalStateException closed = assertThrows(IllegalStateException.class,
+            () -> posting.tryPost(a.getAccountId(), 1, CurrencyTable.JPY, TRX_DATE, null, 0L));
+        assertEquals("記帳の受け付けを終了している", closed.getMessage());
+    }
+
+    @Test
+    void testConstructorError() {
+        AccountRegistry registry = new AccountRegistry();
+        IllegalArgumentException expected = assertThrows(IllegalArgumentException.class,
+            () -> new PartitionedPosting(registry, 0, 4, (tag, result) -> { }));
+        assertEquals("シャード数は1以上でなくてはならない", expected.getMessage());
+        expected = assertThrows(IllegalArgumentException.class,
+            () -> new PartitionedPosting(registry, 1, 0, (tag, result) -> { }));
+        assertEquals("待ち行列の長さは1以上1073741824以下でなくてはならない", expected.getMessage());
+        expected = assertThrows(IllegalArgumentException.class, () -> new PartitionedPosting(registry, 1, 4, null));
+        assertEquals("口座の登録簿と結果の通知先を指定しなくてはならない", expected.getMessage());
+    }
+}
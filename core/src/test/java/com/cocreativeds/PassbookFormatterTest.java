@@ -0,0 +1,60 @@
+package com.cocreativeds;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.time.LocalDate;
+import java.util.Arrays;
+
+import org.junit.jupiter.api.Test;
+
+public class PassbookFormatterTest {
+
+    private static String line(int trxDate, String description, long withdrawal, long deposit, long balance) {
+        char[] dst = new char[PassbookFormatter.LINE_WIDTH + 2];
+        PassbookFormatter.formatLine(trxDate, description, withdrawal, deposit, balance, dst, 1);
+        return new String(dst, 1, PassbookFormatter.LINE_WIDTH);
+    }
+
+    private static String amount(long amount, int width) {
+        char[] dst = new char[width];
+        Arrays.fill(dst, ' ');
+        PassbookFormatter.formatAmount(amount, dst, 0, width);
+        return new String(dst);
+    }
+
+    @Test
+    void testFormatLine() {
+        int day = (int)LocalDate.of(2024, 4, 1).toEpochDay();
+        String line = line(day, "振込　カブシキガイシャサンプル", 0L, 1_234_567L, 9_876_543_210L);
+        assertEquals(PassbookFormatter.LINE_WIDTH, line.length());
+        assertEquals(String.format("%-10s %-10s%14s%14s%15s", "2024-04-01", "振込　カブシキガイシ", "", "1,234,567",
+            "9,876,543,210"), line);
+        assertEquals(String.format("%-10s %-10s%14s%14s%15s", "2024-04-01", "", "1", "", "0"),
+            line(day, null, 1L, 0L, 0L));
+    }
+
+    @Test
+    void testFormatDate() {
+        char[] dst = new char[10];
+        LocalDate[] dates = {LocalDate.of(1970, 1, 1), LocalDate.of(2000, 2, 29), LocalDate.of(2024, 12, 31),
+            LocalDate.of(1969, 12, 31), LocalDate.of(2100, 3, 1), LocalDate.of(9999, 12, 31), LocalDate.of(1, 1, 1)};
+        for (LocalDate d : dates) {
+            PassbookFormatter.formatDate((int)d.toEpochDay(), dst, 0);
+            assertEquals(String.format("%04d-%02d-%02d", d.getYear(), d.getMonthValue(), d.getDayOfMonth()),
+                new String(dst));
+        }
+    }
+
+    @Test
+    void testFormatAmount() {
+        assertEquals("     0", amount(0L, 6));
+        assertEquals("   999", amount(999L, 6));
+        assertEquals(" 1,000", amount(1000L, 6));
+        assertEquals("-1,000", amount(-1000L, 6));
+        assertEquals("999,999", amount(999_999L, 7));
+        assertEquals("******", amount(1_000_000L, 6));
+        assertEquals("******", amount(-10_000L, 6));
+        assertEquals("-9,223,372,036,854,775,808", amount(Long.MIN_VALUE, 26));
+        assertEquals("9,223,372,036,854,775,807", amount(Long.MAX_VALUE, 25));
+    }
+}
@@ -0,0 +1,79 @@
+package com.cocreativeds;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+public class PostingRingTest {
+
+    private static final AccountId ID = new AccountId("01ARZ3NDEKTSV4RRFFQ69G5FAV");
+
+    /* 追加した順に取り出し、一杯のときは追加できない */
+    @Test
+    void testOfferPeek() {
+        PostingRing ring = new PostingRing(4);
+        assertNull(ring.peek());
+        for (int i = 0; i < 4; i++) {
+            assertTrue(ring.offer(ID, 100 + i, CurrencyTable.JPY, 19_814, "振込", i));
+        }
+        assertFalse(ring.offer(ID, 1, CurrencyTable.JPY, 19_814, "振込", 4));
+        assertEquals(4L, ring.claimed());
+
+        PostingRing.Slot s = ring.peek();
+        assertEquals(ID, s.accountId);
+        assertEquals(100L, s.amount);
+        assertEquals(19_814, s.trxDate);
+        assertEquals("振込", s.description);
+        assertEquals(0L, s.tag);
+        ring.release();
+        assertTrue(ring.offer(ID, 104, CurrencyTable.JPY, 19_814, "振込", 4));
+        for (int i = 1; i <= 4; i++) {
+            assertEquals(i, ring.peek().tag);
+            ring.release();
+        }
+        assertNull(ring.peek());
+    }
+
+    /* 複数のスレッドから追加しても、すべての要素をスレッドごとの順に1回ずつ取り出せる */
+    @Test
+    void testConcurrentOffer() throws InterruptedException {
+        PostingRing ring = new PostingRing(64);
+        int threads = 4;
+        int perThread = 10_000;
+        List<Thread> list = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            long base = (long)t << 32;
+            Thread thread = new Thread(() -> {
+                for (int i = 0; i < perThread; i++) {
+                    while (!ring.offer(ID, 1, CurrencyTable.JPY, 0, null, base + i)) {
+                        Thread.yield();
+                    }
+                }
+            });
+            list.add(thread);
+            thread.start();
+        }
+        long[] next = new long[threads];
+        for (int n = 0; n < threads * perThread;) {
+            PostingRing.Slot s = ring.peek();
+            if (s == null) {
+                Thread.yield();
+                continue;
+            }
+            int t = (int)(s.tag >>> 32);
+            assertEquals(next[t]++, s.tag & 0xffffffffL);
+            ring.release();
+            n++;
+        }
+        for (Thread t : list) {
+            t.join();
+        }
+        assertNull(ring.peek());
+    }
+}
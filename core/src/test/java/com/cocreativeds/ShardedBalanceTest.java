@@ -0,0 +1,161 @@
+package com.cocreativeds;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.jupiter.api.Test;
+
+public class ShardedBalanceTest {
+
+    @Test
+    void testShards() {
+        assertEquals(1, new ShardedBalance(0L, 1).shards());
+        assertEquals(2, new ShardedBalance(0L, 2).shards());
+        assertEquals(4, new ShardedBalance(0L, 3).shards());
+        assertEquals(8, new ShardedBalance(0L, 5).shards());
+        assertEquals(64, new ShardedBalance(0L, 1000).shards());
+        assertEquals(1, new ShardedBalance(0L, 0).shards());
+    }
+
+    @Test
+    void testAddSum() {
+        ShardedBalance b = new ShardedBalance(100L, 8);
+        b.add(10L);
+        b.add(20L);
+        assertEquals(130L, b.sum());
+    }
+
+    @Test
+    void testTryDebit() {
+        ShardedBalance b = new ShardedBalance(100L, 8);
+        assertEquals(40L, b.tryDebit(60L));
+        // 集約済みの残高(40)が不足するときは部分残高を集約する
+        b.add(30L);
+        assertEquals(10L, b.tryDebit(60L));
+        assertEquals(10L, b.sum());
+        assertEquals(-1L, b.tryDebit(11L));
+        assertEquals(10L, b.sum());
+        assertEquals(0L, b.tryDebit(10L));
+        assertEquals(-1L, b.tryDebit(1L));
+    }
+
+    @Test
+    void testSubtract() {
+        ShardedBalance b = new ShardedBalance(0L, 8);
+        b.subtract(50L);
+        b.add(20L);
+        assertEquals(-30L, b.sum());
+        assertEquals(-1L, b.tryDebit(1L));
+    }
+
+    /* 入金と出金が同時に行われても残高は負にならず、合計は一致する */
+    @Test
+    void testConcurrent() throws InterruptedException {
+        ShardedBalance b = new ShardedBalance(0L, 8);
+        AtomicLong debited = new AtomicLong();
+        AtomicLong negative = new AtomicLong();
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 8; t++) {
+            boolean crediting = t % 2 == 0;
+            threads.add(new Thread(() -> {
+                for (int i = 0; i < 100000; i++) {
+                    if (crediting) {
+                        b.add(3L);
+                    } else if (b.tryDebit(5L) >= 0) {
+                        debited.addAndGet(5L);
+                    }
+                    if (b.sum() < 0) {
+                        negative.incrementAndGet();
+                    }
+                }
+            }));
+        }
+        for (Thread t : threads) {
+            t.start();
+        }
+        for (Thread t : threads) {
+            t.join();
+        }
+        assertEquals(0L, negative.get());
+        assertEquals(4 * 100000 * 3L - debited.get(), b.sum());
+        assertTrue(debited.get() > 0);
+    }
+
+    /* 集約を待つ間に他のスレッドが集約して足りる残高を残したときは、集約する部分残高がなくても出金できる */
+    @Test
+    void testTryDebitAfterCollectedByOther() throws InterruptedException {
+        ShardedBalance b = new ShardedBalance(0L, 8);
+        b.add(10L);
+        AtomicLong result = new AtomicLong(Long.MIN_VALUE);
+        Thread waiting;
+        synchronized (b) {
+            // 集約済みの残高が不足しているため、集約(bの排他)を待たせる
+            waiting = new Thread(() -> result.set(b.tryDebit(5L)));
+            waiting.start();
+            while (waiting.getState() != Thread.State.BLOCKED) {
+                Thread.onSpinWait();
+            }
+            // 先に他のスレッドがすべての部分残高を集約して、自分の金額だけを出金する
+            assertEquals(5L, b.tryDebit(5L));
+        }
+        waiting.join();
+        assertEquals(0L, result.get());
+        assertEquals(0L, b.sum());
+    }
+
+    /* 入金の後は、他のスレッドが部分残高を集約している間に出金しても残高不足にならない */
+    @Test
+    void testConcurrentNoFalseOverdraft() throws InterruptedException {
+        int depositors = 4;
+        int withdrawers = 8;
+        int perThread = 20_000;
+        for (int round = 0; round < 5; round++) {
+            ShardedBalance b = new ShardedBalance(0L, 8);
+            AtomicBoolean deposited = new AtomicBoolean();
+            AtomicLong falseOverdrafts = new AtomicLong();
+            AtomicLong remaining = new AtomicLong((long)depositors * perThread * 2);
+            List<Thread> threads = new ArrayList<>();
+            // 入金の合計と出金の合計は等しいため、入金が終わった後の出金は必ず成功する
+            for (int t = 0; t < depositors; t++) {
+                threads.add(new Thread(() -> {
+                    for (int i = 0; i < perThread; i++) {
+                        b.add(2L);
+                    }
+                }));
+            }
+            for (int t = 0; t < withdrawers; t++) {
+                threads.add(new Thread(() -> {
+                    while (remaining.get() > 0) {
+                        boolean done = deposited.get();
+                        if (remaining.getAndDecrement() <= 0) {
+                            break;
+                        }
+                        while (b.tryDebit(1L) < 0) {
+                            if (done) {
+                                falseOverdrafts.incrementAndGet();
+                            }
+                            done = deposited.get();
+                        }
+                    }
+                }));
+            }
+            for (Thread t : threads) {
+                t.start();
+            }
+            for (int t = 0; t < depositors; t++) {
+                threads.get(t).join();
+            }
+            deposited.set(true);
+            for (Thread t : threads) {
+                t.join();
+            }
+            assertEquals(0L, falseOverdrafts.get());
+            assertEquals(0L, b.sum());
+        }
+    }
+}
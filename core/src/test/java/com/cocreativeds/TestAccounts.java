@@ -0,0 +1,48 @@
+package com.cocreativeds;
+
+/**
+ * 試験で使用する口座
+ *
+ * <p>
+ * 金融機関コード1234、店番001、科目1(普通預金)で開設した口座を作成します。
+ */
+final class TestAccounts {
+
+    private TestAccounts() {
+    }
+
+    /**
+     * 口座を開設する
+     *
+     * @return 開設した口座
+     */
+    static Account newAccount() {
+        Account a = new Account();
+        a.openAccount(new BankCode("1234"), new BranchOfficeNumber("001"), new AccountTypeCode("1"));
+        return a;
+    }
+
+    /**
+     * 口座を開設して先行書き込みログを設定する
+     *
+     * @param log 先行書き込みログ
+     * @return 開設した口座
+     */
+    static Account newAccount(WriteAheadLog log) {
+        Account a = newAccount();
+        a.setWriteAheadLog(log);
+        return a;
+    }
+
+    /**
+     * 口座を開設して口座の登録簿に登録する
+     *
+     * @param registry 口座の登録簿
+     * @return 開設した口座
+     */
+    static Account newAccount(AccountRegistry registry) {
+        Account a = newAccount();
+        registry.put(a);
+        return a;
+    }
+}
@@ -0,0 +1,140 @@
+package com.cocreativeds;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+public class TransactionHistoryPageTest {
+
+    private static final LocalDate TRX_DATE = LocalDate.of(2024, 4, 1);
+
+    private static Account newAccount() {
+        Account a = new Account();
+        a.openAccount(BankCode.of("0001"), BranchOfficeNumber.of("001"), AccountTypeCode.of("1"));
+        return a;
+    }
+
+    /* すべてのページを連結して取引履歴を取得する */
+    private static List<String> readAll(Account a, LocalDate from, LocalDate to, int pageSize) {
+        List<String> histories = new ArrayList<>();
+        TransactionHistoryPage page = a.getTransactionHistories(from, to, pageSize);
+        while (true) {
+            assertTrue(page.size() <= pageSize);
+            for (String h : page) {
+                histories.add(h);
+            }
+            if (!page.hasNextPage()) {
+                return histories;
+            }
+            page = a.getTransactionHistories(page.getNextCursor(), pageSize);
+        }
+    }
+
+    @Test
+    void testPaging() {
+        Account a = newAccount();
+        for (int i = 0; i < 25; i++) {
+            a.deposit(i + 1, "JPY", TRX_DATE.plusDays(i), "振込" + i);
+        }
+        TransactionHistoryPage first = a.getTransactionHistories(null, null, 10);
+        assertEquals(10, first.size());
+        assertTrue(first.hasNextPage());
+        assertEquals(TransactionType.DEPOSIT, first.type(0));
+        assertEquals(TRX_DATE, first.trxDate(0));
+        assertEquals(1L, first.amount(0));
+        assertEquals("JPY", first.currency(0));
+        assertEquals("振込0", first.description(0));
+        assertTrue(first.get(9).endsWith(",2024-04-10,10,JPY,振込9"));
+        assertThrows(IndexOutOfBoundsException.class, () -> first.get(10));
+
+        TransactionHistoryPage second = a.getTransactionHistories(first.getNextCursor(), 10);
+        assertEquals(10, second.size());
+        assertEquals(11L, second.amount(0));
+        TransactionHistoryPage third = a.getTransactionHistories(second.getNextCursor(), 10);
+        assertEquals(5, third.size());
+        assertFalse(third.hasNextPage());
+        assertNull(third.getNextCursor());
+
+        // 同じカーソルから何度でも照会できる
+        assertEquals(11L, a.getTransactionHistories(first.getNextCursor(), 10).amount(0));
+
+        assertArrayEquals(a.getTransactionHistories(null, null), readAll(a, null, null, 7).toArray());
+        assertArrayEquals(a.getTransactionHistories(TRX_DATE.plusDays(3), TRX_DATE.plusDays(17)),
+            readAll(a, TRX_DATE.plusDays(3), TRX_DATE.plusDays(17), 4).toArray());
+    }
+
+    /* 取引日が前後した明細があっても同じ結果になる */
+    @Test
+    void testPagingUnsorted() {
+        Account a = newAccount();
+        for (int i = 0; i < 30; i++) {
+            a.deposit(i + 1, "JPY", TRX_DATE.plusDays(i % 2 == 0 ? i : 30 - i), null);
+        }
+        LocalDate from = TRX_DATE.plusDays(5);
+        LocalDate to = TRX_DATE.plusDays(20);
+        String[] expected = a.getTransactionHistories(from, to);
+        assertArrayEquals(expected, readAll(a, from, to, 3).toArray());
+        assertArrayEquals(expected, readAll(a, from, to, 1).toArray());
+        assertArrayEquals(expected, readAll(a, from, to, expected.length).toArray());
+        // ちょうど一杯になった最後のページは次のページを持たない
+        assertFalse(a.getTransactionHistories(from, to, expected.length).hasNextPage());
+    }
+
+    /* 最初のページを照会した後に追記された明細は含めない */
+    @Test
+    void testAppendAfterFirstPage() {
+        Account a = newAccount();
+        for (int i = 0; i < 5; i++) {
+            a.deposit(1, "JPY", TRX_DATE, null);
+        }
+        TransactionHistoryPage first = a.getTransactionHistories(null, null, 3);
+        a.deposit(1, "JPY", TRX_DATE, null);
+        TransactionHistoryPage second = a.getTransactionHistories(first.getNextCursor(), 3);
+        assertEquals(2, second.size());
+        assertFalse(second.hasNextPage());
+    }
+
+    @Test
+    void testEmpty() {
+        Account a = newAccount();
+        TransactionHistoryPage page = a.getTransactionHistories(null, null, 10);
+        assertTrue(page.isEmpty());
+        assertFalse(page.hasNextPage());
+        assertFalse(page.iterator().hasNext());
+        a.deposit(1, "JPY", TRX_DATE, null);
+        assertTrue(a.getTransactionHistories(TRX_DATE.plusDays(1), null, 10).isEmpty());
+    }
+
+    @Test
+    void testCursorError() {
+        Account a = newAccount();
+        Account b = newAccount();
+        for (int i = 0; i < 5; i++) {
+            a.deposit(1, "JPY", TRX_DATE, null);
+            b.deposit(1, "JPY", TRX_DATE, null);
+        }
+        String cursor = a.getTransactionHistories(null, null, 2).getNextCursor();
+        IllegalArgumentException other =
+            assertThrows(IllegalArgumentException.class, () -> b.getTransactionHistories(cursor, 2));
+        assertEquals("カーソルが正しくない", other.getMessage());
+        assertThrows(IllegalArgumentException.class, () -> newAccount().getTransactionHistories(cursor, 2));
+        assertThrows(IllegalArgumentException.class, () -> a.getTransactionHistories("!!", 2));
+        assertThrows(IllegalArgumentException.class, () -> a.getTransactionHistories("AAAA", 2));
+        IllegalArgumentException none =
+            assertThrows(IllegalArgumentException.class, () -> a.getTransactionHistories((String)null, 2));
+        assertEquals("カーソルを指定しなくてはならない", none.getMessage());
+        IllegalArgumentException size =
+            assertThrows(IllegalArgumentException.class, () -> a.getTransactionHistories(null, null, 0));
+        assertEquals("1ページの件数は1以上1000以下でなくてはならない", size.getMessage());
+        assertThrows(IllegalArgumentException.class, () -> a.getTransactionHistories(cursor, 1001));
+    }
+}
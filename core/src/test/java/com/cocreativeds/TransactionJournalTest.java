@@ -0,0 +1,178 @@
+package com.cocreativeds;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+public class TransactionJournalTest {
+
+    @Test
+    void testAppend() {
+        TransactionJournal j = new TransactionJournal();
+        assertEquals(0, j.append(TransactionType.DEPOSIT, 1000L, 19800, 500L, CurrencyTable.JPY, "振込"));
+        assertEquals(1, j.append(TransactionType.WITHDRAWAL, 2000L, 19801, 300L, CurrencyTable.indexOf("USD"), null));
+        assertEquals(2, j.size());
+        assertEquals(TransactionType.DEPOSIT, j.type(0));
+        assertEquals(1000L, j.operationTime(0));
+        assertEquals(19800, j.trxDate(0));
+        assertEquals(500L, j.amount(0));
+        assertEquals(CurrencyTable.JPY, j.currencyIndex(0));
+        assertEquals("振込", j.description(0));
+        assertEquals(TransactionType.WITHDRAWAL, j.type(1));
+        assertEquals(CurrencyTable.indexOf("USD"), j.currencyIndex(1));
+        assertNull(j.description(1));
+    }
+
+    /* 入出金の明細をまとめて追記する(金額の符号で取引区分を決める) */
+    @Test
+    void testAppendAll() {
+        TransactionJournal j = new TransactionJournal();
+        long[] amounts = new long[] {100L, -30L, 999L, 20L};
+        int[] positions = new int[] {3, 1, 0, 2};
+        j.appendAll(amounts, positions, 0, 3, 1000L, 19800, CurrencyTable.JPY, "振込");
+        assertEquals(3, j.size());
+        assertEquals(TransactionType.DEPOSIT, j.type(0));
+        assertEquals(20L, j.amount(0));
+        assertEquals(TransactionType.WITHDRAWAL, j.type(1));
+        assertEquals(30L, j.amount(1));
+        assertEquals(TransactionType.DEPOSIT, j.type(2));
+        assertEquals(100L, j.amount(2));
+        assertEquals("振込", j.description(2));
+        assertEquals(19800, j.trxDate(2));
+    }
+
+    /* チャンクの境界をまたいで追記しても値が保持される */
+    @Test
+    void testAppendManyChunks() {
+        TransactionJournal j = new TransactionJournal();
+        int count = 5000;
+        for (int i = 0; i < count; i++) {
+            j.append(TransactionType.DEPOSIT, i, i / 10, i * 3L, i % CurrencyTable.size(), "摘要" + (i % 7));
+        }
+        assertEquals(count, j.size());
+        for (int i = 0; i < count; i++) {
+            assertEquals(i, j.operationTime(i));
+            assertEquals(i / 10, j.trxDate(i));
+            assertEquals(i * 3L, j.amount(i));
+            assertEquals(i % CurrencyTable.size(), j.currencyIndex(i));
+            assertEquals("摘要" + (i % 7), j.description(i));
+        }
+        assertTrue(j.isSorted());
+    }
+
+    @Test
+    void testRange() {
+        TransactionJournal j = new TransactionJournal();
+        for (int i = 0; i < 3000; i++) {
+            j.append(TransactionType.DEPOSIT, i, 100 + i / 3, 1L, CurrencyTable.JPY, null);
+        }
+        int end = j.size();
+        assertEquals(0, j.firstOnOrAfter(100, end));
+        assertEquals(0, j.firstOnOrAfter(Integer.MIN_VALUE, end));
+        assertEquals(30, j.firstOnOrAfter(110, end));
+        assertEquals(33, j.firstAfter(110, end));
+        assertEquals(end, j.firstOnOrAfter(2000, end));
+        assertEquals(end, j.firstAfter(Integer.MAX_VALUE, end));
+        assertEquals(6, j.firstAfter(101, 6)); //検索範囲の終わりまで
+    }
+
+    @Test
+    void testUnsorted() {
+        TransactionJournal j = new TransactionJournal();
+        j.append(TransactionType.DEPOSIT, 0L, 200, 1L, CurrencyTable.JPY, null);
+        j.append(TransactionType.DEPOSIT, 0L, 200, 1L, CurrencyTable.JPY, null);
+        assertTrue(j.isSorted());
+        j.append(TransactionType.DEPOSIT, 0L, 199, 1L, CurrencyTable.JPY, null);
+        assertFalse(j.isSorted());
+    }
+
+    /* 取引日が範囲内の明細を順に求め、該当する明細がないチャンクは読み飛ばす */
+    @Test
+    void testNextInRange() {
+        TransactionJournal j = new TransactionJournal();
+        for (int i = 0; i < 5000; i++) {
+            // 取引日が前後しながら、おおむね追記順に増える
+            j.append(TransactionType.DEPOSIT, i, 1000 + i / 10 - (i % 3), 1L, CurrencyTable.JPY, null);
+        }
+        assertFalse(j.isSorted());
+        int end = j.size();
+        int[][] ranges = {{Integer.MIN_VALUE, Integer.MAX_VALUE}, {1000, 1000}, {1100, 1110}, {1400, 1405},
+            {1497, 1600}, {2000, 3000}, {0, 999}, {998, 998}};
+        for (int[] r : ranges) {
+            List<Integer> expected = new ArrayList<>();
+            for (int i = 0; i < end; i++) {
+                if (r[0] <= j.trxDate(i) && j.trxDate(i) <= r[1]) {
+                    expected.add(i);
+                }
+            }
+            List<Integer> actual = new ArrayList<>();
+            for (int i = j.nextInRange(r[0], r[1], 0, end); i < end; i = j.nextInRange(r[0], r[1], i + 1, end)) {
+                actual.add(i);
+            }
+            assertEquals(expected, actual);
+        }
+        // 検索範囲の終わりまで
+        assertEquals(3000, j.nextInRange(1400, 1405, 100, 3000));
+        assertEquals(10, j.nextInRange(1000, 1001, 10, 10));
+    }
+
+    /* 入出金以外の明細は並び順の判定に含めず、二分探索では直前の入出金の明細の取引日にあるものとする */
+    @Test
+    void testNonPostingEntriesKeepSorted() {
+        TransactionJournal j = new TransactionJournal();
+        j.append(TransactionType.PASSBOOK_UPDATE, 0L, 300, 0L, CurrencyTable.JPY, null);
+        j.append(TransactionType.DEPOSIT, 0L, 100, 1L, CurrencyTable.JPY, null);
+        j.append(TransactionType.DEPOSIT, 0L, 200, 1L, CurrencyTable.JPY, null);
+        j.append(TransactionType.PASSBOOK_UPDATE, 0L, 300, 0L, CurrencyTable.JPY, null);
+        j.append(TransactionType.WITHDRAWAL, 0L, 200, 1L, CurrencyTable.JPY, null);
+        j.append(TransactionType.DEPOSIT, 0L, 250, 1L, CurrencyTable.JPY, null);
+        assertTrue(j.isSorted());
+        int end = j.size();
+        assertEquals(0, j.firstOnOrAfter(Integer.MIN_VALUE, end));
+        assertEquals(1, j.firstOnOrAfter(100, end));
+        assertEquals(2, j.firstOnOrAfter(150, end));
+        assertEquals(2, j.firstOnOrAfter(200, end));
+        assertEquals(5, j.firstAfter(200, end));
+        assertEquals(end, j.firstOnOrAfter(300, end));
+
+        j.append(TransactionType.DEPOSIT, 0L, 249, 1L, CurrencyTable.JPY, null);
+        assertFalse(j.isSorted());
+    }
+
+    /* 追記と照会を同時に行っても、照会では追記済みの明細だけが見える */
+    @Test
+    void testConcurrentReadWhileAppending() throws InterruptedException {
+        TransactionJournal j = new TransactionJournal();
+        List<Throwable> errors = new ArrayList<>();
+        Thread writer = new Thread(() -> {
+            for (int i = 0; i < 100000; i++) {
+                j.append(TransactionType.DEPOSIT, i, i, i, CurrencyTable.JPY, null);
+            }
+        });
+        Thread reader = new Thread(() -> {
+            try {
+                while (j.size() < 100000) {
+                    int size = j.size();
+                    if (size > 0) {
+                        assertEquals(size - 1L, j.amount(size - 1));
+                    }
+                }
+            } catch (Throwable t) {
+                synchronized (errors) {
+                    errors.add(t);
+                }
+            }
+        });
+        writer.start();
+        reader.start();
+        writer.join();
+        reader.join();
+        assertTrue(errors.isEmpty(), errors.toString());
+    }
+}
@@ -0,0 +1,40 @@
+package com.cocreativeds;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+public class TransactionTypeTest {
+
+    @Test
+    void testOfCode() {
+        for (TransactionType t : TransactionType.values()) {
+            assertEquals(t, TransactionType.ofCode(t.getCode()));
+        }
+    }
+
+    @Test
+    void testCreditDebit() {
+        assertTrue(TransactionType.DEPOSIT.isCredit());
+        assertTrue(TransactionType.INTEREST.isCredit());
+        assertTrue(TransactionType.WITHDRAWAL.isDebit());
+        assertTrue(TransactionType.TRANSFER_IN.isCredit());
+        assertFalse(TransactionType.TRANSFER_IN.isDebit());
+        assertTrue(TransactionType.TRANSFER_OUT.isDebit());
+        assertFalse(TransactionType.TRANSFER_OUT.isCredit());
+        assertFalse(TransactionType.PASSBOOK_UPDATE.isCredit());
+        assertFalse(TransactionType.PASSBOOK_UPDATE.isDebit());
+        assertFalse(TransactionType.INTEREST_ACCRUAL.isCredit());
+        assertFalse(TransactionType.INTEREST_ACCRUAL.isDebit());
+    }
+
+    @Test
+    void testOfCodeError() {
+        IllegalArgumentException expected =
+            assertThrows(IllegalArgumentException.class, () -> TransactionType.ofCode(0));
+        assertEquals("取引区分コードが正しくない", expected.getMessage());
+    }
+}
@@ -0,0 +1,387 @@
+package com.cocreativeds;
+
+import static com.cocreativeds.TestAccounts.newAccount;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class TransferEngineTest {
+
+    private static final LocalDate TRX_DATE = LocalDate.of(2024, 4, 1);
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void testTransfer() {
+        TransferEngine engine = new TransferEngine();
+        Account a = newAccount();
+        Account b = newAccount();
+        a.deposit(1000, "JPY", TRX_DATE, "振込");
+        engine.transfer(a, b, 300, "JPY", TRX_DATE, "振替");
+        engine.transfer(b, a, 100, CurrencyTable.JPY, TRX_DATE, "振替");
+        assertEquals(800, a.getBalance());
+        assertEquals(200, b.getBalance());
+        String[] histories = a.getTransactionHistories(null, null);
+        assertEquals(3, histories.length);
+        assertTrue(histories[1].startsWith("振替出金,"));
+        assertTrue(histories[1].endsWith(",300,JPY,振替"));
+        assertTrue(histories[2].startsWith("振替入金,"));
+        assertTrue(b.getTransactionHistories(null, null)[0].startsWith("振替入金,"));
+    }
+
+    /* 振替元の口座残高が不足しているときは、どちらの口座も変わらない */
+    @Test
+    void testTransferOverdraft() {
+        TransferEngine engine = new TransferEngine();
+        Account a = newAccount();
+        Account b = newAccount();
+        a.deposit(100, "JPY", TRX_DATE, "振込");
+        IllegalStateException expected =
+            assertThrows(IllegalStateException.class, () -> engine.transfer(a, b, 101, "JPY", TRX_DATE, "振替"));
+        assertEquals("口座残高が不足しているため振り替えできない", expected.getMessage());
+        assertEquals(100, a.getBalance());
+        assertEquals(0, b.getBalance());
+        assertEquals(1, a.getTransactionHistories(null, null).length);
+        assertEquals(0, b.getTransactionHistories(null, null).length);
+    }
+
+    @Test
+    void testTransferError() {
+        TransferEngine engine = new TransferEngine();
+        Account a = newAccount();
+        Account b = newAccount();
+        IllegalArgumentException expected =
+            assertThrows(IllegalArgumentException.class, () -> engine.transfer(a, a, 1, "JPY", TRX_DATE, "振替"));
+        assertEquals("振替元と振替先が同じ口座", expected.getMessage());
+        expected = assertThrows(IllegalArgumentException.class, () -> engine.transfer(a, null, 1, "JPY", TRX_DATE, ""));
+        assertEquals("振替元と振替先の口座を指定しなくてはならない", expected.getMessage());
+        expected = assertThrows(IllegalArgumentException.class, () -> engine.transfer(a, b, 0, "JPY", TRX_DATE, ""));
+        assertEquals("取引金額は1以上でなくてはならない", expected.getMessage());
+        expected = assertThrows(IllegalArgumentException.class, () -> engine.transfer(a, b, 1, "XXX", TRX_DATE, ""));
+        assertEquals("通貨コードは取り扱い通貨のISO 4217通貨コードでなくてはならない", expected.getMessage());
+        expected = assertThrows(IllegalArgumentException.class, () -> engine.transfer(a, b, 1, "JPY", null, ""));
+        assertEquals("取引日を指定しなくてはならない", expected.getMessage());
+    }
+
+    /*
+     * 無作為な口座の組み合わせで同時に振り替え、振替の間も口座残高の合計を求めて変わらないことを確かめる
+     * 
+     * 振り替えた件数を返す。
+     */
+    private static long transferConcurrently(TransferEngine engine, List<Account> accounts, int threads,
+            int perThread, long total) throws InterruptedException {
+        AtomicLong transferred = new AtomicLong();
+        AtomicLong rejected = new AtomicLong();
+        AtomicLong samples = new AtomicLong();
+        AtomicBoolean done = new AtomicBoolean();
+        AtomicReference<String> failure = new AtomicReference<>();
+        CountDownLatch start = new CountDownLatch(1);
+        List<Thread> list = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            Thread thread = new Thread(() -> {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                for (int i = 0; i < perThread; i++) {
+                    int x = random.nextInt(accounts.size());
+                    int y = (x + 1 + random.nextInt(accounts.size() - 1)) % accounts.size();
+                    try {
+                        engine.transfer(accounts.get(x), accounts.get(y), 1 + random.nextInt(5000), "JPY", TRX_DATE,
+                            "振替");
+                        transferred.incrementAndGet();
+                    } catch (IllegalStateException e) {
+                        rejected.incrementAndGet();
+                    }
+                }
+            });
+            list.add(thread);
+            thread.start();
+        }
+        Thread sampler = new Thread(() -> {
+            while (!done.get()) {
+                long sampled = engine.totalBalance(accounts, "JPY");
+                if (sampled != total) {
+                    failure.compareAndSet(null, "振替の実行中の口座残高の合計が変わった: " + sampled);
+                }
+                samples.incrementAndGet();
+                Thread.yield();
+            }
+        });
+        sampler.start();
+        start.countDown();
+        for (Thread t : list) {
+            t.join();
+        }
+        done.set(true);
+        sampler.join();
+        assertNull(failure.get());
+        assertTrue(samples.get() > 0);
+        assertEquals((long)threads * perThread, transferred.get() + rejected.get());
+        long sum = 0L;
+        for (Account a : accounts) {
+            assertTrue(a.getBalance() >= 0);
+            sum += a.getBalance();
+        }
+        assertEquals(total, sum);
+        return transferred.get();
+    }
+
+    /* 無作為な口座の組み合わせで同時に振り替えても、口座残高の合計は変わらず、負にもならない */
+    @Test
+    void testConcurrentTransferConservesMoney() throws InterruptedException {
+        TransferEngine engine = new TransferEngine();
+        List<Account> accounts = new ArrayList<>();
+        for (int i = 0; i < 16; i++) {
+            Account a = newAccount();
+            a.deposit(10_000, "JPY", TRX_DATE, "振込");
+            accounts.add(a);
+        }
+        long transferred = transferConcurrently(engine, accounts, 8, 20_000, 16 * 10_000L);
+        int histories = 0;
+        for (Account a : accounts) {
+            histories += a.getTransactionHistories(null, null).length;
+        }
+        assertEquals(16 + 2 * transferred, histories);
+    }
+
+    /* 2つのログに分かれた口座の間で同時に振り替えても口座残高の合計は変わらず、ログから回復しても同じになる */
+    @Test
+    void testConcurrentTransferBetweenLogs() throws IOException, InterruptedException {
+        Path path = this.dir.resolve("wal");
+        Path otherPath = this.dir.resolve("other");
+        TransferEngine engine = new TransferEngine();
+        List<Account> accounts = new ArrayList<>();
+        try (WriteAheadLog log = new WriteAheadLog(path);
+                WriteAheadLog other = new WriteAheadLog(otherPath)) {
+            for (int i = 0; i < 8; i++) {
+                Account a = newAccount(i % 2 == 0 ? log : other);
+                a.deposit(10_000, "JPY", TRX_DATE, "振込");
+                accounts.add(a);
+            }
+            transferConcurrently(engine, accounts, 4, 2000, 8 * 10_000L);
+        }
+
+        Map<AccountId, Account> recovered = new HashMap<>();
+        for (Account a : accounts) {
+            recovered.put(a.getAccountId(), new Account(new BankCode("1234"), new BranchOfficeNumber("001"),
+                new AccountTypeCode("1"), new AccountNumber(), a.getAccountId().clone()));
+        }
+        try (WriteAheadLog log = new WriteAheadLog(path);
+                WriteAheadLog other = new WriteAheadLog(otherPath)) {
+            log.recover(recovered::get);
+            other.recover(recovered::get);
+            assertEquals(0, engine.recover(List.of(log, other), recovered::get));
+        }
+        for (Account a : accounts) {
+            assertEquals(a.getBalance(), recovered.get(a.getAccountId()).getBalance());
+        }
+    }
+
+    /* 先行書き込みログから回復しても、振替の結果が再現される */
+    @Test
+    void testRecover() throws IOException {
+        Path path = this.dir.resolve("wal");
+        TransferEngine engine = new TransferEngine();
+        List<Account> accounts = new ArrayList<>();
+        try (WriteAheadLog log = new WriteAheadLog(path)) {
+            for (int i = 0; i < 8; i++) {
+                Account a = newAccount();
+                a.setWriteAheadLog(log);
+                a.deposit(1000, "JPY", TRX_DATE, "振込");
+                accounts.add(a);
+            }
+            for (int i = 0; i < 100; i++) {
+                engine.transfer(accounts.get(i % 8), accounts.get((i * 3 + 1) % 8), 10 + i, "JPY", TRX_DATE, "振替");
+            }
+            assertEquals(8L + 200L, log.getDurableLsn());
+        }
+
+        Map<AccountId, Account> recovered = new HashMap<>();
+        for (Account a : accounts) {
+            Account r = new Account(new BankCode("1234"), new BranchOfficeNumber("001"), new AccountTypeCode("1"),
+                new AccountNumber(), a.getAccountId().clone());
+            recovered.put(r.getAccountId(), r);
+        }
+        try (WriteAheadLog log = new WriteAheadLog(path)) {
+            log.recover(recovered::get);
+        }
+        for (Account a : accounts) {
+            assertEquals(a.getBalance(), recovered.get(a.getAccountId()).getBalance());
+        }
+    }
+
+    /* 先行書き込みログに記録できなかったときは、どちらの口座も変わらない */
+    @Test
+    void testTransferLogFailure() throws IOException {
+        TransferEngine engine = new TransferEngine();
+        WriteAheadLog closed = new WriteAheadLog(this.dir.resolve("closed"));
+        Account a = newAccount();
+        Account b = newAccount(closed);
+        a.credit(1000L, CurrencyTable.JPY);
+        a.setWriteAheadLog(closed);
+        closed.close();
+        assertThrows(IllegalStateException.class, () -> engine.transfer(a, b, 300, "JPY", TRX_DATE, "振替"));
+        assertEquals(1000, a.getBalance());
+        assertEquals(0, b.getBalance());
+        assertEquals(0, a.getTransactionHistories(null, null).length);
+        assertEquals(0, b.getTransactionHistories(null, null).length);
+    }
+
+    /* 振替元と振替先の先行書き込みログが異なるときは、振替出金と振替入金をそれぞれのログに記録する */
+    @Test
+    void testTransferBetweenLogs() throws IOException {
+        TransferEngine engine = new TransferEngine();
+        try (WriteAheadLog log = new WriteAheadLog(this.dir.resolve("wal"));
+                WriteAheadLog other = new WriteAheadLog(this.dir.resolve("other"))) {
+            Account a = newAccount(log);
+            Account b = newAccount(other);
+            Account c = newAccount();
+            a.deposit(1000, "JPY", TRX_DATE, "振込");
+            engine.transfer(a, b, 300, "JPY", TRX_DATE, "振替");
+            assertEquals(700, a.getBalance());
+            assertEquals(300, b.getBalance());
+            assertTrue(a.getTransactionHistories(null, null)[1].startsWith("振替出金,"));
+            assertTrue(b.getTransactionHistories(null, null)[0].startsWith("振替入金,"));
+            assertEquals(2L, log.getDurableLsn());
+            assertEquals(2L, other.getDurableLsn());
+            assertEquals(1000L, engine.totalBalance(List.of(a, b), "JPY"));
+
+            IllegalArgumentException expected =
+                assertThrows(IllegalArgumentException.class, () -> engine.transfer(a, c, 300, "JPY", TRX_DATE, "振替"));
+            assertEquals("振替元と振替先の口座の一方だけに先行書き込みログが設定されている", expected.getMessage());
+            assertEquals(700, a.getBalance());
+            assertEquals(0, c.getBalance());
+        }
+    }
+
+    /* 別のログの振替先に記録できなかったときは、振替元のログに取消を記録して振替元に戻す */
+    @Test
+    void testTransferBetweenLogsCreditFailure() throws IOException {
+        TransferEngine engine = new TransferEngine();
+        try (WriteAheadLog log = new WriteAheadLog(this.dir.resolve("wal"))) {
+            WriteAheadLog closed = new WriteAheadLog(this.dir.resolve("closed"));
+            Account a = newAccount(log);
+            Account b = newAccount(closed);
+            closed.close();
+            a.deposit(1000, "JPY", TRX_DATE, "振込");
+            assertThrows(IllegalStateException.class, () -> engine.transfer(a, b, 300, "JPY", TRX_DATE, "振替"));
+            assertEquals(1000, a.getBalance());
+            assertEquals(0, b.getBalance());
+            String[] histories = a.getTransactionHistories(null, null);
+            assertEquals(3, histories.length);
+            assertTrue(histories[2].startsWith("振替入金,"));
+            assertTrue(histories[2].endsWith(",300,JPY,振替取消"));
+            assertEquals(4L, log.getDurableLsn());
+        }
+    }
+
+    /* 振替出金を書き出した後、振替入金を書き出す前に停止したときは、回復のときに振替元に戻す */
+    @Test
+    void testRecoverTransferBetweenLogs() throws IOException {
+        Path path = this.dir.resolve("wal");
+        Path otherPath = this.dir.resolve("other");
+        TransferEngine engine = new TransferEngine();
+        Account a;
+        Account b;
+        try (WriteAheadLog log = new WriteAheadLog(path);
+                WriteAheadLog other = new WriteAheadLog(otherPath)) {
+            a = newAccount(log);
+            b = newAccount(other);
+            a.deposit(1000, "JPY", TRX_DATE, "振込");
+            engine.transfer(a, b, 100, "JPY", TRX_DATE, "振替");
+            engine.transfer(a, b, 200, "JPY", TRX_DATE, "振替");
+            assertEquals(3L, log.getDurableLsn());
+            assertEquals(4L, other.getDurableLsn());
+        }
+        // 2回目の振替の振替入金のレコード(振替先のログのログ順序番号4)を書き出す前に停止した状態にする
+        try (FileChannel channel = FileChannel.open(otherPath, StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.allocate(WriteAheadLog.RECORD_SIZE), 3L * WriteAheadLog.RECORD_SIZE);
+        }
+
+        for (int round = 0; round < 2; round++) {
+            Map<AccountId, Account> recovered = new HashMap<>();
+            for (Account x : List.of(a, b)) {
+                recovered.put(x.getAccountId(), new Account(new BankCode("1234"), new BranchOfficeNumber("001"),
+                    new AccountTypeCode("1"), new AccountNumber(), x.getAccountId().clone()));
+            }
+            try (WriteAheadLog log = new WriteAheadLog(path);
+                    WriteAheadLog other = new WriteAheadLog(otherPath)) {
+                assertEquals(2L, other.getLastLsn());
+                log.recover(recovered::get);
+                other.recover(recovered::get);
+                // 取消は振替元のログに記録するため、2回目の回復では取り消さない
+                assertEquals(round == 0 ? 1 : 0, engine.recover(List.of(log, other), recovered::get));
+            }
+            assertEquals(900, recovered.get(a.getAccountId()).getBalance());
+            assertEquals(100, recovered.get(b.getAccountId()).getBalance());
+            String[] histories = recovered.get(a.getAccountId()).getTransactionHistories(null, null);
+            assertEquals(4, histories.length);
+            assertTrue(histories[3].startsWith("振替入金,"));
+        }
+    }
+
+    /* 振替出金のレコードだけが書き出されて停止したときは、回復しても振替の前の口座残高になる */
+    @Test
+    void testRecoverIncompleteTransfer() throws IOException {
+        Path path = this.dir.resolve("wal");
+        TransferEngine engine = new TransferEngine();
+        Account a;
+        Account b;
+        try (WriteAheadLog log = new WriteAheadLog(path)) {
+            a = newAccount(log);
+            b = newAccount(log);
+            a.deposit(1000, "JPY", TRX_DATE, "振込");
+            engine.transfer(a, b, 100, "JPY", TRX_DATE, "振替");
+            engine.transfer(a, b, 200, "JPY", TRX_DATE, "振替");
+            assertEquals(5L, log.getDurableLsn());
+        }
+        // 2回目の振替の振替入金のレコード(ログ順序番号5)を書き出す前に停止した状態にする
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.allocate(WriteAheadLog.RECORD_SIZE), 4L * WriteAheadLog.RECORD_SIZE);
+        }
+
+        Map<AccountId, Account> recovered = new HashMap<>();
+        for (Account x : List.of(a, b)) {
+            Account r = new Account(new BankCode("1234"), new BranchOfficeNumber("001"), new AccountTypeCode("1"),
+                new AccountNumber(), x.getAccountId().clone());
+            recovered.put(r.getAccountId(), r);
+        }
+        try (WriteAheadLog log = new WriteAheadLog(path)) {
+            // 振替出金のレコードも破棄し、次のレコードはその位置から追記する
+            assertEquals(3L, log.getLastLsn());
+            assertEquals(3L, log.recover(recovered::get));
+            assertEquals(4L, log.append(a.getAccountId(), a.accountKey(), TransactionType.DEPOSIT, 0L, 0, 1L,
+                CurrencyTable.JPY));
+        }
+        assertEquals(900, recovered.get(a.getAccountId()).getBalance());
+        assertEquals(100, recovered.get(b.getAccountId()).getBalance());
+        String[] histories = recovered.get(a.getAccountId()).getTransactionHistories(null, null);
+        assertEquals(2, histories.length);
+        assertTrue(histories[1].startsWith("振替出金,"));
+        assertTrue(recovered.get(b.getAccountId()).getTransactionHistories(null, null)[0].startsWith("振替入金,"));
+    }
+}
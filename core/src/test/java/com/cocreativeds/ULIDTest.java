@@ -1,6 +1,8 @@
 package com.cocreativeds;
 
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 
 import org.junit.jupiter.api.Test;
 
@@ -267,4 +269,33 @@ public class ULIDTest {
         ulid = ULID.generate();
         System.out.println(ulid);
     }
+
+    @Test
+    void testTimestamp() {
+        long ts = 0x0000_0123_4567_89abL;
+        byte[] bytes = new byte[] {1, 2, 3, 4, 5, 6, 7, 8, 9, 10};
+        String ulid = ULID.genULIDString(ts, bytes);
+        assertEquals(ts, ULID.timestamp(ulid));
+        assertEquals(0L, ULID.timestamp("00000000000000000000000000"));
+        assertEquals(0x0000_ffff_ffff_ffffL, ULID.timestamp("7ZZZZZZZZZZZZZZZZZZZZZZZZZ"));
+    }
+
+    @Test
+    void testTimestampError() {
+        assertThrows(IllegalArgumentException.class, () -> ULID.timestamp(null));
+        assertThrows(IllegalArgumentException.class, () -> ULID.timestamp("0000000000000000000000000"));
+        assertThrows(IllegalArgumentException.class, () -> ULID.timestamp("80000000000000000000000000"));
+        assertThrows(IllegalArgumentException.class, () -> ULID.timestamp("0000000000000000000000000U"));
+    }
+
+    @Test
+    void testDecode() {
+        long ts = 1_700_000_000_000L;
+        byte[] bytes = new byte[] {(byte)0xff, 1, 2, 3, 4, 5, 6, 7, 8, (byte)0x80};
+        BinaryUlid u = ULID.decode(ULID.genULIDString(ts, bytes));
+        assertEquals(ts, u.getTimestamp());
+        byte[] random = new byte[10];
+        u.getRandomness(random, 0);
+        assertArrayEquals(bytes, random);
+    }
 }
@@ -0,0 +1,189 @@
+package com.cocreativeds;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+public class UlidGeneratorTest {
+
+    /* 乱数生成器が返す値を固定したRandom */
+    private static class FixedRandom extends Random {
+        private final int high;
+        private final long low;
+
+        FixedRandom(int high, long low) {
+            this.high = high;
+            this.low = low;
+        }
+
+        @Override
+        public int nextInt() {
+            return this.high;
+        }
+
+        @Override
+        public long nextLong() {
+            return this.low;
+        }
+    }
+
+    /* 乱数部(上位16ビット、下位64ビット)をgenULIDStringに渡すバイト配列に変換する */
+    private static byte[] toBytes(int high, long low) {
+        byte[] bytes = new byte[10];
+        bytes[0] = (byte)(high >>> 8);
+        bytes[1] = (byte)high;
+        for (int i = 0; i < 8; i++) {
+            bytes[2 + i] = (byte)(low >>> (56 - i * 8));
+        }
+        return bytes;
+    }
+
+    @Test
+    void testGenerateSameAsGenULIDString() {
+        Random seed = new Random(12345L);
+        for (int i = 0; i < 1000; i++) {
+            long ts = seed.nextLong() & 0x0000ffffffffffffL;
+            int high = seed.nextInt() & 0xffff;
+            long low = seed.nextLong();
+            UlidGenerator g = new UlidGenerator(new FixedRandom(high, low), () -> ts, false);
+            assertEquals(ULID.genULIDString(ts, toBytes(high, low)), g.generate());
+        }
+    }
+
+    @Test
+    void testGenerateCharArray() {
+        UlidGenerator g = new UlidGenerator(new FixedRandom(0xffff, -1L), () -> 0L, false);
+        char[] chars = new char[30];
+        g.generate(chars, 2);
+        assertEquals("0000000000ZZZZZZZZZZZZZZZZ", new String(chars, 2, 26));
+        assertEquals('\0', chars[1]);
+        assertEquals('\0', chars[28]);
+    }
+
+    @Test
+    void testGenerateByteArray() {
+        UlidGenerator g = new UlidGenerator(new FixedRandom(0x0102, 0x030405060708090aL), () -> 0x112233445566L, false);
+        byte[] bytes = new byte[16];
+        g.generate(bytes, 0);
+        assertArrayEquals(new byte[] {
+            0x11, 0x22, 0x33, 0x44, 0x55, 0x66, 0x01, 0x02,
+            0x03, 0x04, 0x05, 0x06, 0x07, 0x08, 0x09, 0x0a}, bytes);
+    }
+
+    @Test
+    void testMonotonic() {
+        UlidGenerator g = new UlidGenerator(new FixedRandom(0, 0xfffffffffffffffeL), () -> 1000L, true);
+        String u1 = g.generate();
+        String u2 = g.generate();
+        String u3 = g.generate();
+        assertEquals("00000000Z8000FZZZZZZZZZZZY", u1);
+        assertEquals("00000000Z8000FZZZZZZZZZZZZ", u2);
+        assertEquals("00000000Z8000G000000000000", u3); //下位64ビットの桁あふれは上位に繰り上がる
+        assertTrue(u1.compareTo(u2) < 0);
+        assertTrue(u2.compareTo(u3) < 0);
+    }
+
+    @Test
+    void testMonotonicClockBackwards() {
+        long[] now = {2000L};
+        UlidGenerator g = new UlidGenerator(new Random(1L), () -> now[0], true);
+        String u1 = g.generate();
+        now[0] = 1999L;
+        String u2 = g.generate();
+        assertTrue(u1.compareTo(u2) < 0);
+        assertEquals(u1.substring(0, 10), u2.substring(0, 10));
+    }
+
+    @Test
+    void testMonotonicNewMillisecond() {
+        long[] now = {2000L};
+        UlidGenerator g = new UlidGenerator(new Random(1L), () -> now[0], true);
+        String u1 = g.generate();
+        now[0] = 2001L;
+        String u2 = g.generate();
+        assertNotEquals(u1.substring(0, 10), u2.substring(0, 10));
+        assertTrue(u1.compareTo(u2) < 0);
+    }
+
+    @Test
+    void testMonotonicBurst() {
+        UlidGenerator g = new UlidGenerator(true);
+        String prev = g.generate();
+        for (int i = 0; i < 100000; i++) {
+            String next = g.generate();
+            assertTrue(prev.compareTo(next) < 0);
+            prev = next;
+        }
+    }
+
+    @Test
+    void testMonotonicOverflow() {
+        UlidGenerator g = new UlidGenerator(new FixedRandom(0xffff, -1L), () -> 1000L, true);
+        g.generate();
+        IllegalStateException expected = assertThrows(IllegalStateException.class, () -> g.generate());
+        assertEquals("同一ミリ秒内に生成できるULIDの上限を超えました", expected.getMessage());
+    }
+
+    @Test
+    void testCurrent() {
+        assertSame(UlidGenerator.current(), UlidGenerator.current());
+        assertTrue(UlidGenerator.current().isMonotonic());
+    }
+
+    /* エラーケース */
+    @Test
+    void testGenerateError01() {
+        UlidGenerator g = new UlidGenerator(false);
+        IllegalArgumentException expected =
+            assertThrows(IllegalArgumentException.class, () -> g.generate(new char[26], 1)); //領域が1文字不足
+        assertEquals("ULIDを格納するchar型配列の長さが不足しています", expected.getMessage());
+    }
+
+    @Test
+    void testGenerateError02() {
+        UlidGenerator g = new UlidGenerator(false);
+        IllegalArgumentException expected =
+            assertThrows(IllegalArgumentException.class, () -> g.generate(new byte[15], 0)); //領域が1バイト不足
+        assertEquals("ULIDを格納するbyte型配列の長さが不足しています", expected.getMessage());
+    }
+
+    @Test
+    void testGenerateError03() {
+        UlidGenerator g = new UlidGenerator(new Random(), () -> 0x0001000000000000L, false); //48ビットを超える時刻
+        IllegalStateException expected = assertThrows(IllegalStateException.class, () -> g.generate());
+        assertEquals("タイムスタンプが最小値未満または最大値を超えています", expected.getMessage());
+    }
+
+    /* 一括生成では時刻を1回だけ取得し、乱数部に1ずつ加算する */
+    @Test
+    void testGenerateBinaryBulk() {
+        long[] calls = new long[1];
+        UlidGenerator g = new UlidGenerator(new FixedRandom(0, 0xfffffffffffffffeL), () -> {
+            calls[0]++;
+            return 1000L + calls[0];
+        }, true);
+        BinaryUlid[] ids = new BinaryUlid[5];
+        g.generateBinary(ids, 1, 4);
+        assertEquals(1L, calls[0]);
+        assertEquals(null, ids[0]);
+        assertEquals("00000000Z9000FZZZZZZZZZZZY", ids[1].toString());
+        assertEquals("00000000Z9000FZZZZZZZZZZZZ", ids[2].toString());
+        assertEquals("00000000Z9000G000000000000", ids[3].toString());
+        assertEquals("00000000Z9000G000000000001", ids[4].toString());
+    }
+
+    @Test
+    void testGenerateBinaryBulkError() {
+        UlidGenerator g = new UlidGenerator(true);
+        IllegalArgumentException expected =
+            assertThrows(IllegalArgumentException.class, () -> g.generateBinary(new BinaryUlid[3], 1, 3));
+        assertEquals("ULIDを格納する配列の長さが不足しています", expected.getMessage());
+    }
+}
@@ -0,0 +1,304 @@
+package com.cocreativeds;
+
+import static com.cocreativeds.TestAccounts.newAccount;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class WriteAheadLogTest {
+
+    private static final LocalDate TRX_DATE = LocalDate.of(2024, 4, 1);
+
+    private static final long KEY = PackedAccountKey.parse("1234-001-1-0000001");
+
+    @TempDir
+    Path dir;
+
+    /* 指定された口座識別子を持つ、残高0の口座を作成する */
+    private static Account emptyAccount(AccountId id) {
+        return new Account(new BankCode("1234"), new BranchOfficeNumber("001"), new AccountTypeCode("1"),
+            new AccountNumber(), id.clone());
+    }
+
+    @Test
+    void testAppend() throws IOException {
+        try (WriteAheadLog log = new WriteAheadLog(this.dir.resolve("wal"))) {
+            AccountId id = new AccountId("01ARZ3NDEKTSV4RRFFQ69G5FAV");
+            long lsn1 = log.append(id, KEY, TransactionType.DEPOSIT, 0L, 19814, 100L, CurrencyTable.JPY);
+            long lsn2 = log.append(id, KEY, TransactionType.WITHDRAWAL, 0L, 19814, 50L, CurrencyTable.JPY);
+            assertEquals(1L, lsn1);
+            assertEquals(2L, lsn2);
+            log.awaitDurable(lsn2);
+            assertTrue(log.getDurableLsn() >= lsn2);
+            assertEquals(2L, log.getLastLsn());
+        }
+    }
+
+    @Test
+    void testRecover() throws IOException {
+        Path path = this.dir.resolve("wal");
+        Account a = newAccount();
+        Account b = newAccount();
+        AccountId idA = a.getAccountId().clone();
+        AccountId idB = b.getAccountId().clone();
+        try (WriteAheadLog log = new WriteAheadLog(path)) {
+            a.setWriteAheadLog(log);
+            b.setWriteAheadLog(log);
+            a.deposit(1000, "JPY", TRX_DATE, "振込");
+            b.deposit(300, "USD", TRX_DATE, "振込");
+            a.withdrawal(400, "JPY", TRX_DATE.plusDays(1), "ATM");
+        }
+
+        Map<AccountId, Account> accounts = new HashMap<>();
+        accounts.put(idA, emptyAccount(idA));
+        accounts.put(idB, emptyAccount(idB));
+        try (WriteAheadLog log = new WriteAheadLog(path)) {
+            assertEquals(3L, log.recover(accounts::get));
+            assertEquals(3L, log.getLastLsn());
+            // 回復後は続きのログ順序番号から追記する
+            assertEquals(4L, log.append(idA, KEY, TransactionType.DEPOSIT, 0L, 0, 1L, CurrencyTable.JPY));
+        }
+        Account ra = accounts.get(idA);
+        Account rb = accounts.get(idB);
+        assertEquals(600, ra.getBalance());
+        assertEquals(0, rb.getBalance());
+        assertEquals(300, rb.getBalance("USD"));
+        String[] histories = ra.getTransactionHistories(null, null);
+        assertEquals(2, histories.length);
+        assertTrue(histories[0].endsWith(",2024-04-01,1000,JPY,"));
+        assertTrue(histories[1].endsWith(",2024-04-02,400,JPY,"));
+        assertTrue(rb.getTransactionHistories(null, null)[0].endsWith(",2024-04-01,300,USD,"));
+    }
+
+    /* マップする領域をまたいで記録・回復できる */
+    @Test
+    void testRecoverManyRegions() throws IOException {
+        Path path = this.dir.resolve("wal");
+        AccountId id = new AccountId("01ARZ3NDEKTSV4RRFFQ69G5FAV");
+        int count = 5000;
+        try (WriteAheadLog log = new WriteAheadLog(path, Duration.ZERO, 64, WriteAheadLog.RECORD_SIZE * 100)) {
+            long lsn = 0L;
+            for (int i = 0; i < count; i++) {
+                lsn = log.append(id, KEY, TransactionType.DEPOSIT, i, 19814, 2L, CurrencyTable.JPY);
+            }
+            log.awaitDurable(lsn);
+        }
+        Account a = emptyAccount(id);
+        try (WriteAheadLog log = new WriteAheadLog(path, Duration.ZERO, 64, WriteAheadLog.RECORD_SIZE * 100)) {
+            assertEquals(count, log.recover(x -> a));
+        }
+        assertEquals(2L * count, a.getBalance());
+    }
+
+    /* 書き出しの途中で停止したレコード以降は破棄される */
+    @Test
+    void testTornRecord() throws IOException {
+        Path path = this.dir.resolve("wal");
+        AccountId id = new AccountId("01ARZ3NDEKTSV4RRFFQ69G5FAV");
+        try (WriteAheadLog log = new WriteAheadLog(path)) {
+            for (int i = 0; i < 5; i++) {
+                log.append(id, KEY, TransactionType.DEPOSIT, i, 19814, 10L, CurrencyTable.JPY);
+            }
+        }
+        // 3件目の取引金額を壊す
+        try (FileChannel ch = FileChannel.open(path, StandardOpenOption.WRITE)) {
+            ch.write(ByteBuffer.wrap(new byte[] {0x7f}), WriteAheadLog.RECORD_SIZE * 2 + 32);
+        }
+        Account a = emptyAccount(id);
+        try (WriteAheadLog log = new WriteAheadLog(path)) {
+            assertEquals(2L, log.getLastLsn());
+            assertEquals(2L, log.recover(x -> a));
+            log.append(id, KEY, TransactionType.DEPOSIT, 0L, 19814, 1L, CurrencyTable.JPY);
+        }
+        // 破棄したレコードは再度開いても現れない
+        Account b = emptyAccount(id);
+        try (WriteAheadLog log = new WriteAheadLog(path)) {
+            assertEquals(3L, log.recover(x -> b));
+        }
+        assertEquals(21L, b.getBalance());
+    }
+
+    /* 複数のスレッドの取引が1回の書き出しにまとめられる */
+    @Test
+    void testGroupCommit() throws IOException, InterruptedException {
+        Account a = newAccount();
+        int threads = 8;
+        int perThread = 500;
+        try (WriteAheadLog log = new WriteAheadLog(this.dir.resolve("wal"), Duration.ofMillis(5), 64)) {
+            a.setWriteAheadLog(log);
+            List<Thread> list = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                Thread thread = new Thread(() -> {
+                    for (int i = 0; i < perThread; i++) {
+                        a.deposit(1, "JPY", TRX_DATE, "振込");
+                    }
+                });
+                thread.start();
+                list.add(thread);
+            }
+            for (Thread thread : list) {
+                thread.join();
+            }
+            assertEquals(threads * perThread, log.getDurableLsn());
+            assertTrue(log.getCommitCount() < threads * perThread, "commits: " + log.getCommitCount());
+        }
+        assertEquals(threads * perThread, a.getBalance());
+    }
+
+    @Test
+    void testRecoverAfterAppend() throws IOException {
+        try (WriteAheadLog log = new WriteAheadLog(this.dir.resolve("wal"))) {
+            log.append(new AccountId(), KEY, TransactionType.DEPOSIT, 0L, 0, 1L, CurrencyTable.JPY);
+            IllegalStateException expected = assertThrows(IllegalStateException.class, () -> log.recover(x -> null));
+            assertEquals("ログの回復は取引を記録する前に行わなくてはならない", expected.getMessage());
+        }
+    }
+
+    @Test
+    void testRecoverUnknownAccount() throws IOException {
+        Path path = this.dir.resolve("wal");
+        try (WriteAheadLog log = new WriteAheadLog(path)) {
+            log.append(new AccountId(), KEY, TransactionType.DEPOSIT, 0L, 0, 1L, CurrencyTable.JPY);
+        }
+        try (WriteAheadLog log = new WriteAheadLog(path)) {
+            assertThrows(IllegalStateException.class, () -> log.recover(x -> null));
+        }
+    }
+
+    /* 領域の境界をまたぐ振替も、振替出金と振替入金の順に読み込める */
+    @Test
+    void testAppendTransferAcrossRegions() throws IOException {
+        Path path = this.dir.resolve("wal");
+        AccountId from = newAccount().getAccountId();
+        AccountId to = newAccount().getAccountId();
+        try (WriteAheadLog log = new WriteAheadLog(path, Duration.ZERO, 64, WriteAheadLog.RECORD_SIZE * 3)) {
+            assertEquals(1L, log.append(from, KEY, TransactionType.DEPOSIT, 1L, 0, 1000L, CurrencyTable.JPY));
+            assertEquals(2L, log.append(from, KEY, TransactionType.DEPOSIT, 2L, 0, 1000L, CurrencyTable.JPY));
+            assertEquals(4L, log.appendTransfer(from, KEY, to, KEY, 3L, 0, 300L, CurrencyTable.JPY));
+            log.awaitDurable(4L);
+        }
+        try (WriteAheadLog log = new WriteAheadLog(path, Duration.ZERO, 64, WriteAheadLog.RECORD_SIZE * 3)) {
+            assertEquals(4L, log.getLastLsn());
+            List<String> records = new ArrayList<>();
+            assertEquals(2L, log.replay(2L, (msb, lsb, accountKey, type, operationTime, trxDate, amount, ci) ->
+                records.add(new AccountId(new BinaryUlid(msb, lsb)).equals(to) + "," + type + "," + amount)));
+            assertEquals(List.of("false,TRANSFER_OUT,300", "true,TRANSFER_IN,300"), records);
+        }
+    }
+
+    /* 他のログへの振替出金は1つのレコード、参照と振替入金は組で読み込み、参照は口座残高に適用しない */
+    @Test
+    void testAppendTransferBetweenLogs() throws IOException {
+        Path path = this.dir.resolve("wal");
+        AccountId from = newAccount().getAccountId();
+        AccountId to = newAccount().getAccountId();
+        try (WriteAheadLog log = new WriteAheadLog(path)) {
+            assertEquals(1L, log.appendTransferPrepare(from, KEY, 1L, 0, 300L, CurrencyTable.JPY));
+            assertEquals(3L, log.appendTransferCredit(from, KEY, 9L, to, KEY, 2L, 0, 200L, CurrencyTable.JPY));
+            log.awaitDurable(3L);
+            IllegalArgumentException expected = assertThrows(IllegalArgumentException.class,
+                () -> log.appendTransferCredit(from, KEY, 0L, to, KEY, 2L, 0, 200L, CurrencyTable.JPY));
+            assertEquals("振替出金のログ順序番号は1以上でなくてはならない", expected.getMessage());
+        }
+        // 振替入金のレコードを書き出す前に停止した状態のログ
+        Path torn = this.dir.resolve("torn");
+        Files.copy(path, torn);
+        try (FileChannel channel = FileChannel.open(torn, StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.allocate(WriteAheadLog.RECORD_SIZE), 2L * WriteAheadLog.RECORD_SIZE);
+        }
+
+        try (WriteAheadLog log = new WriteAheadLog(path)) {
+            List<String> records = new ArrayList<>();
+            assertEquals(3L, log.replay(0L, (msb, lsb, accountKey, type, operationTime, trxDate, amount, ci) ->
+                records.add(new AccountId(new BinaryUlid(msb, lsb)).equals(to) + "," + type + "," + amount)));
+            assertEquals(List.of("false,TRANSFER_OUT,300", "true,TRANSFER_IN,200"), records);
+            List<String> transfers = new ArrayList<>();
+            log.readTransfers(new WriteAheadLog.TransferVisitor() {
+                @Override
+                public void prepared(long lsn, long msb, long lsb, long accountKey, long operationTime, int trxDate,
+                        long amount, int currencyIndex) {
+                    transfers.add("prepared," + lsn + "," + new AccountId(new BinaryUlid(msb, lsb)).equals(from)
+                        + "," + amount);
+                }
+
+                @Override
+                public void referenced(long msb, long lsb, long prepareLsn) {
+                    transfers.add("referenced," + new AccountId(new BinaryUlid(msb, lsb)).equals(from) + ","
+                        + prepareLsn);
+                }
+            });
+            assertEquals(List.of("prepared,1,true,300", "referenced,true,9"), transfers);
+        }
+        try (WriteAheadLog log = new WriteAheadLog(torn)) {
+            // 参照のレコードも破棄する
+            assertEquals(1L, log.getLastLsn());
+        }
+    }
+
+    @Test
+    void testAppendError() throws IOException {
+        WriteAheadLog log = new WriteAheadLog(this.dir.resolve("wal"));
+        IllegalArgumentException expected = assertThrows(IllegalArgumentException.class,
+            () -> log.append(new AccountId(), KEY, TransactionType.BALANCE_INQUIRY, 0L, 0, 0L, CurrencyTable.JPY));
+        assertEquals("ログに記録する取引は入出金を伴う取引、利息計上、または口座表記変更でなくてはならない", expected.getMessage());
+        assertThrows(IllegalArgumentException.class,
+            () -> log.append(null, KEY, TransactionType.DEPOSIT, 0L, 0, 1L, CurrencyTable.JPY));
+        assertThrows(IllegalArgumentException.class,
+            () -> log.append(new AccountId(), -1L, TransactionType.DEPOSIT, 0L, 0, 1L, CurrencyTable.JPY));
+        // 振替は振替出金と振替入金をまとめて記録する
+        expected = assertThrows(IllegalArgumentException.class,
+            () -> log.append(new AccountId(), KEY, TransactionType.TRANSFER_OUT, 0L, 0, 1L, CurrencyTable.JPY));
+        assertEquals("振替は振替出金と振替入金をまとめて記録しなくてはならない", expected.getMessage());
+        assertThrows(IllegalArgumentException.class,
+            () -> log.appendTransfer(new AccountId(), KEY, null, KEY, 0L, 0, 1L, CurrencyTable.JPY));
+        log.close();
+        IllegalStateException closed = assertThrows(IllegalStateException.class,
+            () -> log.append(new AccountId(), KEY, TransactionType.DEPOSIT, 0L, 0, 1L, CurrencyTable.JPY));
+        assertEquals("ログは閉じられています", closed.getMessage());
+    }
+
+    @Test
+    void testConstructorError() {
+        Path path = this.dir.resolve("wal");
+        IllegalArgumentException interval = assertThrows(IllegalArgumentException.class,
+            () -> new WriteAheadLog(path, Duration.ofMillis(-1), 1));
+        assertEquals("グループコミットの間隔は0以上でなくてはならない", interval.getMessage());
+        IllegalArgumentException batch = assertThrows(IllegalArgumentException.class,
+            () -> new WriteAheadLog(path, Duration.ZERO, 0));
+        assertEquals("グループコミットの件数は1以上でなくてはならない", batch.getMessage());
+    }
+
+    /* 指定されたログ順序番号より後のレコードだけを適用する */
+    @Test
+    void testRecoverAfter() throws IOException {
+        Path path = this.dir.resolve("wal");
+        AccountId id = new AccountId("01ARZ3NDEKTSV4RRFFQ69G5FAV");
+        try (WriteAheadLog log = new WriteAheadLog(path)) {
+            for (int i = 1; i <= 10; i++) {
+                log.append(id, KEY, TransactionType.DEPOSIT, 0L, 19814, i, CurrencyTable.JPY);
+            }
+        }
+        Account a = emptyAccount(id);
+        try (WriteAheadLog log = new WriteAheadLog(path)) {
+            assertEquals(3L, log.recover(7L, x -> a));
+            assertThrows(IllegalArgumentException.class, () -> log.recover(11L, x -> a));
+        }
+        assertEquals(8 + 9 + 10, a.getBalance());
+    }
+}